@@ -0,0 +1,644 @@
+package com.btstress;
+
+import android.bluetooth.BluetoothA2dp;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothClass;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.bluetooth.BluetoothSocket;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 真机蓝牙后端
+ * 封装 BluetoothAdapter / BluetoothDevice / 反射调用的 BluetoothA2dp 隐藏API，
+ * 把系统广播转换为 {@link BluetoothBackend.Listener} 回调（在控制器线程分发）。
+ *
+ * 隐藏API在 open() 时各反射查找一次并缓存 Method（已 setAccessible），每轮调用只剩 invoke；
+ * 查找失败（ROM 删改或 hidden API 限制）的能力不在 {@link #getCapabilities} 中上报。
+ * minSdk 23 没有 MethodHandle（API 26 起），缓存 Method 已省掉每次的查找和访问检查。
+ *
+ * GATT：每个地址一个 {@link GattLink}（BluetoothGattCallback 在 binder 线程回调，转到控制器线程再通知）。
+ * 服务发现后选定测试特征：优先无响应写的特征，通知特征优先取同一服务里的。
+ * 吞吐测试时通知可能每秒上千条，binder 线程只累加字节数，控制器线程取走时合并成一次 onGattNotify。
+ * 为兼容 minSdk 23 使用 API 33 起标为过时的特征/描述符写接口。
+ *
+ * RFCOMM/SPP：每个地址一个 {@link SppChannel}，BluetoothSocket 的连接和 {@link SppBenchmark} 的收发都会阻塞，
+ * 各在一个工作线程上进行，结果转到控制器线程再通知；close 时关闭 socket 打断阻塞中的读写。
+ *
+ * 测试音由 {@link TonePlayer} 播放；开始前尽量用隐藏API setActiveDevice（API 28 起）把目标设为活动的
+ * A2DP 设备，多耳机同时连接时音频才会送到目标。调用不了也照常播放，不算能力缺失。
+ */
+public class AndroidBluetoothBackend implements BluetoothBackend {
+
+    private final Context          context;
+    private final BluetoothAdapter btAdapter;
+    private final HandlerScheduler scheduler;
+
+    private          Listener      listener;
+    private volatile BluetoothA2dp a2dpProxy = null;  // ServiceListener 在主线程回调
+
+    // open() 时解析的隐藏API，null=本机不可用
+    private Method removeBondMethod      = null;
+    private Method a2dpConnectMethod     = null;
+    private Method a2dpDisconnectMethod  = null;
+    private Method setActiveDeviceMethod = null;   // 不计入能力位，调用不了时照常播放
+
+    private final TonePlayer tone = new TonePlayer();
+
+    // 扫描/广播中见过的设备对象，按地址缓存
+    private final Map<String, BluetoothDevice> devices = new HashMap<>();
+
+    // 各地址的 GATT 客户端（只在控制器线程访问）
+    private final Map<String, GattLink> gattLinks = new HashMap<>();
+
+    // 各地址的 RFCOMM 通道（只在控制器线程访问）
+    private final Map<String, SppChannel> sppChannels = new HashMap<>();
+
+    /** Client Characteristic Configuration 描述符 */
+    private static final UUID CCCD = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    // BroadcastReceiver：监听所有蓝牙事件
+    private final BroadcastReceiver btReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (action == null || listener == null) return;
+            BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+            String address = (device != null) ? remember(device) : null;
+            switch (action) {
+                case BluetoothDevice.ACTION_FOUND:
+                    if (address == null) return;
+                    String name = "";
+                    try { name = device.getName(); } catch (SecurityException ignored) {}
+                    // RSSI 和设备类型随同一条广播下发，不需要额外请求
+                    BluetoothClass cls = intent.getParcelableExtra(BluetoothDevice.EXTRA_CLASS);
+                    listener.onDeviceFound(address, name != null ? name : "",
+                            intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, (short) RSSI_UNKNOWN),
+                            cls != null ? cls.getDeviceClass() : CLASS_UNKNOWN);
+                    break;
+                case BluetoothAdapter.ACTION_DISCOVERY_FINISHED:
+                    listener.onDiscoveryFinished();
+                    break;
+                case BluetoothDevice.ACTION_BOND_STATE_CHANGED:
+                    if (address == null) return;
+                    listener.onBondStateChanged(address,
+                            intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.BOND_NONE),
+                            intent.getIntExtra("android.bluetooth.device.extra.REASON", -1));
+                    break;
+                case BluetoothA2dp.ACTION_CONNECTION_STATE_CHANGED:
+                    if (address == null) return;
+                    listener.onA2dpStateChanged(address,
+                            intent.getIntExtra(BluetoothProfile.EXTRA_STATE, BluetoothProfile.STATE_DISCONNECTED));
+                    break;
+                case BluetoothA2dp.ACTION_PLAYING_STATE_CHANGED:
+                    if (address == null) return;
+                    listener.onA2dpPlayingChanged(address,
+                            intent.getIntExtra(BluetoothProfile.EXTRA_STATE, BluetoothA2dp.STATE_NOT_PLAYING)
+                                    == BluetoothA2dp.STATE_PLAYING);
+                    break;
+                case BluetoothDevice.ACTION_ACL_DISCONNECTED:
+                    if (address == null) return;
+                    // 较新的 AOSP 随广播带上 HCI 断开原因，老 ROM 没有
+                    listener.onAclDisconnected(address,
+                            intent.getIntExtra("android.bluetooth.device.extra.REASON", -1));
+                    break;
+            }
+        }
+    };
+
+    public AndroidBluetoothBackend(Context context, BluetoothAdapter adapter, HandlerScheduler scheduler) {
+        this.context   = context.getApplicationContext();
+        this.btAdapter = adapter;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void open(Listener listener) {
+        this.listener = listener;
+        resolveHiddenApis();
+        registerReceiver();
+        getA2dpProxy();
+    }
+
+    @Override
+    public int getCapabilities() {
+        int caps = 0;
+        if (removeBondMethod     != null) caps |= CAP_REMOVE_BOND;
+        if (a2dpConnectMethod    != null) caps |= CAP_A2DP_CONNECT;
+        if (a2dpDisconnectMethod != null) caps |= CAP_A2DP_DISCONNECT;
+        if (context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_BLUETOOTH_LE)) caps |= CAP_GATT;
+        return caps;
+    }
+
+    @Override
+    public void close() {
+        unregisterReceiver();
+        tone.stop();
+        closeA2dpProxy();
+        for (GattLink link : gattLinks.values()) link.close();
+        gattLinks.clear();
+        for (SppChannel ch : sppChannels.values()) ch.close();
+        sppChannels.clear();
+        listener = null;
+        devices.clear();
+    }
+
+    /*──────────────────────────────
+     *  射频操作
+     *──────────────────────────────*/
+
+    @Override
+    public boolean isDiscovering() {
+        try { return btAdapter.isDiscovering(); }
+        catch (SecurityException e) { return false; }
+    }
+
+    @Override
+    public boolean startDiscovery() {
+        try { return btAdapter.startDiscovery(); }
+        catch (SecurityException e) { return false; }
+    }
+
+    @Override
+    public void cancelDiscovery() {
+        try { btAdapter.cancelDiscovery(); }
+        catch (SecurityException ignored) {}
+    }
+
+    @Override
+    public boolean createBond(String address) throws BackendException {
+        try { return device(address).createBond(); }
+        catch (SecurityException e) { throw new BackendException("createBond权限异常: " + e.getMessage()); }
+    }
+
+    @Override
+    public int getBondState(String address) {
+        try { return device(address).getBondState(); }
+        catch (SecurityException e) { return BOND_NONE; }
+    }
+
+    /** 调用隐藏API removeBond（open() 时已解析） */
+    @Override
+    public boolean removeBond(String address) throws BackendException {
+        Method m = removeBondMethod;
+        if (m == null) throw new BackendException("removeBond不可用");
+        try {
+            return (Boolean) m.invoke(device(address));
+        } catch (Exception e) {
+            throw new BackendException("removeBond反射调用异常: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean connectA2dp(String address) throws BackendException {
+        return invokeA2dp(a2dpConnectMethod, "connect", address);
+    }
+
+    @Override
+    public boolean disconnectA2dp(String address) throws BackendException {
+        return invokeA2dp(a2dpDisconnectMethod, "disconnect", address);
+    }
+
+    @Override
+    public boolean startTone(String address) {
+        Method m = setActiveDeviceMethod;
+        BluetoothA2dp proxy = a2dpProxy;
+        if (m != null && proxy != null) {
+            try { m.invoke(proxy, device(address)); }
+            catch (Exception ignored) {}   // 没有权限时由系统决定路由
+        }
+        return tone.start();
+    }
+
+    @Override
+    public int stopTone(String address) {
+        return tone.stop();
+    }
+
+    /*──────────────────────────────
+     *  GATT
+     *──────────────────────────────*/
+
+    @Override
+    public boolean connectGatt(String address) throws BackendException {
+        closeGatt(address);
+        GattLink link = new GattLink(address);
+        try {
+            link.gatt = device(address).connectGatt(context, false, link, BluetoothDevice.TRANSPORT_LE);
+        } catch (SecurityException e) {
+            throw new BackendException("connectGatt权限异常: " + e.getMessage());
+        }
+        if (link.gatt == null) return false;
+        gattLinks.put(address, link);
+        return true;
+    }
+
+    @Override
+    public boolean requestMtu(String address, int mtu) {
+        GattLink link = gattLinks.get(address);
+        try { return link != null && link.gatt.requestMtu(mtu); }
+        catch (SecurityException e) { return false; }
+    }
+
+    @Override
+    public boolean requestHighPriority(String address) {
+        GattLink link = gattLinks.get(address);
+        try { return link != null && link.gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH); }
+        catch (SecurityException e) { return false; }
+    }
+
+    @Override
+    public boolean discoverServices(String address) {
+        GattLink link = gattLinks.get(address);
+        try { return link != null && link.gatt.discoverServices(); }
+        catch (SecurityException e) { return false; }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public boolean enableNotify(String address) {
+        GattLink link = gattLinks.get(address);
+        if (link == null || link.notifyChar == null) return false;
+        BluetoothGattDescriptor cccd = link.notifyChar.getDescriptor(CCCD);
+        if (cccd == null) return false;
+        try {
+            if (!link.gatt.setCharacteristicNotification(link.notifyChar, true)) return false;
+            cccd.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+            return link.gatt.writeDescriptor(cccd);
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public boolean writeGatt(String address, byte[] data) {
+        GattLink link = gattLinks.get(address);
+        if (link == null || link.writeChar == null) return false;
+        try {
+            link.writeChar.setValue(data);
+            return link.gatt.writeCharacteristic(link.writeChar);
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean disconnectGatt(String address) {
+        GattLink link = gattLinks.get(address);
+        if (link == null) return false;
+        try {
+            link.gatt.disconnect();
+            return true;
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void closeGatt(String address) {
+        GattLink link = gattLinks.remove(address);
+        if (link != null) link.close();
+    }
+
+    /** 一个地址的 GATT 客户端：回调转到控制器线程，已 close 的链接不再通知 */
+    private final class GattLink extends BluetoothGattCallback {
+        final String address;
+        final AtomicInteger notified = new AtomicInteger(0);   // binder 线程累加，控制器线程取走
+        BluetoothGatt gatt;
+        BluetoothGattCharacteristic writeChar;    // 服务发现后选定，只在控制器线程读
+        BluetoothGattCharacteristic notifyChar;
+        volatile boolean closed = false;
+
+        GattLink(String address) {
+            this.address = address;
+        }
+
+        void close() {
+            closed = true;
+            try { gatt.close(); }
+            catch (SecurityException ignored) {}
+        }
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt g, final int status, final int newState) {
+            post(() -> listener.onGattConnectionChanged(address, status, newState));
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt g, final int mtu, final int status) {
+            post(() -> listener.onGattMtuChanged(address, mtu, status));
+        }
+
+        @Override
+        public void onServicesDiscovered(final BluetoothGatt g, final int status) {
+            post(() -> {
+                List<BluetoothGattService> services = status == BluetoothGatt.GATT_SUCCESS ? g.getServices() : null;
+                if (services != null) selectTestCharacteristics(services);
+                listener.onGattServicesDiscovered(address, status, services != null ? services.size() : 0, writeChar != null);
+            });
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt g, BluetoothGattCharacteristic c, final int status) {
+            post(() -> listener.onGattWriteComplete(address, status));
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt g, BluetoothGattDescriptor d, final int status) {
+            post(() -> listener.onGattWriteComplete(address, status));
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic c) {
+            byte[] value = c.getValue();
+            int n = value != null ? value.length : 0;
+            // 上一批还没被取走时只累加，不再投递
+            if (notified.getAndAdd(n) == 0) {
+                post(() -> listener.onGattNotify(address, notified.getAndSet(0)));
+            }
+        }
+
+        /** 可写特征优先无响应写；通知特征优先与可写特征同一服务 */
+        private void selectTestCharacteristics(List<BluetoothGattService> services) {
+            writeChar  = null;
+            notifyChar = null;
+            BluetoothGattCharacteristic withResponse = null;
+            for (BluetoothGattService s : services) {
+                for (BluetoothGattCharacteristic c : s.getCharacteristics()) {
+                    int p = c.getProperties();
+                    if ((p & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0 && writeChar == null) {
+                        writeChar = c;
+                        BluetoothGattCharacteristic n = notifyIn(s);
+                        if (n != null) notifyChar = n;
+                    } else if ((p & BluetoothGattCharacteristic.PROPERTY_WRITE) != 0 && withResponse == null) {
+                        withResponse = c;
+                    }
+                    if ((p & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0 && notifyChar == null) notifyChar = c;
+                }
+            }
+            if (writeChar == null) writeChar = withResponse;
+            if (writeChar != null) {
+                writeChar.setWriteType(writeChar == withResponse
+                        ? BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT
+                        : BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+            }
+        }
+
+        private BluetoothGattCharacteristic notifyIn(BluetoothGattService s) {
+            for (BluetoothGattCharacteristic c : s.getCharacteristics()) {
+                if ((c.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0) return c;
+            }
+            return null;
+        }
+
+        private void post(final Runnable r) {
+            scheduler.post(() -> {
+                if (!closed && listener != null) r.run();
+            });
+        }
+    }
+
+    /*──────────────────────────────
+     *  RFCOMM/SPP
+     *──────────────────────────────*/
+
+    @Override
+    public boolean connectSpp(String address, String uuid) throws BackendException {
+        closeSpp(address);
+        BluetoothSocket socket;
+        try {
+            socket = device(address).createRfcommSocketToServiceRecord(UUID.fromString(uuid));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new BackendException("创建RFCOMM socket失败: " + e.getMessage());
+        } catch (SecurityException e) {
+            throw new BackendException("createRfcommSocket权限异常: " + e.getMessage());
+        }
+        if (socket == null) return false;
+        // 进行中的 inquiry 会严重拖慢 RFCOMM 连接
+        cancelDiscovery();
+        SppChannel ch = new SppChannel(address, new RfcommTransport(socket));
+        sppChannels.put(address, ch);
+        ch.connect();
+        return true;
+    }
+
+    @Override
+    public boolean startSppBurst(String address, int frameBytes) {
+        SppChannel ch = sppChannels.get(address);
+        return ch != null && ch.startBurst(frameBytes);
+    }
+
+    @Override
+    public void stopSppBurst(String address) {
+        SppChannel ch = sppChannels.get(address);
+        if (ch != null) ch.bench.stop();
+    }
+
+    @Override
+    public void closeSpp(String address) {
+        SppChannel ch = sppChannels.remove(address);
+        if (ch != null) ch.close();
+    }
+
+    /** BluetoothSocket 作为 {@link SppTransport} */
+    private static final class RfcommTransport implements SppTransport {
+        private final BluetoothSocket socket;
+
+        RfcommTransport(BluetoothSocket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            try { socket.connect(); }
+            catch (SecurityException e) { throw new IOException(e.getMessage()); }
+        }
+
+        @Override public InputStream  getInputStream() throws IOException  { return socket.getInputStream(); }
+        @Override public OutputStream getOutputStream() throws IOException { return socket.getOutputStream(); }
+
+        @Override
+        public void close() {
+            try { socket.close(); }
+            catch (IOException ignored) {}
+        }
+    }
+
+    /** 一个地址的 RFCOMM 通道：连接和测试各在一个工作线程上阻塞进行，已 close 的通道不再通知 */
+    private final class SppChannel {
+        final String       address;
+        final SppTransport transport;
+        final SppBenchmark bench = new SppBenchmark();
+        volatile boolean connected = false;
+        volatile boolean closed    = false;
+
+        SppChannel(String address, SppTransport transport) {
+            this.address   = address;
+            this.transport = transport;
+        }
+
+        void connect() {
+            new Thread(() -> {
+                boolean ok;
+                try {
+                    transport.connect();
+                    ok = true;
+                } catch (IOException e) {
+                    ok = false;
+                }
+                connected = ok;
+                final boolean result = ok;
+                post(() -> listener.onSppConnected(address, result));
+            }, "SppConnect").start();
+        }
+
+        boolean startBurst(final int frameBytes) {
+            if (!connected) return false;
+            bench.prepare();
+            new Thread(() -> {
+                SppBenchmark.Result result;
+                try {
+                    result = bench.run(transport, frameBytes);
+                } catch (IOException e) {
+                    result = null;
+                }
+                final SppBenchmark.Result r = result;
+                post(() -> listener.onSppBurstDone(address, r));
+            }, "SppBurst").start();
+            return true;
+        }
+
+        void close() {
+            closed = true;
+            bench.stop();
+            transport.close();
+        }
+
+        private void post(final Runnable r) {
+            scheduler.post(() -> {
+                if (!closed && listener != null) r.run();
+            });
+        }
+    }
+
+    /*──────────────────────────────
+     *  内部工具
+     *──────────────────────────────*/
+
+    private boolean invokeA2dp(Method m, String methodName, String address) throws BackendException {
+        if (m == null) throw new BackendException("A2dp." + methodName + "()不可用");
+        BluetoothA2dp proxy = a2dpProxy;
+        if (proxy == null) return false;
+        try {
+            m.invoke(proxy, device(address));
+            return true;
+        } catch (Exception e) {
+            throw new BackendException("A2dp." + methodName + "()调用失败: " + e.getMessage());
+        }
+    }
+
+    /** 各隐藏API只查找一次；失败的留 null，由 getCapabilities() 上报 */
+    private void resolveHiddenApis() {
+        removeBondMethod      = findMethod(BluetoothDevice.class, "removeBond");
+        a2dpConnectMethod     = findMethod(BluetoothA2dp.class, "connect", BluetoothDevice.class);
+        a2dpDisconnectMethod  = findMethod(BluetoothA2dp.class, "disconnect", BluetoothDevice.class);
+        setActiveDeviceMethod = findMethod(BluetoothA2dp.class, "setActiveDevice", BluetoothDevice.class);
+    }
+
+    private static Method findMethod(Class<?> cls, String name, Class<?>... params) {
+        try {
+            Method m = cls.getDeclaredMethod(name, params);
+            m.setAccessible(true);
+            return m;
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+    private String remember(BluetoothDevice device) {
+        String address = device.getAddress().toUpperCase();
+        devices.put(address, device);
+        return address;
+    }
+
+    private BluetoothDevice device(String address) {
+        BluetoothDevice d = devices.get(address);
+        if (d == null) {
+            d = btAdapter.getRemoteDevice(address);
+            devices.put(address, d);
+        }
+        return d;
+    }
+
+    private void registerReceiver() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(BluetoothDevice.ACTION_FOUND);
+        filter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+        filter.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
+        filter.addAction(BluetoothA2dp.ACTION_CONNECTION_STATE_CHANGED);
+        filter.addAction(BluetoothA2dp.ACTION_PLAYING_STATE_CHANGED);
+        filter.addAction(BluetoothDevice.ACTION_ACL_DISCONNECTED);
+        // 指定 scheduler：广播直接在控制器线程分发，不经过主线程
+        context.registerReceiver(btReceiver, filter, null, scheduler.getHandler());
+    }
+
+    private void unregisterReceiver() {
+        try { context.unregisterReceiver(btReceiver); }
+        catch (Exception ignored) {}
+    }
+
+    private void getA2dpProxy() {
+        try {
+            btAdapter.getProfileProxy(context, new BluetoothProfile.ServiceListener() {
+                @Override
+                public void onServiceConnected(int profile, BluetoothProfile proxy) {
+                    if (profile != BluetoothProfile.A2DP) return;
+                    a2dpProxy = (BluetoothA2dp) proxy;
+                    notifyProxyChanged(true);
+                }
+                @Override
+                public void onServiceDisconnected(int profile) {
+                    if (profile != BluetoothProfile.A2DP) return;
+                    a2dpProxy = null;
+                    notifyProxyChanged(false);
+                }
+            }, BluetoothProfile.A2DP);
+        } catch (Exception ignored) {}
+    }
+
+    /** ServiceListener 在主线程回调，转到控制器线程再通知 */
+    private void notifyProxyChanged(boolean available) {
+        scheduler.post(() -> {
+            if (listener != null) listener.onA2dpProxyChanged(available);
+        });
+    }
+
+    private void closeA2dpProxy() {
+        if (a2dpProxy != null) {
+            try { btAdapter.closeProfileProxy(BluetoothProfile.A2DP, a2dpProxy); }
+            catch (Exception ignored) {}
+            a2dpProxy = null;
+        }
+    }
+}
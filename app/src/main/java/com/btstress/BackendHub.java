@@ -0,0 +1,127 @@
+package com.btstress;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 多控制器共享同一个 BluetoothBackend
+ *
+ * 真机上只注册一个 BroadcastReceiver、只持有一个 A2DP 代理，
+ * 事件分发给所有已 open 的客户端；第一个客户端 open 时打开底层后端，
+ * 最后一个客户端 close 时关闭。
+ */
+public class BackendHub {
+
+    private final BluetoothBackend backend;
+    private final CopyOnWriteArrayList<BluetoothBackend.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final BluetoothBackend.Listener fanout = new BluetoothBackend.Listener() {
+        @Override
+        public void onDeviceFound(String address, String name, int rssi, int deviceClass) {
+            for (BluetoothBackend.Listener l : listeners) l.onDeviceFound(address, name, rssi, deviceClass);
+        }
+        @Override
+        public void onDiscoveryFinished() {
+            for (BluetoothBackend.Listener l : listeners) l.onDiscoveryFinished();
+        }
+        @Override
+        public void onBondStateChanged(String address, int bondState, int reason) {
+            for (BluetoothBackend.Listener l : listeners) l.onBondStateChanged(address, bondState, reason);
+        }
+        @Override
+        public void onA2dpStateChanged(String address, int state) {
+            for (BluetoothBackend.Listener l : listeners) l.onA2dpStateChanged(address, state);
+        }
+        @Override
+        public void onAclDisconnected(String address, int reason) {
+            for (BluetoothBackend.Listener l : listeners) l.onAclDisconnected(address, reason);
+        }
+        @Override
+        public void onA2dpProxyChanged(boolean available) {
+            for (BluetoothBackend.Listener l : listeners) l.onA2dpProxyChanged(available);
+        }
+        @Override
+        public void onA2dpPlayingChanged(String address, boolean playing) {
+            for (BluetoothBackend.Listener l : listeners) l.onA2dpPlayingChanged(address, playing);
+        }
+        @Override
+        public void onGattConnectionChanged(String address, int status, int state) {
+            for (BluetoothBackend.Listener l : listeners) l.onGattConnectionChanged(address, status, state);
+        }
+        @Override
+        public void onGattMtuChanged(String address, int mtu, int status) {
+            for (BluetoothBackend.Listener l : listeners) l.onGattMtuChanged(address, mtu, status);
+        }
+        @Override
+        public void onGattServicesDiscovered(String address, int status, int services, boolean writable) {
+            for (BluetoothBackend.Listener l : listeners) l.onGattServicesDiscovered(address, status, services, writable);
+        }
+        @Override
+        public void onGattWriteComplete(String address, int status) {
+            for (BluetoothBackend.Listener l : listeners) l.onGattWriteComplete(address, status);
+        }
+        @Override
+        public void onGattNotify(String address, int bytes) {
+            for (BluetoothBackend.Listener l : listeners) l.onGattNotify(address, bytes);
+        }
+        @Override
+        public void onSppConnected(String address, boolean ok) {
+            for (BluetoothBackend.Listener l : listeners) l.onSppConnected(address, ok);
+        }
+        @Override
+        public void onSppBurstDone(String address, SppBenchmark.Result result) {
+            for (BluetoothBackend.Listener l : listeners) l.onSppBurstDone(address, result);
+        }
+    };
+
+    public BackendHub(BluetoothBackend backend) {
+        this.backend = backend;
+    }
+
+    /** 为一个控制器创建客户端视图 */
+    public BluetoothBackend newClient() {
+        return new Client();
+    }
+
+    private final class Client implements BluetoothBackend {
+        private Listener listener;
+
+        @Override
+        public void open(Listener l) {
+            listener = l;
+            listeners.add(l);
+            if (listeners.size() == 1) backend.open(fanout);
+        }
+
+        @Override
+        public void close() {
+            if (listener == null) return;
+            listeners.remove(listener);
+            listener = null;
+            if (listeners.isEmpty()) backend.close();
+        }
+
+        @Override public int     getCapabilities() { return backend.getCapabilities(); }
+        @Override public boolean isDiscovering() { return backend.isDiscovering(); }
+        @Override public boolean startDiscovery() { return backend.startDiscovery(); }
+        @Override public void    cancelDiscovery() { backend.cancelDiscovery(); }
+        @Override public boolean createBond(String address) throws BackendException { return backend.createBond(address); }
+        @Override public int     getBondState(String address) { return backend.getBondState(address); }
+        @Override public boolean removeBond(String address) throws BackendException { return backend.removeBond(address); }
+        @Override public boolean connectA2dp(String address) throws BackendException { return backend.connectA2dp(address); }
+        @Override public boolean disconnectA2dp(String address) throws BackendException { return backend.disconnectA2dp(address); }
+        @Override public boolean startTone(String address) { return backend.startTone(address); }
+        @Override public int     stopTone(String address) { return backend.stopTone(address); }
+        @Override public boolean connectGatt(String address) throws BackendException { return backend.connectGatt(address); }
+        @Override public boolean requestMtu(String address, int mtu) { return backend.requestMtu(address, mtu); }
+        @Override public boolean requestHighPriority(String address) { return backend.requestHighPriority(address); }
+        @Override public boolean discoverServices(String address) { return backend.discoverServices(address); }
+        @Override public boolean enableNotify(String address) { return backend.enableNotify(address); }
+        @Override public boolean writeGatt(String address, byte[] data) { return backend.writeGatt(address, data); }
+        @Override public boolean disconnectGatt(String address) { return backend.disconnectGatt(address); }
+        @Override public void    closeGatt(String address) { backend.closeGatt(address); }
+        @Override public boolean connectSpp(String address, String uuid) throws BackendException { return backend.connectSpp(address, uuid); }
+        @Override public boolean startSppBurst(String address, int frameBytes) { return backend.startSppBurst(address, frameBytes); }
+        @Override public void    stopSppBurst(String address) { backend.stopSppBurst(address); }
+        @Override public void    closeSpp(String address) { backend.closeSpp(address); }
+    }
+}
@@ -0,0 +1,176 @@
+package com.btstress;
+
+/**
+ * 蓝牙操作与事件的抽象层
+ *
+ * TestController 只通过本接口操作射频和接收事件，不直接依赖 Android API：
+ * 真机上由 {@link AndroidBluetoothBackend} 实现，JVM 上由
+ * {@link SimulatedBluetoothBackend} 在虚拟时钟上模拟。
+ *
+ * 经典蓝牙（扫描/配对/A2DP）之外还有一组 BLE GATT 操作：每个地址一个 GATT 客户端，
+ * 后端自动选定对端的测试特征（第一个可写特征，及第一个可通知特征），
+ * 每个异步操作完成时回调对应的 onGatt*，同一时刻只能有一个未完成的写操作。
+ *
+ * RFCOMM/SPP：按服务 UUID 连接后由后端在工作线程上跑 {@link SppBenchmark}（收发都在后端，
+ * 控制器只发起和收尾），连接结果和测试结果各回调一次。
+ *
+ * 音频起播探测用一路本地测试音：startTone 后系统把媒体音频送到 A2DP 设备，
+ * 对端真正开始出声时回调 onA2dpPlayingChanged(true)。
+ *
+ * 设备统一用 MAC 地址（大写）标识；状态常量与 Android 取值一致，
+ * 真机实现可直接透传广播中的数值。
+ * 所有 Listener 回调都必须在控制器的 Scheduler 线程上触发。
+ */
+public interface BluetoothBackend {
+
+    /*──── 配对状态（同 BluetoothDevice.BOND_*） ────*/
+    int BOND_NONE    = 10;
+    int BOND_BONDING = 11;
+    int BOND_BONDED  = 12;
+
+    /*──── Profile 连接状态（同 BluetoothProfile.STATE_*） ────*/
+    int STATE_DISCONNECTED  = 0;
+    int STATE_CONNECTING    = 1;
+    int STATE_CONNECTED     = 2;
+    int STATE_DISCONNECTING = 3;
+
+    /*──── GATT 状态码（同 BluetoothGatt.GATT_*；连接失败多数 ROM 上报 133） ────*/
+    int GATT_SUCCESS = 0;
+    int GATT_ERROR   = 133;
+
+    /** ATT 默认 MTU，每包可写 MTU-3 字节 */
+    int GATT_DEFAULT_MTU = 23;
+
+    /** 标准串口服务（SPP）的 UUID */
+    String SPP_UUID = "00001101-0000-1000-8000-00805F9B34FB";
+
+    /*──── 扫描结果中缺失的字段 ────*/
+    int RSSI_UNKNOWN  = Short.MIN_VALUE;   // 同 EXTRA_RSSI 缺省值
+    int CLASS_UNKNOWN = -1;
+
+    /*──── 隐藏API能力位（{@link #getCapabilities}） ────*/
+    int CAP_REMOVE_BOND     = 1;       // BluetoothDevice.removeBond
+    int CAP_A2DP_CONNECT    = 1 << 1;  // BluetoothA2dp.connect
+    int CAP_A2DP_DISCONNECT = 1 << 2;  // BluetoothA2dp.disconnect
+    int CAP_GATT            = 1 << 3;  // 本机支持 BLE（GATT 客户端）
+    int CAP_ALL = CAP_REMOVE_BOND | CAP_A2DP_CONNECT | CAP_A2DP_DISCONNECT | CAP_GATT;
+
+    /** 蓝牙事件回调 */
+    interface Listener {
+        /** rssi 为 dBm（RSSI_UNKNOWN=未携带），deviceClass 为 BluetoothClass 主类+次类（CLASS_UNKNOWN=未携带） */
+        void onDeviceFound(String address, String name, int rssi, int deviceClass);
+        void onDiscoveryFinished();
+        void onBondStateChanged(String address, int bondState, int reason);
+        void onA2dpStateChanged(String address, int state);
+        /** reason 为 HCI 断开原因码，ROM 未提供时为 -1 */
+        void onAclDisconnected(String address, int reason);
+        void onA2dpProxyChanged(boolean available);
+        /** A2DP 音频流状态（同 ACTION_PLAYING_STATE_CHANGED），playing=true 表示音频数据已在发往对端 */
+        void onA2dpPlayingChanged(String address, boolean playing);
+
+        /** GATT 连接状态变化（state 为 STATE_*），status 为 GATT 状态码或断开原因 */
+        void onGattConnectionChanged(String address, int status, int state);
+        /** MTU 协商完成，失败时 mtu 为当前值 */
+        void onGattMtuChanged(String address, int mtu, int status);
+        /** 服务发现完成：services 为服务数，writable 表示找到了可写的测试特征 */
+        void onGattServicesDiscovered(String address, int status, int services, boolean writable);
+        /** 一次写操作完成（测试特征的写，或开启通知时的描述符写） */
+        void onGattWriteComplete(String address, int status);
+        /** 收到测试特征的通知，bytes 为字节数（连续到达的多条通知可能合并成一次回调） */
+        void onGattNotify(String address, int bytes);
+
+        /** RFCOMM 连接完成，ok=false 表示连接失败（SDP 找不到服务、对端拒绝、超时） */
+        void onSppConnected(String address, boolean ok);
+        /** SPP 测试结束，result 为 null 表示中途读写失败（链路断开） */
+        void onSppBurstDone(String address, SppBenchmark.Result result);
+    }
+
+    /** 操作失败（权限、隐藏API不可用等），message 用于日志 */
+    class BackendException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public BackendException(String message) { super(message); }
+    }
+
+    /** 开始监听事件并准备 Profile 代理（在 Scheduler 线程调用） */
+    void open(Listener listener);
+
+    /** 停止监听并释放资源 */
+    void close();
+
+    /**
+     * 本机可用的隐藏API（CAP_* 位），open() 之后调用
+     * 缺失的能力对应的操作方法会直接抛出 BackendException，调用方应事先避开。
+     */
+    int getCapabilities();
+
+    boolean isDiscovering();
+    boolean startDiscovery();
+    void    cancelDiscovery();
+
+    /** 发起配对，false 表示请求未被接受（如已配对） */
+    boolean createBond(String address) throws BackendException;
+
+    /** 当前配对状态，无权限时返回 BOND_NONE */
+    int getBondState(String address);
+
+    /** 取消配对（隐藏API removeBond） */
+    boolean removeBond(String address) throws BackendException;
+
+    /** 主动发起A2DP连接，false 表示 Profile 代理尚不可用 */
+    boolean connectA2dp(String address) throws BackendException;
+
+    /** 主动断开A2DP连接，false 表示 Profile 代理尚不可用 */
+    boolean disconnectA2dp(String address) throws BackendException;
+
+    /*──── 测试音（音频起播探测） ────*/
+
+    /**
+     * 开始循环播放本地测试音（媒体用途，由系统路由到活动的 A2DP 设备，尽量先把 address 设为活动设备）
+     * false 表示无法播放；同一时刻只有一路测试音
+     */
+    boolean startTone(String address);
+
+    /** 停止测试音，返回播放期间的欠载次数（-1=本机无法统计） */
+    int stopTone(String address);
+
+    /*──── BLE GATT（需要 CAP_GATT） ────*/
+
+    /** 发起 GATT 连接（LE 传输，非 autoConnect），结果见 onGattConnectionChanged */
+    boolean connectGatt(String address) throws BackendException;
+
+    /** 请求 MTU，结果见 onGattMtuChanged */
+    boolean requestMtu(String address, int mtu);
+
+    /** 请求高优先级连接参数（短连接间隔），没有回调 */
+    boolean requestHighPriority(String address);
+
+    /** 发现服务并选定测试特征，结果见 onGattServicesDiscovered */
+    boolean discoverServices(String address);
+
+    /** 开启测试特征的通知，false 表示对端没有可通知的特征；完成时回调 onGattWriteComplete */
+    boolean enableNotify(String address);
+
+    /** 写一包数据到测试特征（优先无响应写），完成时回调 onGattWriteComplete */
+    boolean writeGatt(String address, byte[] data);
+
+    /** 断开 GATT 连接，完成时回调 onGattConnectionChanged(STATE_DISCONNECTED) */
+    boolean disconnectGatt(String address);
+
+    /** 释放该地址的 GATT 客户端，之后不再有它的回调（每轮结束、失败清理时调用） */
+    void closeGatt(String address);
+
+    /*──── RFCOMM/SPP ────*/
+
+    /** 按服务 UUID 建立 RFCOMM 连接（需已配对），结果见 onSppConnected；false 表示无法发起 */
+    boolean connectSpp(String address, String uuid) throws BackendException;
+
+    /** 在已连接的通道上开始发送 frameBytes 字节的帧并测回显，直到 stopSppBurst；false 表示没有连接 */
+    boolean startSppBurst(String address, int frameBytes);
+
+    /** 停止发送，等在途的回显收完后回调 onSppBurstDone */
+    void stopSppBurst(String address);
+
+    /** 关闭 RFCOMM 连接，进行中的测试随之中止，之后不再有它的回调 */
+    void closeSpp(String address);
+}
@@ -10,24 +10,45 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 
 import androidx.core.app.NotificationCompat;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * 蓝牙压测前台服务
  * 持有WakeLock，防止手机息屏后压测中断
+ *
+ * 压测运行（控制器/多耳机会话）归服务所有，Activity 只绑定并订阅回调。
+ * 开始时把 {@link RunConfig} 写入断点文件；进程被杀后 START_STICKY 拉起服务（intent 为 null），
+ * 读到断点即从事件日志还原统计和已完成轮数，从下一轮继续，中断时长记为一次 gap。
  */
 public class BluetoothTestService extends Service {
 
     private static final String CHANNEL_ID   = "BtStressTest";
     private static final int    NOTIF_ID     = 1001;
     public  static final String ACTION_STOP  = "com.btstress.ACTION_STOP";
+    public  static final String ACTION_RESUME = "com.btstress.ACTION_RESUME";
+
+    private static final String CHECKPOINT_FILE      = "run_checkpoint.properties";
+    private static final long   WAKE_LOCK_TIMEOUT_MS = 2 * 60 * 60 * 1000L;
 
     private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private PowerManager.WakeLock wakeLock;
-    private TestController testController;
+
+    // 当前运行（主线程创建/停止）
+    private TestController     testController;
+    private MultiDeviceSession session;
+    private volatile RunExporter exporter;
+    private volatile TraceRecorder trace;
+    private boolean            resuming = false;
+    private volatile TestController.Callback uiCallback;
 
     public class LocalBinder extends Binder {
         public BluetoothTestService getService() { return BluetoothTestService.this; }
@@ -47,6 +68,10 @@ public class BluetoothTestService extends Service {
             return START_NOT_STICKY;
         }
         startForeground(NOTIF_ID, buildNotification("压测服务运行中..."));
+        // intent==null：进程被杀后系统按 START_STICKY 重建服务
+        if ((intent == null || ACTION_RESUME.equals(intent.getAction())) && !isRunning()) {
+            resumeFromCheckpoint();
+        }
         return START_STICKY;
     }
 
@@ -55,22 +80,216 @@ public class BluetoothTestService extends Service {
 
     @Override
     public void onDestroy() {
-        if (testController != null) testController.stop();
+        stopRun();
         releaseWakeLock();
         super.onDestroy();
     }
 
+    /** 断点文件位置（不参与系统备份） */
+    public static File checkpointFile(Context context) {
+        return new File(context.getNoBackupFilesDir(), CHECKPOINT_FILE);
+    }
+
+    /*──────────────────────────────
+     *  压测运行
+     *──────────────────────────────*/
+
+    /** 设置UI回调（Activity 绑定后设置，销毁前置 null） */
+    public void setUiCallback(TestController.Callback callback) {
+        this.uiCallback = callback;
+    }
+
+    public boolean isRunning() {
+        return resuming
+                || (session != null && anyRunning(session))
+                || (testController != null && testController.isRunning());
+    }
+
+    /** 开始新的压测（主线程调用） */
+    public void startRun(RunConfig config) {
+        if (isRunning()) return;
+        try {
+            config.save(checkpointFile(this));
+        } catch (IOException e) {
+            runCallback.onLog(LogRecord.of(LogEvent.CHECKPOINT_FAILED, e.getMessage()));
+        }
+        launch(config, null);
+    }
+
+    /** 停止压测并删除断点（主线程调用） */
+    public void stopRun() {
+        RunConfig.clear(checkpointFile(this));
+        if (session != null) session.stop();
+        else if (testController != null) testController.stop();
+    }
+
+    /** 单设备返回控制器统计，多耳机返回汇总；尚未开始时为 null */
+    public TestStatistics getStatistics() {
+        if (session != null) return session.getAggregateStatistics();
+        return testController != null ? testController.getStatistics() : null;
+    }
+
+    /** 多耳机模式下每台设备一行，单设备时为 null */
+    public String getDeviceSummary() {
+        return session != null ? session.getDeviceSummary() : null;
+    }
+
+    /** 读断点 → 在工作线程读事件日志还原各设备状态 → 回主线程按原配置重建并继续 */
+    private void resumeFromCheckpoint() {
+        final RunConfig config = RunConfig.load(checkpointFile(this));
+        if (config == null) {
+            stopSelf();
+            return;
+        }
+        resuming = true;
+        new Thread(() -> {
+            final File dir = new File(config.journalDir);
+            int devices = config.isMulti() ? config.getAddresses().length + config.getNames().length : 1;
+            final JournalReader.RunState[] states = new JournalReader.RunState[devices];
+            boolean finished = true;
+            for (int i = 0; i < devices; i++) {
+                String name = config.isMulti() ? MultiDeviceSession.journalName(config.runName, i) : config.runName;
+                try {
+                    states[i] = JournalReader.recover(dir, name);
+                } catch (IOException e) {
+                    states[i] = new JournalReader.RunState();   // 日志不可读，该设备从头开始
+                }
+                finished &= states[i].finished;
+            }
+            final boolean done = finished;
+            mainHandler.post(() -> {
+                resuming = false;
+                if (done) {
+                    // 上次已经正常结束，只是断点没来得及删
+                    RunConfig.clear(checkpointFile(this));
+                    stopSelf();
+                } else {
+                    launch(config, states);
+                }
+            });
+        }, "BtStressResume").start();
+    }
+
+    private void launch(RunConfig config, JournalReader.RunState[] resume) {
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null) {
+            stopSelf();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        File journalDir = new File(config.journalDir);
+        HandlerScheduler scheduler = new HandlerScheduler("BtStressController");
+        BluetoothBackend backend = new AndroidBluetoothBackend(this, adapter, scheduler);
+
+        // 事件轨迹包在真实后端外面（多耳机时在 hub 之下），记录的就是广播/回调解码后的原始顺序
+        trace = null;
+        if (config.recordTrace) {
+            trace = new TraceRecorder(backend, scheduler, journalDir, config.runName, config.toText());
+            backend = trace;
+            runCallback.onLog(LogRecord.of(LogEvent.TRACE_OPEN,
+                    new File(journalDir, config.runName + ".*" + TraceRecorder.SUFFIX).getPath()));
+        }
+
+        exporter = null;
+        RunExporter.Format format = config.getExportFormat();
+        if (format != null) {
+            exporter = new RunExporter(new File(config.exportDir), config.runName, format, config.exportGzip);
+            exporter.start();
+            runCallback.onLog(LogRecord.of(LogEvent.EXPORT_OPEN, exporter.getRowsFile().getPath()));
+        }
+
+        if (config.isMulti()) {
+            testController = null;
+            session = new MultiDeviceSession(backend, scheduler, runCallback);
+            config.configure(session);
+            session.setJournal(journalDir, config.runName);
+            session.setExporter(exporter);
+            if (resume != null) {
+                for (int i = 0; i < resume.length; i++) {
+                    session.setResume(i, resume[i].completedLoops, resume[i].statistics, gap(resume[i], now));
+                }
+            }
+            session.start();
+        } else {
+            session = null;
+            testController = new TestController(backend, scheduler, runCallback);
+            config.configure(testController);
+            testController.setJournal(new EventJournal(journalDir, config.runName));
+            testController.setExporter(exporter);
+            if (resume != null) {
+                testController.setResume(resume[0].completedLoops, resume[0].statistics, gap(resume[0], now));
+            }
+            testController.start();
+        }
+    }
+
+    private static long gap(JournalReader.RunState state, long now) {
+        return state.lastWallTime > 0 ? Math.max(0, now - state.lastWallTime) : 0;
+    }
+
+    private static boolean anyRunning(MultiDeviceSession s) {
+        for (TestController c : s.getControllers()) {
+            if (c.isRunning()) return true;
+        }
+        return false;
+    }
+
+    /** 控制器回调：更新通知、续期 WakeLock，再转发给 UI（UI 不在时自行收尾） */
+    private final TestController.Callback runCallback = new TestController.Callback() {
+        @Override
+        public void onLoopStart(int loop, int total) {
+            renewWakeLock();
+            TestStatistics st = getStatistics();
+            String s = total > 0 ? "第" + loop + "/" + total + "轮" : "第" + loop + "轮";
+            if (st != null) {
+                updateNotification(s + " - 成功:" + st.getSuccessCount() + " 失败:" + st.getFailureCount());
+            }
+            TestController.Callback ui = uiCallback;
+            if (ui != null) ui.onLoopStart(loop, total);
+        }
+
+        @Override
+        public void onStateChange(String stateDesc) {
+            TestController.Callback ui = uiCallback;
+            if (ui != null) ui.onStateChange(stateDesc);
+        }
+
+        @Override
+        public void onLoopSuccess(int loop, long costMs) {
+            TestController.Callback ui = uiCallback;
+            if (ui != null) ui.onLoopSuccess(loop, costMs);
+        }
+
+        @Override
+        public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {
+            TestController.Callback ui = uiCallback;
+            if (ui != null) ui.onLoopFailure(loop, reason, detail);
+        }
+
+        @Override
+        public void onAllDone(TestStatistics stats) {
+            RunConfig.clear(checkpointFile(BluetoothTestService.this));
+            if (exporter != null) exporter.finish(stats);   // 写汇总在导出线程上完成
+            TraceRecorder t = trace;
+            if (t != null && t.getError() != null) onLog(LogRecord.of(LogEvent.TRACE_STOPPED, t.getError()));
+            TestController.Callback ui = uiCallback;
+            if (ui != null) ui.onAllDone(stats);
+            else stopSelf();
+        }
+
+        @Override
+        public void onLog(LogRecord record) {
+            TestController.Callback ui = uiCallback;
+            if (ui != null) ui.onLog(record);
+        }
+    };
+
     /** 更新通知栏显示 */
     public void updateNotification(String status) {
         NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         if (nm != null) nm.notify(NOTIF_ID, buildNotification(status));
     }
 
-    /** 设置TestController（由MainActivity绑定后调用） */
-    public void setController(TestController controller) {
-        this.testController = controller;
-    }
-
     /*──────────────────────────────
      *  内部工具
      *──────────────────────────────*/
@@ -109,10 +328,15 @@ public class BluetoothTestService extends Service {
         PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
         if (pm != null) {
             wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "BtStressTest:WakeLock");
-            wakeLock.acquire(2 * 60 * 60 * 1000L); // 最长持锁2小时
+            wakeLock.setReferenceCounted(false);
+            wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS); // 最长持锁2小时，每轮开始时续期
         }
     }
 
+    private void renewWakeLock() {
+        if (wakeLock != null) wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+    }
+
     private void releaseWakeLock() {
         if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
     }
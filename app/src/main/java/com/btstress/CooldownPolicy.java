@@ -0,0 +1,100 @@
+package com.btstress;
+
+/**
+ * 轮间冷却策略
+ *
+ * 决定一轮结束后隔多久开始下一轮。固定间隔（原 1500/2000ms）在耳机恢复快时白白浪费时间，
+ * 在耳机还没重新进入可发现/可寻呼状态时又太短，导致下一轮 Page Timeout / 扫描超时。
+ *
+ * 自适应模式：连续成功时逐步缩短间隔（每轮 ×shrink，不低于 min）；
+ * Page Timeout / 扫描超时，以及直连寻呼失败后靠回退扫描才成功的轮，都视为"耳机还没准备好"，
+ * 间隔指数退避（×2，不超过 max）；
+ * 其他失败至少等 failBase。
+ *
+ * 可叠加节拍模式：给定目标 轮数/小时，间隔补齐到 (3600s / 目标) - 本轮耗时，
+ * 用于按固定频率长时间老化。
+ *
+ * 只在调度线程上调用，无需加锁。
+ */
+public class CooldownPolicy {
+
+    /** 间隔模式 */
+    public enum Mode {
+        FIXED("固定"),
+        ADAPTIVE("自适应");
+
+        public final String desc;
+        Mode(String desc) { this.desc = desc; }
+    }
+
+    public static final long FIXED_SUCCESS_MS = 1500;
+    public static final long FIXED_FAILURE_MS = 2000;
+
+    private final Mode mode;
+    private long   minMs        = 300;
+    private long   maxMs        = 30_000;
+    private long   failBaseMs   = FIXED_FAILURE_MS;
+    private double shrink       = 0.75;
+    private int    loopsPerHour = 0;   // 0=不限节拍
+
+    private long currentMs = FIXED_SUCCESS_MS;
+
+    public CooldownPolicy(Mode mode) {
+        this.mode = mode;
+    }
+
+    /** 原行为：成功后 1500ms，失败后 2000ms */
+    public static CooldownPolicy fixed() {
+        return new CooldownPolicy(Mode.FIXED);
+    }
+
+    public static CooldownPolicy adaptive() {
+        return new CooldownPolicy(Mode.ADAPTIVE);
+    }
+
+    /** 目标 轮数/小时，0=关闭节拍模式 */
+    public void setLoopsPerHour(int loopsPerHour) {
+        this.loopsPerHour = Math.max(0, loopsPerHour);
+    }
+
+    public Mode getMode()         { return mode; }
+    public int  getLoopsPerHour() { return loopsPerHour; }
+
+    /** 新一次压测开始时调用 */
+    public void reset() {
+        currentMs = FIXED_SUCCESS_MS;
+    }
+
+    /**
+     * 根据本轮结果计算到下一轮的间隔
+     * @param reason     失败原因，成功时为 null
+     * @param notReady   本轮虽成功，但途中遇到过寻呼失败（耳机尚未恢复）
+     * @param loopCostMs 本轮耗时（节拍模式用来补齐周期）
+     */
+    public long nextDelay(TestStatistics.FailReason reason, boolean notReady, long loopCostMs) {
+        long delay;
+        if (mode == Mode.FIXED) {
+            delay = reason == null ? FIXED_SUCCESS_MS : FIXED_FAILURE_MS;
+        } else {
+            if (reason == null && !notReady) {
+                currentMs = Math.max(minMs, (long) (currentMs * shrink));
+            } else if (notReady
+                    || reason == TestStatistics.FailReason.PAGE_TIMEOUT
+                    || reason == TestStatistics.FailReason.SCAN_TIMEOUT) {
+                currentMs = Math.min(maxMs, Math.max(failBaseMs, currentMs * 2));
+            } else {
+                currentMs = Math.min(maxMs, Math.max(failBaseMs, currentMs));
+            }
+            delay = currentMs;
+        }
+        if (loopsPerHour > 0) {
+            long period = 3_600_000L / loopsPerHour;
+            delay = Math.max(delay, period - loopCostMs);
+        }
+        return delay;
+    }
+
+    public String describe() {
+        return loopsPerHour > 0 ? mode.desc + " + 节拍" + loopsPerHour + "轮/小时" : mode.desc;
+    }
+}
@@ -0,0 +1,29 @@
+package com.btstress;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+
+/**
+ * 带分发延迟统计的 Handler
+ *
+ * 广播（registerReceiver 指定 scheduler）、超时任务和 post 的 Runnable 都以
+ * Message 形式进入同一个消息队列。Message.getWhen() 是入队时指定的执行时刻，
+ * 与实际开始分发时刻之差即为排队延迟，用来证明控制器线程没有被 UI 等工作拖慢。
+ */
+public class DispatchTimingHandler extends Handler {
+
+    private final LatencyHistogram lagHistogram;
+
+    public DispatchTimingHandler(Looper looper, LatencyHistogram lagHistogram) {
+        super(looper);
+        this.lagHistogram = lagHistogram;
+    }
+
+    @Override
+    public void dispatchMessage(Message msg) {
+        lagHistogram.record(SystemClock.uptimeMillis() - msg.getWhen());
+        super.dispatchMessage(msg);
+    }
+}
@@ -0,0 +1,262 @@
+package com.btstress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * 压测事件日志（内存映射、只追加的二进制文件）
+ *
+ * 控制器线程上的每个事件（状态切换、发现设备、配对/A2DP状态与原因码、超时、阶段耗时、
+ * 每轮结果、冷却间隔）写入一个 mmap 的段文件，写入只是内存拷贝，不阻塞在 I/O 上；
+ * 进程被杀时已写入的页仍由内核落盘，多天老化中途崩溃也能用 {@link JournalReader} 还原统计。
+ *
+ * 段文件格式（小端）：
+ *   头部 32 字节：magic "BTJ1" | 版本(2) | 保留(2) | 段序号(4) | 段起点墙钟ms(8) | 段起点单调时钟ms(8) | 保留(4)
+ *   记录：类型(1) | 距上一条的单调时钟增量ms(varint) | 按类型定义的字段
+ *        字段：地址(6字节) / 整数a、b(zigzag varint) / 字符串(varint长度 + UTF-8)
+ * 记录先写正文，最后写类型字节提交；文件预扩展时全为0，读到类型0即为末尾，
+ * 因此崩溃时最多丢失正在写的那一条，不会读出半条记录。
+ *
+ * 段写满（剩余不足一条最大记录）后切换到下一个段文件：{@code <runName>.<序号>.btj}。
+ * 只在控制器线程上调用，无需加锁。
+ */
+public class EventJournal {
+
+    /*──── 事件类型 ────*/
+    public static final int EV_RUN_START     = 1;   // a=目标轮数，str=过滤条件
+    public static final int EV_LOOP_START    = 2;   // a=轮次
+    public static final int EV_DEVICE_FOUND  = 4;   // addr
+    public static final int EV_BOND_STATE    = 5;   // addr, a=bond状态, b=reason
+    public static final int EV_A2DP_STATE    = 6;   // addr, a=A2DP状态
+    public static final int EV_TIMEOUT       = 8;   // a=Phase.ordinal
+    public static final int EV_PHASE_END     = 9;   // a=Phase.ordinal, b=耗时ms
+    public static final int EV_LOOP_SUCCESS  = 10;  // a=LoopPath.ordinal, b=耗时ms
+    public static final int EV_LOOP_FAILURE  = 11;  // a=FailReason.ordinal, b=LoopPath.ordinal
+    public static final int EV_COOLDOWN      = 12;  // a=间隔ms
+    public static final int EV_RESOURCE_WAIT = 13;  // a=排队ms
+    public static final int EV_RUN_STOP      = 14;
+    public static final int EV_RUN_RESUME    = 15;  // a=已完成轮数，b=中断时长s（进程被杀后恢复）
+    public static final int EV_ACL_REASON    = 16;  // addr, a=HCI断开原因（-1=ROM未提供）
+    public static final int EV_DEVICE_SIGNAL = 17;  // addr, a=RSSI dBm, b=BluetoothClass（扫描匹配到目标时）
+    public static final int EV_STALE         = 18;  // a=StaleKind.ordinal, b=当时的状态机状态（被忽略的过期事件/任务）
+    public static final int EV_UNEXPECTED    = 19;  // a=StateMachine.State.ordinal, b=Event.ordinal（表里没有匹配规则的事件）
+    public static final int EV_TRANSITION    = 20;  // a=新状态 State.ordinal, b=触发事件 Event.ordinal+1（0=非事件触发）
+    public static final int EV_LOOP_SHAPE    = 21;  // a=LoopShape.ordinal（紧跟 EV_RUN_START/EV_RUN_RESUME）
+    public static final int EV_GATT_STATE    = 22;  // addr, a=GATT连接状态, b=status
+    public static final int EV_GATT_MTU      = 23;  // addr, a=MTU, b=status
+    public static final int EV_GATT_SERVICES = 24;  // addr, a=status, b=服务数
+    public static final int EV_GATT_WRITE    = 25;  // addr, a=status（只记录失败的写操作）
+    public static final int EV_GATT_BURST    = 26;  // a=写入字节/秒, b=通知字节/秒（-1=未开启通知）
+    public static final int EV_STREAM_HOLD   = 27;  // a=欠载次数（-1=无法统计）, b=播放中断次数
+    public static final int EV_SPP_BURST     = 28;  // a=发送字节/秒, b=回显帧数（0=对端不回显）
+    public static final int EV_SPP_RTT       = 29;  // a=本轮往返时延p50(ms), b=p99（只在有回显时记录）
+    static final int EV_MAX = 29;
+
+    /*──── 各类型携带的字段 ────*/
+    static final int F_ADDR = 1;
+    static final int F_A    = 2;
+    static final int F_B    = 4;
+    static final int F_STR  = 8;
+    static final int[] FIELDS = new int[EV_MAX + 1];
+    static {
+        FIELDS[EV_RUN_START]     = F_A | F_STR;
+        FIELDS[EV_LOOP_START]    = F_A;
+        FIELDS[EV_DEVICE_FOUND]  = F_ADDR;
+        FIELDS[EV_BOND_STATE]    = F_ADDR | F_A | F_B;
+        FIELDS[EV_A2DP_STATE]    = F_ADDR | F_A;
+        FIELDS[EV_TIMEOUT]       = F_A;
+        FIELDS[EV_PHASE_END]     = F_A | F_B;
+        FIELDS[EV_LOOP_SUCCESS]  = F_A | F_B;
+        FIELDS[EV_LOOP_FAILURE]  = F_A | F_B;
+        FIELDS[EV_COOLDOWN]      = F_A;
+        FIELDS[EV_RESOURCE_WAIT] = F_A;
+        FIELDS[EV_RUN_STOP]      = 0;
+        FIELDS[EV_RUN_RESUME]    = F_A | F_B;
+        FIELDS[EV_ACL_REASON]    = F_ADDR | F_A;
+        FIELDS[EV_DEVICE_SIGNAL] = F_ADDR | F_A | F_B;
+        FIELDS[EV_STALE]         = F_A | F_B;
+        FIELDS[EV_UNEXPECTED]    = F_A | F_B;
+        FIELDS[EV_TRANSITION]    = F_A | F_B;
+        FIELDS[EV_LOOP_SHAPE]    = F_A;
+        FIELDS[EV_GATT_STATE]    = F_ADDR | F_A | F_B;
+        FIELDS[EV_GATT_MTU]      = F_ADDR | F_A | F_B;
+        FIELDS[EV_GATT_SERVICES] = F_ADDR | F_A | F_B;
+        FIELDS[EV_GATT_WRITE]    = F_ADDR | F_A;
+        FIELDS[EV_GATT_BURST]    = F_A | F_B;
+        FIELDS[EV_STREAM_HOLD]   = F_A | F_B;
+        FIELDS[EV_SPP_BURST]     = F_A | F_B;
+        FIELDS[EV_SPP_RTT]       = F_A | F_B;
+    }
+
+    static final int    MAGIC       = 0x314A5442;  // "BTJ1"
+    static final int    VERSION     = 1;
+    static final int    HEADER_SIZE = 32;
+    static final String SUFFIX      = ".btj";
+    static final Charset UTF8       = Charset.forName("UTF-8");
+
+    private static final int  MAX_STR_BYTES   = 96;
+    private static final int  MAX_RECORD_SIZE = 1 + 10 + 6 + 5 + 5 + 2 + MAX_STR_BYTES;
+    public  static final long DEFAULT_SEGMENT_BYTES = 8L << 20;   // 8MB ≈ 5万轮（约150字节/轮）
+
+    private final File   dir;
+    private final String runName;
+    private final long   segmentBytes;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer buf;
+    private int     segment  = -1;
+    private long    wallBase;        // open() 时的墙钟/单调时钟，用于换算段起点的墙钟
+    private long    monoBase;
+    private long    lastTime;        // 上一条记录的单调时钟
+    private boolean failed;
+    private String  error;
+
+    public EventJournal(File dir, String runName) {
+        this(dir, runName, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public EventJournal(File dir, String runName, long segmentBytes) {
+        this.dir          = dir;
+        this.runName      = runName;
+        this.segmentBytes = Math.max(HEADER_SIZE + MAX_RECORD_SIZE * 4, segmentBytes);
+    }
+
+    public File   getDir()     { return dir; }
+    public String getRunName() { return runName; }
+
+    /**
+     * 创建第一个段文件（控制器线程上调用）；已有同名段时接在最后一段之后继续写
+     * @param monoNow 当前单调时钟（Scheduler.now）
+     * @param wallNow 当前墙钟
+     */
+    public void open(long monoNow, long wallNow) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("无法创建目录 " + dir);
+        wallBase = wallNow;
+        monoBase = monoNow;
+        lastTime = monoNow;
+        File[] existing = JournalReader.listSegments(dir, runName);
+        segment = existing.length == 0 ? -1 : JournalReader.segmentIndex(existing[existing.length - 1]);
+        nextSegment();
+    }
+
+    /** 写入一条事件；写失败后停用，不向调用方抛异常（不影响压测本身） */
+    public void record(int type, long now, String address, int a, int b) {
+        append(type, now, address, a, b, null);
+    }
+
+    public void recordRunStart(long now, int targetLoops, String filter) {
+        append(EV_RUN_START, now, null, targetLoops, 0, filter);
+    }
+
+    /** 写入失败时的错误信息，正常为 null */
+    public String getError() { return error; }
+
+    public boolean isFailed() { return failed; }
+
+    /** 关闭：把脏页刷到存储（阻塞，只在压测结束时调用） */
+    public void close() {
+        if (buf != null) {
+            try { buf.force(); } catch (RuntimeException ignored) {}
+        }
+        closeFile();
+        buf = null;
+    }
+
+    private void append(int type, long now, String address, int a, int b, String str) {
+        if (failed || buf == null) return;
+        if (buf.remaining() < MAX_RECORD_SIZE) {
+            try {
+                nextSegment();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+        }
+        int start = buf.position();
+        buf.position(start + 1);
+        long dt = Math.max(0, now - lastTime);
+        lastTime = Math.max(lastTime, now);
+        putVarLong(buf, dt);
+        int f = FIELDS[type];
+        if ((f & F_ADDR) != 0) putAddress(buf, address);
+        if ((f & F_A) != 0) putVarLong(buf, zigzag(a));
+        if ((f & F_B) != 0) putVarLong(buf, zigzag(b));
+        if ((f & F_STR) != 0) putString(buf, str, MAX_STR_BYTES);
+        // 正文写完再写类型字节：读端以类型0判断末尾
+        buf.put(start, (byte) type);
+    }
+
+    private void nextSegment() throws IOException {
+        // 不在这里 force()：旧段的脏页已在页缓存中，进程退出也会落盘，换段不阻塞控制器线程
+        closeFile();
+        segment++;
+        File f = new File(dir, String.format(Locale.ROOT, "%s.%03d%s", runName, segment, SUFFIX));
+        file = new RandomAccessFile(f, "rw");
+        file.setLength(segmentBytes);
+        buf = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC);
+        buf.putShort((short) VERSION);
+        buf.putShort((short) 0);
+        buf.putInt(segment);
+        // 段起点取上一条记录的时刻，增量从这里接续，任意一段都能独立解码
+        buf.putLong(wallBase + (lastTime - monoBase));
+        buf.putLong(lastTime);
+        buf.putInt(0);
+    }
+
+    private void closeFile() {
+        if (file == null) return;
+        try { file.close(); } catch (IOException ignored) {}
+        file = null;
+    }
+
+    private void fail(IOException e) {
+        failed = true;
+        error  = e.getMessage();
+        closeFile();
+        buf = null;
+    }
+
+    static void putVarLong(ByteBuffer buf, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    static void putAddress(ByteBuffer buf, String address) {
+        // "AA:BB:CC:DD:EE:FF" → 6 字节；格式不对时写全0
+        for (int i = 0; i < 6; i++) {
+            int v = 0;
+            if (address != null && address.length() >= i * 3 + 2) {
+                int hi = Character.digit(address.charAt(i * 3), 16);
+                int lo = Character.digit(address.charAt(i * 3 + 1), 16);
+                if (hi >= 0 && lo >= 0) v = (hi << 4) | lo;
+            }
+            buf.put((byte) v);
+        }
+    }
+
+    /** varint长度 + UTF-8，超过 maxBytes 时截断 */
+    static void putString(ByteBuffer buf, String s, int maxBytes) {
+        byte[] bytes = s == null ? new byte[0] : s.getBytes(UTF8);
+        int len = Math.min(bytes.length, maxBytes);
+        // 截断点落在多字节字符中间时退到字符边界，避免读出半个汉字（U+FFFD）
+        while (len < bytes.length && (bytes[len] & 0xC0) == 0x80) len--;
+        putVarLong(buf, len);
+        buf.put(bytes, 0, len);
+    }
+
+    private static long zigzag(int v) {
+        return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+    }
+}
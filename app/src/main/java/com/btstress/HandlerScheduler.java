@@ -0,0 +1,78 @@
+package com.btstress;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * 基于 HandlerThread 的调度器（真机运行）
+ *
+ * 控制器状态机、超时任务以及蓝牙广播（见 AndroidBluetoothBackend）
+ * 都在这个线程上执行，与UI线程隔离。
+ */
+public class HandlerScheduler implements Scheduler {
+
+    private final String threadName;
+
+    private          HandlerThread thread;
+    private volatile Handler       handler;
+
+    public HandlerScheduler(String threadName) {
+        this.threadName = threadName;
+    }
+
+    @Override
+    public void start(LatencyHistogram dispatchLag) {
+        thread = new HandlerThread(threadName, Process.THREAD_PRIORITY_FOREGROUND);
+        thread.start();
+        handler = new DispatchTimingHandler(thread.getLooper(), dispatchLag);
+    }
+
+    @Override
+    public void quit() {
+        Handler h = handler;
+        if (h != null) h.removeCallbacksAndMessages(null);
+        handler = null;
+        if (thread != null) {
+            thread.quitSafely();
+            thread = null;
+        }
+    }
+
+    /** 广播接收器注册时使用的 Handler，未启动时为 null */
+    public Handler getHandler() { return handler; }
+
+    @Override
+    public long now() { return SystemClock.elapsedRealtime(); }
+
+    @Override
+    public void post(Runnable task) {
+        Handler h = handler;
+        if (h != null) h.post(task);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        Handler h = handler;
+        if (h != null) h.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        Handler h = handler;
+        if (h != null) h.removeCallbacks(task);
+    }
+
+    @Override
+    public void cancelAll() {
+        Handler h = handler;
+        if (h != null) h.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    public boolean isCurrentThread() {
+        Handler h = handler;
+        return h != null && h.getLooper().isCurrentThread();
+    }
+}
@@ -0,0 +1,359 @@
+package com.btstress;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * {@link EventJournal} 的读取端
+ *
+ * 按段序号依次解码事件并回调 {@link Visitor}；{@link #rebuildStatistics} 据此重放出
+ * 与运行时相同的 TestStatistics（计数、各阶段/整轮/路径耗时、冷却、资源排队），
+ * 用于崩溃后的事后分析。事件分发延迟不写入日志，因此不会还原。
+ */
+public final class JournalReader {
+
+    /** 事件回调 */
+    public interface Visitor {
+        /**
+         * @param time     单调时钟 ms（与写入时的 Scheduler.now 同一基准）
+         * @param wallTime 换算出的墙钟 ms
+         * @param address  无地址字段时为 null
+         * @param str      无字符串字段时为 null
+         */
+        void onEvent(int type, long time, long wallTime, String address, int a, int b, String str);
+    }
+
+    /** 读取结果 */
+    public static final class Summary {
+        public int     segments;
+        public long    events;
+        public long    bytes;
+        public boolean corrupt;     // 遇到无法识别的记录（该段其后的内容被忽略）
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "segments=%d events=%d bytes=%d%s",
+                    segments, events, bytes, corrupt ? " (corrupt tail)" : "");
+        }
+    }
+
+    private JournalReader() {}
+
+    /** 目录下所有运行名（去掉段序号和后缀），按名称排序 */
+    public static String[] listRuns(File dir) {
+        return listRuns(dir, EventJournal.SUFFIX);
+    }
+
+    /** 同上，按后缀区分事件日志（.btj）和蓝牙事件轨迹（.btt） */
+    static String[] listRuns(File dir, String suffix) {
+        TreeSet<String> runs = new TreeSet<>();
+        File[] files = dir.listFiles();
+        if (files == null) return new String[0];
+        for (File f : files) {
+            String n = f.getName();
+            if (!n.endsWith(suffix)) continue;
+            int dot = n.lastIndexOf('.', n.length() - suffix.length() - 1);
+            if (dot > 0) runs.add(n.substring(0, dot));
+        }
+        return runs.toArray(new String[0]);
+    }
+
+    /** 某次运行的全部段文件，按段序号排序 */
+    public static File[] listSegments(File dir, String runName) {
+        return listSegments(dir, runName, EventJournal.SUFFIX);
+    }
+
+    static File[] listSegments(File dir, final String runName, final String suffix) {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                String n = f.getName();
+                return n.startsWith(runName + ".") && n.endsWith(suffix) && segmentIndex(f) >= 0;
+            }
+        });
+        if (files == null) return new File[0];
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return segmentIndex(a) - segmentIndex(b);
+            }
+        });
+        return files;
+    }
+
+    /** 从文件名 {@code <runName>.<序号>.btj}（或 .btt）解析段序号，格式不符返回 -1 */
+    static int segmentIndex(File f) {
+        String n = f.getName();
+        int end = n.lastIndexOf('.');
+        int dot = n.lastIndexOf('.', end - 1);
+        if (dot < 0 || end <= dot + 1) return -1;
+        try {
+            return Integer.parseInt(n.substring(dot + 1, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** 依次解码各段 */
+    public static Summary read(File[] segments, Visitor visitor) throws IOException {
+        Summary summary = new Summary();
+        for (File f : segments) {
+            readSegment(f, visitor, summary);
+            summary.segments++;
+        }
+        return summary;
+    }
+
+    private static void readSegment(File f, Visitor visitor, Summary summary) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            long len = raf.length();
+            if (len < EventJournal.HEADER_SIZE) return;
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, len);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt() != EventJournal.MAGIC) throw new IOException("不是事件日志文件: " + f.getName());
+            int version = buf.getShort();
+            if (version != EventJournal.VERSION) throw new IOException("不支持的日志版本 " + version);
+            buf.getShort();
+            buf.getInt();                       // 段序号
+            long wall = buf.getLong();
+            long mono = buf.getLong();
+            buf.getInt();
+            long wallOffset = wall - mono;
+
+            long time = mono;
+            while (buf.hasRemaining()) {
+                int start = buf.position();
+                int type  = buf.get() & 0xFF;
+                if (type == 0) break;           // 末尾（或崩溃时未提交的记录）
+                if (type > EventJournal.EV_MAX) {
+                    summary.corrupt = true;
+                    break;
+                }
+                try {
+                    time += getVarLong(buf);
+                    int f2 = EventJournal.FIELDS[type];
+                    String addr = (f2 & EventJournal.F_ADDR) != 0 ? getAddress(buf) : null;
+                    int a = (f2 & EventJournal.F_A) != 0 ? unzigzag(getVarLong(buf)) : 0;
+                    int b = (f2 & EventJournal.F_B) != 0 ? unzigzag(getVarLong(buf)) : 0;
+                    String str = (f2 & EventJournal.F_STR) != 0 ? getString(buf) : null;
+                    visitor.onEvent(type, time, time + wallOffset, addr, a, b, str);
+                } catch (RuntimeException e) {
+                    summary.corrupt = true;
+                    break;
+                }
+                summary.events++;
+                summary.bytes += buf.position() - start;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** 一次运行的恢复点：统计、已完成轮数、最后一条事件的墙钟，以及是否已正常结束 */
+    public static final class RunState {
+        public final TestStatistics statistics = new TestStatistics();
+        public int     completedLoops;
+        public long    lastWallTime;
+        public boolean finished;        // 最后一条是 RUN_STOP：正常结束，无需恢复
+    }
+
+    /**
+     * 从某次运行的日志还原统计
+     * 冷却后成功率按"上一条冷却记录"分档，与运行时一致。
+     */
+    public static TestStatistics rebuildStatistics(File dir, String runName) throws IOException {
+        return recover(dir, runName).statistics;
+    }
+
+    /** 读取整次运行的日志，得到断点恢复所需的状态（每轮结束的事件即是该轮的检查点） */
+    public static RunState recover(File dir, String runName) throws IOException {
+        final RunState state = new RunState();
+        final TestStatistics stats = state.statistics;
+        final TestStatistics.Phase[]      phases  = TestStatistics.Phase.values();
+        final TestStatistics.LoopPath[]   paths   = TestStatistics.LoopPath.values();
+        final TestStatistics.FailReason[] reasons = TestStatistics.FailReason.values();
+        final TestStatistics.StaleKind[]  staleKinds = TestStatistics.StaleKind.values();
+        final TestStatistics.LoopShape[]  shapes  = TestStatistics.LoopShape.values();
+        final long[] lastCooldown = {-1};
+        final long[] loopStart    = {0};     // 本轮开始的墙钟，失败轮按它算耗时
+        final int[]  row          = {ReasonCodeMatrix.OUTSIDE};   // 当前状态所属阶段
+        final int[]  loopRssi     = {BluetoothBackend.RSSI_UNKNOWN};
+        final StateMachine.State[] prevState = {StateMachine.State.IDLE};   // 状态切换耗时按上一次切换算
+        final long[] prevTime     = {0};
+        final ReasonCodeMatrix codes = stats.getReasonCodes();
+        final TransitionStats  transitions = stats.getTransitions();
+
+        read(listSegments(dir, runName), new Visitor() {
+            @Override
+            public void onEvent(int type, long time, long wallTime, String address, int a, int b, String str) {
+                state.lastWallTime = wallTime;
+                state.finished     = type == EventJournal.EV_RUN_STOP;
+                switch (type) {
+                    case EventJournal.EV_RUN_START:
+                        if (stats.getStartTimeMs() == 0) stats.setStartTimeMs(wallTime);
+                        lastCooldown[0] = -1;
+                        row[0] = ReasonCodeMatrix.OUTSIDE;
+                        codes.endA2dpSequence(row[0]);
+                        prevState[0] = StateMachine.State.IDLE;
+                        prevTime[0]  = time;
+                        break;
+                    case EventJournal.EV_RUN_RESUME:
+                        stats.recordGap(b * 1000L);
+                        lastCooldown[0] = -1;
+                        row[0] = ReasonCodeMatrix.OUTSIDE;
+                        codes.endA2dpSequence(row[0]);
+                        prevState[0] = StateMachine.State.IDLE;
+                        prevTime[0]  = time;
+                        break;
+                    case EventJournal.EV_LOOP_SHAPE:
+                        stats.setLoopShape(shapes[clamp(a, shapes.length, 0)]);
+                        break;
+                    case EventJournal.EV_LOOP_START:
+                        loopStart[0] = wallTime;
+                        loopRssi[0]  = BluetoothBackend.RSSI_UNKNOWN;
+                        break;
+                    case EventJournal.EV_DEVICE_SIGNAL:
+                        loopRssi[0] = a;
+                        stats.recordSignal(a);
+                        break;
+                    case EventJournal.EV_TRANSITION: {
+                        row[0] = TestController.phaseRow(a);
+                        codes.endA2dpSequence(row[0]);
+                        StateMachine.State to = StateMachine.stateOf(a);
+                        if (to != null && to != prevState[0]) {
+                            transitions.recordTransition(prevState[0], to, time - prevTime[0]);
+                            prevState[0] = to;
+                            prevTime[0]  = time;
+                        }
+                        break;
+                    }
+                    case EventJournal.EV_UNEXPECTED: {
+                        StateMachine.State s = StateMachine.stateOf(a);
+                        StateMachine.Event e = StateMachine.eventOf(b);
+                        if (s != null && e != null) {
+                            transitions.recordUnexpected(s, e);
+                            stats.recordStale(e.stale);
+                        }
+                        break;
+                    }
+                    case EventJournal.EV_BOND_STATE:
+                        if (a == BluetoothBackend.BOND_NONE) codes.record(ReasonCodeMatrix.Kind.BOND_REASON, row[0], b);
+                        break;
+                    case EventJournal.EV_A2DP_STATE:
+                        codes.recordA2dpState(row[0], a);
+                        break;
+                    case EventJournal.EV_ACL_REASON:
+                        codes.record(ReasonCodeMatrix.Kind.ACL_REASON, row[0], a);
+                        break;
+                    case EventJournal.EV_GATT_STATE:
+                        if (a == BluetoothBackend.STATE_DISCONNECTED) codes.record(ReasonCodeMatrix.Kind.GATT_STATUS, row[0], b);
+                        break;
+                    case EventJournal.EV_GATT_MTU:
+                        if (b != BluetoothBackend.GATT_SUCCESS) codes.record(ReasonCodeMatrix.Kind.GATT_STATUS, row[0], b);
+                        else codes.record(ReasonCodeMatrix.Kind.GATT_MTU, row[0], a);
+                        break;
+                    case EventJournal.EV_GATT_SERVICES:
+                    case EventJournal.EV_GATT_WRITE:
+                        if (a != BluetoothBackend.GATT_SUCCESS) codes.record(ReasonCodeMatrix.Kind.GATT_STATUS, row[0], a);
+                        break;
+                    case EventJournal.EV_GATT_BURST:
+                        stats.recordGattBurst(a, b);
+                        break;
+                    case EventJournal.EV_STREAM_HOLD:
+                        stats.recordStreamHold(a, b);
+                        break;
+                    case EventJournal.EV_SPP_BURST:
+                        stats.recordSppBurst(a);
+                        break;
+                    case EventJournal.EV_SPP_RTT:
+                        stats.recordSppRtt(a, b);
+                        break;
+                    case EventJournal.EV_PHASE_END:
+                        if (a >= 0 && a < phases.length) stats.recordPhase(phases[a], b);
+                        break;
+                    case EventJournal.EV_LOOP_SUCCESS: {
+                        TestStatistics.LoopPath path = paths[clamp(a, paths.length, 0)];
+                        stats.recordSuccess();
+                        stats.recordLoop(path, b);
+                        stats.recordPath(path);
+                        stats.recordRecent(true, b, wallTime);
+                        stats.recordRssiOutcome(loopRssi[0], null);
+                        if (lastCooldown[0] >= 0) stats.recordCooldownOutcome(lastCooldown[0], true);
+                        state.completedLoops++;
+                        break;
+                    }
+                    case EventJournal.EV_LOOP_FAILURE: {
+                        TestStatistics.FailReason reason = reasons[clamp(a, reasons.length, TestStatistics.FailReason.OTHER.ordinal())];
+                        stats.recordFailure(reason);
+                        stats.recordRssiOutcome(loopRssi[0], reason);
+                        stats.recordPath(paths[clamp(b, paths.length, 0)]);
+                        stats.recordRecent(false, loopStart[0] > 0 ? wallTime - loopStart[0] : 0, wallTime);
+                        if (lastCooldown[0] >= 0) stats.recordCooldownOutcome(lastCooldown[0], false);
+                        state.completedLoops++;
+                        break;
+                    }
+                    case EventJournal.EV_COOLDOWN:
+                        stats.recordCooldown(a);
+                        lastCooldown[0] = a;
+                        break;
+                    case EventJournal.EV_RESOURCE_WAIT:
+                        stats.recordResourceWait(a);
+                        break;
+                    case EventJournal.EV_STALE:
+                        if (a >= 0 && a < staleKinds.length) stats.recordStale(staleKinds[a]);
+                        break;
+                }
+            }
+        });
+        return state;
+    }
+
+    /** 越界（新版本写入的未知枚举值）时取默认值 */
+    private static int clamp(int i, int n, int dflt) {
+        return i < 0 || i >= n ? dflt : i;
+    }
+
+    static long getVarLong(ByteBuffer buf) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalStateException("varint too long");
+    }
+
+    private static int unzigzag(long v) {
+        int u = (int) v;
+        return (u >>> 1) ^ -(u & 1);
+    }
+
+    static String getAddress(ByteBuffer buf) {
+        StringBuilder sb = new StringBuilder(17);
+        for (int i = 0; i < 6; i++) {
+            if (i > 0) sb.append(':');
+            int v = buf.get() & 0xFF;
+            sb.append(Character.toUpperCase(Character.forDigit(v >> 4, 16)));
+            sb.append(Character.toUpperCase(Character.forDigit(v & 0xF, 16)));
+        }
+        return sb.toString();
+    }
+
+    static String getString(ByteBuffer buf) {
+        int len = (int) getVarLong(buf);
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, EventJournal.UTF8);
+    }
+}
@@ -0,0 +1,134 @@
+package com.btstress;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定桶直方图，默认用于延迟（单位 ms）
+ *
+ * 桶划分为对数-线性：0~15 每 1 一个桶，之后每个 2 的幂区间再均分 16 个子桶，
+ * 相对误差约 6%。上限由 maxShift 决定，为 2^(maxShift+5)-1，超出部分计入最后一个桶：
+ * 默认 15，按 ms 计覆盖到约 17 分钟；吞吐量（B/s）等取值更大的量要用更大的 maxShift 构造。
+ * 记录路径只做数组下标计算和原子自增，不分配对象，可在控制器线程热路径上调用，
+ * UI 线程可同时读取分位数。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS  = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;   // 16
+    private static final int MAX_SHIFT        = 15;                      // 默认上限 ≈ 2^20 ms
+
+    private final int             maxShift;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum   = new AtomicLong(0);
+    private final AtomicLong max   = new AtomicLong(0);
+
+    public LatencyHistogram() {
+        this(MAX_SHIFT);
+    }
+
+    /** @param maxShift 上限为 2^(maxShift+5)-1，取值 0~58 */
+    public LatencyHistogram(int maxShift) {
+        if (maxShift < 0 || maxShift > 58) throw new IllegalArgumentException("maxShift: " + maxShift);
+        this.maxShift = maxShift;
+        this.buckets  = new AtomicLongArray(bucketCount(maxShift));
+    }
+
+    /** 记录一次耗时（负值按0处理） */
+    public void record(long valueMs) {
+        if (valueMs < 0) valueMs = 0;
+        buckets.incrementAndGet(bucketIndex(valueMs, maxShift));
+        count.incrementAndGet();
+        sum.addAndGet(valueMs);
+        long cur;
+        while (valueMs > (cur = max.get())) {
+            if (max.compareAndSet(cur, valueMs)) break;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /** 累加另一个直方图的数据（用于多设备汇总），两者的 maxShift 必须相同 */
+    public void addFrom(LatencyHistogram other) {
+        if (other.maxShift != maxShift) {
+            throw new IllegalArgumentException("maxShift " + other.maxShift + " != " + maxShift);
+        }
+        for (int i = 0; i < buckets.length(); i++) {
+            long c = other.buckets.get(i);
+            if (c != 0) buckets.addAndGet(i, c);
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long cur;
+        while (otherMax > (cur = max.get())) {
+            if (max.compareAndSet(cur, otherMax)) break;
+        }
+    }
+
+    public long getCount() { return count.get(); }
+    public long getMax()   { return max.get(); }
+
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * 取分位数（0~100），返回所在桶的上界，且不超过已记录的最大值
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * n);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(bucketUpperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** 格式化为 "p50/p95/p99/max" 摘要 */
+    public String toSummary() {
+        if (count.get() == 0) return "-";
+        return String.format(Locale.getDefault(), "p50=%d p95=%d p99=%d max=%dms (n=%d)",
+                getPercentile(50), getPercentile(95), getPercentile(99), getMax(), getCount());
+    }
+
+    /*──────────────────────────────
+     *  桶计算
+     *──────────────────────────────*/
+
+    static int bucketCount(int maxShift) {
+        return (maxShift + 2) * SUB_BUCKET_COUNT;
+    }
+
+    static int bucketIndex(long v) {
+        return bucketIndex(v, MAX_SHIFT);
+    }
+
+    static int bucketIndex(long v, int maxShift) {
+        if (v < SUB_BUCKET_COUNT) return (int) v;
+        int msb   = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - SUB_BUCKET_BITS;
+        if (shift > maxShift) return bucketCount(maxShift) - 1;
+        int sub = (int) (v >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + sub;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        int sub   = index % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + sub + 1) << shift) - 1;
+    }
+}
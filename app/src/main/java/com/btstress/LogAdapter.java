@@ -1,6 +1,5 @@
 package com.btstress;
 
-import android.graphics.Color;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,37 +8,45 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * 日志列表适配器
  * 显示每次压测循环的详细日志，颜色区分成功/失败
+ *
+ * 存储、筛选和失败跳转都在 {@link LogBuffer}（纯Java）里：环形数组追加/淘汰 O(1)，
+ * 这里只把它报告的变化转成 notifyItemRangeRemoved/Inserted，长时间压测不会每条日志都整表重绑。
  */
 public class LogAdapter extends RecyclerView.Adapter<LogAdapter.LogViewHolder> {
 
-    public static final int TYPE_INFO    = 0;
-    public static final int TYPE_SUCCESS = 1;
-    public static final int TYPE_FAILURE = 2;
-    public static final int TYPE_WARNING = 3;
+    public static final int TYPE_INFO    = LogType.INFO;
+    public static final int TYPE_SUCCESS = LogType.SUCCESS;
+    public static final int TYPE_FAILURE = LogType.FAILURE;
+    public static final int TYPE_WARNING = LogType.WARNING;
 
-    private final List<LogEntry> entries = new ArrayList<>();
-    private static final SimpleDateFormat SDF =
-            new SimpleDateFormat("HH:mm:ss.SSS", Locale.getDefault());
+    public static final int DEFAULT_CAPACITY = LogBuffer.DEFAULT_CAPACITY;
+    public static final int MIN_CAPACITY     = LogBuffer.MIN_CAPACITY;
+    public static final int MAX_CAPACITY     = LogBuffer.MAX_CAPACITY;
 
-    public static class LogEntry {
-        public final String time;
-        public final String message;
-        public final int type;  // TYPE_INFO / TYPE_SUCCESS / TYPE_FAILURE / TYPE_WARNING
+    // 各类型文字颜色（绑定时不再解析颜色字符串）
+    private static final int COLOR_SUCCESS = 0xFF4CAF50;  // 绿色
+    private static final int COLOR_FAILURE = 0xFFF44336;  // 红色
+    private static final int COLOR_WARNING = 0xFFFF9800;  // 橙色
+    private static final int COLOR_INFO    = 0xFFE0E0E0;  // 浅灰
 
-        public LogEntry(String message, int type) {
-            this.time = SDF.format(new Date());
-            this.message = message;
-            this.type = type;
-        }
+    private final LogBuffer buffer;
+
+    public LogAdapter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LogAdapter(int capacity) {
+        buffer = new LogBuffer(capacity, new LogBuffer.Changes() {
+            @Override public void onRemoved(int start, int count)  { notifyItemRangeRemoved(start, count); }
+            @Override public void onInserted(int start, int count) { notifyItemRangeInserted(start, count); }
+            @Override public void onReset()                        { notifyDataSetChanged(); }
+        });
     }
 
     static class LogViewHolder extends RecyclerView.ViewHolder {
@@ -63,43 +70,53 @@ public class LogAdapter extends RecyclerView.Adapter<LogAdapter.LogViewHolder> {
 
     @Override
     public void onBindViewHolder(@NonNull LogViewHolder holder, int position) {
-        LogEntry entry = entries.get(position);
-        holder.tvTime.setText(entry.time);
-        holder.tvMessage.setText(entry.message);
-
-        // 根据日志类型设置颜色
-        int color;
-        switch (entry.type) {
-            case TYPE_SUCCESS: color = Color.parseColor("#4CAF50"); break;  // 绿色
-            case TYPE_FAILURE: color = Color.parseColor("#F44336"); break;  // 红色
-            case TYPE_WARNING: color = Color.parseColor("#FF9800"); break;  // 橙色
-            default:           color = Color.parseColor("#E0E0E0"); break;  // 浅灰
+        LogRecord r = get(position);
+        holder.tvTime.setText(r.getTimeText());
+        holder.tvMessage.setText(r.getText());
+        holder.tvMessage.setTextColor(colorOf(r.type));
+    }
+
+    private static int colorOf(int type) {
+        switch (type) {
+            case TYPE_SUCCESS: return COLOR_SUCCESS;
+            case TYPE_FAILURE: return COLOR_FAILURE;
+            case TYPE_WARNING: return COLOR_WARNING;
+            default:           return COLOR_INFO;
         }
-        holder.tvMessage.setTextColor(color);
-        holder.tvTime.setTextColor(Color.parseColor("#9E9E9E"));
     }
 
     @Override
-    public int getItemCount() { return entries.size(); }
+    public int getItemCount() { return buffer.getVisibleCount(); }
+
+    /** 第 position 条可见日志（0 = 最旧） */
+    public LogRecord get(int position) { return buffer.get(position); }
+
+    public int getCapacity() { return buffer.getCapacity(); }
+
+    /** 列表中保留的全部日志（不受筛选影响），从旧到新 */
+    public int getTotalCount() { return buffer.getTotalCount(); }
 
-    /** 添加一条日志（主线程调用） */
-    public void addLog(String message, int type) {
-        entries.add(new LogEntry(message, type));
-        notifyItemInserted(entries.size() - 1);
+    public LogRecord getRecord(int index) { return buffer.getRecord(index); }
+
+    /** 添加一条日志（主线程调用）；已满时淘汰最旧的一条 */
+    public void addLog(LogRecord record) {
+        buffer.addAll(Collections.singletonList(record));
     }
 
+    /** 批量添加（主线程调用），合并成一次删除通知和一次插入通知 */
+    public void addAll(List<LogRecord> batch) { buffer.addAll(batch); }
+
     /** 清空所有日志 */
-    public void clear() {
-        entries.clear();
-        notifyDataSetChanged();
-    }
+    public void clear() { buffer.clear(); }
 
-    /** 最大保留条数（防止OOM） */
-    public void trimIfNeeded(int maxSize) {
-        if (entries.size() > maxSize) {
-            int removeCount = entries.size() - maxSize;
-            entries.subList(0, removeCount).clear();
-            notifyDataSetChanged();
-        }
-    }
+    /** 修改最大保留条数（防止OOM）；变小时丢弃最旧的若干条 */
+    public void setCapacity(int capacity) { buffer.setCapacity(capacity); }
+
+    /** 设置筛选条件（null 或不限制时显示全部） */
+    public void setFilter(LogBuffer.Filter f) { buffer.setFilter(f); }
+
+    public boolean isFiltered() { return buffer.isFiltered(); }
+
+    /** 从可见位置 position 往后（forward）或往前找最近的一条失败日志，没有时返回 -1 */
+    public int findFailure(int position, boolean forward) { return buffer.findFailure(position, forward); }
 }
@@ -0,0 +1,273 @@
+package com.btstress;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 日志列表的存储与索引（纯Java，由 {@link LogAdapter} 持有，主线程使用）
+ *
+ * 日志存放在预分配的环形数组里：满了以后新日志覆盖最旧的一条，追加/淘汰都是 O(1)。
+ * 每条 {@link LogRecord} 入列时分配递增序号。筛选（级别/轮次/设备）时维护一个按序号
+ * 排列的可见索引，新日志只判断自己是否可见；失败日志另有一个序号索引，
+ * 跳到上/下一个失败是两次二分查找，不扫描整个列表。
+ *
+ * 可见列表的变化经 {@link Changes} 报告（删除了开头几行、在末尾插入几行、整表变化），
+ * 适配器据此只通知变化的那几行。
+ */
+public final class LogBuffer {
+
+    public static final int DEFAULT_CAPACITY = 500;
+    public static final int MIN_CAPACITY     = 50;
+    public static final int MAX_CAPACITY     = 20000;
+
+    /** 可见列表的变化 */
+    public interface Changes {
+        void onRemoved(int start, int count);
+        void onInserted(int start, int count);
+        void onReset();
+    }
+
+    /** 日志筛选条件，字段为默认值时不限制 */
+    public static final class Filter {
+        public static final int ALL_TYPES = 0xF;
+
+        public final int    typeMask;   // 1 << LogType
+        public final int    loop;       // 0=所有轮次
+        public final String device;     // 设备标签包含该文字，null=所有设备
+
+        public Filter(int typeMask, int loop, String device) {
+            this.typeMask = typeMask;
+            this.loop     = loop;
+            this.device   = device;
+        }
+
+        /** 输入框文字：纯数字按轮次，其他按设备标签匹配 */
+        public static Filter parse(String text, boolean problemsOnly) {
+            int mask = problemsOnly ? (1 << LogType.FAILURE) | (1 << LogType.WARNING) : ALL_TYPES;
+            text = text == null ? "" : text.trim();
+            if (text.isEmpty()) return new Filter(mask, 0, null);
+            try {
+                return new Filter(mask, Integer.parseInt(text), null);
+            } catch (NumberFormatException e) {
+                return new Filter(mask, 0, text.toUpperCase());
+            }
+        }
+
+        boolean isAll() {
+            return typeMask == ALL_TYPES && loop == 0 && device == null;
+        }
+
+        boolean matches(LogRecord r) {
+            if ((typeMask & (1 << r.type)) == 0) return false;
+            if (loop != 0 && r.loop != loop) return false;
+            return device == null || (r.device != null && r.device.toUpperCase().contains(device));
+        }
+    }
+
+    private final Changes changes;
+
+    // 环形缓冲：head 指向最旧的一条，共 size 条
+    private LogRecord[] ring;
+    private int  head    = 0;
+    private int  size    = 0;
+    private long nextSeq = 0;
+
+    private Filter         filter  = null;              // null=不筛选，可见即全部
+    private final SeqIndex visible  = new SeqIndex();   // 筛选时可见记录的序号
+    private final SeqIndex failures = new SeqIndex();   // 全部失败记录的序号
+
+    public LogBuffer(int capacity, Changes changes) {
+        this.ring    = new LogRecord[clampCapacity(capacity)];
+        this.changes = changes;
+    }
+
+    /** 可见日志条数 */
+    public int getVisibleCount() { return filter == null ? size : visible.size(); }
+
+    /** 第 position 条可见日志（0 = 最旧） */
+    public LogRecord get(int position) {
+        long seq = filter == null ? oldestSeq() + position : visible.get(position);
+        return bySeq(seq);
+    }
+
+    public int getCapacity() { return ring.length; }
+
+    /** 保留的全部日志（不受筛选影响），从旧到新 */
+    public int getTotalCount() { return size; }
+
+    public LogRecord getRecord(int index) {
+        return ring[(head + index) % ring.length];
+    }
+
+    /*──────────────────────────────
+     *  添加 / 清空 / 容量
+     *──────────────────────────────*/
+
+    /** 批量添加，合并成一次删除通知和一次插入通知；已满时淘汰最旧的 */
+    public void addAll(List<LogRecord> batch) {
+        int n = batch.size();
+        if (n == 0) return;
+        int before = getVisibleCount();
+        // 一批比容量还多时前面的反正会被淘汰，直接跳过
+        int from = Math.max(0, n - ring.length);
+        int evictedVisible = 0;
+        int addedVisible   = 0;
+        for (int i = from; i < n; i++) {
+            LogRecord r = batch.get(i);
+            LogRecord old = append(r);
+            if (old != null && (filter == null || filter.matches(old))) evictedVisible++;
+            if (r.type == LogType.FAILURE) failures.add(r.seq);
+            if (filter == null || filter.matches(r)) {
+                if (filter != null) visible.add(r.seq);
+                addedVisible++;
+            }
+        }
+        long oldest = oldestSeq();
+        failures.dropBelow(oldest);
+        if (filter != null) visible.dropBelow(oldest);
+        if (evictedVisible > 0) changes.onRemoved(0, evictedVisible);
+        if (addedVisible > 0) changes.onInserted(before - evictedVisible, addedVisible);
+    }
+
+    /** 写入环形缓冲并分配序号，返回被淘汰的最旧一条（未满时为 null） */
+    private LogRecord append(LogRecord r) {
+        r.seq = nextSeq++;
+        if (size == ring.length) {
+            LogRecord old = ring[head];
+            ring[head] = r;
+            head = (head + 1) % ring.length;
+            return old;
+        }
+        ring[(head + size) % ring.length] = r;
+        size++;
+        return null;
+    }
+
+    /** 清空所有日志 */
+    public void clear() {
+        int removed = getVisibleCount();
+        Arrays.fill(ring, null);
+        head = 0;
+        size = 0;
+        visible.clear();
+        failures.clear();
+        if (removed > 0) changes.onRemoved(0, removed);
+    }
+
+    /** 修改最大保留条数（防止OOM）；变小时丢弃最旧的若干条 */
+    public void setCapacity(int capacity) {
+        capacity = clampCapacity(capacity);
+        if (capacity == ring.length) return;
+        int keep = Math.min(size, capacity);
+        LogRecord[] next = new LogRecord[capacity];
+        for (int i = 0; i < keep; i++) next[i] = getRecord(size - keep + i);
+        ring = next;
+        head = 0;
+        size = keep;
+        rebuildIndexes();
+        changes.onReset();
+    }
+
+    private static int clampCapacity(int capacity) {
+        return Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, capacity));
+    }
+
+    /*──────────────────────────────
+     *  筛选 / 跳转
+     *──────────────────────────────*/
+
+    /** 设置筛选条件（null 或不限制时显示全部），只在条件变化时扫描一次已有日志 */
+    public void setFilter(Filter f) {
+        if (f != null && f.isAll()) f = null;
+        filter = f;
+        rebuildIndexes();
+        changes.onReset();
+    }
+
+    public boolean isFiltered() { return filter != null; }
+
+    /**
+     * 从可见位置 position 往后（forward）或往前找最近的一条失败日志
+     * @return 可见位置，没有时返回 -1
+     */
+    public int findFailure(int position, boolean forward) {
+        if (failures.size() == 0) return -1;
+        long from = getVisibleCount() == 0 ? oldestSeq()
+                : get(Math.max(0, Math.min(position, getVisibleCount() - 1))).seq;
+        int i = forward ? failures.upperBound(from) : failures.lowerBound(from) - 1;
+        for (; i >= 0 && i < failures.size(); i += forward ? 1 : -1) {
+            long seq = failures.get(i);
+            if (filter == null) return (int) (seq - oldestSeq());
+            int p = visible.lowerBound(seq);
+            if (p < visible.size() && visible.get(p) == seq) return p;
+        }
+        return -1;
+    }
+
+    private void rebuildIndexes() {
+        visible.clear();
+        failures.clear();
+        for (int i = 0; i < size; i++) {
+            LogRecord r = getRecord(i);
+            if (r.type == LogType.FAILURE) failures.add(r.seq);
+            if (filter != null && filter.matches(r)) visible.add(r.seq);
+        }
+    }
+
+    private long oldestSeq() {
+        return size == 0 ? nextSeq : ring[head].seq;
+    }
+
+    private LogRecord bySeq(long seq) {
+        return getRecord((int) (seq - oldestSeq()));
+    }
+
+    /** 递增序号的环形索引：尾部追加、头部按序号淘汰、二分查找 */
+    private static final class SeqIndex {
+        private long[] a = new long[64];
+        private int    head;
+        private int    size;
+
+        int size() { return size; }
+
+        long get(int i) { return a[(head + i) & (a.length - 1)]; }
+
+        void add(long seq) {
+            if (size == a.length) {
+                long[] b = new long[a.length * 2];
+                for (int i = 0; i < size; i++) b[i] = get(i);
+                a = b;
+                head = 0;
+            }
+            a[(head + size) & (a.length - 1)] = seq;
+            size++;
+        }
+
+        void dropBelow(long seq) {
+            while (size > 0 && get(0) < seq) {
+                head = (head + 1) & (a.length - 1);
+                size--;
+            }
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        /** 第一个 >= seq 的下标 */
+        int lowerBound(long seq) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (get(mid) < seq) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        /** 第一个 > seq 的下标 */
+        int upperBound(long seq) {
+            return lowerBound(seq + 1);
+        }
+    }
+}
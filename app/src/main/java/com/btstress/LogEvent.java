@@ -0,0 +1,114 @@
+package com.btstress;
+
+/**
+ * 日志事件类型（纯Java，控制器和UI共用）
+ *
+ * 每种事件有默认级别和文字模板，模板里的占位符在显示/导出时才替换：
+ *   {a} {b} → LogRecord.a / b（整数码：轮次、耗时、原因码、状态值…）
+ *   {s} {t} → LogRecord.s / t（已有的字符串引用：设备名、地址、原因描述…）
+ * 控制器写日志时只填字段，不拼接字符串。
+ */
+public enum LogEvent {
+
+    PROXY_READY         (LogType.INFO,    "A2DP Profile Proxy 已获取"),
+    CAPABILITIES        (LogType.INFO,    "隐藏API探测: {s}"),
+    CAPABILITY_FALLBACK (LogType.WARNING, "{s}不可用，{t}"),
+    CAPABILITY_LOST     (LogType.WARNING, "{s}调用失败，本次压测不再调用: {t}"),
+    NO_REMOVE_BOND      (LogType.FAILURE, "removeBond不可用，无法完成配对-取消配对循环，压测停止"),
+    NO_RECONNECT_API    (LogType.FAILURE, "A2dp.connect()/disconnect()不可用，无法进行仅重连循环，压测停止"),
+    NO_GATT             (LogType.FAILURE, "本机不支持BLE，无法进行GATT循环，压测停止"),
+    LOOP_SHAPE          (LogType.INFO,    "循环方式: {s}"),
+    RESUMED             (LogType.WARNING, "从中断处恢复: 已完成 {a} 轮，中断 {b} 秒"),
+    PHASE_SUMMARY       (LogType.INFO,    "各阶段耗时统计:\n{s}"),
+    REASON_SUMMARY      (LogType.INFO,    "原始原因码分布:\n{s}"),
+    RSSI_SUMMARY        (LogType.INFO,    "按RSSI分档的结果:\n{s}"),
+    TRANSITION_SUMMARY  (LogType.INFO,    "状态切换耗时:\n{s}"),
+    LOOP_START          (LogType.INFO,    "========== 第 {a} 轮开始 =========="),
+    TIMEOUTS            (LogType.INFO,    "本轮超时({s}): {t}"),
+    DIRECT_PAGE         (LogType.INFO,    "已知MAC地址，跳过扫描直接寻呼 [{s}]"),
+    REUSE_BOND          (LogType.INFO,    "目标仍已配对，跳过扫描和配对 [{s}]"),
+    SCAN_START          (LogType.INFO,    "开始扫描蓝牙设备..."),
+    SCAN_TIMEOUT        (LogType.FAILURE, "扫描超时，未找到目标设备"),
+    DEVICE_FOUND        (LogType.INFO,    "发现设备: {s} [{t}]"),
+    DEVICE_MATCHED      (LogType.WARNING, "匹配目标设备: {s} [{t}]"),
+    DEVICE_SIGNAL       (LogType.INFO,    "目标信号: RSSI {a}dBm, 设备类型 {s}"),
+    SCAN_NOT_FOUND      (LogType.FAILURE, "扫描完成，未找到目标设备"),
+    BOND_START          (LogType.INFO,    "发起配对请求..."),
+    ALREADY_BONDED      (LogType.WARNING, "设备已配对，直接进入连接阶段"),
+    CREATE_BOND_FALSE   (LogType.FAILURE, "createBond() 返回false"),
+    BOND_TIMEOUT        (LogType.FAILURE, "配对超时 (可能 Page Timeout)"),
+    BONDING             (LogType.INFO,    "配对进行中..."),
+    BONDED              (LogType.SUCCESS, "配对成功!"),
+    BOND_FAILED         (LogType.FAILURE, "配对失败! 原因: {s} (code={a})"),
+    UNPAIRED            (LogType.SUCCESS, "取消配对成功，设备已从配对列表移除"),
+    DIRECT_FALLBACK     (LogType.WARNING, "直连失败({s})，回退到扫描"),
+    A2DP_WAIT           (LogType.INFO,    "等待A2DP Profile自动连接..."),
+    A2DP_CONNECT_CALLED (LogType.INFO,    "已调用A2dp.connect()"),
+    A2DP_TIMEOUT        (LogType.FAILURE, "A2DP连接超时"),
+    A2DP_STATE          (LogType.INFO,    "A2DP状态变化: {s}"),
+    A2DP_CONNECTED      (LogType.SUCCESS, "A2DP连接成功!"),
+    A2DP_DISCONNECTED   (LogType.INFO,    "A2DP已断开，开始取消配对..."),
+    DISCONNECT_START    (LogType.INFO,    "主动断开A2DP连接..."),
+    DISCONNECT_TIMEOUT  (LogType.WARNING, "断开A2DP超时，强制进入取消配对"),
+    ACL_DISCONNECTED    (LogType.INFO,    "ACL已断开，开始取消配对..."),
+    UNPAIR_START        (LogType.INFO,    "开始取消配对(removeBond)..."),
+    REMOVE_BOND_FALSE   (LogType.FAILURE, "removeBond()返回false"),
+    REMOVE_BOND_CALLED  (LogType.INFO,    "removeBond()已调用，等待BOND_NONE..."),
+    UNPAIRED_BY_CHECK   (LogType.SUCCESS, "取消配对成功(超时检查)"),
+    UNPAIR_FAILED       (LogType.FAILURE, "取消配对失败，设备仍在配对列表"),
+    STREAM_START        (LogType.INFO,    "开始播放测试音，等待耳机出声..."),
+    TONE_FAILED         (LogType.FAILURE, "测试音播放失败（AudioTrack不可用）"),
+    STREAM_PLAYING      (LogType.SUCCESS, "音频已起播，耗时{a}ms，保持{b}ms"),
+    STREAM_TIMEOUT      (LogType.FAILURE, "音频起播超时，未收到PLAYING"),
+    STREAM_DROPOUT      (LogType.WARNING, "播放中断 (第{a}次)"),
+    STREAM_LINK_LOST    (LogType.FAILURE, "播放期间A2DP断开"),
+    STREAM_HOLD_END     (LogType.INFO,    "播放保持结束: 中断{b}次 欠载{a}次(-1=本机无法统计)"),
+    GATT_CONNECT_START  (LogType.INFO,    "发起GATT连接..."),
+    GATT_CONNECTED      (LogType.SUCCESS, "GATT已连接"),
+    GATT_CONNECT_FAILED (LogType.FAILURE, "GATT连接失败 (status={a})"),
+    GATT_TIMEOUT        (LogType.FAILURE, "GATT连接超时"),
+    GATT_LOST           (LogType.FAILURE, "GATT连接意外断开 (status={a})"),
+    GATT_MTU            (LogType.INFO,    "MTU协商完成: {a}"),
+    GATT_MTU_FAILED     (LogType.WARNING, "MTU协商失败 (status={a})，按默认MTU {b} 继续"),
+    GATT_MTU_TIMEOUT    (LogType.WARNING, "MTU协商无响应，按默认MTU {a} 继续"),
+    GATT_SERVICES       (LogType.INFO,    "服务发现完成: {a}个服务"),
+    SERVICES_FAILED     (LogType.FAILURE, "服务发现失败 (status={a})"),
+    SERVICES_TIMEOUT    (LogType.FAILURE, "服务发现超时"),
+    GATT_NO_TEST_CHAR   (LogType.WARNING, "未找到可写的特征，跳过吞吐测试"),
+    GATT_BURST_START    (LogType.INFO,    "吞吐测试开始: 每包{a}字节，持续{b}ms"),
+    GATT_WRITE_FAILED   (LogType.FAILURE, "写特征失败 (status={a})"),
+    GATT_BURST          (LogType.INFO,    "吞吐: 写入{a}B/s 通知{b}B/s"),
+    GATT_DISCONNECT     (LogType.INFO,    "断开GATT连接..."),
+    GATT_DISCONNECTED   (LogType.INFO,    "GATT已断开"),
+    GATT_DISC_TIMEOUT   (LogType.FAILURE, "断开GATT超时"),
+    SPP_CONNECT_START   (LogType.INFO,    "连接RFCOMM (UUID {s})..."),
+    SPP_CONNECTED       (LogType.SUCCESS, "RFCOMM已连接"),
+    SPP_CONNECT_FAILED  (LogType.FAILURE, "RFCOMM连接失败 (对端未开放该服务或拒绝连接)"),
+    SPP_TIMEOUT         (LogType.FAILURE, "RFCOMM连接超时"),
+    SPP_BURST_START     (LogType.INFO,    "SPP吞吐测试开始: 每帧{a}字节，持续{b}ms"),
+    SPP_LOST            (LogType.FAILURE, "SPP测试中连接断开"),
+    SPP_NO_ECHO         (LogType.WARNING, "对端未回显，只统计发送速率"),
+    SPP_BURST           (LogType.INFO,    "SPP: 发送{a}B/s"),
+    SPP_RTT             (LogType.INFO,    "往返: p50={a}ms p99={b}ms"),
+    SPP_DRAIN_TIMEOUT   (LogType.FAILURE, "SPP测试停止后无结果"),
+    LOOP_SUCCESS        (LogType.SUCCESS, "▶ 第{a}轮 【成功】({s}) 耗时{b}ms"),
+    LOOP_FAILURE        (LogType.FAILURE, "▶ 第{a}轮 【失败】 原因:{s} 耗时{b}ms"),
+    COOLDOWN            (LogType.INFO,    "冷却 {a}ms 后开始下一轮 ({s})"),
+    RESOURCE_WAIT       (LogType.INFO,    "等待共享资源: {s}"),
+    BACKEND_ERROR       (LogType.FAILURE, "{s}"),
+    JOURNAL_OPEN        (LogType.INFO,    "事件日志: {s}/{t}"),
+    JOURNAL_OPEN_FAILED (LogType.WARNING, "事件日志打开失败，本次不记录: {s}"),
+    JOURNAL_FAILED      (LogType.WARNING, "事件日志写入失败: {s}"),
+    CHECKPOINT_FAILED   (LogType.WARNING, "断点文件写入失败，进程被杀后无法恢复: {s}"),
+    EXPORT_OPEN         (LogType.INFO,    "每轮结果导出到: {s}"),
+    TRACE_OPEN          (LogType.INFO,    "蓝牙事件轨迹: {s}"),
+    TRACE_STOPPED       (LogType.WARNING, "蓝牙事件轨迹未完整记录: {s}");
+
+    public final int    type;       // 默认级别（LogType）
+    public final String template;
+
+    LogEvent(int type, String template) {
+        this.type     = type;
+        this.template = template;
+    }
+}
@@ -0,0 +1,105 @@
+package com.btstress;
+
+import java.util.TimeZone;
+
+/**
+ * 一条结构化日志（纯Java，控制器线程创建，UI线程读取）
+ *
+ * 只保存时间、轮次、设备、事件类型和数值/字符串字段，文字在列表绑定或导出时
+ * 才按 {@link LogEvent#template} 渲染一次并缓存；时间也只在显示时格式化，
+ * 不经过共享的 SimpleDateFormat。
+ */
+public final class LogRecord {
+
+    private static final TimeZone TZ = TimeZone.getDefault();
+
+    public final long     time;      // 墙钟 ms（控制器按单调时钟换算，不回跳）
+    public final int      loop;      // 所在轮次，0=压测开始前/结束后
+    public final String   device;    // 多耳机模式下的设备标签，单设备为 null
+    public final LogEvent event;
+    public final int      type;      // LogType
+    public final int      a;
+    public final int      b;
+    public final String   s;
+    public final String   t;
+
+    long seq;                        // 列表内的序号（LogBuffer 入列时分配）
+
+    private String text;             // 渲染后的消息（主线程，懒加载）
+
+    public LogRecord(long time, int loop, String device, LogEvent event, int type,
+                     int a, int b, String s, String t) {
+        this.time   = time;
+        this.loop   = loop;
+        this.device = device;
+        this.event  = event;
+        this.type   = type;
+        this.a      = a;
+        this.b      = b;
+        this.s      = s;
+        this.t      = t;
+    }
+
+    /** 控制器之外（服务等）产生的单条日志 */
+    public static LogRecord of(LogEvent event, String s) {
+        return new LogRecord(System.currentTimeMillis(), 0, null, event, event.type, 0, 0, s, null);
+    }
+
+    /** 消息文字（不含设备标签） */
+    public String getMessage() {
+        if (text == null) text = render();
+        return text;
+    }
+
+    /** 带设备标签的完整一行，如 "[AA:BB:..] 配对成功!" */
+    public String getText() {
+        return device == null ? getMessage() : "[" + device + "] " + getMessage();
+    }
+
+    /** HH:mm:ss.SSS（本地时区） */
+    public String getTimeText() {
+        long local = time + TZ.getOffset(time);
+        int ms  = (int) (local % 1000);
+        long sec = local / 1000;
+        char[] c = new char[12];
+        two(c, 0, (int) (sec / 3600 % 24));
+        c[2] = ':';
+        two(c, 3, (int) (sec / 60 % 60));
+        c[5] = ':';
+        two(c, 6, (int) (sec % 60));
+        c[8]  = '.';
+        c[9]  = (char) ('0' + ms / 100);
+        c[10] = (char) ('0' + ms / 10 % 10);
+        c[11] = (char) ('0' + ms % 10);
+        return new String(c);
+    }
+
+    private static void two(char[] c, int at, int v) {
+        c[at]     = (char) ('0' + v / 10);
+        c[at + 1] = (char) ('0' + v % 10);
+    }
+
+    private String render() {
+        String tpl = event.template;
+        StringBuilder sb = new StringBuilder(tpl.length() + 16);
+        int n = tpl.length();
+        for (int i = 0; i < n; i++) {
+            char ch = tpl.charAt(i);
+            if (ch == '{' && i + 2 < n && tpl.charAt(i + 2) == '}') {
+                switch (tpl.charAt(i + 1)) {
+                    case 'a': sb.append(a); i += 2; continue;
+                    case 'b': sb.append(b); i += 2; continue;
+                    case 's': sb.append(s); i += 2; continue;
+                    case 't': sb.append(t); i += 2; continue;
+                }
+            }
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+}
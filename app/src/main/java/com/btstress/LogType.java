@@ -0,0 +1,14 @@
+package com.btstress;
+
+/**
+ * 日志类型常量（纯Java，控制器和UI共用）
+ */
+public final class LogType {
+
+    public static final int INFO    = 0;
+    public static final int SUCCESS = 1;
+    public static final int FAILURE = 2;
+    public static final int WARNING = 3;
+
+    private LogType() {}
+}
@@ -0,0 +1,89 @@
+package com.btstress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * 本机回环的 SPP 替身（纯Java，无需手机）
+ *
+ * connect() 时在 127.0.0.1 上起一个对端线程，再用 TCP 连过去；对端把收到的字节原样发回（echo=true），
+ * 或读走丢弃（模拟不回显的设备）。用来在 JVM 上跑通 {@link SppBenchmark} 的收发、回显判定和收尾，
+ * 测到的速率和时延只反映本机，不代表蓝牙链路。
+ */
+public class LoopbackSppTransport implements SppTransport {
+
+    private final boolean echo;
+
+    private volatile ServerSocket server = null;
+    private volatile Socket       socket = null;
+    private volatile Socket       peer   = null;
+
+    public LoopbackSppTransport(boolean echo) {
+        this.echo = echo;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        final ServerSocket s = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = s;
+        Thread t = new Thread(() -> servePeer(s), "SppLoopbackPeer");
+        t.setDaemon(true);
+        t.start();
+        Socket c = new Socket(InetAddress.getLoopbackAddress(), s.getLocalPort());
+        c.setTcpNoDelay(true);
+        socket = c;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        Socket c = socket;
+        if (c == null) throw new IOException("未连接");
+        return c.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        Socket c = socket;
+        if (c == null) throw new IOException("未连接");
+        return c.getOutputStream();
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(socket);
+        closeQuietly(peer);
+        ServerSocket s = server;
+        if (s != null) {
+            try { s.close(); }
+            catch (IOException ignored) {}
+        }
+    }
+
+    /** 对端：只接受一个连接，回显或丢弃，直到任一方关闭 */
+    private void servePeer(ServerSocket s) {
+        try {
+            Socket p = s.accept();
+            p.setTcpNoDelay(true);
+            peer = p;
+            InputStream  in  = p.getInputStream();
+            OutputStream out = p.getOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                if (echo) out.write(buf, 0, n);
+            }
+        } catch (IOException ignored) {
+            // 关闭连接时退出
+        }
+    }
+
+    private static void closeQuietly(Socket c) {
+        if (c == null) return;
+        try { c.close(); }
+        catch (IOException ignored) {}
+    }
+}
@@ -12,12 +12,16 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ScrollView;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -28,8 +32,12 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * 主界面 Activity
@@ -39,28 +47,54 @@ public class MainActivity extends AppCompatActivity {
 
     private static final int REQ_PERM = 100;
 
+    // 导出格式下拉框的选项（第0项为不导出），与 R.array.export_formats 对应
+    private static final RunExporter.Format[] EXPORT_FORMATS =
+            {null, RunExporter.Format.CSV, RunExporter.Format.JSON};
+    // 循环方式下拉框的选项，与 R.array.loop_shapes 对应
+    private static final TestStatistics.LoopShape[] LOOP_SHAPES =
+            {TestStatistics.LoopShape.FULL, TestStatistics.LoopShape.RECONNECT, TestStatistics.LoopShape.BOND_ONLY,
+             TestStatistics.LoopShape.GATT, TestStatistics.LoopShape.SPP};
+
     // UI控件
     private EditText  etDeviceName;
     private EditText  etDeviceAddr;
     private EditText  etLoopCount;
+    private EditText  etLoopsPerHour;
+    private EditText  etLogCapacity;
+    private CheckBox  cbDirectConnect;
+    private Spinner   spLoopShape;
+    private EditText  etStreamHold;
+    private EditText  etSppUuid;
+    private CheckBox  cbAdaptiveCooldown;
+    private CheckBox  cbAdaptiveTimeout;
+    private CheckBox  cbRecordTrace;
+    private Spinner   spExportFormat;
+    private CheckBox  cbExportGzip;
     private Button    btnStart;
     private TextView  tvStatus;
     private TextView  tvSuccess;
     private TextView  tvFail;
     private TextView  tvTotal;
     private TextView  tvRate;
+    private TextView  tvRecent;
+    private TextView  tvRssi;
     private TextView  tvElapsed;
     private TextView  tvFailDetail;
+    private TextView  tvPhaseDetail;
     private RecyclerView rvLog;
+    private EditText  etLogFilter;
+    private CheckBox  cbLogProblems;
 
-    // 压测组件
+    // 压测组件（压测本身运行在服务里，界面只订阅回调）
     private BluetoothAdapter    btAdapter;
-    private TestController      testController;
     private BluetoothTestService testService;
+    private RunConfig           pendingConfig;    // 等服务绑定后再开始
     private boolean             serviceBound = false;
     private boolean             testing      = false;
 
     private LogAdapter logAdapter;
+    private LinearLayoutManager logLayout;
+    private boolean followTail = true;   // 新日志到达时滚到底部；跳到某个失败后暂停
     private final Handler uiHandler = new Handler(Looper.getMainLooper());
 
     // 定时刷新统计数据（每秒）
@@ -78,6 +112,15 @@ public class MainActivity extends AppCompatActivity {
             BluetoothTestService.LocalBinder lb = (BluetoothTestService.LocalBinder) binder;
             testService = lb.getService();
             serviceBound = true;
+            testService.setUiCallback(uiCallback);
+            if (pendingConfig != null) {
+                testService.startRun(pendingConfig);
+                pendingConfig = null;
+            } else if (testService.isRunning() && !testing) {
+                // 重新打开界面，或进程被杀后服务正在恢复上次的压测
+                enterTestingUi();
+                tvStatus.setText("恢复中...");
+            }
         }
         @Override
         public void onServiceDisconnected(ComponentName name) {
@@ -85,6 +128,9 @@ public class MainActivity extends AppCompatActivity {
         }
     };
 
+    // 服务转发过来的控制器回调：在调度线程上入队，每帧在主线程合并处理一次
+    private final UiFrameBatcher uiCallback = new UiFrameBatcher(this::onUiFrame);
+
     /*──────────────────────────────
      *  生命周期
      *──────────────────────────────*/
@@ -100,10 +146,21 @@ public class MainActivity extends AppCompatActivity {
         initViews();
         initBluetooth();
         requestPermissions();
+
+        // 有断点说明上次的压测没有结束（界面被关掉，或进程被杀）：拉起服务并接回
+        if (BluetoothTestService.checkpointFile(this).isFile()) {
+            Intent resume = new Intent(this, BluetoothTestService.class);
+            resume.setAction(BluetoothTestService.ACTION_RESUME);
+            startTestService(resume);
+            bindService(resume, serviceConnection, Context.BIND_AUTO_CREATE);
+        }
     }
 
     @Override
     protected void onDestroy() {
+        // 界面退出不影响压测，服务继续运行
+        if (testService != null) testService.setUiCallback(null);
+        uiCallback.cancel();
         if (serviceBound) {
             unbindService(serviceConnection);
             serviceBound = false;
@@ -119,24 +176,53 @@ public class MainActivity extends AppCompatActivity {
         etDeviceName = findViewById(R.id.et_device_name);
         etDeviceAddr = findViewById(R.id.et_device_addr);
         etLoopCount  = findViewById(R.id.et_loop_count);
+        etLoopsPerHour = findViewById(R.id.et_loops_per_hour);
+        etLogCapacity = findViewById(R.id.et_log_capacity);
+        cbDirectConnect = findViewById(R.id.cb_direct_connect);
+        spLoopShape  = findViewById(R.id.sp_loop_shape);
+        etStreamHold = findViewById(R.id.et_stream_hold);
+        etSppUuid    = findViewById(R.id.et_spp_uuid);
+        cbAdaptiveCooldown = findViewById(R.id.cb_adaptive_cooldown);
+        cbAdaptiveTimeout = findViewById(R.id.cb_adaptive_timeout);
+        cbRecordTrace = findViewById(R.id.cb_record_trace);
+        spExportFormat = findViewById(R.id.sp_export_format);
+        cbExportGzip = findViewById(R.id.cb_export_gzip);
         btnStart     = findViewById(R.id.btn_start);
         tvStatus     = findViewById(R.id.tv_status);
         tvSuccess    = findViewById(R.id.tv_success);
         tvFail       = findViewById(R.id.tv_fail);
         tvTotal      = findViewById(R.id.tv_total);
         tvRate       = findViewById(R.id.tv_rate);
+        tvRecent     = findViewById(R.id.tv_recent);
+        tvRssi       = findViewById(R.id.tv_rssi);
         tvElapsed    = findViewById(R.id.tv_elapsed);
         tvFailDetail = findViewById(R.id.tv_fail_detail);
+        tvPhaseDetail = findViewById(R.id.tv_phase_detail);
         rvLog        = findViewById(R.id.rv_log);
 
+        etLogFilter  = findViewById(R.id.et_log_filter);
+        cbLogProblems = findViewById(R.id.cb_log_problems);
+
         logAdapter = new LogAdapter();
-        rvLog.setLayoutManager(new LinearLayoutManager(this));
+        logLayout  = new LinearLayoutManager(this);
+        rvLog.setLayoutManager(logLayout);
         rvLog.setAdapter(logAdapter);
+        rvLog.setItemAnimator(null);   // 日志满后每条都是"删首+插尾"，不需要动画
 
         btnStart.setOnClickListener(v -> {
             if (testing) stopTest();
             else startTest();
         });
+
+        // 日志筛选与跳转
+        etLogFilter.addTextChangedListener(new TextWatcher() {
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) {}
+            @Override public void afterTextChanged(Editable s) { applyLogFilter(); }
+        });
+        cbLogProblems.setOnClickListener(v -> applyLogFilter());
+        findViewById(R.id.btn_prev_failure).setOnClickListener(v -> jumpToFailure(false));
+        findViewById(R.id.btn_next_failure).setOnClickListener(v -> jumpToFailure(true));
     }
 
     private void initBluetooth() {
@@ -214,78 +300,125 @@ public class MainActivity extends AppCompatActivity {
             try { loops = Integer.parseInt(loopStr); }
             catch (NumberFormatException e) { loops = 0; }
         }
+        int loopsPerHour = 0;
+        String pacingStr = etLoopsPerHour.getText().toString().trim();
+        if (!pacingStr.isEmpty()) {
+            try { loopsPerHour = Integer.parseInt(pacingStr); }
+            catch (NumberFormatException e) { loopsPerHour = 0; }
+        }
+        int streamHoldSec = 0;
+        String holdStr = etStreamHold.getText().toString().trim();
+        if (!holdStr.isEmpty()) {
+            try { streamHoldSec = Integer.parseInt(holdStr); }
+            catch (NumberFormatException e) { streamHoldSec = 0; }
+        }
+        int logCapacity = LogAdapter.DEFAULT_CAPACITY;
+        String capacityStr = etLogCapacity.getText().toString().trim();
+        if (!capacityStr.isEmpty()) {
+            try { logCapacity = Integer.parseInt(capacityStr); }
+            catch (NumberFormatException e) { logCapacity = LogAdapter.DEFAULT_CAPACITY; }
+        }
+
+        // 事件日志：<外部存储>/Android/data/<包名>/files/journal/run-<时间>.<段>.btj
+        File base = getExternalFilesDir(null);
+        File journalDir = new File(base != null ? base : getFilesDir(), "journal");
+
+        // 名称或地址填了多个（逗号/分号/空格分隔）时进入多耳机并发模式
+        RunConfig config = new RunConfig();
+        config.name             = name;
+        config.address          = addr;
+        config.loops            = loops;
+        config.directConnect    = cbDirectConnect.isChecked();
+        config.loopShape        = LOOP_SHAPES[spLoopShape.getSelectedItemPosition()].name();
+        config.streamHoldSec    = streamHoldSec;
+        config.sppUuid          = etSppUuid.getText().toString().trim();
+        config.adaptiveCooldown = cbAdaptiveCooldown.isChecked();
+        config.adaptiveTimeout  = cbAdaptiveTimeout.isChecked();
+        config.loopsPerHour     = loopsPerHour;
+        config.journalDir       = journalDir.getPath();
+        config.runName          = "run-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+
+        // 每轮结果导出：<外部存储>/Android/data/<包名>/files/export/run-<时间>.csv[.gz] + .summary.json
+        RunExporter.Format exportFormat = EXPORT_FORMATS[spExportFormat.getSelectedItemPosition()];
+        config.exportFormat     = exportFormat != null ? exportFormat.name() : "";
+        config.exportGzip       = cbExportGzip.isChecked();
+        config.exportDir        = new File(journalDir.getParentFile(), "export").getPath();
+        config.recordTrace      = cbRecordTrace.isChecked();
 
         // 清空日志
         logAdapter.clear();
-        testing = true;
-        btnStart.setText("停止测试");
+        logAdapter.setCapacity(logCapacity);
+        followTail = true;
+        uiCallback.resetStats();
+        enterTestingUi();
         tvStatus.setText("启动中...");
 
-        // 启动前台服务
+        // 启动前台服务，由服务创建并持有控制器（控制器与蓝牙广播运行在独立线程）
         Intent serviceIntent = new Intent(this, BluetoothTestService.class);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(serviceIntent);
+        startTestService(serviceIntent);
+        if (serviceBound && testService != null) {
+            testService.startRun(config);
         } else {
-            startService(serviceIntent);
+            pendingConfig = config;
+            bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
         }
-        bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
-
-        // 创建并启动TestController
-        testController = new TestController(this, btAdapter, new TestController.Callback() {
-            @Override
-            public void onLoopStart(int loop, int total) {
-                runOnUiThread(() -> {
-                    String s = total > 0 ? "第" + loop + "/" + total + "轮" : "第" + loop + "轮";
-                    tvStatus.setText("运行中 - " + s);
-                    if (serviceBound && testService != null) {
-                        testService.updateNotification(s + " - 成功:" +
-                                testController.getStatistics().getSuccessCount() +
-                                " 失败:" + testController.getStatistics().getFailureCount());
-                    }
-                });
-            }
-
-            @Override
-            public void onStateChange(String stateDesc) {
-                runOnUiThread(() -> tvStatus.setText(stateDesc));
-            }
-
-            @Override
-            public void onLoopSuccess(int loop, long costMs) {
-                runOnUiThread(() -> refreshStats());
-            }
+    }
 
-            @Override
-            public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {
-                runOnUiThread(() -> refreshStats());
-            }
+    private void startTestService(Intent intent) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            startForegroundService(intent);
+        } else {
+            startService(intent);
+        }
+    }
 
-            @Override
-            public void onAllDone(TestStatistics stats) {
-                runOnUiThread(() -> stopTestUi());
+    /** 一帧内积累的回调事件：日志一次批量插入+滚动，状态取最新，统计刷新一次 */
+    private void onUiFrame(List<LogRecord> logs, String state,
+                           boolean loopStarted, boolean statsChanged, boolean allDone) {
+        if (!logs.isEmpty()) {
+            logAdapter.addAll(logs);   // 超过保留条数时自动淘汰最旧的
+            if (followTail && logAdapter.getItemCount() > 0) {
+                rvLog.scrollToPosition(logAdapter.getItemCount() - 1);
             }
+        }
+        if (loopStarted && !testing) enterTestingUi();
+        if (state != null) tvStatus.setText(state);
+        if (statsChanged) refreshStats();
+        if (allDone) stopTestUi();
+    }
 
-            @Override
-            public void onLog(String msg, int type) {
-                runOnUiThread(() -> {
-                    logAdapter.addLog(msg, type);
-                    logAdapter.trimIfNeeded(500); // 最多500条
-                    // 自动滚动到底部
-                    rvLog.scrollToPosition(logAdapter.getItemCount() - 1);
-                });
-            }
-        });
+    private void applyLogFilter() {
+        logAdapter.setFilter(LogBuffer.Filter.parse(
+                etLogFilter.getText().toString(), cbLogProblems.isChecked()));
+        followTail = true;
+        if (logAdapter.getItemCount() > 0) rvLog.scrollToPosition(logAdapter.getItemCount() - 1);
+    }
 
-        testController.setFilter(name, addr);
-        testController.setTargetLoops(loops);
-        testController.start();
+    /** 跳到上/下一个失败；往后没有了就回到底部继续跟随新日志 */
+    private void jumpToFailure(boolean forward) {
+        int pos = logAdapter.findFailure(logLayout.findFirstVisibleItemPosition(), forward);
+        if (pos >= 0) {
+            followTail = false;
+            logLayout.scrollToPositionWithOffset(pos, 0);
+        } else if (forward) {
+            followTail = true;
+            if (logAdapter.getItemCount() > 0) rvLog.scrollToPosition(logAdapter.getItemCount() - 1);
+            Toast.makeText(this, "后面没有失败日志", Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, "前面没有失败日志", Toast.LENGTH_SHORT).show();
+        }
+    }
 
-        // 启动统计刷新
+    private void enterTestingUi() {
+        testing = true;
+        btnStart.setText("停止测试");
+        uiHandler.removeCallbacks(statsRefreshRunnable);
         uiHandler.post(statsRefreshRunnable);
     }
 
     private void stopTest() {
-        if (testController != null) testController.stop();
+        pendingConfig = null;
+        if (testService != null) testService.stopRun();
         stopTestUi();
     }
 
@@ -299,6 +432,7 @@ public class MainActivity extends AppCompatActivity {
         // 停止服务
         Intent serviceIntent = new Intent(this, BluetoothTestService.class);
         stopService(serviceIntent);
+        if (testService != null) testService.setUiCallback(null);
         if (serviceBound) {
             try { unbindService(serviceConnection); } catch (Exception ignored) {}
             serviceBound = false;
@@ -306,13 +440,29 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void refreshStats() {
-        if (testController == null) return;
-        TestStatistics s = testController.getStatistics();
+        if (testService == null) return;
+        TestStatistics s = testService.getStatistics();
+        if (s == null) return;
+        String devices = testService.getDeviceSummary();
         tvSuccess.setText(String.valueOf(s.getSuccessCount()));
         tvFail.setText(String.valueOf(s.getFailureCount()));
         tvTotal.setText(String.valueOf(s.getTotalCount()));
         tvRate.setText(s.getSuccessRate());
+        String recent = s.getRecentSummary();
+        tvRecent.setText(recent.isEmpty() ? "无" : recent);
+        int rssi = s.getLastRssi();
+        String table = s.getRssiSummary();
+        if (rssi == BluetoothBackend.RSSI_UNKNOWN) {
+            tvRssi.setText(table.isEmpty() ? "无" : table);
+        } else {
+            tvRssi.setText(table.isEmpty() ? "最近 " + rssi + "dBm" : "最近 " + rssi + "dBm\n" + table);
+        }
         tvElapsed.setText(s.getElapsedTime());
-        tvFailDetail.setText(s.getFailureSummary());
+        String fail  = s.getFailureSummary();
+        String codes = s.getReasonCodeSummary();
+        if (!codes.isEmpty()) fail += "\n" + codes;
+        tvFailDetail.setText(devices != null ? fail + "\n" + devices : fail);
+        String frames = uiCallback.getSummary();
+        tvPhaseDetail.setText(frames.isEmpty() ? s.getPhaseSummary() : s.getPhaseSummary() + "\n" + frames);
     }
 }
@@ -0,0 +1,217 @@
+package com.btstress;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 多耳机并发压测会话
+ *
+ * 每台耳机一个独立的 {@link TestController}（独立状态机与 TestStatistics），
+ * 全部运行在同一个调度线程上，共享一个 BluetoothBackend（经 {@link BackendHub} 分发事件）
+ * 和一个 {@link RadioArbiter}：同一时刻只有一个 inquiry、一路配对、一路A2DP连接，
+ * 其余设备排队，从而让一台耳机的配对与另一台的连接/断开交错进行。
+ *
+ * UI 回调统一经由一个 TestController.Callback，状态带上设备标签，日志记录自带设备字段。
+ */
+public class MultiDeviceSession {
+
+    private final Scheduler               scheduler;
+    private final BackendHub              hub;
+    private final RadioArbiter            arbiter;
+    private final TestController.Callback callback;
+
+    private final List<TestController> controllers = new ArrayList<>();
+    private final List<String>         labels      = new ArrayList<>();
+    private final LatencyHistogram     dispatchLatency = new LatencyHistogram();
+
+    private int     targetLoops   = 0;     // 每台设备的目标次数，0=无限
+    private boolean directConnect = false; // 按地址添加的设备跳过扫描直接寻呼
+    private TestStatistics.LoopShape loopShape = TestStatistics.LoopShape.FULL;
+    private long    streamHoldMs  = 0;     // 音频起播探测的播放保持时长，0=不探测
+    private String  sppUuid       = null;  // SPP 循环的服务 UUID，null=标准 SPP
+    private int     sppFrameBytes = 512;
+    private CooldownPolicy.Mode cooldownMode = CooldownPolicy.Mode.ADAPTIVE;
+    private int     loopsPerHour  = 0;     // 每台设备的节拍，0=不限
+    private TimeoutPolicy.Mode timeoutMode = TimeoutPolicy.Mode.FIXED;
+    private File    journalDir    = null;  // 非空时每台设备写一份事件日志
+    private String  journalRun    = null;
+    private RunExporter exporter  = null;  // 各设备共用，行里带设备标签
+    private int     resumedLoops  = 0;     // 断点恢复时各设备已完成轮数之和
+    private int     startedLoops  = 0;     // 所有设备累计已开始的轮数（调度线程）
+    private int     doneCount     = 0;     // 已结束的控制器数（调度线程）
+
+    public MultiDeviceSession(BluetoothBackend backend, Scheduler scheduler, TestController.Callback callback) {
+        this.scheduler = scheduler;
+        this.hub       = new BackendHub(backend);
+        this.arbiter   = new RadioArbiter(scheduler);
+        this.callback  = callback;
+    }
+
+    /** 添加一台目标耳机（名称或地址，start() 前调用） */
+    public void addTarget(String name, String address) {
+        final String label = (address != null && !address.isEmpty()) ? address : name;
+        TestController c = new TestController(hub.newClient(), new ScopedScheduler(scheduler),
+                new DeviceCallback("[" + label + "] "));
+        c.setFilter(name, address);
+        c.setDeviceLabel(label);
+        c.setArbiter(arbiter);
+        controllers.add(c);
+        labels.add(label);
+    }
+
+    public void setTargetLoops(int loops) {
+        this.targetLoops = loops;
+    }
+
+    public void setDirectConnect(boolean enabled) {
+        this.directConnect = enabled;
+    }
+
+    public void setLoopShape(TestStatistics.LoopShape shape) {
+        this.loopShape = shape;
+    }
+
+    /** 音频起播探测，见 {@link TestController#setStreamProbe}（多设备时播放排队进行） */
+    public void setStreamProbe(long holdMs) {
+        this.streamHoldMs = holdMs;
+    }
+
+    /** SPP 循环的服务 UUID 和帧长，见 {@link TestController#setSpp}（多设备时 SPP 测试排队进行） */
+    public void setSpp(String uuid, int frameBytes) {
+        this.sppUuid       = uuid;
+        this.sppFrameBytes = frameBytes;
+    }
+
+    /** 轮间冷却策略，每台设备各自一个实例（按各自的成功/失败调整） */
+    public void setCooldown(CooldownPolicy.Mode mode, int loopsPerHour) {
+        this.cooldownMode = mode;
+        this.loopsPerHour = loopsPerHour;
+    }
+
+    /** 阶段超时策略，每台设备各自一个实例（按各自的耗时分布调整） */
+    public void setTimeoutMode(TimeoutPolicy.Mode mode) {
+        this.timeoutMode = mode;
+    }
+
+    /** 第 index 台设备的事件日志名 */
+    public static String journalName(String runName, int index) {
+        return runName + "-" + index;
+    }
+
+    /** 第 index 台设备从中断处继续（start() 前调用，见 TestController#setResume） */
+    public void setResume(int index, int completedLoops, TestStatistics restored, long gapMs) {
+        controllers.get(index).setResume(completedLoops, restored, gapMs);
+        resumedLoops += completedLoops;
+    }
+
+    /** 事件日志目录与运行名，每台设备写 {@code <runName>-<序号>} */
+    public void setJournal(File dir, String runName) {
+        this.journalDir = dir;
+        this.journalRun = runName;
+    }
+
+    /** 每轮结果导出（start() 前调用）；结束时由调用方 finish */
+    public void setExporter(RunExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    public RadioArbiter getArbiter() { return arbiter; }
+
+    public int getDeviceCount() { return controllers.size(); }
+
+    public List<TestController> getControllers() { return controllers; }
+
+    public void start() {
+        startedLoops = resumedLoops;
+        doneCount    = 0;
+        dispatchLatency.reset();
+        scheduler.start(dispatchLatency);
+        for (int i = 0; i < controllers.size(); i++) {
+            TestController c = controllers.get(i);
+            c.setTargetLoops(targetLoops);
+            c.setDirectConnect(directConnect);
+            c.setLoopShape(loopShape);
+            c.setStreamProbe(streamHoldMs);
+            c.setSpp(sppUuid, sppFrameBytes);
+            CooldownPolicy policy = new CooldownPolicy(cooldownMode);
+            policy.setLoopsPerHour(loopsPerHour);
+            c.setCooldownPolicy(policy);
+            c.setTimeoutPolicy(new TimeoutPolicy(timeoutMode));
+            c.setExporter(exporter);
+            if (journalDir != null) c.setJournal(new EventJournal(journalDir, journalName(journalRun, i)));
+            c.start();
+        }
+    }
+
+    public void stop() {
+        for (TestController c : controllers) c.stop();
+    }
+
+    /** 所有设备的汇总统计（UI 每秒刷新时调用，返回新对象） */
+    public TestStatistics getAggregateStatistics() {
+        List<TestStatistics> parts = new ArrayList<>(controllers.size());
+        for (TestController c : controllers) parts.add(c.getStatistics());
+        TestStatistics sum = TestStatistics.aggregate(parts);
+        sum.getDispatchLatency().addFrom(dispatchLatency);
+        sum.setLoopShape(loopShape);
+        return sum;
+    }
+
+    /** 每台设备一行：成功/失败/成功率 */
+    public String getDeviceSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < controllers.size(); i++) {
+            TestStatistics s = controllers.get(i).getStatistics();
+            sb.append(String.format(Locale.getDefault(), "%s  成功:%d 失败:%d %s",
+                    labels.get(i), s.getSuccessCount(), s.getFailureCount(), s.getSuccessRate()));
+            if (s.getLastRssi() != BluetoothBackend.RSSI_UNKNOWN) sb.append(" RSSI ").append(s.getLastRssi()).append("dBm");
+            sb.append('\n');
+        }
+        return sb.toString().trim();
+    }
+
+    /*──────────────────────────────
+     *  单设备回调 → 会话回调
+     *──────────────────────────────*/
+
+    private final class DeviceCallback implements TestController.Callback {
+        private final String prefix;
+
+        DeviceCallback(String prefix) { this.prefix = prefix; }
+
+        @Override
+        public void onLoopStart(int loop, int total) {
+            startedLoops++;
+            callback.onLoopStart(startedLoops, targetLoops > 0 ? targetLoops * controllers.size() : 0);
+        }
+
+        @Override
+        public void onStateChange(String stateDesc) {
+            callback.onStateChange(prefix + stateDesc);
+        }
+
+        @Override
+        public void onLoopSuccess(int loop, long costMs) {
+            callback.onLoopSuccess(loop, costMs);
+        }
+
+        @Override
+        public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {
+            callback.onLoopFailure(loop, reason, prefix + detail);
+        }
+
+        @Override
+        public void onAllDone(TestStatistics stats) {
+            if (++doneCount < controllers.size()) return;
+            scheduler.quit();
+            callback.onAllDone(getAggregateStatistics());
+        }
+
+        @Override
+        public void onLog(LogRecord record) {
+            callback.onLog(record);     // 设备标签已在记录里
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.btstress;
+
+/**
+ * 控制器的阶段超时定时器（纯Java）
+ *
+ * 每个阶段一个定时槽，arm() 时发一个新令牌，cancel() 只撤销该阶段自己的任务，
+ * 不会像 Scheduler.cancelAll() 那样连带清掉已排好的下一轮、资源授予或尚未分发的广播。
+ *
+ * 另有一个轮次代号：每轮开始（及停止）时 {@link #newGeneration} 递增，并撤销所有阶段的定时；
+ * 到点的任务先核对令牌和代号，不是当前的就丢弃并通知 onStale——正常情况下撤销是同步的，
+ * 这只是兜底，计数不为 0 说明有定时器逃过了撤销。{@link #guard} 给其他延时任务（下一轮、
+ * 资源授予）加同样的代号检查。
+ *
+ * 只在调度线程上使用，无需加锁。
+ */
+public final class PhaseTimers {
+
+    private static final TestStatistics.Phase[] PHASES = TestStatistics.Phase.values();
+
+    private final Scheduler  scheduler;
+    private final Runnable   onStale;
+    private final Runnable[] pending = new Runnable[PHASES.length];   // 已投递的包装任务，null=未启动
+    private final long[]     tokens  = new long[PHASES.length];
+    private       long       nextToken  = 0;
+    private       int        generation = 0;
+
+    /** onStale 在过期任务被丢弃时回调（调度线程） */
+    public PhaseTimers(Scheduler scheduler, Runnable onStale) {
+        this.scheduler = scheduler;
+        this.onStale   = onStale;
+    }
+
+    /** 启动该阶段的超时（已有的先撤销），delayMs 后在调度线程执行 task */
+    public void arm(TestStatistics.Phase phase, long delayMs, final Runnable task) {
+        final int i = phase.ordinal();
+        cancel(phase);
+        final long token = ++nextToken;
+        final int  gen   = generation;
+        tokens[i] = token;
+        pending[i] = () -> {
+            if (tokens[i] != token || gen != generation) {
+                onStale.run();
+                return;
+            }
+            pending[i] = null;
+            tokens[i]  = 0;
+            task.run();
+        };
+        scheduler.postDelayed(pending[i], delayMs);
+    }
+
+    /**
+     * 撤销该阶段的超时
+     * @return true 表示确实撤销了一个未到点的定时
+     */
+    public boolean cancel(TestStatistics.Phase phase) {
+        int i = phase.ordinal();
+        Runnable r = pending[i];
+        tokens[i] = 0;
+        if (r == null) return false;
+        pending[i] = null;
+        scheduler.cancel(r);
+        return true;
+    }
+
+    /** 撤销所有阶段的超时 */
+    public void cancelAll() {
+        for (TestStatistics.Phase p : PHASES) cancel(p);
+    }
+
+    /** 进入新一轮（或停止）：撤销所有定时，之前轮次的任务全部作废 */
+    public void newGeneration() {
+        cancelAll();
+        generation++;
+    }
+
+    public int getGeneration() { return generation; }
+
+    /** 包装一个延时任务：执行时轮次已变则丢弃并通知 onStale */
+    public Runnable guard(final Runnable task) {
+        final int gen = generation;
+        return () -> {
+            if (gen != generation) {
+                onStale.run();
+                return;
+            }
+            task.run();
+        };
+    }
+}
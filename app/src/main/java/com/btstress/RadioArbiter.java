@@ -0,0 +1,126 @@
+package com.btstress;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 射频共享资源仲裁器（多耳机并发压测）
+ *
+ * 同一部手机只有一个射频：同一时刻只能有一个 inquiry，同时发起多路配对
+ * 会互相拖慢甚至 Page Timeout，A2DP 同时连接数也受系统限制。
+ * 各设备的控制器在进入对应阶段前申请资源，占用方释放后按先来先得授予下一个等待者，
+ * 于是一台耳机配对的同时另一台可以做连接/断开，总吞吐随耳机数增长。
+ *
+ * 也负责设备认领：一个地址只归属一个控制器，避免按名称匹配时两个控制器抢同一只耳机。
+ * 所有方法都在调度线程上调用，无需加锁。
+ */
+public class RadioArbiter {
+
+    /** 扫描结束后留给 DISCOVERY_FINISHED 广播落地的间隔，避免下一个扫描者误收 */
+    private static final long DISCOVERY_SETTLE_MS = 500;
+
+    /** 共享资源 */
+    public enum Resource {
+        DISCOVERY("扫描"),
+        BOND("配对"),
+        A2DP("A2DP连接"),
+        GATT_BURST("GATT吞吐测试"),   // 同时跑吞吐测试会互相分走空口时间
+        AUDIO("测试音"),              // 本机只有一路媒体输出，同一时刻只能探测一台耳机
+        SPP("SPP吞吐测试");           // 同 GATT_BURST，多台设备同时收发会互相分走空口时间
+
+        public final String desc;
+        Resource(String desc) { this.desc = desc; }
+    }
+
+    private static final class Waiter {
+        final Object   owner;
+        final Runnable onGranted;
+
+        Waiter(Object owner, Runnable onGranted) {
+            this.owner     = owner;
+            this.onGranted = onGranted;
+        }
+    }
+
+    private final Scheduler scheduler;
+    private final List<List<Object>>       holders = new ArrayList<>();
+    private final List<ArrayDeque<Waiter>> waiters = new ArrayList<>();
+    private final Map<String, Object>      claims  = new HashMap<>();
+
+    public RadioArbiter(Scheduler scheduler) {
+        this.scheduler = scheduler;
+        for (Resource r : Resource.values()) {
+            holders.add(new ArrayList<>());
+            waiters.add(new ArrayDeque<Waiter>());
+        }
+    }
+
+    /**
+     * 申请资源
+     * @return true 表示立即获得（不会回调 onGranted）；false 表示已排队，获得时在调度线程回调 onGranted
+     */
+    public boolean acquire(Resource r, Object owner, Runnable onGranted) {
+        List<Object> h = holders.get(r.ordinal());
+        if (h.contains(owner)) return true;
+        if (h.isEmpty() && waiters.get(r.ordinal()).isEmpty()) {
+            h.add(owner);
+            return true;
+        }
+        waiters.get(r.ordinal()).add(new Waiter(owner, onGranted));
+        return false;
+    }
+
+    /** 释放资源，并授予下一个等待者 */
+    public void release(Resource r, Object owner) {
+        if (!holders.get(r.ordinal()).remove(owner)) return;
+        grantNext(r);
+    }
+
+    public boolean holds(Resource r, Object owner) {
+        return holders.get(r.ordinal()).contains(owner);
+    }
+
+    /** 释放 owner 持有的全部资源并撤销其排队请求（失败/停止时调用） */
+    public void releaseAll(Object owner) {
+        for (Resource r : Resource.values()) {
+            Iterator<Waiter> it = waiters.get(r.ordinal()).iterator();
+            while (it.hasNext()) {
+                if (it.next().owner == owner) it.remove();
+            }
+            release(r, owner);
+        }
+    }
+
+    /** 认领设备地址，已被其他控制器认领时返回 false */
+    public boolean claimDevice(String address, Object owner) {
+        Object cur = claims.get(address);
+        if (cur != null && cur != owner) return false;
+        claims.put(address, owner);
+        return true;
+    }
+
+    /** 释放 owner 认领的全部设备 */
+    public void releaseDevices(Object owner) {
+        Iterator<Map.Entry<String, Object>> it = claims.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() == owner) it.remove();
+        }
+    }
+
+    private void grantNext(final Resource r) {
+        List<Object> h = holders.get(r.ordinal());
+        ArrayDeque<Waiter> q = waiters.get(r.ordinal());
+        if (h.isEmpty() && !q.isEmpty()) {
+            final Waiter w = q.poll();
+            h.add(w.owner);
+            // 异步授予：避免在释放方的调用栈里重入另一个控制器
+            scheduler.postDelayed(() -> {
+                if (holds(r, w.owner)) w.onGranted.run();
+            }, r == Resource.DISCOVERY ? DISCOVERY_SETTLE_MS : 0);
+        }
+    }
+}
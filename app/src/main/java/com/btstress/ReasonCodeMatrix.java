@@ -0,0 +1,255 @@
+package com.btstress;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 原始原因码/状态码分布（纯Java）：按 (类别, 阶段, 原始码) 计数
+ *
+ * FailReason 只是几个粗分类，不同厂商 ROM 对 bond 原因码、HCI 断开原因的映射各不相同，
+ * 这里保留原始值的完整分布，便于对比不同协议栈。类别见 {@link Kind}；阶段为
+ * {@link TestStatistics.Phase} 的下标，事件发生在阶段之外（空闲/排队）时记在 {@link #OUTSIDE}。
+ *
+ * 计数放在开放寻址的基本类型数组里（long 键 + int 计数），记录一次只是一次哈希探测，
+ * 不分配对象；不同的码只有几十个，数组很小。控制器线程写入、主线程读取，方法加锁。
+ */
+public final class ReasonCodeMatrix {
+
+    /** 计数类别 */
+    public enum Kind {
+        BOND_REASON("bond原因"),       // BOND_NONE 携带的 EXTRA_REASON
+        A2DP_STATE("A2DP状态"),        // 每次 A2DP 状态变化的新状态
+        A2DP_SEQUENCE("A2DP序列"),     // 一个阶段内 A2DP 状态依次变化的序列
+        ACL_REASON("ACL断开原因"),     // ACL_DISCONNECTED 携带的 HCI 原因码，-1=ROM未提供
+        GATT_STATUS("GATT状态码"),     // GATT 断开时的 status，及 MTU/服务发现/写操作失败的 status
+        GATT_MTU("MTU");               // 协商成功的 MTU
+
+        public final String desc;
+        Kind(String desc) { this.desc = desc; }
+    }
+
+    private static final TestStatistics.Phase[] PHASES = TestStatistics.Phase.values();
+    /** 阶段之外的行号 */
+    public static final int OUTSIDE = PHASES.length;
+
+    /** A2DP 序列编码：前导 1 + 每个状态 3 位，最多 9 个状态，再多时置溢出位 */
+    private static final int SEQ_EMPTY    = 1;
+    private static final int SEQ_MAX      = 9;
+    private static final int SEQ_OVERFLOW = 1 << 30;
+
+    private static final long EMPTY_KEY    = -1;
+    private static final int  MAX_ENTRIES  = 4096;   // 防止异常 ROM 刷出大量不同的码
+
+    private long[] keys   = newKeys(64);
+    private int[]  counts = new int[64];
+    private int    size   = 0;
+    private int    overflow = 0;                     // 超出 MAX_ENTRIES 后丢弃的次数
+
+    // 正在累积的 A2DP 序列（每个控制器一份统计，不参与汇总）
+    private int seqRow  = -1;
+    private int seqCode = SEQ_EMPTY;
+
+    private static long[] newKeys(int n) {
+        long[] k = new long[n];
+        Arrays.fill(k, EMPTY_KEY);
+        return k;
+    }
+
+    private static long key(Kind kind, int row, int code) {
+        return ((long) kind.ordinal() << 40) | ((long) row << 32) | (code & 0xFFFFFFFFL);
+    }
+
+    /** 记录一次原始码（row 为阶段下标或 OUTSIDE） */
+    public synchronized void record(Kind kind, int row, int code) {
+        add(key(kind, row, code), 1);
+    }
+
+    private void add(long k, int n) {
+        int mask = keys.length - 1;
+        int i = mix(k) & mask;
+        while (keys[i] != EMPTY_KEY) {
+            if (keys[i] == k) {
+                counts[i] += n;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= MAX_ENTRIES) {
+            overflow += n;
+            return;
+        }
+        keys[i]   = k;
+        counts[i] = n;
+        if (++size * 2 > keys.length) grow();
+    }
+
+    private static int mix(long k) {
+        long h = k * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void grow() {
+        long[] oldKeys   = keys;
+        int[]  oldCounts = counts;
+        keys   = newKeys(oldKeys.length * 2);
+        counts = new int[oldKeys.length * 2];
+        size   = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) add(oldKeys[i], oldCounts[i]);
+        }
+    }
+
+    /*──────────────────────────────
+     *  A2DP 状态序列
+     *──────────────────────────────*/
+
+    /** 一次 A2DP 状态变化：计入单个状态，并接到本阶段的序列后面（换阶段时先结束上一段） */
+    public synchronized void recordA2dpState(int row, int state) {
+        add(key(Kind.A2DP_STATE, row, state), 1);
+        if (row != seqRow) flushSequence();
+        seqRow = row;
+        if ((seqCode & SEQ_OVERFLOW) != 0) return;
+        if (seqCode >= 1 << (3 * SEQ_MAX)) {
+            seqCode |= SEQ_OVERFLOW;
+        } else {
+            seqCode = (seqCode << 3) | Math.max(0, Math.min(7, state));
+        }
+    }
+
+    /**
+     * 阶段切换或本轮结束：把正在累积的序列计入分布
+     * 连接阶段没有任何 A2DP 事件也记一次（"无"），超时往往就是这种情况。
+     */
+    public synchronized void endA2dpSequence(int nextRow) {
+        if (nextRow == seqRow) return;
+        flushSequence();
+        seqRow = nextRow;
+    }
+
+    private void flushSequence() {
+        if (seqRow >= 0 && (seqCode != SEQ_EMPTY || seqRow == TestStatistics.Phase.CONNECT.ordinal())) {
+            add(key(Kind.A2DP_SEQUENCE, seqRow, seqCode), 1);
+        }
+        seqRow  = -1;
+        seqCode = SEQ_EMPTY;
+    }
+
+    /*──────────────────────────────
+     *  汇总 / 读取
+     *──────────────────────────────*/
+
+    public synchronized void reset() {
+        Arrays.fill(keys, EMPTY_KEY);
+        Arrays.fill(counts, 0);
+        size     = 0;
+        overflow = 0;
+        seqRow   = -1;
+        seqCode  = SEQ_EMPTY;
+    }
+
+    /** 累加另一份分布（多设备汇总、断点恢复），不含对方正在累积的序列 */
+    public synchronized void addFrom(ReasonCodeMatrix p) {
+        synchronized (p) {
+            for (int i = 0; i < p.keys.length; i++) {
+                if (p.keys[i] != EMPTY_KEY) add(p.keys[i], p.counts[i]);
+            }
+            overflow += p.overflow;
+        }
+    }
+
+    public synchronized int getCount(Kind kind, int row, int code) {
+        long k = key(kind, row, code);
+        int mask = keys.length - 1;
+        for (int i = mix(k) & mask; keys[i] != EMPTY_KEY; i = (i + 1) & mask) {
+            if (keys[i] == k) return counts[i];
+        }
+        return 0;
+    }
+
+    public synchronized boolean isEmpty() { return size == 0; }
+
+    /** 遍历回调（按类别、阶段、次数从多到少） */
+    public interface Visitor {
+        void onCell(Kind kind, int row, int code, int count);
+    }
+
+    public void forEach(Visitor v) {
+        long[] k;
+        int[]  c;
+        synchronized (this) {
+            k = new long[size];
+            c = new int[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY_KEY) continue;
+                k[n] = keys[i];
+                c[n] = counts[i];
+                n++;
+            }
+        }
+        // 不同的码只有几十个，插入排序即可
+        for (int i = 1; i < k.length; i++) {
+            long ki = k[i];
+            int  ci = c[i];
+            int j = i - 1;
+            while (j >= 0 && before(ki, ci, k[j], c[j])) {
+                k[j + 1] = k[j];
+                c[j + 1] = c[j];
+                j--;
+            }
+            k[j + 1] = ki;
+            c[j + 1] = ci;
+        }
+        Kind[] kinds = Kind.values();
+        for (int i = 0; i < k.length; i++) {
+            v.onCell(kinds[(int) (k[i] >>> 40)], (int) ((k[i] >>> 32) & 0xFF), (int) k[i], c[i]);
+        }
+    }
+
+    /** 先按类别/阶段，再按次数从多到少，最后按原始码 */
+    private static boolean before(long k1, int c1, long k2, int c2) {
+        long g1 = k1 >>> 32, g2 = k2 >>> 32;
+        if (g1 != g2) return g1 < g2;
+        if (c1 != c2) return c1 > c2;
+        return (int) k1 < (int) k2;
+    }
+
+    public static String rowName(int row) {
+        return row >= 0 && row < PHASES.length ? PHASES[row].desc : "阶段外";
+    }
+
+    /** 原始码的显示文字；A2DP 序列解码为 "1→2→0" */
+    public static String codeText(Kind kind, int code) {
+        if (kind != Kind.A2DP_SEQUENCE) return String.valueOf(code);
+        boolean more = (code & SEQ_OVERFLOW) != 0;
+        code &= ~SEQ_OVERFLOW;
+        if (code == SEQ_EMPTY) return "无";
+        StringBuilder sb = new StringBuilder();
+        int bits = 31 - Integer.numberOfLeadingZeros(code);   // 去掉前导 1
+        for (int shift = bits - 3; shift >= 0; shift -= 3) {
+            if (sb.length() > 0) sb.append('→');
+            sb.append((code >>> shift) & 7);
+        }
+        if (more) sb.append('…');
+        return sb.toString();
+    }
+
+    /** 每个 (类别, 阶段) 一行，如 "配对 bond原因: 6×12 14×3" */
+    public String toSummary() {
+        final StringBuilder sb = new StringBuilder();
+        final int[] group = {-1};
+        forEach((kind, row, code, count) -> {
+            int g = kind.ordinal() << 8 | row;
+            if (g != group[0]) {
+                if (group[0] >= 0) sb.append('\n');
+                sb.append(rowName(row)).append(' ').append(kind.desc).append(':');
+                group[0] = g;
+            }
+            sb.append(' ').append(codeText(kind, code)).append('×').append(count);
+        });
+        int lost;
+        synchronized (this) { lost = overflow; }
+        if (lost > 0) sb.append(String.format(Locale.getDefault(), "\n(不同原因码过多，另有%d次未计入)", lost));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,223 @@
+package com.btstress;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 滑动窗口统计（纯Java）：最近 N 轮和最近 T 分钟的成功率、轮/小时、平均每轮耗时
+ *
+ * 最近 N 轮用环形数组保存每轮的结果、耗时和结束时间，新一轮进、最旧一轮出时各加减一次
+ * 累计值；最近 T 分钟按固定时长分桶，桶号取 墙钟/桶长，时间前进时清掉过期的桶。
+ * 两者每轮都是 O(1)（清桶最多一圈），内存只与 N 和桶数有关，与总轮数无关。
+ *
+ * 控制器线程写入、主线程读取，方法加锁（每轮一次，基本无竞争）。
+ */
+public final class RollingWindow {
+
+    public static final int  DEFAULT_LOOPS     = 100;
+    public static final long DEFAULT_WINDOW_MS = 10 * 60_000L;
+    private static final int BUCKETS           = 60;
+
+    /*──────────────────────────────
+     *  最近 N 轮
+     *──────────────────────────────*/
+
+    private final boolean[] ringOk;
+    private final long[]    ringCost;
+    private final long[]    ringEnd;     // 墙钟 ms
+    private int  head    = 0;            // 最旧的一轮
+    private int  size    = 0;
+    private int  okSum   = 0;
+    private long costSum = 0;
+
+    /*──────────────────────────────
+     *  最近 T 分钟
+     *──────────────────────────────*/
+
+    private final long  windowMs;
+    private final long  bucketMs;
+    private final int[]  bucketLoops = new int[BUCKETS];
+    private final int[]  bucketOk    = new int[BUCKETS];
+    private final long[] bucketCost  = new long[BUCKETS];
+    private long lastBucket = -1;        // 最新的桶号（墙钟/桶长），-1=还没有数据
+    private int  timeLoops  = 0;
+    private int  timeOk     = 0;
+    private long timeCost   = 0;
+    private long firstTime  = 0;         // 第一轮开始的墙钟，窗口未满时按它折算每小时轮数
+    private long lastTime   = 0;         // 最近一轮结束的墙钟
+
+    public RollingWindow() {
+        this(DEFAULT_LOOPS, DEFAULT_WINDOW_MS);
+    }
+
+    public RollingWindow(int loops, long windowMs) {
+        loops = Math.max(1, loops);
+        this.ringOk   = new boolean[loops];
+        this.ringCost = new long[loops];
+        this.ringEnd  = new long[loops];
+        this.bucketMs = Math.max(1, windowMs / BUCKETS);
+        this.windowMs = bucketMs * BUCKETS;
+    }
+
+    /** 记录一轮结果，endTime 为本轮结束的墙钟 */
+    public synchronized void record(boolean success, long costMs, long endTime) {
+        costMs = Math.max(0, costMs);
+        // 最近 N 轮：满了先减掉最旧的一轮
+        int at;
+        if (size == ringOk.length) {
+            at = head;
+            if (ringOk[at]) okSum--;
+            costSum -= ringCost[at];
+            head = (head + 1) % ringOk.length;
+        } else {
+            at = (head + size) % ringOk.length;
+            size++;
+        }
+        ringOk[at]   = success;
+        ringCost[at] = costMs;
+        ringEnd[at]  = endTime;
+        if (success) okSum++;
+        costSum += costMs;
+
+        // 最近 T 分钟
+        if (firstTime == 0 || endTime - costMs < firstTime) firstTime = endTime - costMs;
+        lastTime = Math.max(lastTime, endTime);
+        addToBucket(endTime / bucketMs, 1, success ? 1 : 0, costMs);
+    }
+
+    public synchronized void reset() {
+        head = size = okSum = 0;
+        costSum = 0;
+        Arrays.fill(bucketLoops, 0);
+        Arrays.fill(bucketOk, 0);
+        Arrays.fill(bucketCost, 0);
+        lastBucket = -1;
+        timeLoops = timeOk = 0;
+        timeCost = firstTime = lastTime = 0;
+    }
+
+    /** 把 bucket 号对应的桶推进到最新，清掉滑出窗口的桶 */
+    private void advance(long bucket) {
+        if (lastBucket < 0) {
+            lastBucket = bucket;
+            return;
+        }
+        long steps = Math.min(bucket - lastBucket, BUCKETS);
+        for (long k = 1; k <= steps; k++) {
+            int i = (int) ((lastBucket + k) % BUCKETS);
+            timeLoops -= bucketLoops[i];
+            timeOk    -= bucketOk[i];
+            timeCost  -= bucketCost[i];
+            bucketLoops[i] = bucketOk[i] = 0;
+            bucketCost[i]  = 0;
+        }
+        if (bucket > lastBucket) lastBucket = bucket;
+    }
+
+    private void addToBucket(long bucket, int loops, int ok, long cost) {
+        advance(bucket);
+        if (lastBucket - bucket >= BUCKETS) return;   // 已滑出窗口（多设备汇总时可能乱序）
+        int i = (int) (bucket % BUCKETS);
+        bucketLoops[i] += loops;
+        bucketOk[i]    += ok;
+        bucketCost[i]  += cost;
+        timeLoops += loops;
+        timeOk    += ok;
+        timeCost  += cost;
+    }
+
+    /**
+     * 累加另一个窗口（多设备汇总、断点恢复）
+     * 最近 N 轮按结束时间合并后保留最新的 N 轮；时间桶按同一桶号相加。
+     */
+    public synchronized void addFrom(RollingWindow p) {
+        synchronized (p) {
+            int n = size + p.size;
+            long[][] all = new long[n][];
+            for (int i = 0; i < size; i++) {
+                int j = (head + i) % ringOk.length;
+                all[i] = new long[]{ringEnd[j], ringCost[j], ringOk[j] ? 1 : 0};
+            }
+            for (int i = 0; i < p.size; i++) {
+                int j = (p.head + i) % p.ringOk.length;
+                all[size + i] = new long[]{p.ringEnd[j], p.ringCost[j], p.ringOk[j] ? 1 : 0};
+            }
+            Arrays.sort(all, (x, y) -> Long.compare(x[0], y[0]));
+            head = size = okSum = 0;
+            costSum = 0;
+            for (int i = Math.max(0, n - ringOk.length); i < n; i++) {
+                ringEnd[size]  = all[i][0];
+                ringCost[size] = all[i][1];
+                ringOk[size]   = all[i][2] != 0;
+                okSum   += (int) all[i][2];
+                costSum += all[i][1];
+                size++;
+            }
+
+            if (p.lastBucket >= 0 && p.bucketMs == bucketMs) {
+                for (long b = p.lastBucket - BUCKETS + 1; b <= p.lastBucket; b++) {
+                    if (b < 0) continue;
+                    int i = (int) (b % BUCKETS);
+                    if (p.bucketLoops[i] > 0) addToBucket(b, p.bucketLoops[i], p.bucketOk[i], p.bucketCost[i]);
+                }
+            }
+            if (p.firstTime != 0 && (firstTime == 0 || p.firstTime < firstTime)) firstTime = p.firstTime;
+            lastTime = Math.max(lastTime, p.lastTime);
+        }
+    }
+
+    /*──────────────────────────────
+     *  读取
+     *──────────────────────────────*/
+
+    public synchronized int getLoopCount() { return size; }
+
+    /** 最近 N 轮的成功率（%），没有数据时为 -1 */
+    public synchronized double getLoopSuccessRate() {
+        return size == 0 ? -1 : okSum * 100.0 / size;
+    }
+
+    /** 最近 N 轮：从其中最早一轮开始到最新一轮结束，折算每小时轮数（含冷却） */
+    public synchronized double getLoopsPerHour() {
+        if (size == 0) return 0;
+        int oldest = head;
+        int newest = (head + size - 1) % ringOk.length;
+        long span = ringEnd[newest] - (ringEnd[oldest] - ringCost[oldest]);
+        return span <= 0 ? 0 : size * 3600_000.0 / span;
+    }
+
+    public synchronized long getLoopMeanMs() {
+        return size == 0 ? 0 : costSum / size;
+    }
+
+    /**
+     * 最近 T 分钟的轮数；now 为当前墙钟，早于最近一轮（如虚拟时钟跑在前面）时按最近一轮算，
+     * 长时间没有轮次结束时窗口会逐渐清空
+     */
+    public synchronized int getTimeLoopCount(long now) {
+        advance(Math.max(now, lastTime) / bucketMs);
+        return timeLoops;
+    }
+
+    public synchronized String toSummary(long now) {
+        if (size == 0) return "";
+        now = Math.max(now, lastTime);
+        advance(now / bucketMs);
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.getDefault(), "最近%d轮: %.1f%% %.0f轮/h 平均%.1fs",
+                size, okSum * 100.0 / size, getLoopsPerHour(), costSum / (double) size / 1000));
+        sb.append('\n');
+        long minutes = windowMs / 60_000;
+        if (timeLoops == 0) {
+            sb.append(String.format(Locale.getDefault(), "最近%d分钟: 无完成的轮次", minutes));
+        } else {
+            // 运行还不满一个窗口时按实际时长折算
+            long span = Math.min(windowMs, now - firstTime);
+            sb.append(String.format(Locale.getDefault(), "最近%d分钟(%d轮): %.1f%% %.0f轮/h 平均%.1fs",
+                    minutes, timeLoops, timeOk * 100.0 / timeLoops,
+                    span <= 0 ? 0 : timeLoops * 3600_000.0 / span,
+                    timeCost / (double) timeLoops / 1000));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,206 @@
+package com.btstress;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+/**
+ * 一次压测的运行配置（开始界面的输入项 + 事件日志位置）
+ *
+ * 压测开始时写入断点文件，正常结束/手动停止时删除；进程被杀后服务被 START_STICKY 拉起，
+ * 读到断点文件即说明有未完成的运行，按配置重建控制器，再从事件日志还原统计与轮次继续。
+ * 同样的内容也写在蓝牙事件轨迹开头（{@link #toText}），重放时据此配置控制器。
+ */
+public class RunConfig {
+
+    public static final int SPP_FRAME_BYTES = 512;   // 小于 RFCOMM 常见的帧长上限，一帧不拆包
+
+    public String  name             = "";
+    public String  address          = "";
+    public int     loops            = 0;      // 0=无限循环
+    public boolean directConnect    = false;
+    public String  loopShape        = "";     // TestStatistics.LoopShape 名称，空=完整循环
+    public int     streamHoldSec    = 0;      // 音频起播探测的播放保持秒数，0=不探测
+    public String  sppUuid          = "";     // SPP 循环的服务 UUID，空=标准 SPP
+    public boolean adaptiveCooldown = true;
+    public boolean adaptiveTimeout  = false;
+    public int     loopsPerHour     = 0;      // 0=不限节拍
+    public String  journalDir       = "";
+    public String  runName          = "";
+    public String  exportFormat     = "";     // RunExporter.Format 名称，空=不导出
+    public boolean exportGzip       = false;
+    public String  exportDir        = "";
+    public boolean recordTrace      = false;  // 记录蓝牙事件轨迹（TraceRecorder）
+
+    /** 名称或地址填了多个（逗号/分号/空格分隔）时为多耳机并发模式 */
+    public boolean isMulti() {
+        return getNames().length > 1 || getAddresses().length > 1;
+    }
+
+    public String[] getNames()     { return splitTargets(name); }
+    public String[] getAddresses() { return splitTargets(address); }
+
+    public TestStatistics.LoopShape getLoopShape() {
+        for (TestStatistics.LoopShape s : TestStatistics.LoopShape.values()) {
+            if (s.name().equals(loopShape)) return s;
+        }
+        return TestStatistics.LoopShape.FULL;
+    }
+
+    public CooldownPolicy.Mode getCooldownMode() {
+        return adaptiveCooldown ? CooldownPolicy.Mode.ADAPTIVE : CooldownPolicy.Mode.FIXED;
+    }
+
+    public TimeoutPolicy.Mode getTimeoutMode() {
+        return adaptiveTimeout ? TimeoutPolicy.Mode.ADAPTIVE : TimeoutPolicy.Mode.FIXED;
+    }
+
+    /** 导出格式，不导出时为 null */
+    public RunExporter.Format getExportFormat() {
+        for (RunExporter.Format f : RunExporter.Format.values()) {
+            if (f.name().equals(exportFormat)) return f;
+        }
+        return null;
+    }
+
+    private static String[] splitTargets(String text) {
+        return text.isEmpty() ? new String[0] : text.split("[,;，；\\s]+");
+    }
+
+    /** 按配置设置单耳机控制器（筛选、轮数、循环形态与策略），不含事件日志/导出/续跑 */
+    public void configure(TestController c) {
+        c.setFilter(name, address);
+        c.setTargetLoops(loops);
+        c.setDirectConnect(directConnect);
+        c.setLoopShape(getLoopShape());
+        c.setStreamProbe(streamHoldSec * 1000L);
+        c.setSpp(sppUuid, SPP_FRAME_BYTES);
+        CooldownPolicy cooldown = new CooldownPolicy(getCooldownMode());
+        cooldown.setLoopsPerHour(loopsPerHour);
+        c.setCooldownPolicy(cooldown);
+        c.setTimeoutPolicy(new TimeoutPolicy(getTimeoutMode()));
+    }
+
+    /** 按配置设置多耳机会话（目标按先地址后名称的顺序加入），不含事件日志/导出/续跑 */
+    public void configure(MultiDeviceSession s) {
+        for (String a : getAddresses()) s.addTarget("", a);
+        for (String n : getNames()) s.addTarget(n, "");
+        s.setTargetLoops(loops);
+        s.setDirectConnect(directConnect);
+        s.setLoopShape(getLoopShape());
+        s.setStreamProbe(streamHoldSec * 1000L);
+        s.setSpp(sppUuid, SPP_FRAME_BYTES);
+        s.setCooldown(getCooldownMode(), loopsPerHour);
+        s.setTimeoutMode(getTimeoutMode());
+    }
+
+    /*──────────────────────────────
+     *  断点文件
+     *──────────────────────────────*/
+
+    /** 原子写入：先写临时文件再改名，写到一半被杀不会留下残缺的断点 */
+    public void save(File file) throws IOException {
+        Properties p = toProperties();
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            p.store(out, "BtStressTest run checkpoint");
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("无法写入断点文件 " + file);
+    }
+
+    /** 读取断点，文件不存在或内容不完整时返回 null */
+    public static RunConfig load(File file) {
+        if (!file.isFile()) return null;
+        Properties p = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+            RunConfig c = fromProperties(p);
+            return c.runName.isEmpty() ? null : c;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** 与断点文件相同格式的文本（轨迹里的配置记录） */
+    public String toText() {
+        StringWriter w = new StringWriter();
+        try {
+            toProperties().store(w, null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);     // StringWriter 不会抛
+        }
+        return w.toString();
+    }
+
+    /** 解析 {@link #toText} 的内容，格式不对时返回 null */
+    public static RunConfig fromText(String text) {
+        Properties p = new Properties();
+        try {
+            p.load(new StringReader(text));
+            return fromProperties(p);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Properties toProperties() {
+        Properties p = new Properties();
+        p.setProperty("name", name);
+        p.setProperty("address", address);
+        p.setProperty("loops", String.valueOf(loops));
+        p.setProperty("directConnect", String.valueOf(directConnect));
+        p.setProperty("loopShape", loopShape);
+        p.setProperty("streamHoldSec", String.valueOf(streamHoldSec));
+        p.setProperty("sppUuid", sppUuid);
+        p.setProperty("adaptiveCooldown", String.valueOf(adaptiveCooldown));
+        p.setProperty("adaptiveTimeout", String.valueOf(adaptiveTimeout));
+        p.setProperty("loopsPerHour", String.valueOf(loopsPerHour));
+        p.setProperty("journalDir", journalDir);
+        p.setProperty("runName", runName);
+        p.setProperty("exportFormat", exportFormat);
+        p.setProperty("exportGzip", String.valueOf(exportGzip));
+        p.setProperty("exportDir", exportDir);
+        p.setProperty("recordTrace", String.valueOf(recordTrace));
+        return p;
+    }
+
+    private static RunConfig fromProperties(Properties p) {
+        RunConfig c = new RunConfig();
+        c.name             = p.getProperty("name", "");
+        c.address          = p.getProperty("address", "");
+        c.loops            = Integer.parseInt(p.getProperty("loops", "0"));
+        c.directConnect    = Boolean.parseBoolean(p.getProperty("directConnect", "false"));
+        c.loopShape        = p.getProperty("loopShape", "");
+        c.streamHoldSec    = Integer.parseInt(p.getProperty("streamHoldSec", "0"));
+        c.sppUuid          = p.getProperty("sppUuid", "");
+        c.adaptiveCooldown = Boolean.parseBoolean(p.getProperty("adaptiveCooldown", "true"));
+        c.adaptiveTimeout  = Boolean.parseBoolean(p.getProperty("adaptiveTimeout", "false"));
+        c.loopsPerHour     = Integer.parseInt(p.getProperty("loopsPerHour", "0"));
+        c.journalDir       = p.getProperty("journalDir", "");
+        c.runName          = p.getProperty("runName", "");
+        c.exportFormat     = p.getProperty("exportFormat", "");
+        c.exportGzip       = Boolean.parseBoolean(p.getProperty("exportGzip", "false"));
+        c.exportDir        = p.getProperty("exportDir", "");
+        c.recordTrace      = Boolean.parseBoolean(p.getProperty("recordTrace", "false"));
+        return c;
+    }
+
+    public static void clear(File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,479 @@
+package com.btstress;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 压测结果导出（每轮一行，边跑边写）
+ *
+ * 控制器每轮结束时 {@link #submit} 一行：轮次、设备、起止时间、结果、FailReason、
+ * 原始 bond 原因码、路径、RSSI 与设备类型、GATT 循环的 MTU 和吞吐、音频探测的欠载/中断次数、
+ * SPP 吞吐与往返时延，以及各阶段耗时和生效的超时（列顺序见 {@link #open} 中的表头）。
+ * 行对象放进有界队列，由独立的写线程顺序写出（CSV 或 JSON Lines，可选 gzip）；
+ * 队列满时丢弃该行并计数，从不阻塞控制器线程。
+ * 写线程只持有一个缓冲区，百万轮也是常量内存；空闲或每隔 1 秒刷一次，进程被杀最多丢最后一秒。
+ *
+ * 压测结束时 {@link #finish} 把最终统计写成 {@code <runName>.summary.json}，
+ * 其中包括 (阶段 × 原始原因码) 的完整分布（见 {@link ReasonCodeMatrix}）和 GATT/SPP 吞吐的分布。
+ *
+ * 断点续跑时，未压缩的文件以追加方式打开（CSV 不重复表头）；gzip 文件在进程被杀时没有写出结尾，
+ * 不能再追加 member（追加后整个文件都无法解压），因此续跑另起一个分段 {@code <runName>.<序号>.csv.gz}，
+ * 每段各自带表头、可单独解压，汇总里的 {@code rows_files} 按顺序列出所有分段。
+ * 中断时还在队列里、没写出的行会缺失，以事件日志为准。
+ */
+public class RunExporter {
+
+    /** 行格式 */
+    public enum Format {
+        CSV("CSV", ".csv"),
+        JSON("JSON Lines", ".jsonl");
+
+        public final String desc;
+        public final String suffix;
+        Format(String desc, String suffix) {
+            this.desc   = desc;
+            this.suffix = suffix;
+        }
+    }
+
+    /** 一轮的结果（控制器线程填好后交给写线程，之后不再修改） */
+    public static final class LoopRow {
+        public int     loop;
+        public String  device;           // 设备标签或地址，可能为 null
+        public long    startTime;        // 墙钟 ms
+        public long    endTime;
+        public boolean success;
+        public TestStatistics.FailReason reason;   // 成功时为 null
+        public int     bondReason;       // BOND_NONE 携带的原始原因码，0=没有
+        public TestStatistics.LoopPath   path;
+        public int     rssi;             // 扫描到目标时的 RSSI，BluetoothBackend.RSSI_UNKNOWN=未知
+        public int     deviceClass;      // BluetoothClass，BluetoothBackend.CLASS_UNKNOWN=未知
+        public int     gattMtu;          // GATT 循环生效的 MTU，0=没有建立 GATT 连接
+        public long    writeBps;         // 吞吐测试的写入字节/秒，-1=没有
+        public long    notifyBps;        // 通知字节/秒，-1=没有（未测试或对端不支持通知）
+        public int     streamUnderruns;  // 播放保持期间的欠载次数，-1=没有（未探测或本机无法统计）
+        public int     streamDropouts;   // 播放保持期间的中断次数，-1=没有完成播放保持
+        public long    sppBps;           // SPP 测试的发送字节/秒，-1=没有
+        public long    sppRttP50;        // SPP 往返时延 p50/p99 (ms)，-1=没有（未测试或对端不回显）
+        public long    sppRttP99;
+        public final long[] phaseMs   = new long[PHASES.length];   // -1=本轮未完成该阶段
+        public final long[] timeoutMs = new long[PHASES.length];   // 本轮各阶段生效的超时
+    }
+
+    private static final TestStatistics.Phase[] PHASES = TestStatistics.Phase.values();
+    private static final int  QUEUE_CAPACITY    = 4096;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final Object WAKE = new Object();
+
+    private final File    dir;
+    private final String  runName;
+    private final Format  format;
+    private final boolean gzip;
+    private final int     part;      // 本次写入的分段号，0=首段（只有 gzip 续跑时大于0）
+
+    private final ArrayBlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong written = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private volatile TestStatistics finalStats;
+    private volatile String         error;
+    private Thread thread;
+
+    // 以下只在写线程使用
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.ROOT);
+    private final StringBuilder    line       = new StringBuilder(256);
+    private Writer out;
+
+    public RunExporter(File dir, String runName, Format format, boolean gzip) {
+        this.dir     = dir;
+        this.runName = runName;
+        this.format  = format;
+        this.gzip    = gzip;
+        this.part    = gzip ? firstFreePart() : 0;
+    }
+
+    /** 本次写入的文件（gzip 续跑时为新的分段） */
+    public File getRowsFile()    { return partFile(part); }
+    public File getSummaryFile() { return new File(dir, runName + ".summary.json"); }
+    public long getWrittenRows() { return written.get(); }
+    public long getDroppedRows() { return dropped.get(); }
+    /** 写失败时的错误信息，正常为 null */
+    public String getError()     { return error; }
+
+    /** 启动写线程（已存在的文件追加写） */
+    public void start() {
+        thread = new Thread(this::writerLoop, "BtStressExport");
+        thread.start();
+    }
+
+    /** 提交一行（任意线程，不阻塞；队列满或已结束时丢弃） */
+    public void submit(LoopRow row) {
+        if (finalStats != null || error != null || !queue.offer(row)) dropped.incrementAndGet();
+    }
+
+    /** 压测结束：写完已提交的行后写汇总并关闭文件（不阻塞） */
+    public void finish(TestStatistics stats) {
+        if (finalStats != null) return;
+        finalStats = stats;
+        queue.offer(WAKE);
+    }
+
+    /** 等待写线程结束（测试/模拟用） */
+    public void awaitFinished(long timeoutMs) throws InterruptedException {
+        if (thread != null) thread.join(timeoutMs);
+    }
+
+    /*──────────────────────────────
+     *  写线程
+     *──────────────────────────────*/
+
+    private void writerLoop() {
+        try {
+            open();
+            long lastFlush = System.currentTimeMillis();
+            boolean dirty = false;
+            while (true) {
+                Object o = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (o instanceof LoopRow) {
+                    writeRow((LoopRow) o);
+                    written.incrementAndGet();
+                    dirty = true;
+                }
+                // 所有行都在 finish() 之前由控制器线程提交，队列空了即全部写完
+                if (finalStats != null && queue.isEmpty()) break;
+                long now = System.currentTimeMillis();
+                if (dirty && (o == null || now - lastFlush >= FLUSH_INTERVAL_MS)) {
+                    out.flush();
+                    lastFlush = now;
+                    dirty = false;
+                }
+            }
+            out.close();
+            out = null;
+            writeSummary(finalStats);
+        } catch (IOException e) {
+            error = e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (out != null) {
+                try { out.close(); } catch (IOException ignored) {}
+            }
+            queue.clear();
+        }
+    }
+
+    private File partFile(int n) {
+        return new File(dir, runName + (n == 0 ? "" : "." + n) + format.suffix + (gzip ? ".gz" : ""));
+    }
+
+    /** 第一个不存在或为空的分段号（空文件是上次刚创建就被杀，可以直接覆盖） */
+    private int firstFreePart() {
+        int n = 0;
+        while (partFile(n).length() > 0) n++;
+        return n;
+    }
+
+    private void open() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("无法创建目录 " + dir);
+        File f = getRowsFile();
+        boolean fresh = !f.exists() || f.length() == 0;
+        OutputStream os = new FileOutputStream(f, !gzip);
+        // syncFlush：flush() 时把已压缩的数据真正写出去，崩溃后已刷出的部分仍可解压
+        if (gzip) os = new GZIPOutputStream(os, 64 * 1024, true);
+        out = new BufferedWriter(new OutputStreamWriter(os, EventJournal.UTF8), 64 * 1024);
+        if (fresh && format == Format.CSV) {
+            line.setLength(0);
+            line.append("loop,device,start_time,end_time,duration_ms,outcome,fail_reason,bond_reason,path,rssi_dbm,device_class,gatt_mtu,gatt_write_bps,gatt_notify_bps,stream_underruns,stream_dropouts,spp_bps,spp_rtt_p50_ms,spp_rtt_p99_ms");
+            for (TestStatistics.Phase p : PHASES) line.append(',').append(p.name().toLowerCase(Locale.ROOT)).append("_ms");
+            for (TestStatistics.Phase p : PHASES) line.append(',').append(p.name().toLowerCase(Locale.ROOT)).append("_timeout_ms");
+            line.append('\n');
+            out.write(line.toString());
+        }
+    }
+
+    private void writeRow(LoopRow r) throws IOException {
+        StringBuilder sb = line;
+        sb.setLength(0);
+        if (format == Format.CSV) {
+            sb.append(r.loop).append(',');
+            csv(sb, r.device).append(',');
+            sb.append(timeFormat.format(new Date(r.startTime))).append(',');
+            sb.append(timeFormat.format(new Date(r.endTime))).append(',');
+            sb.append(r.endTime - r.startTime).append(',');
+            sb.append(r.success ? "success" : "failure").append(',');
+            if (r.reason != null) sb.append(r.reason.name());
+            sb.append(',').append(r.bondReason).append(',');
+            sb.append(r.path.name()).append(',');
+            if (r.rssi != BluetoothBackend.RSSI_UNKNOWN) sb.append(r.rssi);
+            sb.append(',');
+            if (r.deviceClass != BluetoothBackend.CLASS_UNKNOWN) sb.append(TestController.deviceClassText(r.deviceClass));
+            sb.append(',');
+            if (r.gattMtu > 0) sb.append(r.gattMtu);
+            sb.append(',');
+            if (r.writeBps >= 0) sb.append(r.writeBps);
+            sb.append(',');
+            if (r.notifyBps >= 0) sb.append(r.notifyBps);
+            sb.append(',');
+            if (r.streamUnderruns >= 0) sb.append(r.streamUnderruns);
+            sb.append(',');
+            if (r.streamDropouts >= 0) sb.append(r.streamDropouts);
+            sb.append(',');
+            if (r.sppBps >= 0) sb.append(r.sppBps);
+            sb.append(',');
+            if (r.sppRttP50 >= 0) sb.append(r.sppRttP50);
+            sb.append(',');
+            if (r.sppRttP99 >= 0) sb.append(r.sppRttP99);
+            for (long ms : r.phaseMs) {
+                sb.append(',');
+                if (ms >= 0) sb.append(ms);
+            }
+            for (long ms : r.timeoutMs) sb.append(',').append(ms);
+        } else {
+            sb.append("{\"loop\":").append(r.loop);
+            sb.append(",\"device\":");
+            json(sb, r.device);
+            sb.append(",\"start_time\":\"").append(timeFormat.format(new Date(r.startTime))).append('"');
+            sb.append(",\"end_time\":\"").append(timeFormat.format(new Date(r.endTime))).append('"');
+            sb.append(",\"duration_ms\":").append(r.endTime - r.startTime);
+            sb.append(",\"outcome\":\"").append(r.success ? "success" : "failure").append('"');
+            sb.append(",\"fail_reason\":");
+            json(sb, r.reason == null ? null : r.reason.name());
+            sb.append(",\"bond_reason\":").append(r.bondReason);
+            sb.append(",\"path\":\"").append(r.path.name()).append('"');
+            sb.append(",\"rssi_dbm\":");
+            if (r.rssi != BluetoothBackend.RSSI_UNKNOWN) sb.append(r.rssi); else sb.append("null");
+            sb.append(",\"device_class\":");
+            json(sb, r.deviceClass != BluetoothBackend.CLASS_UNKNOWN ? TestController.deviceClassText(r.deviceClass) : null);
+            sb.append(",\"gatt_mtu\":");
+            if (r.gattMtu > 0) sb.append(r.gattMtu); else sb.append("null");
+            sb.append(",\"gatt_write_bps\":");
+            if (r.writeBps >= 0) sb.append(r.writeBps); else sb.append("null");
+            sb.append(",\"gatt_notify_bps\":");
+            if (r.notifyBps >= 0) sb.append(r.notifyBps); else sb.append("null");
+            sb.append(",\"stream_underruns\":");
+            if (r.streamUnderruns >= 0) sb.append(r.streamUnderruns); else sb.append("null");
+            sb.append(",\"stream_dropouts\":");
+            if (r.streamDropouts >= 0) sb.append(r.streamDropouts); else sb.append("null");
+            sb.append(",\"spp_bps\":");
+            if (r.sppBps >= 0) sb.append(r.sppBps); else sb.append("null");
+            sb.append(",\"spp_rtt_p50_ms\":");
+            if (r.sppRttP50 >= 0) sb.append(r.sppRttP50); else sb.append("null");
+            sb.append(",\"spp_rtt_p99_ms\":");
+            if (r.sppRttP99 >= 0) sb.append(r.sppRttP99); else sb.append("null");
+            sb.append(",\"phases_ms\":{");
+            boolean first = true;
+            for (int i = 0; i < PHASES.length; i++) {
+                if (r.phaseMs[i] < 0) continue;
+                if (!first) sb.append(',');
+                first = false;
+                sb.append('"').append(PHASES[i].name().toLowerCase(Locale.ROOT)).append("\":").append(r.phaseMs[i]);
+            }
+            sb.append("},\"timeouts_ms\":{");
+            for (int i = 0; i < PHASES.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append('"').append(PHASES[i].name().toLowerCase(Locale.ROOT)).append("\":").append(r.timeoutMs[i]);
+            }
+            sb.append("}}");
+        }
+        sb.append('\n');
+        out.write(sb.toString());
+    }
+
+    /** 汇总文档：先写临时文件再改名 */
+    private void writeSummary(TestStatistics s) throws IOException {
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("{\n  \"run\": ");
+        json(sb, runName);
+        sb.append(",\n  \"rows_files\": [");
+        for (int i = 0; i <= part; i++) {
+            if (i > 0) sb.append(", ");
+            json(sb, partFile(i).getName());
+        }
+        sb.append(']');
+        sb.append(",\n  \"start_time\": ");
+        json(sb, s.getStartTimeMs() > 0 ? timeFormat.format(new Date(s.getStartTimeMs())) : null);
+        sb.append(",\n  \"end_time\": ");
+        json(sb, timeFormat.format(new Date()));
+        sb.append(",\n  \"loop_shape\": \"").append(s.getLoopShape().name()).append('"');
+        sb.append(",\n  \"total\": ").append(s.getTotalCount());
+        sb.append(",\n  \"success\": ").append(s.getSuccessCount());
+        sb.append(",\n  \"failure\": ").append(s.getFailureCount());
+        sb.append(",\n  \"success_rate\": ").append(s.getTotalCount() == 0 ? 0
+                : Math.round(s.getSuccessCount() * 10000.0 / s.getTotalCount()) / 100.0);
+        sb.append(",\n  \"failures\": {");
+        boolean first = true;
+        for (TestStatistics.FailReason r : TestStatistics.FailReason.values()) {
+            if (!first) sb.append(", ");
+            first = false;
+            sb.append('"').append(r.name()).append("\": ").append(s.getFailureCount(r));
+        }
+        sb.append("},\n  \"paths\": {");
+        first = true;
+        for (TestStatistics.LoopPath p : TestStatistics.LoopPath.values()) {
+            if (!first) sb.append(", ");
+            first = false;
+            sb.append('"').append(p.name()).append("\": ").append(s.getPathCount(p));
+        }
+        sb.append("},\n  \"latency_ms\": {");
+        first = true;
+        for (TestStatistics.Phase p : PHASES) {
+            first = histogram(sb, p.name().toLowerCase(Locale.ROOT), s.getPhaseLatency(p), first);
+        }
+        first = histogram(sb, "loop", s.getLoopLatency(), first);
+        first = histogram(sb, "cooldown", s.getCooldown(), first);
+        histogram(sb, "resource_wait", s.getResourceWait(), first);
+        sb.append("\n  },\n  \"throughput_bps\": {");
+        first = histogram(sb, "gatt_write", s.getGattWriteRate(), true);
+        first = histogram(sb, "gatt_notify", s.getGattNotifyRate(), first);
+        histogram(sb, "spp", s.getSppRate(), first);
+        sb.append("\n  },\n  \"spp_rtt_ms\": {");
+        first = histogram(sb, "loop_p50", s.getSppRttP50(), true);
+        histogram(sb, "loop_p99", s.getSppRttP99(), first);
+        sb.append("\n  },\n  \"stream\": {\"holds\": ").append(s.getStreamHolds());
+        sb.append(", \"glitchy\": ").append(s.getStreamGlitchyHolds());
+        sb.append(", \"underruns\": ").append(s.getStreamUnderruns());
+        sb.append(", \"dropouts\": ").append(s.getStreamDropouts()).append('}');
+        sb.append(",\n  \"gaps\": ").append(s.getGapCount());
+        sb.append(",\n  \"gap_ms\": ").append(s.getGapMs());
+        sb.append(",\n  \"stale_events\": {");
+        first = true;
+        for (TestStatistics.StaleKind k : TestStatistics.StaleKind.values()) {
+            if (!first) sb.append(", ");
+            first = false;
+            sb.append('"').append(k.name()).append("\": ").append(s.getStaleCount(k));
+        }
+        sb.append('}');
+        sb.append(",\n  \"rssi_buckets\": [");
+        first = true;
+        for (int i = 0; i < TestStatistics.getRssiBucketCount(); i++) {
+            int n = s.getRssiLoops(i);
+            if (n == 0) continue;
+            sb.append(first ? "\n    {\"bucket\": " : ",\n    {\"bucket\": ");
+            first = false;
+            json(sb, TestStatistics.getRssiBucketLabel(i));
+            sb.append(", \"loops\": ").append(n).append(", \"success\": ").append(s.getRssiSuccess(i));
+            sb.append(", \"failures\": {");
+            boolean firstReason = true;
+            for (TestStatistics.FailReason r : TestStatistics.FailReason.values()) {
+                int c = s.getRssiFailures(i, r);
+                if (c == 0) continue;
+                if (!firstReason) sb.append(", ");
+                firstReason = false;
+                sb.append('"').append(r.name()).append("\": ").append(c);
+            }
+            sb.append("}}");
+        }
+        sb.append(first ? "]" : "\n  ]");
+        sb.append(",\n  \"reason_codes\": [");
+        final StringBuilder cells = new StringBuilder();
+        s.getReasonCodes().forEach((kind, row, code, count) -> {
+            cells.append(cells.length() == 0 ? "\n    {\"kind\": \"" : ",\n    {\"kind\": \"").append(kind.name())
+                 .append("\", \"phase\": ");
+            json(cells, row < PHASES.length ? PHASES[row].name() : "OUTSIDE");
+            cells.append(", \"code\": ").append(code).append(", \"text\": ");
+            json(cells, ReasonCodeMatrix.codeText(kind, code));
+            cells.append(", \"count\": ").append(count).append('}');
+        });
+        sb.append(cells).append(cells.length() == 0 ? "]" : "\n  ]");
+        sb.append(",\n  \"transitions\": [");
+        first = true;
+        TransitionStats t = s.getTransitions();
+        for (StateMachine.State from : StateMachine.State.values()) {
+            for (StateMachine.State to : StateMachine.State.values()) {
+                LatencyHistogram h = t.getDwell(from, to);
+                if (h == null || h.getCount() == 0) continue;
+                sb.append(first ? "\n    {\"from\": \"" : ",\n    {\"from\": \"").append(from.name())
+                  .append("\", \"to\": \"").append(to.name())
+                  .append("\", \"n\": ").append(h.getCount())
+                  .append(", \"p50\": ").append(h.getPercentile(50))
+                  .append(", \"p95\": ").append(h.getPercentile(95))
+                  .append(", \"max\": ").append(h.getMax()).append('}');
+                first = false;
+            }
+        }
+        sb.append(first ? "]" : "\n  ]");
+        sb.append(",\n  \"unexpected_events\": [");
+        first = true;
+        for (StateMachine.State st : StateMachine.State.values()) {
+            for (StateMachine.Event e : StateMachine.Event.values()) {
+                int n = t.getUnexpected(st, e);
+                if (n == 0) continue;
+                sb.append(first ? "\n    {\"state\": \"" : ",\n    {\"state\": \"").append(st.name())
+                  .append("\", \"event\": \"").append(e.name())
+                  .append("\", \"count\": ").append(n).append('}');
+                first = false;
+            }
+        }
+        sb.append(first ? "]" : "\n  ]");
+        sb.append(",\n  \"rows_written\": ").append(written.get());
+        sb.append(",\n  \"rows_dropped\": ").append(dropped.get());
+        sb.append("\n}\n");
+
+        File f   = getSummaryFile();
+        File tmp = new File(f.getPath() + ".tmp");
+        Writer w = new OutputStreamWriter(new FileOutputStream(tmp), EventJournal.UTF8);
+        try {
+            w.write(sb.toString());
+        } finally {
+            w.close();
+        }
+        if (!tmp.renameTo(f)) throw new IOException("无法写入 " + f);
+    }
+
+    private static boolean histogram(StringBuilder sb, String name, LatencyHistogram h, boolean first) {
+        if (h.getCount() == 0) return first;
+        sb.append(first ? "\n    \"" : ",\n    \"").append(name).append("\": {\"n\": ").append(h.getCount())
+          .append(", \"mean\": ").append(h.getMean())
+          .append(", \"p50\": ").append(h.getPercentile(50))
+          .append(", \"p95\": ").append(h.getPercentile(95))
+          .append(", \"p99\": ").append(h.getPercentile(99))
+          .append(", \"max\": ").append(h.getMax()).append('}');
+        return false;
+    }
+
+    private static StringBuilder csv(StringBuilder sb, String v) {
+        if (v == null) return sb;
+        if (v.indexOf(',') < 0 && v.indexOf('"') < 0 && v.indexOf('\n') < 0) return sb.append(v);
+        sb.append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    private static void json(StringBuilder sb, String v) {
+        if (v == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
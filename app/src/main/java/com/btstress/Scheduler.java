@@ -0,0 +1,28 @@
+package com.btstress;
+
+/**
+ * 控制器线程调度抽象
+ *
+ * 提供单调时钟和延时任务。真机上由 {@link HandlerScheduler}（HandlerThread）实现，
+ * 模拟运行时由 {@link VirtualScheduler}（虚拟时钟）实现。
+ * 所有任务都在同一线程串行执行，控制器内部状态因此无需加锁。
+ */
+public interface Scheduler {
+
+    /** 启动调度线程；dispatchLag 用于记录任务从计划时刻到实际执行的延迟 */
+    void start(LatencyHistogram dispatchLag);
+
+    /** 停止调度线程，丢弃未执行任务 */
+    void quit();
+
+    /** 单调时钟（ms），不受系统时间修改影响 */
+    long now();
+
+    void post(Runnable task);
+    void postDelayed(Runnable task, long delayMs);
+    void cancel(Runnable task);
+    void cancelAll();
+
+    /** 当前是否处于调度线程 */
+    boolean isCurrentThread();
+}
@@ -0,0 +1,78 @@
+package com.btstress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 共享调度线程上的局部视图
+ *
+ * 多台耳机的控制器共用一个调度线程（因此共享状态无需加锁），但各自的
+ * cancel()/cancelAll() 只能撤销自己提交的任务，不能清掉其他设备的超时。
+ * start()/quit() 不影响父调度器，父调度器的生命周期由创建方管理。
+ */
+public class ScopedScheduler implements Scheduler {
+
+    private final Scheduler parent;
+    private final List<Task> pending = new ArrayList<>();
+
+    private final class Task implements Runnable {
+        final Runnable task;
+
+        Task(Runnable task) { this.task = task; }
+
+        @Override
+        public void run() {
+            synchronized (ScopedScheduler.this) {
+                if (!pending.remove(this)) return;
+            }
+            task.run();
+        }
+    }
+
+    public ScopedScheduler(Scheduler parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public void start(LatencyHistogram dispatchLag) {}
+
+    @Override
+    public void quit() {
+        cancelAll();
+    }
+
+    @Override
+    public long now() { return parent.now(); }
+
+    @Override
+    public void post(Runnable task) {
+        postDelayed(task, 0);
+    }
+
+    @Override
+    public synchronized void postDelayed(Runnable task, long delayMs) {
+        Task t = new Task(task);
+        pending.add(t);
+        parent.postDelayed(t, delayMs);
+    }
+
+    @Override
+    public synchronized void cancel(Runnable task) {
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            Task t = pending.get(i);
+            if (t.task == task) {
+                parent.cancel(t);
+                pending.remove(i);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void cancelAll() {
+        for (Task t : pending) parent.cancel(t);
+        pending.clear();
+    }
+
+    @Override
+    public boolean isCurrentThread() { return parent.isCurrentThread(); }
+}
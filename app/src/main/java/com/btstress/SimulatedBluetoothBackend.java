@@ -0,0 +1,722 @@
+package com.btstress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 模拟蓝牙后端（JVM运行，确定性）
+ *
+ * 在 {@link VirtualScheduler} 上模拟一只或多只目标耳机（见 {@link #addDevice}）和若干干扰设备：
+ * 每个阶段的响应耗时按配置的分布采样，并可按概率注入失败或无响应（hang）。
+ * 相同 seed + 相同配置 → 完全相同的事件序列，便于回归对比。
+ *
+ * 每只耳机同时是一个 BLE GATT 对端：有一个可写、可通知的测试特征，默认把写入的数据作为通知原样发回。
+ * 链路容量按连接间隔（请求高优先级后 15ms，否则 45ms）× 每个连接事件的包数 × 每包 MTU-3 字节估算，
+ * 每次写在链路空出时才完成，所以吞吐随 MTU 和连接优先级变化。吞吐测试阶段的失败率是"测试中途链路
+ * 监督超时断开"的概率，无响应率是"写操作再也不完成"的概率（每次连接第一次写时抽取）。
+ *
+ * 测试音：A2DP 已连接时按"音频起播"阶段的耗时上报 PLAYING；失败率是 startTone 返回 false（AudioTrack
+ * 不可用）的概率，无响应率是"一直不出声"的概率。播放中的中断和欠载按 {@link #setStreamGlitches} 的速率
+ * 以泊松过程注入（单独的随机源），中断表现为 NOT_PLAYING 之后 200~800ms 再 PLAYING。
+ *
+ * SPP：已配对的耳机接受 RFCOMM 连接（"RFCOMM连接"阶段的耗时/失败/无响应）。吞吐测试按 {@link #setSppLink}
+ * 的速率折算发送字节数，往返时延按配置的分布抽样（单独的随机源）；测试阶段的失败率是"测试中途连接断开"
+ * 的概率，无响应率是"停止后再也拿不到结果"的概率。
+ */
+public class SimulatedBluetoothBackend implements BluetoothBackend {
+
+    /** 一次经典蓝牙 inquiry 的时长（10.24s + 余量），超过则上报 DISCOVERY_FINISHED */
+    private static final long INQUIRY_MS = 12_800;
+
+    /** 默认 page timeout（0x2000 slots = 5.12s） */
+    private static final long PAGE_TIMEOUT_MS = 5_120;
+
+    /** Android UNBOND_REASON_REMOVED */
+    private static final int REASON_REMOVED = 9;
+
+    /** HCI 0x16 Connection Terminated By Local Host（本端断开A2DP/取消配对后的 ACL 断开原因） */
+    private static final int HCI_LOCAL_HOST = 0x16;
+
+    /** HCI 0x08 Connection Timeout（GATT 链路监督超时） */
+    private static final int HCI_CONNECTION_TIMEOUT = 0x08;
+
+    /** 连接间隔：高优先级 / 默认（Android CONNECTION_PRIORITY_HIGH / BALANCED 的上限） */
+    private static final double CI_HIGH_MS     = 15;
+    private static final double CI_BALANCED_MS = 45;
+
+    /** 吞吐测试中途断开的时刻在第一次写之后的这段时间内均匀分布 */
+    private static final long BURST_DROP_WINDOW_MS = 5_000;
+
+    /** SPP 测试结束时每轮最多抽样的往返时延个数 */
+    private static final int SPP_RTT_SAMPLES = 200;
+
+    /** 播放中断后恢复 PLAYING 所需的时间 */
+    private static final long DROPOUT_MIN_MS = 200;
+    private static final long DROPOUT_MAX_MS = 800;
+
+    /** 耗时分布 */
+    public static final class Latency {
+        private final long   minMs;
+        private final long   maxMs;
+        private final double sigma;   // >0 时为对数正态，minMs 作为中位数
+
+        private Latency(long minMs, long maxMs, double sigma) {
+            this.minMs = minMs;
+            this.maxMs = maxMs;
+            this.sigma = sigma;
+        }
+
+        public static Latency fixed(long ms)                  { return new Latency(ms, ms, 0); }
+        public static Latency uniform(long minMs, long maxMs) { return new Latency(minMs, maxMs, 0); }
+        /** 对数正态分布：中位数 medianMs，形状参数 sigma（0.3~0.8 较接近真机长尾） */
+        public static Latency logNormal(long medianMs, double sigma) { return new Latency(medianMs, medianMs, sigma); }
+
+        long sample(Random random) {
+            if (sigma > 0) return Math.round(minMs * Math.exp(sigma * random.nextGaussian()));
+            if (maxMs <= minMs) return minMs;
+            return minMs + (long) (random.nextDouble() * (maxMs - minMs));
+        }
+    }
+
+    /** 一只模拟耳机的状态 */
+    private static final class SimDevice {
+        final String address;
+        final String name;
+        int     bondState = BOND_NONE;
+        int     a2dpState = STATE_DISCONNECTED;
+        boolean inquired  = false;   // 本次配对前是否被扫描发现过（取消配对后清零）
+        double  rssiMean  = -65;     // 扫描时上报的 RSSI（正态分布，dBm）
+        double  rssiSd    = 6;
+        long    readyAt   = 0;       // 取消配对后重新进入可发现/可寻呼状态的时刻
+        int     gattState = STATE_DISCONNECTED;
+        int     gattGen   = 0;       // closeGatt()/重新连接后丢弃在途的 GATT 回调
+        int     mtu       = GATT_DEFAULT_MTU;
+        boolean highPriority = false;
+        boolean notifying    = false;
+        double  linkFreeAt   = 0;    // 链路上一包发完的时刻（ms，带小数）
+        int     burstOutcome = -1;   // 本次连接吞吐测试的结果，-1=还没有写过
+        boolean playing      = false;
+        int     toneGen      = 0;    // stopTone() 后丢弃在途的播放状态事件
+        long    toneStartAt  = 0;
+        int     sppState     = STATE_DISCONNECTED;
+        int     sppGen       = 0;    // closeSpp() 后丢弃在途的 SPP 回调
+        long    sppBurstAt   = -1;   // 本次 SPP 测试开始的时刻，-1=没有在测试
+        int     sppOutcome   = OK;
+        int     sppFrame     = 0;
+
+        SimDevice(String address, String name) {
+            this.address = address;
+            this.name    = name;
+        }
+    }
+
+    private final VirtualScheduler       clock;
+    private final Random                 random;
+    private final Random                 rssiRandom;   // 单独的随机源，不影响原有事件序列
+    private final Random                 streamRandom; // 同上，播放中断/欠载
+    private final Random                 sppRandom;    // 同上，SPP 往返时延
+    private final LatencyHistogram       sppRttScratch = new LatencyHistogram();   // 每轮抽样复用
+    private final List<SimDevice>        deviceList = new ArrayList<>();
+    private final Map<String, SimDevice> devices    = new HashMap<>();
+
+    // 各阶段配置（按 TestStatistics.Phase.ordinal() 索引）
+    private final int       phaseCount = TestStatistics.Phase.values().length;
+    private final Latency[] latency    = new Latency[phaseCount];
+    private final double[]  failRate   = new double[phaseCount];
+    private final double[]  hangRate   = new double[phaseCount];
+    private int  bondFailReason = 14;      // 配对失败时上报的 reason（默认 Page Timeout）
+    private long hangMs         = 60_000;  // 无响应的操作在此时长后以失败收场
+    private double directPageFailRate = 0; // 未经扫描直接 createBond 时寻呼失败的概率
+    private Latency recovery = null;       // 取消配对后耳机恢复可发现所需时间，null=立即
+    private int  noiseDevices   = 3;       // 每次扫描额外发现的干扰设备数
+    private int  capabilities   = CAP_ALL; // 模拟 ROM 上可用的隐藏API
+    private int     gattMaxMtu      = 247;   // 对端支持的最大 MTU
+    private double  packetsPerEvent = 4;     // 每个连接事件能传的数据包数
+    private boolean gattWritable    = true;  // 对端有可写、可通知的测试特征
+    private boolean gattEcho        = true;  // 对端把写入的数据作为通知发回
+    private double  dropoutsPerMin  = 0;     // 播放中断的平均速率
+    private double  underrunsPerMin = 0;     // AudioTrack 欠载的平均速率
+    private long    sppBytesPerSec  = 160_000;                    // SPP 发送速率（约 1.3Mbps，EDR 链路上常见）
+    private Latency sppRtt          = Latency.logNormal(25, 0.5); // SPP 往返时延
+    private boolean sppEcho         = true;  // 对端把收到的数据原样发回
+
+    /** 耳机的 BluetoothClass：Audio/Video 主类 + Wearable Headset 次类 */
+    private static final int CLASS_HEADSET = 0x0404;
+    /** 干扰设备的 BluetoothClass：Phone/Smart */
+    private static final int CLASS_PHONE   = 0x020C;
+
+    // 模拟的设备状态
+    private Listener listener;
+    private int      epoch = 0;            // close() 后丢弃所有在途事件
+    private boolean  discovering = false;
+    private int      discoveryGen = 0;     // cancelDiscovery() 后丢弃本次扫描的在途事件
+
+    public SimulatedBluetoothBackend(VirtualScheduler clock, long seed, String targetAddress, String targetName) {
+        this.clock         = clock;
+        this.random        = new Random(seed);
+        this.rssiRandom    = new Random(~seed);
+        this.streamRandom  = new Random(seed ^ 0x5DEECE66DL);
+        this.sppRandom     = new Random(seed ^ 0x9E3779B97F4A7C15L);
+        addDevice(targetAddress, targetName);
+        // 默认值大致对应真机上一只正常耳机的表现
+        setLatency(TestStatistics.Phase.SCAN,       Latency.logNormal(3_000, 0.5));
+        setLatency(TestStatistics.Phase.BOND,       Latency.logNormal(2_500, 0.4));
+        setLatency(TestStatistics.Phase.CONNECT,    Latency.logNormal(1_200, 0.4));
+        setLatency(TestStatistics.Phase.DISCONNECT, Latency.logNormal(400, 0.3));
+        setLatency(TestStatistics.Phase.UNPAIR,     Latency.logNormal(300, 0.3));
+        setLatency(TestStatistics.Phase.GATT_CONNECT,    Latency.logNormal(600, 0.4));
+        setLatency(TestStatistics.Phase.MTU,             Latency.logNormal(60, 0.3));
+        setLatency(TestStatistics.Phase.SERVICES,        Latency.logNormal(450, 0.4));
+        setLatency(TestStatistics.Phase.GATT_DISCONNECT, Latency.logNormal(150, 0.3));
+        setLatency(TestStatistics.Phase.STREAM_START,    Latency.logNormal(800, 0.4));
+        setLatency(TestStatistics.Phase.SPP_CONNECT,     Latency.logNormal(900, 0.4));
+    }
+
+    /*──────────────────────────────
+     *  配置
+     *──────────────────────────────*/
+
+    /** 追加一只模拟耳机（多设备并发压测），各设备状态独立，共用同一套耗时/失败配置 */
+    public void addDevice(String address, String name) {
+        SimDevice d = new SimDevice(address.toUpperCase(), name);
+        deviceList.add(d);
+        devices.put(d.address, d);
+    }
+
+    public void setLatency(TestStatistics.Phase phase, Latency l) { latency[phase.ordinal()] = l; }
+
+    /** 该阶段以失败结束的概率（扫描：本轮不可发现；配对：BOND_NONE；连接：DISCONNECTED；取消配对：仍为BONDED） */
+    public void setFailureRate(TestStatistics.Phase phase, double rate) { failRate[phase.ordinal()] = rate; }
+
+    /** 该阶段无任何响应的概率，用于触发控制器超时 */
+    public void setHangRate(TestStatistics.Phase phase, double rate) { hangRate[phase.ordinal()] = rate; }
+
+    public void setBondFailReason(int reason) { this.bondFailReason = reason; }
+    public void setHangMs(long ms)            { this.hangMs = ms; }
+    public void setNoiseDevices(int count)    { this.noiseDevices = count; }
+    /** 取消配对后耳机重新进入配对模式所需的时间（用于观察轮间冷却的影响） */
+    public void setRecovery(Latency l) { this.recovery = l; }
+    /** 某只耳机扫描时上报的 RSSI 均值与标准差（dBm） */
+    public void setRssi(String address, double mean, double sd) {
+        SimDevice d = devices.get(address.toUpperCase());
+        if (d == null) return;
+        d.rssiMean = mean;
+        d.rssiSd   = sd;
+    }
+    /**
+     * 模拟 ROM 上可用的隐藏API（CAP_* 位），缺失的操作抛出 BackendException
+     * 没有 A2dp.connect 时，配对成功后由"系统"自动发起 A2DP 连接（耗时/失败按连接阶段配置）。
+     */
+    public void setCapabilities(int caps) { this.capabilities = caps; }
+    /** 未经扫描直接配对时 page timeout 的概率（模拟耳机不在 page scan 状态） */
+    public void setDirectPageFailRate(double rate) { this.directPageFailRate = rate; }
+    /** GATT 对端支持的最大 MTU 和每个连接事件的包数（决定链路容量） */
+    public void setGattLink(int maxMtu, double packetsPerEvent) {
+        this.gattMaxMtu      = Math.max(GATT_DEFAULT_MTU, maxMtu);
+        this.packetsPerEvent = Math.max(1, packetsPerEvent);
+    }
+    /** 对端是否有可写的测试特征（没有时控制器跳过吞吐测试） */
+    public void setGattWritable(boolean writable) { this.gattWritable = writable; }
+    /** 对端是否把写入的数据作为通知发回 */
+    public void setGattEcho(boolean echo) { this.gattEcho = echo; }
+    /** 播放测试音期间平均每分钟的中断（NOT_PLAYING）和欠载次数 */
+    public void setStreamGlitches(double dropoutsPerMin, double underrunsPerMin) {
+        this.dropoutsPerMin  = Math.max(0, dropoutsPerMin);
+        this.underrunsPerMin = Math.max(0, underrunsPerMin);
+    }
+
+    /** SPP 链路的发送速率（字节/秒）和往返时延分布 */
+    public void setSppLink(long bytesPerSec, Latency rtt) {
+        this.sppBytesPerSec = Math.max(1, bytesPerSec);
+        this.sppRtt         = rtt;
+    }
+    /** SPP 对端是否回显（不回显时只有发送速率） */
+    public void setSppEcho(boolean echo) { this.sppEcho = echo; }
+
+    /*──────────────────────────────
+     *  BluetoothBackend
+     *──────────────────────────────*/
+
+    @Override
+    public void open(Listener listener) {
+        this.listener = listener;
+        emit(0, () -> this.listener.onA2dpProxyChanged(true));
+    }
+
+    @Override
+    public void close() {
+        listener = null;
+        epoch++;
+        discovering = false;
+    }
+
+    @Override
+    public int getCapabilities() { return capabilities; }
+
+    @Override
+    public boolean isDiscovering() { return discovering; }
+
+    @Override
+    public boolean startDiscovery() {
+        if (listener == null || discovering) return false;
+        discovering = true;
+        final int gen = ++discoveryGen;
+
+        for (int i = 0; i < noiseDevices; i++) {
+            final String addr = String.format("00:11:22:33:44:%02X", i);
+            final String name = "Noise_" + i;
+            emitDiscovery(gen, (long) (random.nextDouble() * INQUIRY_MS),
+                    () -> listener.onDeviceFound(addr, name, rssi(-80, 10), CLASS_PHONE));
+        }
+        for (final SimDevice d : deviceList) {
+            if (roll(TestStatistics.Phase.SCAN) != OK) continue;
+            long t = Math.max(sample(TestStatistics.Phase.SCAN), d.readyAt - clock.now());
+            if (t < INQUIRY_MS) {
+                emitDiscovery(gen, t, () -> {
+                    d.inquired = true;
+                    listener.onDeviceFound(d.address, d.name, rssi(d.rssiMean, d.rssiSd), CLASS_HEADSET);
+                });
+            }
+        }
+        emitDiscovery(gen, INQUIRY_MS, () -> {
+            discovering = false;
+            listener.onDiscoveryFinished();
+        });
+        return true;
+    }
+
+    @Override
+    public void cancelDiscovery() {
+        if (!discovering) return;
+        discovering = false;
+        discoveryGen++;
+        // 真机 cancelDiscovery() 之后同样会收到 ACTION_DISCOVERY_FINISHED
+        emit(0, () -> listener.onDiscoveryFinished());
+    }
+
+    @Override
+    public boolean createBond(String address) {
+        final SimDevice d = devices.get(address);
+        if (d == null || d.bondState != BOND_NONE) return false;
+        d.bondState = BOND_BONDING;
+        emit(0, () -> listener.onBondStateChanged(d.address, BOND_BONDING, -1));
+
+        boolean notReady = clock.now() < d.readyAt;
+        if (notReady || (!d.inquired && random.nextDouble() < directPageFailRate)) {
+            emit(PAGE_TIMEOUT_MS, () -> {
+                d.bondState = BOND_NONE;
+                listener.onBondStateChanged(d.address, BOND_NONE, 14);
+            });
+            return true;
+        }
+        int outcome = roll(TestStatistics.Phase.BOND);
+        long t = outcome == HANG ? hangMs : sample(TestStatistics.Phase.BOND);
+        final int result = outcome == OK ? BOND_BONDED : BOND_NONE;
+        final int reason = outcome == OK ? -1 : bondFailReason;
+        emit(t, () -> {
+            d.bondState = result;
+            listener.onBondStateChanged(d.address, result, reason);
+            if (result == BOND_BONDED && (capabilities & CAP_A2DP_CONNECT) == 0) beginA2dpConnect(d);
+        });
+        return true;
+    }
+
+    @Override
+    public int getBondState(String address) {
+        SimDevice d = devices.get(address);
+        return d != null ? d.bondState : BOND_NONE;
+    }
+
+    @Override
+    public boolean removeBond(String address) throws BackendException {
+        require(CAP_REMOVE_BOND, "removeBond");
+        final SimDevice d = devices.get(address);
+        if (d == null || d.bondState == BOND_NONE) return false;
+        int outcome = roll(TestStatistics.Phase.UNPAIR);
+        if (outcome != OK) return true;   // 调用成功但设备仍在配对列表
+        emit(sample(TestStatistics.Phase.UNPAIR), () -> {
+            if (d.a2dpState != STATE_DISCONNECTED) {
+                d.a2dpState = STATE_DISCONNECTED;
+                listener.onA2dpStateChanged(d.address, STATE_DISCONNECTED);
+                listener.onAclDisconnected(d.address, HCI_LOCAL_HOST);
+            }
+            d.bondState = BOND_NONE;
+            d.inquired  = false;
+            d.readyAt   = recovery != null ? clock.now() + recovery.sample(random) : 0;
+            listener.onBondStateChanged(d.address, BOND_NONE, REASON_REMOVED);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean connectA2dp(String address) throws BackendException {
+        require(CAP_A2DP_CONNECT, "A2dp.connect()");
+        SimDevice d = devices.get(address);
+        if (d == null || d.bondState != BOND_BONDED || d.a2dpState != STATE_DISCONNECTED) return true;
+        beginA2dpConnect(d);
+        return true;
+    }
+
+    private void beginA2dpConnect(final SimDevice d) {
+        d.a2dpState = STATE_CONNECTING;
+        emit(0, () -> listener.onA2dpStateChanged(d.address, STATE_CONNECTING));
+
+        int outcome = roll(TestStatistics.Phase.CONNECT);
+        long t = outcome == HANG ? hangMs : sample(TestStatistics.Phase.CONNECT);
+        final int result = outcome == OK ? STATE_CONNECTED : STATE_DISCONNECTED;
+        emit(t, () -> {
+            d.a2dpState = result;
+            listener.onA2dpStateChanged(d.address, result);
+        });
+    }
+
+    @Override
+    public boolean disconnectA2dp(String address) throws BackendException {
+        require(CAP_A2DP_DISCONNECT, "A2dp.disconnect()");
+        final SimDevice d = devices.get(address);
+        if (d == null || d.a2dpState != STATE_CONNECTED) return true;
+        int outcome = roll(TestStatistics.Phase.DISCONNECT);
+        if (outcome != OK) return true;   // 无响应，由控制器超时处理
+        d.a2dpState = STATE_DISCONNECTING;
+        emit(0, () -> listener.onA2dpStateChanged(d.address, STATE_DISCONNECTING));
+        emit(sample(TestStatistics.Phase.DISCONNECT), () -> {
+            d.a2dpState = STATE_DISCONNECTED;
+            listener.onA2dpStateChanged(d.address, STATE_DISCONNECTED);
+            listener.onAclDisconnected(d.address, HCI_LOCAL_HOST);
+        });
+        return true;
+    }
+
+    /*──────────────────────────────
+     *  测试音
+     *──────────────────────────────*/
+
+    @Override
+    public boolean startTone(String address) {
+        final SimDevice d = devices.get(address);
+        if (d == null) return false;
+        int outcome = roll(TestStatistics.Phase.STREAM_START);
+        if (outcome == FAIL) return false;
+        final int gen = ++d.toneGen;
+        d.toneStartAt = clock.now();
+        // 没有连接时声音从手机外放，不会有 PLAYING
+        if (outcome == HANG || d.a2dpState != STATE_CONNECTED) return true;
+        emitTone(d, gen, sample(TestStatistics.Phase.STREAM_START), () -> {
+            d.playing = true;
+            listener.onA2dpPlayingChanged(d.address, true);
+            scheduleDropout(d, gen);
+        });
+        return true;
+    }
+
+    @Override
+    public int stopTone(String address) {
+        SimDevice d = devices.get(address);
+        if (d == null) return -1;
+        d.toneGen++;
+        if (d.playing) {
+            d.playing = false;
+            final String addr = d.address;
+            emit(0, () -> listener.onA2dpPlayingChanged(addr, false));
+        }
+        return poisson(underrunsPerMin * (clock.now() - d.toneStartAt) / 60_000.0);
+    }
+
+    /** 下一次播放中断：指数分布的间隔，恢复后再排下一次 */
+    private void scheduleDropout(final SimDevice d, final int gen) {
+        if (dropoutsPerMin <= 0) return;
+        long gap = (long) (-Math.log(1 - streamRandom.nextDouble()) * 60_000.0 / dropoutsPerMin);
+        emitTone(d, gen, gap, () -> {
+            d.playing = false;
+            listener.onA2dpPlayingChanged(d.address, false);
+            long resume = DROPOUT_MIN_MS + (long) (streamRandom.nextDouble() * (DROPOUT_MAX_MS - DROPOUT_MIN_MS));
+            emitTone(d, gen, resume, () -> {
+                d.playing = true;
+                listener.onA2dpPlayingChanged(d.address, true);
+                scheduleDropout(d, gen);
+            });
+        });
+    }
+
+    private int poisson(double mean) {
+        if (mean <= 0) return 0;
+        double limit = Math.exp(-mean), p = streamRandom.nextDouble();
+        int k = 0;
+        while (p > limit) {
+            p *= streamRandom.nextDouble();
+            k++;
+        }
+        return k;
+    }
+
+    /*──────────────────────────────
+     *  GATT 对端
+     *──────────────────────────────*/
+
+    @Override
+    public boolean connectGatt(String address) throws BackendException {
+        require(CAP_GATT, "connectGatt");
+        final SimDevice d = devices.get(address);
+        if (d == null || d.gattState != STATE_DISCONNECTED) return false;
+        d.gattGen++;
+        d.gattState    = STATE_CONNECTING;
+        d.mtu          = GATT_DEFAULT_MTU;
+        d.highPriority = false;
+        d.notifying    = false;
+        d.burstOutcome = -1;
+        // 无响应时同真机：过一段时间以 133 收场
+        int outcome = roll(TestStatistics.Phase.GATT_CONNECT);
+        long t = outcome == HANG ? hangMs : sample(TestStatistics.Phase.GATT_CONNECT);
+        final boolean ok = outcome == OK;
+        emitGatt(d, t, () -> {
+            d.gattState = ok ? STATE_CONNECTED : STATE_DISCONNECTED;
+            d.linkFreeAt = clock.now();
+            listener.onGattConnectionChanged(d.address, ok ? GATT_SUCCESS : GATT_ERROR, d.gattState);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean requestMtu(String address, final int mtu) {
+        final SimDevice d = connected(address);
+        if (d == null) return false;
+        int outcome = roll(TestStatistics.Phase.MTU);
+        if (outcome == HANG) return true;
+        final boolean ok = outcome == OK;
+        emitGatt(d, sample(TestStatistics.Phase.MTU), () -> {
+            if (ok) d.mtu = Math.max(GATT_DEFAULT_MTU, Math.min(mtu, gattMaxMtu));
+            listener.onGattMtuChanged(d.address, d.mtu, ok ? GATT_SUCCESS : GATT_ERROR);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean requestHighPriority(String address) {
+        SimDevice d = connected(address);
+        if (d == null) return false;
+        d.highPriority = true;
+        return true;
+    }
+
+    @Override
+    public boolean discoverServices(String address) {
+        final SimDevice d = connected(address);
+        if (d == null) return false;
+        int outcome = roll(TestStatistics.Phase.SERVICES);
+        if (outcome == HANG) return true;
+        final boolean ok = outcome == OK;
+        emitGatt(d, sample(TestStatistics.Phase.SERVICES), () ->
+                listener.onGattServicesDiscovered(d.address, ok ? GATT_SUCCESS : GATT_ERROR, ok ? 5 : 0, ok && gattWritable));
+        return true;
+    }
+
+    @Override
+    public boolean enableNotify(String address) {
+        final SimDevice d = connected(address);
+        if (d == null || !gattWritable) return false;
+        d.notifying = true;
+        // 描述符写需要对端响应，约两个连接间隔
+        emitGatt(d, occupyLink(d, 2 * connectionInterval(d)), () -> listener.onGattWriteComplete(d.address, GATT_SUCCESS));
+        return true;
+    }
+
+    @Override
+    public boolean writeGatt(String address, byte[] data) {
+        final SimDevice d = connected(address);
+        if (d == null || !gattWritable || data.length > d.mtu - 3) return false;
+        if (d.burstOutcome < 0) {
+            d.burstOutcome = roll(TestStatistics.Phase.BURST);
+            if (d.burstOutcome == FAIL) {
+                emitGatt(d, (long) (random.nextDouble() * BURST_DROP_WINDOW_MS), () -> {
+                    if (d.gattState != STATE_CONNECTED) return;
+                    d.gattState = STATE_DISCONNECTED;
+                    listener.onGattConnectionChanged(d.address, HCI_CONNECTION_TIMEOUT, STATE_DISCONNECTED);
+                });
+            }
+        }
+        if (d.burstOutcome == HANG) return true;
+        final int bytes = data.length;
+        emitGatt(d, occupyLink(d, connectionInterval(d) / packetsPerEvent), () -> {
+            listener.onGattWriteComplete(d.address, GATT_SUCCESS);
+            if (d.notifying && gattEcho) listener.onGattNotify(d.address, bytes);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean disconnectGatt(String address) {
+        final SimDevice d = connected(address);
+        if (d == null) return false;
+        if (roll(TestStatistics.Phase.GATT_DISCONNECT) != OK) return true;   // 无响应，由控制器超时处理
+        d.gattState = STATE_DISCONNECTING;
+        emitGatt(d, sample(TestStatistics.Phase.GATT_DISCONNECT), () -> {
+            d.gattState = STATE_DISCONNECTED;
+            listener.onGattConnectionChanged(d.address, GATT_SUCCESS, STATE_DISCONNECTED);
+        });
+        return true;
+    }
+
+    @Override
+    public void closeGatt(String address) {
+        SimDevice d = devices.get(address);
+        if (d == null) return;
+        d.gattGen++;
+        d.gattState = STATE_DISCONNECTED;
+        d.notifying = false;
+    }
+
+    /*──────────────────────────────
+     *  RFCOMM/SPP 对端
+     *──────────────────────────────*/
+
+    @Override
+    public boolean connectSpp(String address, String uuid) {
+        final SimDevice d = devices.get(address);
+        if (d == null || d.sppState != STATE_DISCONNECTED) return false;
+        d.sppGen++;
+        d.sppState   = STATE_CONNECTING;
+        d.sppBurstAt = -1;
+        int outcome = roll(TestStatistics.Phase.SPP_CONNECT);
+        long t = outcome == HANG ? hangMs : sample(TestStatistics.Phase.SPP_CONNECT);
+        // 没有配对时 RFCOMM 的安全连接会被拒绝
+        final boolean ok = outcome == OK && d.bondState == BOND_BONDED;
+        emitSpp(d, t, () -> {
+            d.sppState = ok ? STATE_CONNECTED : STATE_DISCONNECTED;
+            listener.onSppConnected(d.address, ok);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean startSppBurst(String address, int frameBytes) {
+        final SimDevice d = devices.get(address);
+        if (d == null || d.sppState != STATE_CONNECTED || d.sppBurstAt >= 0) return false;
+        d.sppBurstAt = clock.now();
+        d.sppFrame   = frameBytes;
+        d.sppOutcome = roll(TestStatistics.Phase.SPP_BURST);
+        if (d.sppOutcome == FAIL) {
+            emitSpp(d, (long) (random.nextDouble() * BURST_DROP_WINDOW_MS), () -> {
+                d.sppState   = STATE_DISCONNECTED;
+                d.sppBurstAt = -1;
+                listener.onSppBurstDone(d.address, null);
+            });
+        }
+        return true;
+    }
+
+    /** 按速率折算发送字节数，回显时抽样往返时延；结果在一个往返之后送达（等在途回显） */
+    @Override
+    public void stopSppBurst(String address) {
+        final SimDevice d = devices.get(address);
+        if (d == null || d.sppState != STATE_CONNECTED || d.sppBurstAt < 0) return;
+        long sendMs = clock.now() - d.sppBurstAt;
+        d.sppBurstAt = -1;
+        if (d.sppOutcome == HANG) return;
+        long frames = sppBytesPerSec * sendMs / 1000 / Math.max(1, d.sppFrame);
+        sppRttScratch.reset();
+        if (sppEcho) {
+            long n = Math.min(frames, SPP_RTT_SAMPLES);
+            for (long i = 0; i < n; i++) sppRttScratch.record(Math.max(0, sppRtt.sample(sppRandom)));
+        }
+        long sent = frames * d.sppFrame;
+        final SppBenchmark.Result result = new SppBenchmark.Result(sent, sppEcho ? sent : 0, sendMs, sppRttScratch);
+        long delay = sppEcho ? Math.max(0, sppRtt.sample(sppRandom)) : 0;
+        emitSpp(d, delay, () -> listener.onSppBurstDone(d.address, result));
+    }
+
+    @Override
+    public void closeSpp(String address) {
+        SimDevice d = devices.get(address);
+        if (d == null) return;
+        d.sppGen++;
+        d.sppState   = STATE_DISCONNECTED;
+        d.sppBurstAt = -1;
+    }
+
+    private SimDevice connected(String address) {
+        SimDevice d = devices.get(address);
+        return d != null && d.gattState == STATE_CONNECTED ? d : null;
+    }
+
+    private double connectionInterval(SimDevice d) {
+        return d.highPriority ? CI_HIGH_MS : CI_BALANCED_MS;
+    }
+
+    /**
+     * 链路上排一包，返回从现在到发完的时长（ms）
+     * 虚拟时钟按整 ms 走，紧接着上一包的写从上一包发完的时刻算起，不因取整丢掉零头
+     */
+    private long occupyLink(SimDevice d, double airMs) {
+        double now   = clock.now();
+        double start = now - d.linkFreeAt < 1 ? d.linkFreeAt : now;
+        d.linkFreeAt = start + airMs;
+        return Math.max(0, (long) Math.ceil(d.linkFreeAt - now));
+    }
+
+    /*──────────────────────────────
+     *  内部工具
+     *──────────────────────────────*/
+
+    private static final int OK   = 0;
+    private static final int FAIL = 1;
+    private static final int HANG = 2;
+
+    private void require(int cap, String name) throws BackendException {
+        if ((capabilities & cap) == 0) throw new BackendException(name + "不可用");
+    }
+
+    private int roll(TestStatistics.Phase phase) {
+        double r = random.nextDouble();
+        int i = phase.ordinal();
+        if (r < hangRate[i]) return HANG;
+        if (r < hangRate[i] + failRate[i]) return FAIL;
+        return OK;
+    }
+
+    private long sample(TestStatistics.Phase phase) {
+        return Math.max(0, latency[phase.ordinal()].sample(random));
+    }
+
+    private int rssi(double mean, double sd) {
+        return (int) Math.max(-127, Math.min(20, Math.round(mean + sd * rssiRandom.nextGaussian())));
+    }
+
+    private void emit(long delayMs, Runnable event) {
+        final int e = epoch;
+        clock.postExternal(() -> {
+            if (listener != null && e == epoch) event.run();
+        }, delayMs);
+    }
+
+    /** GATT 回调：closeGatt() 或重新连接后作废 */
+    private void emitGatt(final SimDevice d, long delayMs, Runnable event) {
+        final int gen = d.gattGen;
+        emit(delayMs, () -> {
+            if (gen == d.gattGen) event.run();
+        });
+    }
+
+    /** SPP 回调：closeSpp() 或重新连接后作废 */
+    private void emitSpp(final SimDevice d, long delayMs, Runnable event) {
+        final int gen = d.sppGen;
+        emit(delayMs, () -> {
+            if (gen == d.sppGen) event.run();
+        });
+    }
+
+    /** 播放状态事件：stopTone() 或 A2DP 断开后作废 */
+    private void emitTone(final SimDevice d, final int gen, long delayMs, Runnable event) {
+        emit(delayMs, () -> {
+            if (gen == d.toneGen && d.a2dpState == STATE_CONNECTED) event.run();
+        });
+    }
+
+    private void emitDiscovery(int gen, long delayMs, Runnable event) {
+        emit(delayMs, () -> {
+            if (discovering && gen == discoveryGen) event.run();
+        });
+    }
+}
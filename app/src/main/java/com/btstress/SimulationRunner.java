@@ -0,0 +1,259 @@
+package com.btstress;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * 模拟压测运行器（纯JVM）
+ *
+ * 用 {@link VirtualScheduler} + {@link SimulatedBluetoothBackend} 驱动真实的
+ * {@link TestController}，数万轮循环在几秒内跑完。
+ * 墙钟耗时 / 循环数 即控制器自身每轮的开销（含日志字符串拼接等）。
+ */
+public final class SimulationRunner {
+
+    public static final String TARGET_ADDRESS = "AA:BB:CC:DD:EE:FF";
+    public static final String TARGET_NAME    = "SIM_TWS";
+
+    /** 运行结果 */
+    public static final class Result {
+        public final TestStatistics statistics;
+        public final int  loops;
+        public final long virtualMs;     // 虚拟时钟经过的时间
+        public final long wallNanos;     // 实际耗时
+        public final long tasks;         // 执行的调度任务数
+        public final long logLines;      // 控制器产生的日志行数
+
+        Result(TestStatistics statistics, int loops, long virtualMs, long wallNanos, long tasks, long logLines) {
+            this.statistics = statistics;
+            this.loops      = loops;
+            this.virtualMs  = virtualMs;
+            this.wallNanos  = wallNanos;
+            this.tasks      = tasks;
+            this.logLines   = logLines;
+        }
+
+        /** 控制器每轮开销（墙钟 ns） */
+        public long nanosPerLoop() { return loops == 0 ? 0 : wallNanos / loops; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "loops=%d success=%d fail=%d virtual=%.1fh wall=%dms overhead=%dns/loop tasks=%d logs=%d%n%s%n%s",
+                    loops, statistics.getSuccessCount(), statistics.getFailureCount(),
+                    virtualMs / 3_600_000.0, wallNanos / 1_000_000, nanosPerLoop(), tasks, logLines,
+                    statistics.getFailureSummary(), statistics.getPhaseSummary());
+        }
+    }
+
+    /** 轨迹重放结果：控制器的统计 + 与轨迹的核对情况 */
+    public static final class Replay {
+        public final Result             result;
+        public final TraceReplayBackend backend;
+
+        Replay(Result result, TraceReplayBackend backend) {
+            this.result  = result;
+            this.backend = backend;
+        }
+
+        @Override
+        public String toString() {
+            return backend.getSummary() + "\n" + result;
+        }
+    }
+
+    private SimulationRunner() {}
+
+    /** 以默认耳机模型运行 loops 轮 */
+    public static Result run(int loops, long seed) {
+        VirtualScheduler clock = new VirtualScheduler();
+        return run(clock, new SimulatedBluetoothBackend(clock, seed, TARGET_ADDRESS, TARGET_NAME), loops);
+    }
+
+    /** 以调用方配置好的模拟后端运行 loops 轮（backend 必须使用同一个 clock） */
+    public static Result run(VirtualScheduler clock, SimulatedBluetoothBackend backend, int loops) {
+        return run(clock, backend, loops, false);
+    }
+
+    /** directConnect=true 时按已知MAC跳过扫描（见 TestController#setDirectConnect） */
+    public static Result run(VirtualScheduler clock, SimulatedBluetoothBackend backend, int loops,
+                             boolean directConnect) {
+        return run(clock, backend, loops, directConnect, CooldownPolicy.adaptive());
+    }
+
+    /** 指定轮间冷却策略运行，可对比固定间隔与自适应间隔的吞吐和失败率 */
+    public static Result run(VirtualScheduler clock, SimulatedBluetoothBackend backend, int loops,
+                             boolean directConnect, CooldownPolicy cooldown) {
+        return run(clock, backend, loops, directConnect, cooldown, TestStatistics.LoopShape.FULL);
+    }
+
+    /** 指定循环方式运行，可对比仅重连/仅配对与完整循环的每小时轮数 */
+    public static Result run(VirtualScheduler clock, SimulatedBluetoothBackend backend, int loops,
+                             boolean directConnect, CooldownPolicy cooldown, TestStatistics.LoopShape shape) {
+        return run(clock, backend, loops, directConnect, cooldown, shape, 0);
+    }
+
+    /** 带音频起播探测运行（streamHoldMs 见 TestController#setStreamProbe），可看起播耗时和卡顿注入的效果 */
+    public static Result run(VirtualScheduler clock, SimulatedBluetoothBackend backend, int loops,
+                             boolean directConnect, CooldownPolicy cooldown, TestStatistics.LoopShape shape,
+                             long streamHoldMs) {
+        final long[] logLines = new long[1];
+        TestController controller = new TestController(backend, clock, new TestController.Callback() {
+            @Override public void onLoopStart(int loop, int total) {}
+            @Override public void onStateChange(String stateDesc) {}
+            @Override public void onLoopSuccess(int loop, long costMs) {}
+            @Override public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {}
+            @Override public void onAllDone(TestStatistics stats) {}
+            @Override public void onLog(LogRecord record) { logLines[0]++; }
+        });
+        controller.setFilter(TARGET_NAME, TARGET_ADDRESS);
+        controller.setTargetLoops(loops);
+        controller.setDirectConnect(directConnect);
+        controller.setCooldownPolicy(cooldown);
+        controller.setLoopShape(shape);
+        controller.setStreamProbe(streamHoldMs);
+
+        long t0 = System.nanoTime();
+        long startVirtual = clock.now();
+        controller.start();
+        long tasks = clock.runUntilIdle(Long.MAX_VALUE);
+        long wall = System.nanoTime() - t0;
+
+        return new Result(controller.getStatistics(), loops, clock.now() - startVirtual, wall, tasks, logLines[0]);
+    }
+
+    /**
+     * 多耳机并发模拟：devices 只耳机各跑 loopsPerDevice 轮，返回汇总统计
+     * （virtualMs 可与单设备对比，看仲裁器交错后的总吞吐）
+     */
+    public static Result runMulti(int devices, int loopsPerDevice, long seed) {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = new SimulatedBluetoothBackend(clock, seed, deviceAddress(0), TARGET_NAME + "_0");
+        for (int i = 1; i < devices; i++) backend.addDevice(deviceAddress(i), TARGET_NAME + "_" + i);
+
+        final long[] logLines = new long[1];
+        MultiDeviceSession session = new MultiDeviceSession(backend, clock, new TestController.Callback() {
+            @Override public void onLoopStart(int loop, int total) {}
+            @Override public void onStateChange(String stateDesc) {}
+            @Override public void onLoopSuccess(int loop, long costMs) {}
+            @Override public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {}
+            @Override public void onAllDone(TestStatistics stats) {}
+            @Override public void onLog(LogRecord record) { logLines[0]++; }
+        });
+        for (int i = 0; i < devices; i++) session.addTarget(TARGET_NAME + "_" + i, deviceAddress(i));
+        session.setTargetLoops(loopsPerDevice);
+
+        long t0 = System.nanoTime();
+        long startVirtual = clock.now();
+        session.start();
+        long tasks = clock.runUntilIdle(Long.MAX_VALUE);
+        long wall = System.nanoTime() - t0;
+
+        return new Result(session.getAggregateStatistics(), devices * loopsPerDevice,
+                clock.now() - startVirtual, wall, tasks, logLines[0]);
+    }
+
+    /**
+     * 按轨迹开头记录的运行配置重建控制器（单耳机或多耳机），把录下的蓝牙事件重放给它
+     * （见 {@link TraceReplayBackend}）。speed=1 按原速、10 为十倍速，≤0 不等待、尽快跑完；
+     * 按原速重放时可挂 profiler 观察当时那条路径。callback 可为 null。
+     */
+    public static Replay replay(TraceReader trace, double speed, TestController.Callback callback) throws IOException {
+        String text = trace.getConfig();
+        RunConfig config = text == null ? null : RunConfig.fromText(text);
+        if (config == null) throw new IOException("轨迹里没有运行配置: " + trace);
+
+        VirtualScheduler clock = new VirtualScheduler();
+        TraceReplayBackend backend = new TraceReplayBackend(clock, trace);
+        final long[] logLines = new long[1];
+        TestController.Callback forward = new TestController.Callback() {
+            @Override public void onLoopStart(int loop, int total) {
+                if (callback != null) callback.onLoopStart(loop, total);
+            }
+            @Override public void onStateChange(String stateDesc) {
+                if (callback != null) callback.onStateChange(stateDesc);
+            }
+            @Override public void onLoopSuccess(int loop, long costMs) {
+                if (callback != null) callback.onLoopSuccess(loop, costMs);
+            }
+            @Override public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {
+                if (callback != null) callback.onLoopFailure(loop, reason, detail);
+            }
+            @Override public void onAllDone(TestStatistics stats) {
+                if (callback != null) callback.onAllDone(stats);
+            }
+            @Override public void onLog(LogRecord record) {
+                logLines[0]++;
+                if (callback != null) callback.onLog(record);
+            }
+        };
+
+        TestController controller = null;
+        MultiDeviceSession session = null;
+        if (config.isMulti()) {
+            session = new MultiDeviceSession(backend, clock, forward);
+            config.configure(session);
+            backend.setOnEnd(session::stop);
+        } else {
+            controller = new TestController(backend, clock, forward);
+            config.configure(controller);
+            backend.setOnEnd(controller::stop);
+        }
+
+        long t0 = System.nanoTime();
+        long startVirtual = clock.now();
+        if (session != null) session.start();
+        else controller.start();
+        long tasks = 0;
+        if (speed <= 0) {
+            tasks = clock.runUntilIdle(Long.MAX_VALUE);
+        } else {
+            // 虚拟时钟跟着墙钟走：每个任务等到 (计划时刻 - 起点) / speed 才执行
+            long next;
+            while ((next = clock.nextTaskTime()) != Long.MAX_VALUE) {
+                long waitNanos = t0 + (long) ((next - startVirtual) * 1_000_000L / speed) - System.nanoTime();
+                if (waitNanos > 0) {
+                    try {
+                        Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("重放被中断", e);
+                    }
+                }
+                tasks += clock.runUntilIdle(next);
+            }
+        }
+        long wall = System.nanoTime() - t0;
+
+        TestStatistics stats = session != null ? session.getAggregateStatistics() : controller.getStatistics();
+        Result result = new Result(stats, stats.getTotalCount(), clock.now() - startVirtual, wall, tasks, logLines[0]);
+        return new Replay(result, backend);
+    }
+
+    /**
+     * 在本机回环上跑一次真实的 {@link SppBenchmark}（墙钟 durationMs，见 {@link LoopbackSppTransport}），
+     * 检查收发、回显判定和收尾；echo=false 模拟不回显的对端
+     */
+    public static SppBenchmark.Result runSppLoopback(int frameBytes, long durationMs, boolean echo) throws IOException {
+        final SppBenchmark bench = new SppBenchmark();
+        LoopbackSppTransport transport = new LoopbackSppTransport(echo);
+        transport.connect();
+        bench.prepare();
+        Thread timer = new Thread(() -> {
+            try { Thread.sleep(durationMs); }
+            catch (InterruptedException ignored) {}
+            bench.stop();
+        }, "SppLoopbackTimer");
+        timer.setDaemon(true);
+        timer.start();
+        try {
+            return bench.run(transport, frameBytes);
+        } finally {
+            transport.close();
+        }
+    }
+
+    private static String deviceAddress(int index) {
+        return String.format(Locale.ROOT, "AA:BB:CC:DD:EE:%02X", index);
+    }
+}
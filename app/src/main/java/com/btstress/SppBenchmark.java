@@ -0,0 +1,190 @@
+package com.btstress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SPP 吞吐与往返时延测试（纯Java，在工作线程上运行）
+ *
+ * 调用 {@link #run} 的线程连续发送固定长度的帧，另起一个读线程接收对端的回显：
+ * 帧头 8 字节是发送时刻（System.nanoTime），收到回显即得一次往返时延。
+ * 在途帧数限制在 WINDOW 以内，测到的是满载下的往返，发送速率也不会因为对端缓冲区堆积而虚高。
+ * 对端 ECHO_WAIT_MS 内一帧都没有回显时按"不回显"处理：不再限制在途帧数，只统计此后的发送速率。
+ *
+ * 收发各用一个预先分配的帧缓冲区（帧长不变时跨轮复用），测试期间不分配对象；
+ * 往返时延记进 ms 直方图，结束时取分位数放进 {@link Result}。
+ * {@link #stop} 可在任意线程调用：停止发送，等在途的回显（最多 DRAIN_MS）后 run() 返回。
+ * 每次测试前先 {@link #prepare}，再启动运行 run() 的线程，这之后的 stop() 不会因为 run() 还没开始而丢失。
+ */
+public final class SppBenchmark {
+
+    /** 帧头：发送时刻（大端 long） */
+    public static final int HEADER_BYTES = 8;
+
+    private static final int  WINDOW       = 8;        // 在途帧数上限
+    private static final long ECHO_WAIT_MS = 2_000;    // 等第一帧回显的时长，超过按不回显处理
+    private static final long POLL_MS      = 100;      // 等窗口时顺便检查是否已停止
+    private static final long DRAIN_MS     = 1_000;    // 停止发送后等在途回显的时长
+    private static final long MAX_RTT_MS   = 60_000;   // 超出视为对端发来的不是回显，不计入时延
+
+    /** 一次测试的结果（rtt* 为 -1 表示对端不回显） */
+    public static final class Result {
+        public final long sentBytes;
+        public final long echoedBytes;
+        public final long sendMs;        // 从第一帧到停止发送
+        public final long bytesPerSec;   // 发送速率
+        public final long rttP50;
+        public final long rttP95;
+        public final long rttP99;
+        public final long rttMax;
+
+        Result(long sentBytes, long echoedBytes, long sendMs, LatencyHistogram rtt) {
+            this(sentBytes, echoedBytes, sendMs,
+                    rtt.getCount() > 0 ? rtt.getPercentile(50) : -1,
+                    rtt.getCount() > 0 ? rtt.getPercentile(95) : -1,
+                    rtt.getCount() > 0 ? rtt.getPercentile(99) : -1,
+                    rtt.getCount() > 0 ? rtt.getMax() : -1);
+        }
+
+        /** 按已有的数值还原（轨迹重放） */
+        Result(long sentBytes, long echoedBytes, long sendMs, long rttP50, long rttP95, long rttP99, long rttMax) {
+            this.sentBytes   = sentBytes;
+            this.echoedBytes = echoedBytes;
+            this.sendMs      = sendMs;
+            this.bytesPerSec = sentBytes * 1000 / Math.max(1, sendMs);
+            this.rttP50 = rttP50;
+            this.rttP95 = rttP95;
+            this.rttP99 = rttP99;
+            this.rttMax = rttMax;
+        }
+
+        public boolean hasEcho() { return rttP50 >= 0; }
+    }
+
+    private final Semaphore        window  = new Semaphore(0);
+    private final LatencyHistogram rtt     = new LatencyHistogram();
+    private final Object           drained = new Object();
+
+    private volatile boolean     stopped   = false;
+    private volatile long        echoed    = 0;      // 收到的回显帧数（只由读线程写）
+    private volatile IOException readError = null;
+
+    private byte[] sendBuf = new byte[0];
+    private byte[] recvBuf = new byte[0];
+
+    /** 清除上一次的停止标记（在启动运行 run() 的线程之前调用） */
+    public void prepare() {
+        stopped = false;
+    }
+
+    /**
+     * 在已连接的通道上测试，直到 {@link #stop}；读写出错（链路断开）时抛出 IOException
+     * 同一实例同一时刻只能跑一次；prepare() 之后已经 stop() 的，发送循环一帧不发就结束
+     */
+    public Result run(SppTransport transport, final int frameBytes) throws IOException {
+        if (frameBytes < HEADER_BYTES) throw new IllegalArgumentException("帧长不能小于" + HEADER_BYTES + "字节");
+        final OutputStream out = transport.getOutputStream();
+        final InputStream  in  = transport.getInputStream();
+        if (sendBuf.length != frameBytes) {
+            sendBuf = new byte[frameBytes];
+            recvBuf = new byte[frameBytes];
+            for (int i = HEADER_BYTES; i < frameBytes; i++) sendBuf[i] = (byte) i;
+        }
+        echoed    = 0;
+        readError = null;
+        rtt.reset();
+        window.drainPermits();
+        window.release(WINDOW);
+
+        final byte[] buf = recvBuf;
+        Thread reader = new Thread(() -> readEchoes(in, buf), "SppEcho");
+        reader.setDaemon(true);
+        reader.start();
+
+        boolean echo = true;
+        long sent = 0;
+        long t0 = System.nanoTime();
+        try {
+            while (!stopped) {
+                if (readError != null) throw readError;
+                if (echo && !window.tryAcquire(POLL_MS, TimeUnit.MILLISECONDS)) {
+                    if (echoed == 0 && System.nanoTime() - t0 >= ECHO_WAIT_MS * 1_000_000) {
+                        // 不回显：等待的这段不算，从现在起重新计发送速率
+                        echo = false;
+                        sent = 0;
+                        t0   = System.nanoTime();
+                    }
+                    continue;
+                }
+                putLong(sendBuf, System.nanoTime());
+                out.write(sendBuf, 0, frameBytes);
+                sent++;
+            }
+            out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long sendMs = (System.nanoTime() - t0) / 1_000_000;
+
+        if (echo) awaitEchoes(sent);
+        if (readError != null) throw readError;
+        return new Result(sent * frameBytes, echoed * frameBytes, sendMs, rtt);
+    }
+
+    /** 停止发送（任意线程） */
+    public void stop() {
+        stopped = true;
+        synchronized (drained) { drained.notifyAll(); }
+    }
+
+    private void awaitEchoes(long sent) {
+        long deadline = System.nanoTime() + DRAIN_MS * 1_000_000;
+        synchronized (drained) {
+            long left;
+            while (echoed < sent && readError == null && (left = deadline - System.nanoTime()) > 0) {
+                try { drained.wait(Math.max(1, left / 1_000_000)); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+            }
+        }
+    }
+
+    /** 读线程：逐帧读满，按帧头算往返；通道关闭后以 IOException 退出 */
+    private void readEchoes(InputStream in, byte[] buf) {
+        try {
+            while (true) {
+                int off = 0;
+                while (off < buf.length) {
+                    int n = in.read(buf, off, buf.length - off);
+                    if (n < 0) throw new EOFException("对端关闭了连接");
+                    off += n;
+                }
+                long ms = (System.nanoTime() - getLong(buf)) / 1_000_000;
+                if (ms >= 0 && ms < MAX_RTT_MS) rtt.record(ms);
+                echoed++;
+                window.release();
+                if (stopped) {
+                    synchronized (drained) { drained.notifyAll(); }
+                }
+            }
+        } catch (IOException e) {
+            if (!stopped) readError = e;
+        }
+    }
+
+    private static void putLong(byte[] b, long v) {
+        for (int i = 7; i >= 0; i--) {
+            b[i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] b) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | (b[i] & 0xFF);
+        return v;
+    }
+}
@@ -0,0 +1,24 @@
+package com.btstress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * SPP 测试用的字节流通道（纯Java）
+ *
+ * {@link SppBenchmark} 只通过本接口收发，不关心底下是什么：真机上是 RFCOMM 的 BluetoothSocket
+ * （见 AndroidBluetoothBackend），JVM 上可以接 {@link LoopbackSppTransport} 这个本机回环的回显端。
+ * connect() 和流的读写都会阻塞，只在工作线程上调用；close() 可在任意线程调用，用来打断阻塞中的读写。
+ */
+public interface SppTransport {
+
+    /** 建立连接（阻塞），失败抛出 IOException */
+    void connect() throws IOException;
+
+    InputStream  getInputStream() throws IOException;
+    OutputStream getOutputStream() throws IOException;
+
+    /** 关闭连接，阻塞中的读写随之抛出 IOException；可重复调用 */
+    void close();
+}
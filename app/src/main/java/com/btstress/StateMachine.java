@@ -0,0 +1,223 @@
+package com.btstress;
+
+/**
+ * 表驱动的压测状态机引擎（纯Java）
+ *
+ * 状态、事件、守卫、动作和超时都在表里声明（见 TestController.buildMachine）：
+ * {@link #on} 声明 (状态, 事件) → 动作，同一对可以声明多条，按声明顺序取第一条守卫通过的；
+ * {@link #ignore} 声明预期之内、无需处理的事件。某状态声明了 TIMEOUT 动作，进入该状态时自动
+ * 按其阶段启动超时（时长由 {@link Timeouts} 给出），离开时撤销。动作里调用 {@link #enter} 切换状态。
+ *
+ * 所有状态切换都经过 enter() 这一处：{@link Observer} 收到时刻、前后状态、触发事件（动作之外
+ * 直接切换时为 null）和在前一状态停留的时长。表里没有匹配项的事件交给 Observer 按 (状态, 事件) 计数。
+ *
+ * 状态和事件的 ordinal 写进事件日志（EV_TRANSITION、EV_UNEXPECTED），只能在末尾追加。
+ * 只在调度线程上使用，无需加锁。
+ */
+public final class StateMachine {
+
+    /** 状态，phase 为所属的测试阶段（空闲/排队为 null） */
+    public enum State {
+        IDLE("空闲", null),
+        SCANNING("扫描", TestStatistics.Phase.SCAN),
+        BONDING("配对", TestStatistics.Phase.BOND),
+        CONNECTING("连接", TestStatistics.Phase.CONNECT),
+        CONNECTED("已连接", TestStatistics.Phase.CONNECT),
+        DISCONNECTING("断开", TestStatistics.Phase.DISCONNECT),
+        UNPAIRING("取消配对", TestStatistics.Phase.UNPAIR),
+        WAITING("排队", null),   // 等待共享射频资源
+        GATT_CONNECTING("GATT连接", TestStatistics.Phase.GATT_CONNECT),
+        MTU_EXCHANGE("MTU协商", TestStatistics.Phase.MTU),
+        DISCOVERING("服务发现", TestStatistics.Phase.SERVICES),
+        BURST("吞吐测试", TestStatistics.Phase.BURST),
+        GATT_DISCONNECTING("GATT断开", TestStatistics.Phase.GATT_DISCONNECT),
+        STREAM_STARTING("音频起播", TestStatistics.Phase.STREAM_START),
+        STREAMING("播放保持", TestStatistics.Phase.STREAM_HOLD),
+        SPP_CONNECTING("RFCOMM连接", TestStatistics.Phase.SPP_CONNECT),
+        SPP_BURST("SPP吞吐测试", TestStatistics.Phase.SPP_BURST),
+        SPP_DRAINING("SPP收尾", TestStatistics.Phase.SPP_DRAIN);
+
+        public final String               desc;
+        public final TestStatistics.Phase phase;
+        State(String desc, TestStatistics.Phase phase) {
+            this.desc  = desc;
+            this.phase = phase;
+        }
+    }
+
+    /** 事件，stale 为表里没有匹配项时计入的过期/忽略事件类别 */
+    public enum Event {
+        DEVICE_FOUND(TestStatistics.StaleKind.DISCOVERY),
+        DISCOVERY_FINISHED(TestStatistics.StaleKind.DISCOVERY),
+        BOND_BONDING(TestStatistics.StaleKind.BOND),
+        BOND_BONDED(TestStatistics.StaleKind.BOND),
+        BOND_NONE(TestStatistics.StaleKind.BOND),
+        A2DP_CONNECTING(TestStatistics.StaleKind.A2DP),
+        A2DP_CONNECTED(TestStatistics.StaleKind.A2DP),
+        A2DP_DISCONNECTING(TestStatistics.StaleKind.A2DP),
+        A2DP_DISCONNECTED(TestStatistics.StaleKind.A2DP),
+        ACL_DISCONNECTED(TestStatistics.StaleKind.ACL),
+        TIMEOUT(TestStatistics.StaleKind.TIMER),
+        GATT_CONNECTED(TestStatistics.StaleKind.GATT),
+        GATT_DISCONNECTED(TestStatistics.StaleKind.GATT),
+        MTU_CHANGED(TestStatistics.StaleKind.GATT),
+        SERVICES_DISCOVERED(TestStatistics.StaleKind.GATT),
+        GATT_WRITE_DONE(TestStatistics.StaleKind.GATT),
+        GATT_NOTIFY(TestStatistics.StaleKind.GATT),
+        A2DP_PLAYING(TestStatistics.StaleKind.A2DP),
+        A2DP_NOT_PLAYING(TestStatistics.StaleKind.A2DP),
+        SPP_CONNECTED(TestStatistics.StaleKind.SPP),
+        SPP_CLOSED(TestStatistics.StaleKind.SPP),
+        SPP_RESULT(TestStatistics.StaleKind.SPP);
+
+        public final TestStatistics.StaleKind stale;
+        Event(TestStatistics.StaleKind stale) { this.stale = stale; }
+    }
+
+    /** 守卫：返回 false 时跳过该条，继续看下一条 */
+    public interface Guard {
+        boolean test();
+    }
+
+    /** 插桩回调（调度线程） */
+    public interface Observer {
+        /** trigger 为 null 表示不是由事件触发（新一轮开始、资源授予等）；from == to 时 dwellMs 为 0 */
+        void onTransition(long time, State from, State to, Event trigger, long dwellMs);
+        void onUnexpected(State state, Event event);
+    }
+
+    /** 各阶段本轮的超时时长 */
+    public interface Timeouts {
+        long get(TestStatistics.Phase phase);
+    }
+
+    private static final State[] STATES = State.values();
+    private static final Event[] EVENTS = Event.values();
+
+    private static final class Rule {
+        final Guard    guard;    // null=无条件
+        final Runnable action;   // null=忽略
+        Rule next;
+
+        Rule(Guard guard, Runnable action) {
+            this.guard  = guard;
+            this.action = action;
+        }
+    }
+
+    private final Scheduler   scheduler;
+    private final PhaseTimers timers;
+    private final Timeouts    timeouts;
+    private final Observer    observer;
+    private final Rule[]      rules   = new Rule[STATES.length * EVENTS.length];  // 每个 (状态, 事件) 一条链
+    private final boolean[]   timeout = new boolean[STATES.length];               // 该状态是否声明了超时
+
+    private State state     = State.IDLE;
+    private long  enteredAt = 0;
+    private Event trigger   = null;   // 正在分发的事件
+
+    public StateMachine(Scheduler scheduler, PhaseTimers timers, Timeouts timeouts, Observer observer) {
+        this.scheduler = scheduler;
+        this.timers    = timers;
+        this.timeouts  = timeouts;
+        this.observer  = observer;
+    }
+
+    /*──────────────────────────────
+     *  声明
+     *──────────────────────────────*/
+
+    public void on(State s, Event e, Runnable action) {
+        on(s, e, null, action);
+    }
+
+    public void on(State s, Event e, Guard guard, Runnable action) {
+        if (e == Event.TIMEOUT) {
+            if (s.phase == null) throw new IllegalArgumentException(s + " 没有所属阶段，不能声明超时");
+            timeout[s.ordinal()] = true;
+        }
+        Rule r = new Rule(guard, action);
+        int i = s.ordinal() * EVENTS.length + e.ordinal();
+        if (rules[i] == null) {
+            rules[i] = r;
+        } else {
+            Rule tail = rules[i];
+            while (tail.next != null) tail = tail.next;
+            tail.next = r;
+        }
+    }
+
+    /** 预期之内、无需处理的事件（不计入意外事件） */
+    public void ignore(State s, Event e) {
+        on(s, e, null, null);
+    }
+
+    /** 守卫通过时忽略，否则继续看后面的规则（都不匹配则为意外事件） */
+    public void ignore(State s, Event e, Guard guard) {
+        on(s, e, guard, null);
+    }
+
+    /** 还没有为该事件声明规则的状态一律忽略它（放在表的最后） */
+    public void ignoreElsewhere(Event e) {
+        for (State s : STATES) {
+            if (rules[s.ordinal() * EVENTS.length + e.ordinal()] == null) ignore(s, e);
+        }
+    }
+
+    /*──────────────────────────────
+     *  运行
+     *──────────────────────────────*/
+
+    /** 新一次压测开始：回到 IDLE，不经过插桩 */
+    public void reset() {
+        state     = State.IDLE;
+        enteredAt = scheduler.now();
+        trigger   = null;
+    }
+
+    public State getState() { return state; }
+
+    /** 分发一个事件，返回 false 表示当前状态下没有匹配的规则 */
+    public boolean fire(Event e) {
+        Event outer = trigger;
+        trigger = e;
+        try {
+            for (Rule r = rules[state.ordinal() * EVENTS.length + e.ordinal()]; r != null; r = r.next) {
+                if (r.guard != null && !r.guard.test()) continue;
+                if (r.action != null) r.action.run();
+                return true;
+            }
+            observer.onUnexpected(state, e);
+            return false;
+        } finally {
+            trigger = outer;
+        }
+    }
+
+    /** 切换状态（唯一的插桩点）：撤销旧状态的超时，启动新状态声明的超时 */
+    public void enter(State to) {
+        State from = state;
+        long  now  = scheduler.now();
+        if (to == from) {
+            observer.onTransition(now, from, to, trigger, 0);
+            return;
+        }
+        if (timeout[from.ordinal()]) timers.cancel(from.phase);
+        state = to;
+        long dwell = now - enteredAt;
+        enteredAt = now;
+        if (timeout[to.ordinal()]) {
+            timers.arm(to.phase, timeouts.get(to.phase), () -> fire(Event.TIMEOUT));
+        }
+        observer.onTransition(now, from, to, trigger, dwell);
+    }
+
+    /** 事件日志里的状态值，越界时为 null */
+    public static State stateOf(int ordinal) {
+        return ordinal >= 0 && ordinal < STATES.length ? STATES[ordinal] : null;
+    }
+
+    public static Event eventOf(int ordinal) {
+        return ordinal >= 0 && ordinal < EVENTS.length ? EVENTS[ordinal] : null;
+    }
+}
@@ -1,94 +1,189 @@
 package com.btstress;
 
-import android.Manifest;
-import android.bluetooth.BluetoothA2dp;
-import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothProfile;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
-import android.util.Log;
-
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * 蓝牙压测核心控制器
  *
  * 状态机流程：
- *   IDLE → SCANNING → BONDING → CONNECTING → CONNECTED
- *        → DISCONNECTING → UNPAIRING → [下一轮]
+ *   IDLE → SCANNING → BONDING → CONNECTING → DISCONNECTING → UNPAIRING → [下一轮]
  *
  * 任意步骤超时或失败 → 记录原因 → 清理环境 → 进入下一轮
+ *
+ * 流程由 {@link StateMachine} 驱动，(状态, 事件) → 动作和各状态的超时在 {@link #buildMachine} 里声明；
+ * 蓝牙广播先转换成事件再交给状态机。状态切换和意外事件都经过 machineObserver 统一记录。
+ *
+ * 线程模型：状态机、蓝牙事件和超时任务都运行在 Scheduler 线程上，
+ * 不与UI线程争用；Callback 在控制器线程回调，由UI侧自行切换到主线程。
+ *
+ * 本类不依赖 Android API：射频操作和事件经由 {@link BluetoothBackend}，
+ * 时钟和定时经由 {@link Scheduler}，因此可以配合模拟后端在 JVM 上运行。
+ *
+ * 循环方式（{@link #setLoopShape}）决定每轮包含哪些阶段：完整循环；仅重连（保留配对，每轮只连接→断开，
+ * 目标未配对时先扫描配对一次）；仅配对（配对成功后直接取消配对，不等 A2DP）；BLE GATT（扫描到目标后
+ * GATT连接 → MTU协商 → 请求高优先级连接参数 → 服务发现 → 定时的写/通知吞吐测试 → 断开，不配对）。
+ * 吞吐测试的时长就是 BURST 阶段的超时，到点按实际写入/收到的字节数折算速率；多设备时吞吐测试排队进行。
+ *
+ * SPP 循环：配对后建立 RFCOMM 连接（{@link #setSpp} 指定服务 UUID 和帧长），定时收发测吞吐，对端回显时
+ * 同时统计往返时延（见 {@link SppBenchmark}）；时长到后停止发送、等在途回显收完，关闭连接再取消配对。
+ *
+ * 音频起播探测（{@link #setStreamProbe}，可选）：A2DP 连接后、断开前播放一段测试音，
+ * 测量到对端 PLAYING 的耗时（计入"音频起播"阶段），再保持播放设定的时长，统计欠载和播放中断次数。
+ *
+ * 开启直连（{@link #setDirectConnect}）且填写了完整MAC地址时跳过扫描，直接对该地址
+ * createBond（系统按地址构造远端设备并寻呼）；寻呼失败才回退到扫描，每轮走的路径记入统计。
+ *
+ * 轮间间隔由 {@link CooldownPolicy} 决定（默认自适应），每轮选定的间隔记入统计。
+ * 各阶段超时由 {@link TimeoutPolicy} 决定（默认固定），自适应时每轮把生效的超时写进日志。
+ * 超时定时器由 {@link PhaseTimers} 按阶段管理：阶段完成时只撤销该阶段自己的定时，不用 cancelAll()
+ * （那会连带清掉排好的下一轮和资源授予）；每轮换一个轮次代号，上一轮的定时和下一轮任务到点时作废。
+ * 本轮结束后、或下一轮找到目标前收到的目标广播视为过期事件，忽略并按类别计数（见 StaleKind）。
+ *
+ * 设置了 {@link RunExporter} 时，每轮结束把该轮结果（起止时间、各阶段耗时、原因码）交给导出线程。
+ *
+ * 设置了 {@link EventJournal} 时，状态切换、蓝牙事件、超时和每轮结果都写入二进制事件日志，
+ * 进程崩溃后可用 {@link JournalReader} 还原统计。
+ *
+ * 启动时探测一次后端的隐藏API（{@link BluetoothBackend#getCapabilities}）并写进日志，缺失时改用替代流程：
+ * 没有 A2dp.connect 就只等系统自动连接，没有 A2dp.disconnect 就跳过断开、由 removeBond 连带断开 ACL，
+ * 没有 removeBond 则无法完成循环，直接停止。运行中某个能力调用抛异常，记一次日志后本次压测不再调用。
+ *
+ * 扫描、配对、A2DP连接前向 {@link RadioArbiter} 申请共享资源；单设备时资源总是
+ * 立即可得，多设备并发（见 MultiDeviceSession）时由仲裁器排队交错。
  */
 public class TestController {
 
-    private static final String TAG = "BtStressTest";
-
-    /*──── 状态定义 ────*/
-    private static final int STATE_IDLE          = 0;
-    private static final int STATE_SCANNING      = 1;
-    private static final int STATE_BONDING       = 2;
-    private static final int STATE_CONNECTING    = 3;
-    private static final int STATE_CONNECTED     = 4;
-    private static final int STATE_DISCONNECTING = 5;
-    private static final int STATE_UNPAIRING     = 6;
-
-    /*──── 超时时间 (ms) ────*/
-    private static final long SCAN_TIMEOUT_MS    = 20_000;  // 20秒扫描超时
-    private static final long BOND_TIMEOUT_MS    = 30_000;  // 30秒配对超时
-    private static final long CONNECT_TIMEOUT_MS = 20_000;  // 20秒连接超时
-    private static final long DISC_TIMEOUT_MS    = 10_000;  // 10秒断开超时
-    private static final long UNPAIR_TIMEOUT_MS  = 5_000;   // 5秒取消配对超时
-
-    private final Context   context;
-    private final BluetoothAdapter btAdapter;
-    private final Handler   handler = new Handler(Looper.getMainLooper());
-    private final Callback  callback;
+    /*──── GATT ────*/
+
+    /** GATT 循环请求的 MTU（ATT 上限 517，对端按自己的能力回应） */
+    private static final int GATT_REQUEST_MTU = 517;
+
+    private final BluetoothBackend backend;
+    private final Scheduler        scheduler;
+    private final Callback         callback;
+    private final PhaseTimers      timers;
+    private final StateMachine     machine;
+    private       RadioArbiter     arbiter;
 
     // 配置参数
-    private String filterName    = "";
-    private String filterAddress = "";
-    private int    targetLoops   = 0; // 0=无限循环
+    private String  filterName    = "";
+    private String  filterAddress = "";
+    private int     targetLoops   = 0;     // 0=无限循环
+    private boolean directConnect = false; // 已知MAC时跳过扫描直接寻呼
+    private TestStatistics.LoopShape loopShape = TestStatistics.LoopShape.FULL;
+    private long    streamHoldMs  = 0;     // 音频起播探测的播放保持时长，0=不探测
+    private String  sppUuid       = BluetoothBackend.SPP_UUID;
+    private int     sppFrameBytes = 512;   // SPP 测试每帧字节数
+    private CooldownPolicy cooldownPolicy = CooldownPolicy.adaptive();
+    private TimeoutPolicy  timeoutPolicy  = TimeoutPolicy.fixed();
+    private EventJournal   journal        = null;   // null=不写事件日志
+    private String         deviceLabel    = null;   // 多耳机模式下写进每条日志的设备标签
+    private RunExporter    exporter       = null;   // null=不导出每轮结果
+
+    // 断点恢复（进程被杀后由服务重建控制器时设置，start() 后清除）
+    private TestStatistics resumeStats  = null;
+    private int            resumeLoops  = 0;
+    private long           resumeGapMs  = 0;
 
     // 状态
-    private volatile int              state = STATE_IDLE;
     private volatile boolean          running = false;
-    private          BluetoothDevice  targetDevice = null;
-    private          BluetoothA2dp    a2dpProxy = null;
+    private volatile boolean          active  = false;     // 调度线程已启动、尚未清理
+    private          String           targetAddress = null;
+    private          String           prevTarget    = null;  // 上一轮的目标，用于识别迟到的广播
     private          int              currentLoop = 0;
-    private          long             loopStartTime = 0;
+    private          long             loopStartTime = 0;   // 单调时钟 (Scheduler.now)
+    private          long             phaseStartTime = 0;  // 当前阶段开始时间 (Scheduler.now)
+    private          long             lastCooldownMs = -1; // 本轮开始前的冷却间隔，-1=第一轮
+    private          long             wallOffset = 0;      // 墙钟 - 单调时钟，日志时间用
+    private final    long[]           loopPhaseMs = new long[TestStatistics.Phase.values().length];  // 本轮各阶段耗时，-1=未完成
+    private          int              loopBondReason = 0;  // 本轮 BOND_NONE 的原始原因码
+    private          int              capabilities = BluetoothBackend.CAP_ALL;  // 本次压测可用的隐藏API
+    private          int              loopRssi  = BluetoothBackend.RSSI_UNKNOWN;   // 本轮扫描到目标时的 RSSI
+    private          int              loopClass = BluetoothBackend.CLASS_UNKNOWN;  // 本轮目标的 BluetoothClass
+    private          TestStatistics.LoopPath loopPath = TestStatistics.LoopPath.INQUIRY;  // 本轮找到设备的路径
+
+    // BLE GATT 循环
+    private          int              loopMtu       = 0;   // 本轮生效的 MTU，0=未建立 GATT 连接
+    private          long             loopWriteBps  = -1;  // 本轮吞吐测试的写入/通知速率，-1=没有
+    private          long             loopNotifyBps = -1;
+    private          byte[]           burstPacket   = null;  // 每包 MTU-3 字节，MTU 不变时复用
+    private          long             burstWritten  = 0;
+    private          long             burstNotified = 0;
+    private          boolean          notifying     = false; // 本次吞吐测试开启了通知
+    private          boolean          cccdPending   = false; // 开启通知的描述符写还没完成
+
+    // 音频起播探测
+    private          boolean          probing       = false; // 本轮已进入探测（含排队），到播放保持结束
+    private          boolean          toneOn        = false; // 测试音正在播放
+    private          int              loopUnderruns = -1;    // 本轮播放保持的欠载/中断次数，-1=没有
+    private          int              loopDropouts  = -1;
+
+    // SPP 循环
+    private          long             loopSppBps    = -1;    // 本轮 SPP 发送速率，-1=没有
+    private          long             loopRttP50    = -1;    // 本轮往返时延 p50/p99，-1=没有或对端不回显
+    private          long             loopRttP99    = -1;
 
     // 统计
     private final TestStatistics statistics = new TestStatistics();
 
-    // BroadcastReceiver：监听所有蓝牙事件
-    private final BroadcastReceiver btReceiver = new BroadcastReceiver() {
+    // 蓝牙事件回调（在调度线程上触发）
+    private final BluetoothBackend.Listener backendListener = new BluetoothBackend.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if (action == null) return;
-            switch (action) {
-                case BluetoothDevice.ACTION_FOUND:
-                    onDeviceFound(intent);
-                    break;
-                case BluetoothAdapter.ACTION_DISCOVERY_FINISHED:
-                    onDiscoveryFinished();
-                    break;
-                case BluetoothDevice.ACTION_BOND_STATE_CHANGED:
-                    onBondStateChanged(intent);
-                    break;
-                case BluetoothA2dp.ACTION_CONNECTION_STATE_CHANGED:
-                    onA2dpStateChanged(intent);
-                    break;
-                case BluetoothDevice.ACTION_ACL_DISCONNECTED:
-                    onAclDisconnected(intent);
-                    break;
-            }
+        public void onDeviceFound(String address, String name, int rssi, int deviceClass) {
+            TestController.this.onDeviceFound(address, name, rssi, deviceClass);
+        }
+        @Override
+        public void onDiscoveryFinished() {
+            TestController.this.onDiscoveryFinished();
+        }
+        @Override
+        public void onBondStateChanged(String address, int bondState, int reason) {
+            TestController.this.onBondStateChanged(address, bondState, reason);
+        }
+        @Override
+        public void onA2dpStateChanged(String address, int a2dpState) {
+            TestController.this.onA2dpStateChanged(address, a2dpState);
+        }
+        @Override
+        public void onAclDisconnected(String address, int reason) {
+            TestController.this.onAclDisconnected(address, reason);
+        }
+        @Override
+        public void onA2dpProxyChanged(boolean available) {
+            if (available) log(LogEvent.PROXY_READY);
+        }
+        @Override
+        public void onA2dpPlayingChanged(String address, boolean playing) {
+            TestController.this.onA2dpPlayingChanged(address, playing);
+        }
+        @Override
+        public void onGattConnectionChanged(String address, int status, int state) {
+            TestController.this.onGattConnectionChanged(address, status, state);
+        }
+        @Override
+        public void onGattMtuChanged(String address, int mtu, int status) {
+            TestController.this.onGattMtuChanged(address, mtu, status);
+        }
+        @Override
+        public void onGattServicesDiscovered(String address, int status, int services, boolean writable) {
+            TestController.this.onGattServicesDiscovered(address, status, services, writable);
+        }
+        @Override
+        public void onGattWriteComplete(String address, int status) {
+            TestController.this.onGattWriteComplete(address, status);
+        }
+        @Override
+        public void onGattNotify(String address, int bytes) {
+            TestController.this.onGattNotify(address, bytes);
+        }
+        @Override
+        public void onSppConnected(String address, boolean ok) {
+            TestController.this.onSppConnectResult(address, ok);
+        }
+        @Override
+        public void onSppBurstDone(String address, SppBenchmark.Result result) {
+            TestController.this.onSppBurstDone(address, result);
         }
     };
 
@@ -99,15 +194,23 @@ public class TestController {
         void onLoopSuccess(int loop, long costMs);
         void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail);
         void onAllDone(TestStatistics stats);
-        void onLog(String msg, int type);
+        void onLog(LogRecord record);
     }
 
-    public TestController(Context context, BluetoothAdapter adapter, Callback callback) {
-        this.context   = context.getApplicationContext();
-        this.btAdapter = adapter;
+    public TestController(BluetoothBackend backend, Scheduler scheduler, Callback callback) {
+        this.backend   = backend;
+        this.scheduler = scheduler;
         this.callback  = callback;
+        this.timers    = new PhaseTimers(scheduler, () -> stale(TestStatistics.StaleKind.TIMER));
+        this.arbiter   = new RadioArbiter(scheduler);
+        this.machine   = new StateMachine(scheduler, timers, phase -> timeoutPolicy.get(phase), machineObserver);
+        buildMachine();
     }
 
+    /** 真实的状态机表和蓝牙事件入口，同包的基准不经过 start() 直接驱动 */
+    StateMachine getMachine()                      { return machine; }
+    BluetoothBackend.Listener getBackendListener() { return backendListener; }
+
     /*──────────────────────────────
      *  公开控制接口
      *──────────────────────────────*/
@@ -121,29 +224,146 @@ public class TestController {
         this.targetLoops = loops;
     }
 
+    /** 已知MAC地址时跳过扫描直接配对，寻呼失败再回退到扫描（start() 前调用） */
+    public void setDirectConnect(boolean enabled) {
+        this.directConnect = enabled;
+    }
+
+    /** 每轮包含哪些阶段（start() 前调用） */
+    public void setLoopShape(TestStatistics.LoopShape shape) {
+        this.loopShape = shape;
+    }
+
+    /** A2DP 连接后播放测试音、测量起播耗时并保持 holdMs（start() 前调用，0=不探测；仅重连/完整循环有效） */
+    public void setStreamProbe(long holdMs) {
+        this.streamHoldMs = Math.max(0, holdMs);
+    }
+
+    /** SPP 循环连接的服务 UUID（空=标准 SPP）和每帧字节数（start() 前调用） */
+    public void setSpp(String uuid, int frameBytes) {
+        this.sppUuid       = (uuid != null && !uuid.trim().isEmpty()) ? uuid.trim() : BluetoothBackend.SPP_UUID;
+        this.sppFrameBytes = Math.max(SppBenchmark.HEADER_BYTES, frameBytes);
+    }
+
+    /** 轮间冷却策略（start() 前调用；多设备时每个控制器一个实例） */
+    public void setCooldownPolicy(CooldownPolicy policy) {
+        this.cooldownPolicy = policy;
+    }
+
+    /** 阶段超时策略（start() 前调用；多设备时每个控制器一个实例，按各自的耗时分布调整） */
+    public void setTimeoutPolicy(TimeoutPolicy policy) {
+        this.timeoutPolicy = policy;
+    }
+
+    /** 事件日志（start() 前调用）；在控制器线程上打开，压测结束时关闭 */
+    public void setJournal(EventJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 从中断处继续（start() 前调用）：沿用已还原的统计，从第 completedLoops+1 轮开始，
+     * 中断时长记为一次 gap。中断时正在进行的那一轮不计入，会重新跑。
+     */
+    public void setResume(int completedLoops, TestStatistics restored, long gapMs) {
+        this.resumeLoops = completedLoops;
+        this.resumeStats = restored;
+        this.resumeGapMs = gapMs;
+    }
+
+    /** 每轮结果导出（start() 前调用；多耳机模式下各控制器共用一个） */
+    public void setExporter(RunExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    /** 日志里的设备标签（多耳机模式，start() 前调用） */
+    public void setDeviceLabel(String label) {
+        this.deviceLabel = label;
+    }
+
+    /** 多设备并发时与其他控制器共享同一个仲裁器（start() 前调用） */
+    public void setArbiter(RadioArbiter arbiter) {
+        this.arbiter = arbiter;
+    }
+
     public TestStatistics getStatistics() { return statistics; }
 
-    /** 开始压测 */
+    public boolean isRunning() { return running; }
+
+    /** 开始压测（任意线程调用，实际流程在调度线程执行） */
     public void start() {
         if (running) return;
         running = true;
+        active  = true;
         currentLoop = 0;
+        lastCooldownMs = -1;
+        cooldownPolicy.reset();
+        if (streamHoldMs > 0) timeoutPolicy.setDuration(TestStatistics.Phase.STREAM_HOLD, streamHoldMs);
+        timeoutPolicy.reset();
         statistics.reset();
         statistics.start();
-        registerReceiver();
-        getA2dpProxy();
-        nextLoop();
+        statistics.setLoopShape(loopShape);
+        wallOffset = System.currentTimeMillis() - scheduler.now();
+        final boolean resuming = resumeStats != null;
+        if (resuming) {
+            currentLoop = resumeLoops;
+            statistics.setStartTimeMs(0);
+            statistics.addFrom(resumeStats);
+            if (statistics.getStartTimeMs() == 0) statistics.start();
+            statistics.recordGap(resumeGapMs);
+            resumeStats = null;
+        }
+
+        scheduler.start(statistics.getDispatchLatency());
+        scheduler.post(() -> {
+            machine.reset();
+            openJournal(resuming);
+            if (resuming) {
+                log(LogEvent.RESUMED, currentLoop, (int) (resumeGapMs / 1000), null, null);
+            }
+            if (loopShape != TestStatistics.LoopShape.FULL) log(LogEvent.LOOP_SHAPE, loopShape.desc);
+            backend.open(backendListener);
+            if (!probeCapabilities()) {
+                running = false;
+                doStop();
+                return;
+            }
+            nextLoop();
+        });
     }
 
-    /** 停止压测 */
+    /** 停止压测（任意线程调用） */
     public void stop() {
         running = false;
-        handler.removeCallbacksAndMessages(null);
+        if (!active) return;
+        if (scheduler.isCurrentThread()) {
+            doStop();
+        } else {
+            scheduler.post(this::doStop);
+        }
+    }
+
+    private void doStop() {
+        if (!active) return;
+        active = false;
+        timers.newGeneration();
         stopDiscovery();
-        state = STATE_IDLE;
-        unregisterReceiver();
-        closeA2dpProxy();
+        arbiter.releaseAll(this);
+        arbiter.releaseDevices(this);
+        machine.enter(StateMachine.State.IDLE);
+        if (isGatt() && targetAddress != null) backend.closeGatt(targetAddress);
+        if (isSpp() && targetAddress != null) backend.closeSpp(targetAddress);
+        stopTone();
+        backend.close();
+        closeJournal();
+        log(LogEvent.PHASE_SUMMARY, statistics.getPhaseSummary());
+        log(LogEvent.TRANSITION_SUMMARY, statistics.getTransitions().toSummary());
+        if (!statistics.getReasonCodes().isEmpty()) {
+            log(LogEvent.REASON_SUMMARY, statistics.getReasonCodeSummary());
+        }
+        String rssi = statistics.getRssiSummary();
+        if (!rssi.isEmpty()) log(LogEvent.RSSI_SUMMARY, rssi);
         callback.onAllDone(statistics);
+        scheduler.quit();
     }
 
     /*──────────────────────────────
@@ -154,144 +374,569 @@ public class TestController {
         if (!running) return;
         if (targetLoops > 0 && currentLoop >= targetLoops) {
             // 达到目标次数，压测结束
-            stop();
+            running = false;
+            doStop();
             return;
         }
         currentLoop++;
-        loopStartTime = System.currentTimeMillis();
-        targetDevice = null;
+        timers.newGeneration();
+        loopStartTime = scheduler.now();
+        if (targetAddress != null) prevTarget = targetAddress;
+        targetAddress = null;
+        Arrays.fill(loopPhaseMs, -1);
+        loopBondReason = 0;
+        loopRssi  = BluetoothBackend.RSSI_UNKNOWN;
+        loopClass = BluetoothBackend.CLASS_UNKNOWN;
+        loopMtu       = 0;
+        loopWriteBps  = -1;
+        loopNotifyBps = -1;
+        probing       = false;
+        loopUnderruns = -1;
+        loopDropouts  = -1;
+        loopSppBps    = -1;
+        loopRttP50    = -1;
+        loopRttP99    = -1;
 
         callback.onLoopStart(currentLoop, targetLoops);
-        log("========== 第 " + currentLoop + " 轮开始 ==========", LogAdapter.TYPE_INFO);
-        startScanning();
-    }
+        journal(EventJournal.EV_LOOP_START, null, currentLoop, 0);
+        log(LogEvent.LOOP_START, currentLoop, 0, null, null);
+        if (timeoutPolicy.getMode() == TimeoutPolicy.Mode.ADAPTIVE) {
+            timeoutPolicy.update(statistics);
+            log(LogEvent.TIMEOUTS, 0, 0, timeoutPolicy.describeRule(), timeoutPolicy.describe(loopShape, streamHoldMs > 0));
+        }
 
-    // -------- Step 1: 扫描 --------
+        loopPath = TestStatistics.LoopPath.INQUIRY;
+        String bonded = loopShape == TestStatistics.LoopShape.RECONNECT ? bondedTarget() : null;
+        if (bonded != null && arbiter.claimDevice(bonded, this)) {
+            // 仅重连：目标仍在配对列表中，直接从连接开始
+            loopPath = TestStatistics.LoopPath.BONDED;
+            targetAddress = bonded;
+            log(LogEvent.REUSE_BOND, targetAddress);
+            startConnecting();
+        } else if (directConnect && isValidAddress(filterAddress) && arbiter.claimDevice(filterAddress, this)) {
+            loopPath = TestStatistics.LoopPath.DIRECT;
+            targetAddress = filterAddress;
+            log(LogEvent.DIRECT_PAGE, targetAddress);
+            if (isGatt()) {
+                startGattConnecting();
+            } else {
+                startBonding();
+            }
+        } else {
+            startScanning();
+        }
+    }
 
-    private void startScanning() {
-        setState("扫描中...");
-        state = STATE_SCANNING;
-        if (btAdapter.isDiscovering()) btAdapter.cancelDiscovery();
-        btAdapter.startDiscovery();
-        log("开始扫描蓝牙设备...", LogAdapter.TYPE_INFO);
-        scheduleTimeout(SCAN_TIMEOUT_MS, () -> {
-            if (state == STATE_SCANNING) {
-                log("扫描超时，未找到目标设备", LogAdapter.TYPE_FAILURE);
-                stopDiscovery();
-                failLoop(TestStatistics.FailReason.SCAN_TIMEOUT, "扫描超时");
+    /**
+     * 读取后端可用的隐藏API，记录探测结果和替代流程
+     * @return false 表示缺少必需的 removeBond（GATT 循环为 BLE），无法开始
+     */
+    private boolean probeCapabilities() {
+        capabilities = backend.getCapabilities();
+        log(LogEvent.CAPABILITIES, capabilityText(capabilities));
+        if (isGatt()) {
+            // 不配对、不用 A2DP，只需要 BLE
+            if (!hasCapability(BluetoothBackend.CAP_GATT)) {
+                log(LogEvent.NO_GATT);
+                return false;
+            }
+            return true;
+        }
+        if (loopShape == TestStatistics.LoopShape.RECONNECT) {
+            // 每轮都要主动连接和断开，没有替代流程
+            if (!hasCapability(BluetoothBackend.CAP_A2DP_CONNECT) || !hasCapability(BluetoothBackend.CAP_A2DP_DISCONNECT)) {
+                log(LogEvent.NO_RECONNECT_API);
+                return false;
             }
+            return true;
+        }
+        if (!hasCapability(BluetoothBackend.CAP_REMOVE_BOND)) {
+            log(LogEvent.NO_REMOVE_BOND);
+            return false;
+        }
+        if (isSpp()) return true;   // 不用 A2DP
+        if (!hasCapability(BluetoothBackend.CAP_A2DP_CONNECT)) {
+            log(LogEvent.CAPABILITY_FALLBACK, 0, 0, "A2dp.connect()", "只等待系统自动连接A2DP");
+        }
+        if (!hasCapability(BluetoothBackend.CAP_A2DP_DISCONNECT)) {
+            log(LogEvent.CAPABILITY_FALLBACK, 0, 0, "A2dp.disconnect()", "跳过断开阶段，由removeBond断开连接");
+        }
+        return true;
+    }
+
+    private boolean hasCapability(int cap) {
+        return (capabilities & cap) != 0;
+    }
+
+    /** 运行中调用失败：本次压测不再调用该能力，只记一次日志 */
+    private void dropCapability(int cap, String name, String error) {
+        capabilities &= ~cap;
+        log(LogEvent.CAPABILITY_LOST, 0, 0, name, error);
+    }
+
+    /** 能力位的显示文字，如 "removeBond✓ A2dp.connect✓ A2dp.disconnect✗ BLE✓" */
+    static String capabilityText(int caps) {
+        return "removeBond"      + ((caps & BluetoothBackend.CAP_REMOVE_BOND)     != 0 ? "✓" : "✗")
+             + " A2dp.connect"    + ((caps & BluetoothBackend.CAP_A2DP_CONNECT)    != 0 ? "✓" : "✗")
+             + " A2dp.disconnect" + ((caps & BluetoothBackend.CAP_A2DP_DISCONNECT) != 0 ? "✓" : "✗")
+             + " BLE"             + ((caps & BluetoothBackend.CAP_GATT)            != 0 ? "✓" : "✗");
+    }
+
+    /*──────────────────────────────
+     *  状态机表
+     *──────────────────────────────*/
+
+    /**
+     * 每个状态处理哪些事件、超时后做什么；没有列出的 (状态, 事件) 记为意外事件。
+     * 声明了 TIMEOUT 的状态进入时自动按本轮超时策略启动定时，离开时撤销。
+     */
+    private void buildMachine() {
+        final StateMachine m = machine;
+
+        // 扫描
+        m.on(StateMachine.State.SCANNING, StateMachine.Event.DEVICE_FOUND, this::matchesFilter, this::onTargetFound);
+        m.on(StateMachine.State.SCANNING, StateMachine.Event.DEVICE_FOUND, this::recordFoundDevice);
+        // 仍在扫描说明这是上一次 cancelDiscovery() 迟到的广播
+        m.on(StateMachine.State.SCANNING, StateMachine.Event.DISCOVERY_FINISHED,
+                () -> !backend.isDiscovering(), this::onScanNotFound);
+        onTimeout(StateMachine.State.SCANNING, this::onScanTimeout);
+
+        // 配对
+        m.on(StateMachine.State.BONDING, StateMachine.Event.BOND_BONDING, () -> log(LogEvent.BONDING));
+        m.on(StateMachine.State.BONDING, StateMachine.Event.BOND_BONDED, this::onBonded);
+        m.on(StateMachine.State.BONDING, StateMachine.Event.BOND_NONE, this::onBondFailed);
+        onTimeout(StateMachine.State.BONDING, this::onBondTimeout);
+
+        // 等待A2DP连接
+        m.ignore(StateMachine.State.CONNECTING, StateMachine.Event.A2DP_CONNECTING);
+        m.on(StateMachine.State.CONNECTING, StateMachine.Event.A2DP_CONNECTED, this::onA2dpConnected);
+        onTimeout(StateMachine.State.CONNECTING, this::onConnectTimeout);
+
+        // 音频起播探测（可选）：起播前的 NOT_PLAYING 和中断后恢复的 PLAYING 都是正常的
+        m.on(StateMachine.State.STREAM_STARTING, StateMachine.Event.A2DP_PLAYING, this::onStreamPlaying);
+        m.ignore(StateMachine.State.STREAM_STARTING, StateMachine.Event.A2DP_NOT_PLAYING);
+        onTimeout(StateMachine.State.STREAM_STARTING, this::onStreamTimeout);
+        m.on(StateMachine.State.STREAMING, StateMachine.Event.A2DP_NOT_PLAYING, this::onStreamDropout);
+        m.ignore(StateMachine.State.STREAMING, StateMachine.Event.A2DP_PLAYING);
+        onTimeout(StateMachine.State.STREAMING, this::onStreamHoldEnd);   // "超时"即保持时长
+        for (StateMachine.State s : new StateMachine.State[] {StateMachine.State.STREAM_STARTING, StateMachine.State.STREAMING}) {
+            m.on(s, StateMachine.Event.A2DP_DISCONNECTED, this::onStreamLinkLost);
+            m.on(s, StateMachine.Event.ACL_DISCONNECTED, this::onStreamLinkLost);
+        }
+        m.on(StateMachine.State.WAITING, StateMachine.Event.A2DP_DISCONNECTED, () -> probing, this::onStreamLinkLost);   // 排队等播放时
+        m.on(StateMachine.State.WAITING, StateMachine.Event.ACL_DISCONNECTED, () -> probing, this::onStreamLinkLost);
+
+        // 断开（ACL 断开作为备用检测）
+        m.ignore(StateMachine.State.DISCONNECTING, StateMachine.Event.A2DP_DISCONNECTING);
+        m.on(StateMachine.State.DISCONNECTING, StateMachine.Event.A2DP_DISCONNECTED, this::onA2dpDisconnected);
+        m.on(StateMachine.State.DISCONNECTING, StateMachine.Event.ACL_DISCONNECTED, this::onAclDisconnectedInPhase);
+        onTimeout(StateMachine.State.DISCONNECTING, this::onDisconnectTimeout);
+
+        // 取消配对（removeBond 会连带断开 A2DP 和 ACL）
+        m.on(StateMachine.State.UNPAIRING, StateMachine.Event.BOND_NONE, this::onUnpaired);
+        m.on(StateMachine.State.UNPAIRING, StateMachine.Event.BOND_BONDED,
+                () -> failLoop(TestStatistics.FailReason.UNPAIR_FAILED, "取消配对后状态仍为BONDED"));
+        m.ignore(StateMachine.State.UNPAIRING, StateMachine.Event.A2DP_DISCONNECTING);
+        m.ignore(StateMachine.State.UNPAIRING, StateMachine.Event.A2DP_DISCONNECTED);
+        m.ignore(StateMachine.State.UNPAIRING, StateMachine.Event.ACL_DISCONNECTED);
+        onTimeout(StateMachine.State.UNPAIRING, this::onUnpairTimeout);
+
+        // 仅配对/SPP：配对后系统会自动连接 A2DP，取消配对时收到连接广播是正常的
+        m.ignore(StateMachine.State.UNPAIRING, StateMachine.Event.A2DP_CONNECTING, () -> isBondOnly() || isSpp());
+        m.ignore(StateMachine.State.UNPAIRING, StateMachine.Event.A2DP_CONNECTED, () -> isBondOnly() || isSpp());
+        // 仅重连：断开 A2DP 后 ACL 稍后才断，通常落在本轮结束之后
+        m.ignore(StateMachine.State.IDLE, StateMachine.Event.ACL_DISCONNECTED, this::isReconnectOnly);
+
+        // BLE GATT：建链之后任何阶段断开都算失败
+        m.on(StateMachine.State.GATT_CONNECTING, StateMachine.Event.GATT_CONNECTED, this::onGattConnected);
+        m.on(StateMachine.State.GATT_CONNECTING, StateMachine.Event.GATT_DISCONNECTED, this::onGattConnectFailed);
+        onTimeout(StateMachine.State.GATT_CONNECTING, this::onGattConnectTimeout);
+        m.on(StateMachine.State.MTU_EXCHANGE, StateMachine.Event.MTU_CHANGED, this::onMtuChanged);
+        m.on(StateMachine.State.MTU_EXCHANGE, StateMachine.Event.GATT_DISCONNECTED, this::onGattLost);
+        onTimeout(StateMachine.State.MTU_EXCHANGE, this::onMtuTimeout);
+        m.on(StateMachine.State.DISCOVERING, StateMachine.Event.SERVICES_DISCOVERED, this::onServicesDiscovered);
+        m.on(StateMachine.State.DISCOVERING, StateMachine.Event.GATT_DISCONNECTED, this::onGattLost);
+        onTimeout(StateMachine.State.DISCOVERING, this::onServicesTimeout);
+        m.on(StateMachine.State.WAITING, StateMachine.Event.GATT_DISCONNECTED, this::onGattLost);   // 排队等吞吐测试时
+        m.on(StateMachine.State.BURST, StateMachine.Event.GATT_WRITE_DONE, this::onGattWriteDone);
+        m.on(StateMachine.State.BURST, StateMachine.Event.GATT_NOTIFY, this::onGattNotified);
+        m.on(StateMachine.State.BURST, StateMachine.Event.GATT_DISCONNECTED, this::onGattLost);
+        onTimeout(StateMachine.State.BURST, this::onBurstEnd);   // "超时"即测试时长
+        m.on(StateMachine.State.GATT_DISCONNECTING, StateMachine.Event.GATT_DISCONNECTED, this::onGattDisconnected);
+        // 测试结束时还在途的写完成和通知
+        m.ignore(StateMachine.State.GATT_DISCONNECTING, StateMachine.Event.GATT_WRITE_DONE);
+        m.ignore(StateMachine.State.GATT_DISCONNECTING, StateMachine.Event.GATT_NOTIFY);
+        onTimeout(StateMachine.State.GATT_DISCONNECTING, this::onGattDisconnectTimeout);
+
+        // SPP：RFCOMM 建链之后任何阶段断开都算失败
+        m.on(StateMachine.State.SPP_CONNECTING, StateMachine.Event.SPP_CONNECTED, this::onSppConnected);
+        m.on(StateMachine.State.SPP_CONNECTING, StateMachine.Event.SPP_CLOSED, this::onSppConnectFailed);
+        onTimeout(StateMachine.State.SPP_CONNECTING, this::onSppConnectTimeout);
+        m.on(StateMachine.State.SPP_BURST, StateMachine.Event.SPP_CLOSED, this::onSppLost);
+        m.on(StateMachine.State.SPP_BURST, StateMachine.Event.ACL_DISCONNECTED, this::onSppLost);
+        onTimeout(StateMachine.State.SPP_BURST, this::onSppBurstEnd);   // "超时"即测试时长
+        m.on(StateMachine.State.SPP_DRAINING, StateMachine.Event.SPP_RESULT, this::onSppResult);
+        m.on(StateMachine.State.SPP_DRAINING, StateMachine.Event.SPP_CLOSED, this::onSppLost);
+        m.on(StateMachine.State.SPP_DRAINING, StateMachine.Event.ACL_DISCONNECTED, this::onSppLost);
+        onTimeout(StateMachine.State.SPP_DRAINING, this::onSppDrainTimeout);
+        // 配对后系统自动连接 A2DP（耳机类设备）与 SPP 测试无关
+        for (StateMachine.State s : new StateMachine.State[] {StateMachine.State.SPP_CONNECTING,
+                StateMachine.State.SPP_BURST, StateMachine.State.SPP_DRAINING}) {
+            m.ignore(s, StateMachine.Event.A2DP_CONNECTING);
+            m.ignore(s, StateMachine.Event.A2DP_CONNECTED);
+            m.ignore(s, StateMachine.Event.A2DP_DISCONNECTING);
+            m.ignore(s, StateMachine.Event.A2DP_DISCONNECTED);
+        }
+        m.ignore(StateMachine.State.WAITING, StateMachine.Event.A2DP_CONNECTING, this::isSpp);   // 排队等 SPP 测试时
+        m.ignore(StateMachine.State.WAITING, StateMachine.Event.A2DP_CONNECTED, this::isSpp);
+
+        // 其他状态收到扫描广播是正常的（其他设备的扫描、cancelDiscovery 的收尾）
+        m.ignoreElsewhere(StateMachine.Event.DEVICE_FOUND);
+        m.ignoreElsewhere(StateMachine.Event.DISCOVERY_FINISHED);
+        // 对端也可能主动发起 MTU 交换
+        m.ignoreElsewhere(StateMachine.Event.MTU_CHANGED);
+        // 播放状态只在探测时有意义（停止测试音后的 NOT_PLAYING、手机自己在放音乐）
+        m.ignoreElsewhere(StateMachine.Event.A2DP_PLAYING);
+        m.ignoreElsewhere(StateMachine.Event.A2DP_NOT_PLAYING);
+    }
+
+    /** 超时动作：先写事件日志 */
+    private void onTimeout(final StateMachine.State s, final Runnable action) {
+        machine.on(s, StateMachine.Event.TIMEOUT, () -> {
+            journal(EventJournal.EV_TIMEOUT, null, s.phase.ordinal(), 0);
+            action.run();
         });
     }
 
-    private void onDeviceFound(Intent intent) {
-        if (state != STATE_SCANNING) return;
-        BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-        if (device == null) return;
+    /** 状态机插桩：所有状态切换和意外事件都经过这里 */
+    private final StateMachine.Observer machineObserver = new StateMachine.Observer() {
+        @Override
+        public void onTransition(long time, StateMachine.State from, StateMachine.State to,
+                                 StateMachine.Event trigger, long dwellMs) {
+            journal(EventJournal.EV_TRANSITION, null, to.ordinal(), trigger != null ? trigger.ordinal() + 1 : 0);
+            statistics.getTransitions().recordTransition(from, to, dwellMs);
+            statistics.getReasonCodes().endA2dpSequence(phaseRow(to));
+        }
+        @Override
+        public void onUnexpected(StateMachine.State state, StateMachine.Event event) {
+            statistics.getTransitions().recordUnexpected(state, event);
+            statistics.recordStale(event.stale);
+            journal(EventJournal.EV_UNEXPECTED, null, state.ordinal(), event.ordinal());
+        }
+    };
+
+    /*──────────────────────────────
+     *  蓝牙广播 → 状态机事件
+     *──────────────────────────────*/
+
+    // 正在分发的事件的参数，由动作读取
+    private String evAddress;
+    private String evName;
+    private int    evRssi;
+    private int    evClass;
+    private int    evReason;
+    private int    evStatus;     // GATT 状态码
+    private int    evValue;      // MTU / 服务数 / 通知字节数
+    private boolean evWritable;
+    private SppBenchmark.Result evSpp;   // SPP 测试结果
+
+    private void onDeviceFound(String address, String name, int rssi, int deviceClass) {
+        evAddress = address;
+        evName    = name;
+        evRssi    = rssi;
+        evClass   = deviceClass;
+        machine.fire(StateMachine.Event.DEVICE_FOUND);
+    }
+
+    private void onDiscoveryFinished() {
+        machine.fire(StateMachine.Event.DISCOVERY_FINISHED);
+    }
+
+    /**
+     * 目标设备的广播先写事件日志和原因码分布，再交给状态机；
+     * 本轮还没找到目标时收到上一轮目标的广播也交给状态机，计为意外事件
+     */
+    private void onBondStateChanged(String address, int newState, int reason) {
+        if (isTarget(address)) {
+            journal(EventJournal.EV_BOND_STATE, address, newState, reason);
+            if (newState == BluetoothBackend.BOND_NONE) {
+                statistics.getReasonCodes().record(ReasonCodeMatrix.Kind.BOND_REASON, phaseRow(machine.getState()), reason);
+            }
+        } else if (!isPrevTarget(address)) {
+            return;
+        }
+        evReason = reason;
+        switch (newState) {
+            case BluetoothBackend.BOND_BONDING: machine.fire(StateMachine.Event.BOND_BONDING); break;
+            case BluetoothBackend.BOND_BONDED:  machine.fire(StateMachine.Event.BOND_BONDED);  break;
+            case BluetoothBackend.BOND_NONE:    machine.fire(StateMachine.Event.BOND_NONE);    break;
+        }
+    }
+
+    private void onA2dpStateChanged(String address, int newState) {
+        if (isTarget(address)) {
+            journal(EventJournal.EV_A2DP_STATE, address, newState, 0);
+            statistics.getReasonCodes().recordA2dpState(phaseRow(machine.getState()), newState);
+            TestStatistics.Phase phase = machine.getState().phase;
+            if (phase != null && phase.ordinal() >= TestStatistics.Phase.CONNECT.ordinal()) {
+                log(LogEvent.A2DP_STATE, newState, 0, a2dpStateStr(newState), null);
+            }
+        } else if (!isPrevTarget(address)) {
+            return;
+        }
+        switch (newState) {
+            case BluetoothBackend.STATE_CONNECTING:    machine.fire(StateMachine.Event.A2DP_CONNECTING);    break;
+            case BluetoothBackend.STATE_CONNECTED:     machine.fire(StateMachine.Event.A2DP_CONNECTED);     break;
+            case BluetoothBackend.STATE_DISCONNECTING: machine.fire(StateMachine.Event.A2DP_DISCONNECTING); break;
+            case BluetoothBackend.STATE_DISCONNECTED:  machine.fire(StateMachine.Event.A2DP_DISCONNECTED);  break;
+        }
+    }
 
-        String name = "";
-        try { name = device.getName(); } catch (SecurityException ignored) {}
-        String address = device.getAddress();
-        if (name == null) name = "";
+    private void onAclDisconnected(String address, int reason) {
+        if (isTarget(address)) {
+            journal(EventJournal.EV_ACL_REASON, address, reason, 0);
+            statistics.getReasonCodes().record(ReasonCodeMatrix.Kind.ACL_REASON, phaseRow(machine.getState()), reason);
+        } else if (!isPrevTarget(address)) {
+            return;
+        }
+        evReason = reason;
+        machine.fire(StateMachine.Event.ACL_DISCONNECTED);
+    }
+
+    /** GATT 断开的 status 计入原因码分布（连接失败多为 133，链路超时为 8） */
+    private void onGattConnectionChanged(String address, int status, int state) {
+        if (isTarget(address)) {
+            journal(EventJournal.EV_GATT_STATE, address, state, status);
+            if (state == BluetoothBackend.STATE_DISCONNECTED) {
+                statistics.getReasonCodes().record(ReasonCodeMatrix.Kind.GATT_STATUS, phaseRow(machine.getState()), status);
+            }
+        } else if (!isPrevTarget(address)) {
+            return;
+        }
+        evStatus = status;
+        switch (state) {
+            case BluetoothBackend.STATE_CONNECTED:    machine.fire(StateMachine.Event.GATT_CONNECTED);    break;
+            case BluetoothBackend.STATE_DISCONNECTED: machine.fire(StateMachine.Event.GATT_DISCONNECTED); break;
+        }
+    }
 
-        log("发现设备: " + name + " [" + address + "]", LogAdapter.TYPE_INFO);
+    private void onGattMtuChanged(String address, int mtu, int status) {
+        if (isTarget(address)) {
+            journal(EventJournal.EV_GATT_MTU, address, mtu, status);
+            recordGattResult(ReasonCodeMatrix.Kind.GATT_MTU, mtu, status);
+        } else if (!isPrevTarget(address)) {
+            return;
+        }
+        evStatus = status;
+        evValue  = mtu;
+        machine.fire(StateMachine.Event.MTU_CHANGED);
+    }
 
-        // 匹配过滤条件（名称 或 地址，任一匹配即可）
-        boolean matchByName    = !filterName.isEmpty()    && name.contains(filterName);
-        boolean matchByAddress = !filterAddress.isEmpty() && address.equalsIgnoreCase(filterAddress);
+    private void onGattServicesDiscovered(String address, int status, int services, boolean writable) {
+        if (isTarget(address)) {
+            journal(EventJournal.EV_GATT_SERVICES, address, status, services);
+            recordGattResult(null, 0, status);
+        } else if (!isPrevTarget(address)) {
+            return;
+        }
+        evStatus   = status;
+        evValue    = services;
+        evWritable = writable;
+        machine.fire(StateMachine.Event.SERVICES_DISCOVERED);
+    }
+
+    /** 吞吐测试时每秒上千次，只有失败的写才写事件日志 */
+    private void onGattWriteComplete(String address, int status) {
+        if (isTarget(address)) {
+            if (status != BluetoothBackend.GATT_SUCCESS) {
+                journal(EventJournal.EV_GATT_WRITE, address, status, 0);
+                recordGattResult(null, 0, status);
+            }
+        } else if (!isPrevTarget(address)) {
+            return;
+        }
+        evStatus = status;
+        machine.fire(StateMachine.Event.GATT_WRITE_DONE);
+    }
+
+    private void onA2dpPlayingChanged(String address, boolean playing) {
+        if (!isTarget(address) && !isPrevTarget(address)) return;
+        machine.fire(playing ? StateMachine.Event.A2DP_PLAYING : StateMachine.Event.A2DP_NOT_PLAYING);
+    }
+
+    private void onGattNotify(String address, int bytes) {
+        if (!isTarget(address) && !isPrevTarget(address)) return;
+        evValue = bytes;
+        machine.fire(StateMachine.Event.GATT_NOTIFY);
+    }
+
+    private void onSppConnectResult(String address, boolean ok) {
+        if (!isTarget(address) && !isPrevTarget(address)) return;
+        machine.fire(ok ? StateMachine.Event.SPP_CONNECTED : StateMachine.Event.SPP_CLOSED);
+    }
+
+    /** result 为 null 表示收发出错（连接断开） */
+    private void onSppBurstDone(String address, SppBenchmark.Result result) {
+        if (!isTarget(address) && !isPrevTarget(address)) return;
+        evSpp = result;
+        machine.fire(result != null ? StateMachine.Event.SPP_RESULT : StateMachine.Event.SPP_CLOSED);
+    }
+
+    /** 成功时按 kind 记录 value（kind 为 null 则不记），失败时记录 status */
+    private void recordGattResult(ReasonCodeMatrix.Kind kind, int value, int status) {
+        int row = phaseRow(machine.getState());
+        if (status != BluetoothBackend.GATT_SUCCESS) {
+            statistics.getReasonCodes().record(ReasonCodeMatrix.Kind.GATT_STATUS, row, status);
+        } else if (kind != null) {
+            statistics.getReasonCodes().record(kind, row, value);
+        }
+    }
+
+    // -------- Step 1: 扫描 --------
+
+    private void startScanning() {
+        requestResource(RadioArbiter.Resource.DISCOVERY, this::doStartScanning);
+    }
+
+    private void doStartScanning() {
+        setState("扫描中...");
+        machine.enter(StateMachine.State.SCANNING);
+        beginPhase();
+        if (backend.isDiscovering()) backend.cancelDiscovery();
+        backend.startDiscovery();
+        log(LogEvent.SCAN_START);
+    }
+
+    private void onScanTimeout() {
+        log(LogEvent.SCAN_TIMEOUT);
+        stopDiscovery();
+        failLoop(TestStatistics.FailReason.SCAN_TIMEOUT, "扫描超时");
+    }
+
+    /** 匹配过滤条件（名称 或 地址，任一匹配即可） */
+    private boolean matchesFilter() {
+        boolean matchByName    = !filterName.isEmpty()    && evName.contains(filterName);
+        boolean matchByAddress = !filterAddress.isEmpty() && evAddress.equalsIgnoreCase(filterAddress);
         boolean filterEmpty    = filterName.isEmpty() && filterAddress.isEmpty();
+        return filterEmpty || matchByName || matchByAddress;
+    }
 
-        if (filterEmpty || matchByName || matchByAddress) {
-            targetDevice = device;
-            handler.removeCallbacksAndMessages(null); // 取消扫描超时
-            stopDiscovery();
-            log("匹配目标设备: " + name + " [" + address + "]", LogAdapter.TYPE_WARNING);
+    private void recordFoundDevice() {
+        journal(EventJournal.EV_DEVICE_FOUND, evAddress, 0, 0);
+        log(LogEvent.DEVICE_FOUND, 0, 0, evName, evAddress);
+    }
+
+    private void onTargetFound() {
+        recordFoundDevice();
+        String address = evAddress;
+        // 多设备时同一只耳机只归属一个控制器
+        if (!arbiter.claimDevice(address, this)) return;
+        targetAddress = address;
+        loopRssi  = evRssi;
+        loopClass = evClass;
+        statistics.recordSignal(evRssi);
+        journal(EventJournal.EV_DEVICE_SIGNAL, address, evRssi, evClass);
+        endPhase(TestStatistics.Phase.SCAN);
+        stopDiscovery();
+        arbiter.release(RadioArbiter.Resource.DISCOVERY, this);
+        log(LogEvent.DEVICE_MATCHED, 0, 0, evName, address);
+        if (evRssi != BluetoothBackend.RSSI_UNKNOWN) {
+            log(LogEvent.DEVICE_SIGNAL, evRssi, 0, deviceClassText(evClass), null);
+        }
+        if (isGatt()) {
+            startGattConnecting();
+        } else {
             startBonding();
         }
     }
 
-    private void onDiscoveryFinished() {
-        if (state == STATE_SCANNING) {
-            // 扫描结束但未找到目标
-            log("扫描完成，未找到目标设备", LogAdapter.TYPE_FAILURE);
-            failLoop(TestStatistics.FailReason.SCAN_TIMEOUT, "扫描完成未找到设备");
-        }
+    private void onScanNotFound() {
+        // 扫描结束但未找到目标
+        log(LogEvent.SCAN_NOT_FOUND);
+        failLoop(TestStatistics.FailReason.SCAN_TIMEOUT, "扫描完成未找到设备");
     }
 
     // -------- Step 2: 配对 --------
 
     private void startBonding() {
-        if (targetDevice == null || !running) return;
+        if (targetAddress == null || !running) return;
+        requestResource(RadioArbiter.Resource.BOND, this::doStartBonding);
+    }
+
+    private void doStartBonding() {
         setState("配对中...");
-        state = STATE_BONDING;
-        log("发起配对请求...", LogAdapter.TYPE_INFO);
+        machine.enter(StateMachine.State.BONDING);
+        beginPhase();
+        log(LogEvent.BOND_START);
 
         boolean result = false;
-        try { result = targetDevice.createBond(); }
-        catch (SecurityException e) { log("createBond权限异常: " + e.getMessage(), LogAdapter.TYPE_FAILURE); }
+        try { result = backend.createBond(targetAddress); }
+        catch (BluetoothBackend.BackendException e) { log(LogEvent.BACKEND_ERROR, e.getMessage()); }
 
         if (!result) {
             // 可能已经在配对列表中，直接检查
-            int bondState = BluetoothDevice.BOND_NONE;
-            try { bondState = targetDevice.getBondState(); } catch (SecurityException ignored) {}
-            if (bondState == BluetoothDevice.BOND_BONDED) {
-                log("设备已配对，直接进入连接阶段", LogAdapter.TYPE_WARNING);
-                startConnecting();
+            if (isBonded(targetAddress)) {
+                log(LogEvent.ALREADY_BONDED);
+                arbiter.release(RadioArbiter.Resource.BOND, this);
+                if (isBondOnly()) {
+                    startUnpairing();
+                } else if (isSpp()) {
+                    startSpp();
+                } else {
+                    startConnecting();
+                }
                 return;
             }
-            log("createBond() 返回false", LogAdapter.TYPE_FAILURE);
+            if (fallbackToInquiry("createBond返回false")) return;
+            log(LogEvent.CREATE_BOND_FALSE);
             failLoop(TestStatistics.FailReason.BOND_FAILED, "createBond返回false");
-            return;
         }
+    }
 
-        scheduleTimeout(BOND_TIMEOUT_MS, () -> {
-            if (state == STATE_BONDING) {
-                log("配对超时 (可能 Page Timeout)", LogAdapter.TYPE_FAILURE);
-                failLoop(TestStatistics.FailReason.PAGE_TIMEOUT, "配对请求超时");
-            }
-        });
+    private void onBondTimeout() {
+        if (fallbackToInquiry("配对请求超时")) return;
+        log(LogEvent.BOND_TIMEOUT);
+        failLoop(TestStatistics.FailReason.PAGE_TIMEOUT, "配对请求超时");
     }
 
-    private void onBondStateChanged(Intent intent) {
-        BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-        if (device == null || targetDevice == null) return;
-        if (!device.getAddress().equalsIgnoreCase(targetDevice.getAddress())) return;
+    private void onBonded() {
+        endPhase(TestStatistics.Phase.BOND);
+        arbiter.release(RadioArbiter.Resource.BOND, this);
+        log(LogEvent.BONDED);
+        if (isBondOnly()) {
+            startUnpairing();
+        } else if (isSpp()) {
+            startSpp();
+        } else {
+            startConnecting();
+        }
+    }
 
-        int newState = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.BOND_NONE);
-        int reason   = intent.getIntExtra("android.bluetooth.device.extra.REASON", -1);
+    private void onBondFailed() {
+        int reason = evReason;
+        loopBondReason = reason;
+        // 解析失败原因
+        String reasonStr = decodeBondFailReason(reason);
+        if (fallbackToInquiry(reasonStr)) return;
+        TestStatistics.FailReason failReason = isPageTimeout(reason)
+                ? TestStatistics.FailReason.PAGE_TIMEOUT
+                : TestStatistics.FailReason.BOND_FAILED;
+        log(LogEvent.BOND_FAILED, reason, 0, reasonStr, null);
+        failLoop(failReason, reasonStr);
+    }
 
-        switch (newState) {
-            case BluetoothDevice.BOND_BONDING:
-                log("配对进行中...", LogAdapter.TYPE_INFO);
-                break;
-
-            case BluetoothDevice.BOND_BONDED:
-                if (state == STATE_BONDING) {
-                    handler.removeCallbacksAndMessages(null);
-                    log("配对成功!", LogAdapter.TYPE_SUCCESS);
-                    startConnecting();
-                } else if (state == STATE_UNPAIRING) {
-                    // 配对状态未变为NONE，取消配对失败
-                    failLoop(TestStatistics.FailReason.UNPAIR_FAILED, "取消配对后状态仍为BONDED");
-                }
-                break;
-
-            case BluetoothDevice.BOND_NONE:
-                if (state == STATE_BONDING) {
-                    handler.removeCallbacksAndMessages(null);
-                    // 解析失败原因
-                    String reasonStr = decodeBondFailReason(reason);
-                    TestStatistics.FailReason failReason = isPageTimeout(reason)
-                            ? TestStatistics.FailReason.PAGE_TIMEOUT
-                            : TestStatistics.FailReason.BOND_FAILED;
-                    log("配对失败! 原因: " + reasonStr + " (code=" + reason + ")", LogAdapter.TYPE_FAILURE);
-                    failLoop(failReason, reasonStr);
-                } else if (state == STATE_UNPAIRING) {
-                    handler.removeCallbacksAndMessages(null);
-                    log("取消配对成功，设备已从配对列表移除", LogAdapter.TYPE_SUCCESS);
-                    finishLoop(true);
-                }
-                break;
-        }
+    /**
+     * 直连寻呼失败时改走扫描（耳机可能不在 page scan，或系统需要 inquiry 拿到时钟偏移）
+     * @return true 表示已回退，调用方不再按失败处理
+     */
+    private boolean fallbackToInquiry(String why) {
+        if (loopPath != TestStatistics.LoopPath.DIRECT) return false;
+        loopPath = TestStatistics.LoopPath.FALLBACK;
+        arbiter.release(RadioArbiter.Resource.BOND, this);
+        log(LogEvent.DIRECT_FALLBACK, why);
+        targetAddress = null;
+        startScanning();
+        return true;
     }
 
     /** 判断是否 Page Timeout（HCI错误码0x04） */
@@ -326,55 +971,105 @@ public class TestController {
 
     private void startConnecting() {
         if (!running) return;
+        requestResource(RadioArbiter.Resource.A2DP, this::doStartConnecting);
+    }
+
+    private void doStartConnecting() {
         setState("等待A2DP连接...");
-        state = STATE_CONNECTING;
-        log("等待A2DP Profile自动连接...", LogAdapter.TYPE_INFO);
+        machine.enter(StateMachine.State.CONNECTING);
+        beginPhase();
+        log(LogEvent.A2DP_WAIT);
 
         // 部分手机需要主动触发A2DP连接
-        if (a2dpProxy != null && targetDevice != null) {
+        if (targetAddress != null && hasCapability(BluetoothBackend.CAP_A2DP_CONNECT)) {
             try {
-                Method m = BluetoothA2dp.class.getDeclaredMethod("connect", BluetoothDevice.class);
-                m.setAccessible(true);
-                m.invoke(a2dpProxy, targetDevice);
-                log("已调用A2dp.connect()", LogAdapter.TYPE_INFO);
-            } catch (Exception e) {
-                log("A2dp.connect()调用失败: " + e.getMessage(), LogAdapter.TYPE_WARNING);
+                if (backend.connectA2dp(targetAddress)) log(LogEvent.A2DP_CONNECT_CALLED);
+            } catch (BluetoothBackend.BackendException e) {
+                dropCapability(BluetoothBackend.CAP_A2DP_CONNECT, "A2dp.connect()", e.getMessage());
             }
         }
-
-        scheduleTimeout(CONNECT_TIMEOUT_MS, () -> {
-            if (state == STATE_CONNECTING) {
-                log("A2DP连接超时", LogAdapter.TYPE_FAILURE);
-                failLoop(TestStatistics.FailReason.CONNECT_TIMEOUT, "等待A2DP连接超时");
-            }
-        });
     }
 
-    private void onA2dpStateChanged(Intent intent) {
-        BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-        if (device == null || targetDevice == null) return;
-        if (!device.getAddress().equalsIgnoreCase(targetDevice.getAddress())) return;
-
-        int newState = intent.getIntExtra(BluetoothProfile.EXTRA_STATE, BluetoothProfile.STATE_DISCONNECTED);
-        log("A2DP状态变化: " + a2dpStateStr(newState), LogAdapter.TYPE_INFO);
+    private void onConnectTimeout() {
+        log(LogEvent.A2DP_TIMEOUT);
+        failLoop(TestStatistics.FailReason.CONNECT_TIMEOUT, "等待A2DP连接超时");
+    }
 
-        if (newState == BluetoothProfile.STATE_CONNECTED && state == STATE_CONNECTING) {
-            handler.removeCallbacksAndMessages(null);
-            log("A2DP连接成功!", LogAdapter.TYPE_SUCCESS);
+    private void onA2dpConnected() {
+        endPhase(TestStatistics.Phase.CONNECT);
+        log(LogEvent.A2DP_CONNECTED);
+        if (streamHoldMs > 0) {
+            probing = true;
+            requestResource(RadioArbiter.Resource.AUDIO, this::doStartStream);
+        } else {
             startDisconnecting();
-        } else if (newState == BluetoothProfile.STATE_DISCONNECTED && state == STATE_DISCONNECTING) {
-            handler.removeCallbacksAndMessages(null);
-            log("A2DP已断开，开始取消配对...", LogAdapter.TYPE_INFO);
-            startUnpairing();
         }
     }
 
+    // -------- Step 3.5: 音频起播探测（可选） --------
+
+    private void doStartStream() {
+        setState("音频起播...");
+        machine.enter(StateMachine.State.STREAM_STARTING);
+        beginPhase();
+        log(LogEvent.STREAM_START);
+        loopDropouts = 0;
+        toneOn = backend.startTone(targetAddress);
+        if (!toneOn) {
+            log(LogEvent.TONE_FAILED);
+            failLoop(TestStatistics.FailReason.STREAM_FAILED, "无法播放测试音");
+        }
+    }
+
+    private void onStreamPlaying() {
+        endPhase(TestStatistics.Phase.STREAM_START);
+        log(LogEvent.STREAM_PLAYING, (int) loopPhaseMs[TestStatistics.Phase.STREAM_START.ordinal()],
+                (int) streamHoldMs, null, null);
+        setState("播放保持...");
+        machine.enter(StateMachine.State.STREAMING);
+        beginPhase();
+    }
+
+    private void onStreamTimeout() {
+        log(LogEvent.STREAM_TIMEOUT);
+        failLoop(TestStatistics.FailReason.STREAM_FAILED, "音频起播超时");
+    }
+
+    private void onStreamDropout() {
+        loopDropouts++;
+        log(LogEvent.STREAM_DROPOUT, loopDropouts, 0, null, null);
+    }
+
+    private void onStreamLinkLost() {
+        log(LogEvent.STREAM_LINK_LOST);
+        failLoop(TestStatistics.FailReason.STREAM_FAILED, "播放期间A2DP断开");
+    }
+
+    /** 保持时长到：停止测试音，记录欠载和中断次数，之后照常断开 */
+    private void onStreamHoldEnd() {
+        loopPhaseMs[TestStatistics.Phase.STREAM_HOLD.ordinal()] = scheduler.now() - phaseStartTime;
+        loopUnderruns = stopTone();
+        statistics.recordStreamHold(loopUnderruns, loopDropouts);
+        journal(EventJournal.EV_STREAM_HOLD, null, loopUnderruns, loopDropouts);
+        log(LogEvent.STREAM_HOLD_END, loopUnderruns, loopDropouts, null, null);
+        probing = false;
+        arbiter.release(RadioArbiter.Resource.AUDIO, this);
+        startDisconnecting();
+    }
+
+    /** 停止测试音（没有在播放时什么都不做），返回欠载次数 */
+    private int stopTone() {
+        if (!toneOn) return -1;
+        toneOn = false;
+        return backend.stopTone(targetAddress);
+    }
+
     private String a2dpStateStr(int state) {
         switch (state) {
-            case BluetoothProfile.STATE_CONNECTED:    return "CONNECTED";
-            case BluetoothProfile.STATE_CONNECTING:   return "CONNECTING";
-            case BluetoothProfile.STATE_DISCONNECTED: return "DISCONNECTED";
-            case BluetoothProfile.STATE_DISCONNECTING:return "DISCONNECTING";
+            case BluetoothBackend.STATE_CONNECTED:    return "CONNECTED";
+            case BluetoothBackend.STATE_CONNECTING:   return "CONNECTING";
+            case BluetoothBackend.STATE_DISCONNECTED: return "DISCONNECTED";
+            case BluetoothBackend.STATE_DISCONNECTING:return "DISCONNECTING";
             default: return "UNKNOWN(" + state + ")";
         }
     }
@@ -383,42 +1078,59 @@ public class TestController {
 
     private void startDisconnecting() {
         if (!running) return;
+        if (!hasCapability(BluetoothBackend.CAP_A2DP_DISCONNECT)) {
+            // 替代流程：removeBond 会连带断开 ACL
+            startUnpairing();
+            return;
+        }
         setState("断开A2DP连接...");
-        state = STATE_DISCONNECTING;
-        log("主动断开A2DP连接...", LogAdapter.TYPE_INFO);
+        machine.enter(StateMachine.State.DISCONNECTING);
+        beginPhase();
+        log(LogEvent.DISCONNECT_START);
 
-        if (a2dpProxy != null && targetDevice != null) {
-            try {
-                Method m = BluetoothA2dp.class.getDeclaredMethod("disconnect", BluetoothDevice.class);
-                m.setAccessible(true);
-                m.invoke(a2dpProxy, targetDevice);
-            } catch (Exception e) {
-                log("A2dp.disconnect()调用失败: " + e.getMessage(), LogAdapter.TYPE_WARNING);
-                // 直接进下一步
-                startUnpairing();
-                return;
-            }
+        boolean invoked;
+        try {
+            invoked = targetAddress != null && backend.disconnectA2dp(targetAddress);
+        } catch (BluetoothBackend.BackendException e) {
+            dropCapability(BluetoothBackend.CAP_A2DP_DISCONNECT, "A2dp.disconnect()", e.getMessage());
+            // 直接进下一步
+            disconnectFailed("A2dp.disconnect()调用失败");
+            return;
+        }
+        if (!invoked) disconnectFailed("disconnect返回false");
+    }
+
+    private void onDisconnectTimeout() {
+        log(LogEvent.DISCONNECT_TIMEOUT);
+        disconnectFailed("断开A2DP超时");
+    }
+
+    /** 断开没有完成：完整循环照常取消配对（removeBond 会连带断开），仅重连则本轮失败 */
+    private void disconnectFailed(String detail) {
+        if (isReconnectOnly()) {
+            failLoop(TestStatistics.FailReason.DISCONNECT_FAILED, detail);
         } else {
             startUnpairing();
-            return;
         }
+    }
 
-        scheduleTimeout(DISC_TIMEOUT_MS, () -> {
-            if (state == STATE_DISCONNECTING) {
-                log("断开A2DP超时，强制进入取消配对", LogAdapter.TYPE_WARNING);
-                startUnpairing();
-            }
-        });
+    private void onA2dpDisconnected() {
+        endPhase(TestStatistics.Phase.DISCONNECT);
+        log(LogEvent.A2DP_DISCONNECTED);
+        afterDisconnected();
     }
 
-    private void onAclDisconnected(Intent intent) {
-        // ACL 断开作为备用检测
-        BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-        if (device == null || targetDevice == null) return;
-        if (!device.getAddress().equalsIgnoreCase(targetDevice.getAddress())) return;
-        if (state == STATE_DISCONNECTING) {
-            handler.removeCallbacksAndMessages(null);
-            log("ACL已断开，开始取消配对...", LogAdapter.TYPE_INFO);
+    private void onAclDisconnectedInPhase() {
+        endPhase(TestStatistics.Phase.DISCONNECT);
+        log(LogEvent.ACL_DISCONNECTED);
+        afterDisconnected();
+    }
+
+    /** 仅重连时断开即本轮成功，保留配对 */
+    private void afterDisconnected() {
+        if (isReconnectOnly()) {
+            finishLoop(true);
+        } else {
             startUnpairing();
         }
     }
@@ -427,86 +1139,471 @@ public class TestController {
 
     private void startUnpairing() {
         if (!running) return;
+        arbiter.release(RadioArbiter.Resource.A2DP, this);
         setState("取消配对...");
-        state = STATE_UNPAIRING;
-        log("开始取消配对(removeBond)...", LogAdapter.TYPE_INFO);
+        machine.enter(StateMachine.State.UNPAIRING);
+        beginPhase();
+        log(LogEvent.UNPAIR_START);
 
-        boolean result = removeBond(targetDevice);
+        boolean result = removeBond(targetAddress);
         if (!result) {
-            log("removeBond()返回false", LogAdapter.TYPE_FAILURE);
+            log(LogEvent.REMOVE_BOND_FALSE);
             failLoop(TestStatistics.FailReason.UNPAIR_FAILED, "removeBond返回false");
             return;
         }
-        log("removeBond()已调用，等待BOND_NONE...", LogAdapter.TYPE_INFO);
+        log(LogEvent.REMOVE_BOND_CALLED);
+    }
 
-        scheduleTimeout(UNPAIR_TIMEOUT_MS, () -> {
-            if (state == STATE_UNPAIRING) {
-                // 验证是否真的从配对列表移除
-                boolean stillBonded = isBonded(targetDevice);
-                if (!stillBonded) {
-                    log("取消配对成功(超时检查)", LogAdapter.TYPE_SUCCESS);
-                    finishLoop(true);
-                } else {
-                    log("取消配对失败，设备仍在配对列表", LogAdapter.TYPE_FAILURE);
-                    failLoop(TestStatistics.FailReason.UNPAIR_FAILED, "取消配对后设备仍在配对列表");
-                }
-            }
-        });
+    private void onUnpaired() {
+        endPhase(TestStatistics.Phase.UNPAIR);
+        log(LogEvent.UNPAIRED);
+        finishLoop(true);
+    }
+
+    private void onUnpairTimeout() {
+        // 验证是否真的从配对列表移除
+        if (!isBonded(targetAddress)) {
+            log(LogEvent.UNPAIRED_BY_CHECK);
+            finishLoop(true);
+        } else {
+            log(LogEvent.UNPAIR_FAILED);
+            failLoop(TestStatistics.FailReason.UNPAIR_FAILED, "取消配对后设备仍在配对列表");
+        }
+    }
+
+    // -------- BLE GATT 循环 --------
+
+    private void startGattConnecting() {
+        if (targetAddress == null || !running) return;
+        setState("GATT连接中...");
+        machine.enter(StateMachine.State.GATT_CONNECTING);
+        beginPhase();
+        log(LogEvent.GATT_CONNECT_START);
+
+        boolean result = false;
+        try { result = backend.connectGatt(targetAddress); }
+        catch (BluetoothBackend.BackendException e) { log(LogEvent.BACKEND_ERROR, e.getMessage()); }
+
+        if (!result) {
+            if (fallbackToInquiry("connectGatt返回false")) return;
+            failLoop(TestStatistics.FailReason.GATT_FAILED, "connectGatt返回false");
+        }
+    }
+
+    /** 连接阶段收到断开：连接失败，多数 ROM 上报 133 */
+    private void onGattConnectFailed() {
+        backend.closeGatt(targetAddress);
+        if (fallbackToInquiry("GATT连接失败")) return;
+        log(LogEvent.GATT_CONNECT_FAILED, evStatus, 0, null, null);
+        failLoop(TestStatistics.FailReason.GATT_FAILED, "GATT连接失败");
+    }
+
+    private void onGattConnectTimeout() {
+        backend.closeGatt(targetAddress);
+        if (fallbackToInquiry("GATT连接超时")) return;
+        log(LogEvent.GATT_TIMEOUT);
+        failLoop(TestStatistics.FailReason.GATT_FAILED, "GATT连接超时");
+    }
+
+    private void onGattConnected() {
+        endPhase(TestStatistics.Phase.GATT_CONNECT);
+        loopMtu = BluetoothBackend.GATT_DEFAULT_MTU;
+        log(LogEvent.GATT_CONNECTED);
+        setState("MTU协商...");
+        machine.enter(StateMachine.State.MTU_EXCHANGE);
+        beginPhase();
+        if (!backend.requestMtu(targetAddress, GATT_REQUEST_MTU)) afterMtu();
+    }
+
+    private void onMtuChanged() {
+        if (evStatus == BluetoothBackend.GATT_SUCCESS) {
+            endPhase(TestStatistics.Phase.MTU);
+            loopMtu = evValue;
+            log(LogEvent.GATT_MTU, loopMtu, 0, null, null);
+        } else {
+            log(LogEvent.GATT_MTU_FAILED, evStatus, loopMtu, null, null);
+        }
+        afterMtu();
+    }
+
+    /** 部分对端不回应 MTU 请求，按默认 MTU 继续 */
+    private void onMtuTimeout() {
+        log(LogEvent.GATT_MTU_TIMEOUT, loopMtu, 0, null, null);
+        afterMtu();
+    }
+
+    /** MTU 协商结束（成功与否）：请求高优先级连接参数，再发现服务 */
+    private void afterMtu() {
+        backend.requestHighPriority(targetAddress);
+        setState("服务发现...");
+        machine.enter(StateMachine.State.DISCOVERING);
+        beginPhase();
+        if (!backend.discoverServices(targetAddress)) {
+            failLoop(TestStatistics.FailReason.GATT_FAILED, "discoverServices返回false");
+        }
+    }
+
+    private void onServicesDiscovered() {
+        if (evStatus != BluetoothBackend.GATT_SUCCESS) {
+            log(LogEvent.SERVICES_FAILED, evStatus, 0, null, null);
+            failLoop(TestStatistics.FailReason.GATT_FAILED, "服务发现失败");
+            return;
+        }
+        endPhase(TestStatistics.Phase.SERVICES);
+        log(LogEvent.GATT_SERVICES, evValue, 0, null, null);
+        if (!evWritable) {
+            log(LogEvent.GATT_NO_TEST_CHAR);
+            startGattDisconnecting();
+            return;
+        }
+        requestResource(RadioArbiter.Resource.GATT_BURST, this::doStartBurst);
+    }
+
+    private void onServicesTimeout() {
+        log(LogEvent.SERVICES_TIMEOUT);
+        failLoop(TestStatistics.FailReason.GATT_FAILED, "服务发现超时");
+    }
+
+    /** 先开启通知（对端有可通知的特征时），之后每包写完成再写下一包，直到测试时长到 */
+    private void doStartBurst() {
+        setState("吞吐测试...");
+        machine.enter(StateMachine.State.BURST);
+        beginPhase();
+        int size = Math.max(1, loopMtu - 3);
+        if (burstPacket == null || burstPacket.length != size) {
+            burstPacket = new byte[size];
+            for (int i = 0; i < size; i++) burstPacket[i] = (byte) i;
+        }
+        burstWritten  = 0;
+        burstNotified = 0;
+        log(LogEvent.GATT_BURST_START, size, (int) timeoutPolicy.get(TestStatistics.Phase.BURST), null, null);
+        notifying   = backend.enableNotify(targetAddress);
+        cccdPending = notifying;
+        if (!notifying) writeNextPacket();
+    }
+
+    private void writeNextPacket() {
+        if (!backend.writeGatt(targetAddress, burstPacket)) {
+            failLoop(TestStatistics.FailReason.GATT_FAILED, "writeCharacteristic返回false");
+        }
     }
 
-    /** 反射调用隐藏API removeBond */
-    private boolean removeBond(BluetoothDevice device) {
-        if (device == null) return false;
+    private void onGattWriteDone() {
+        if (evStatus != BluetoothBackend.GATT_SUCCESS) {
+            log(LogEvent.GATT_WRITE_FAILED, evStatus, 0, null, null);
+            failLoop(TestStatistics.FailReason.GATT_FAILED, "写特征失败");
+            return;
+        }
+        if (cccdPending) {
+            cccdPending = false;
+        } else {
+            burstWritten += burstPacket.length;
+        }
+        writeNextPacket();
+    }
+
+    private void onGattNotified() {
+        burstNotified += evValue;
+    }
+
+    /** 测试时长到：按实际时长折算速率（在途的最后一包不计），之后断开 */
+    private void onBurstEnd() {
+        long costMs = Math.max(1, scheduler.now() - phaseStartTime);
+        loopPhaseMs[TestStatistics.Phase.BURST.ordinal()] = costMs;
+        loopWriteBps  = burstWritten * 1000 / costMs;
+        loopNotifyBps = notifying ? burstNotified * 1000 / costMs : -1;
+        statistics.recordGattBurst(loopWriteBps, loopNotifyBps);
+        journal(EventJournal.EV_GATT_BURST, null, (int) loopWriteBps, (int) loopNotifyBps);
+        log(LogEvent.GATT_BURST, (int) loopWriteBps, (int) Math.max(0, loopNotifyBps), null, null);
+        arbiter.release(RadioArbiter.Resource.GATT_BURST, this);
+        startGattDisconnecting();
+    }
+
+    private void startGattDisconnecting() {
+        if (!running) return;
+        setState("断开GATT连接...");
+        machine.enter(StateMachine.State.GATT_DISCONNECTING);
+        beginPhase();
+        log(LogEvent.GATT_DISCONNECT);
+        if (!backend.disconnectGatt(targetAddress)) {
+            failLoop(TestStatistics.FailReason.DISCONNECT_FAILED, "GATT disconnect返回false");
+        }
+    }
+
+    private void onGattDisconnected() {
+        endPhase(TestStatistics.Phase.GATT_DISCONNECT);
+        backend.closeGatt(targetAddress);
+        log(LogEvent.GATT_DISCONNECTED);
+        finishLoop(true);
+    }
+
+    private void onGattDisconnectTimeout() {
+        log(LogEvent.GATT_DISC_TIMEOUT);
+        failLoop(TestStatistics.FailReason.DISCONNECT_FAILED, "断开GATT超时");
+    }
+
+    /** 建链之后链路意外断开（监督超时、对端断开） */
+    private void onGattLost() {
+        log(LogEvent.GATT_LOST, evStatus, 0, null, null);
+        failLoop(TestStatistics.FailReason.GATT_FAILED, "GATT连接意外断开");
+    }
+
+    // -------- SPP 循环 --------
+
+    /** 多设备时 SPP 测试排队进行，连接也放在拿到资源之后，免得排队期间空占着 RFCOMM 通道 */
+    private void startSpp() {
+        if (targetAddress == null || !running) return;
+        requestResource(RadioArbiter.Resource.SPP, this::doStartSpp);
+    }
+
+    private void doStartSpp() {
+        setState("RFCOMM连接中...");
+        machine.enter(StateMachine.State.SPP_CONNECTING);
+        beginPhase();
+        log(LogEvent.SPP_CONNECT_START, sppUuid);
+
+        boolean result = false;
+        try { result = backend.connectSpp(targetAddress, sppUuid); }
+        catch (BluetoothBackend.BackendException e) { log(LogEvent.BACKEND_ERROR, e.getMessage()); }
+
+        if (!result) failLoop(TestStatistics.FailReason.SPP_FAILED, "connectSpp返回false");
+    }
+
+    private void onSppConnected() {
+        endPhase(TestStatistics.Phase.SPP_CONNECT);
+        log(LogEvent.SPP_CONNECTED);
+        setState("SPP吞吐测试...");
+        machine.enter(StateMachine.State.SPP_BURST);
+        beginPhase();
+        log(LogEvent.SPP_BURST_START, sppFrameBytes, (int) timeoutPolicy.get(TestStatistics.Phase.SPP_BURST), null, null);
+        if (!backend.startSppBurst(targetAddress, sppFrameBytes)) {
+            failLoop(TestStatistics.FailReason.SPP_FAILED, "SPP测试无法开始");
+        }
+    }
+
+    private void onSppConnectFailed() {
+        log(LogEvent.SPP_CONNECT_FAILED);
+        failLoop(TestStatistics.FailReason.SPP_FAILED, "RFCOMM连接失败");
+    }
+
+    private void onSppConnectTimeout() {
+        log(LogEvent.SPP_TIMEOUT);
+        failLoop(TestStatistics.FailReason.SPP_FAILED, "RFCOMM连接超时");
+    }
+
+    /** 测试时长到：停止发送，等在途的回显收完后由 SPP_RESULT 带回结果 */
+    private void onSppBurstEnd() {
+        loopPhaseMs[TestStatistics.Phase.SPP_BURST.ordinal()] = scheduler.now() - phaseStartTime;
+        backend.stopSppBurst(targetAddress);
+        setState("SPP收尾...");
+        machine.enter(StateMachine.State.SPP_DRAINING);
+        beginPhase();
+    }
+
+    private void onSppResult() {
+        endPhase(TestStatistics.Phase.SPP_DRAIN);
+        SppBenchmark.Result r = evSpp;
+        loopSppBps = r.bytesPerSec;
+        statistics.recordSppBurst(loopSppBps);
+        journal(EventJournal.EV_SPP_BURST, null, (int) Math.min(Integer.MAX_VALUE, loopSppBps),
+                (int) Math.min(Integer.MAX_VALUE, r.echoedBytes / sppFrameBytes));
+        log(LogEvent.SPP_BURST, (int) Math.min(Integer.MAX_VALUE, loopSppBps), 0, null, null);
+        if (r.hasEcho()) {
+            loopRttP50 = r.rttP50;
+            loopRttP99 = r.rttP99;
+            statistics.recordSppRtt(loopRttP50, loopRttP99);
+            journal(EventJournal.EV_SPP_RTT, null, (int) loopRttP50, (int) loopRttP99);
+            log(LogEvent.SPP_RTT, (int) loopRttP50, (int) loopRttP99, null, null);
+        } else {
+            log(LogEvent.SPP_NO_ECHO);
+        }
+        backend.closeSpp(targetAddress);
+        arbiter.release(RadioArbiter.Resource.SPP, this);
+        startUnpairing();
+    }
+
+    private void onSppDrainTimeout() {
+        log(LogEvent.SPP_DRAIN_TIMEOUT);
+        failLoop(TestStatistics.FailReason.SPP_FAILED, "SPP测试停止后无结果");
+    }
+
+    private void onSppLost() {
+        log(LogEvent.SPP_LOST);
+        failLoop(TestStatistics.FailReason.SPP_FAILED, "SPP测试中连接断开");
+    }
+
+    private boolean removeBond(String address) {
+        if (address == null) return false;
         try {
-            Method m = BluetoothDevice.class.getMethod("removeBond");
-            return (Boolean) m.invoke(device);
-        } catch (Exception e) {
-            log("removeBond反射调用异常: " + e.getMessage(), LogAdapter.TYPE_FAILURE);
+            return backend.removeBond(address);
+        } catch (BluetoothBackend.BackendException e) {
+            log(LogEvent.BACKEND_ERROR, e.getMessage());
             return false;
         }
     }
 
-    private boolean isBonded(BluetoothDevice device) {
-        if (device == null) return false;
+    private boolean isBonded(String address) {
+        return address != null && backend.getBondState(address) == BluetoothBackend.BOND_BONDED;
+    }
+
+    private void disconnectQuietly(String address) {
+        if (address == null || !hasCapability(BluetoothBackend.CAP_A2DP_DISCONNECT)) return;
         try {
-            return device.getBondState() == BluetoothDevice.BOND_BONDED;
-        } catch (SecurityException e) {
-            return false;
+            backend.disconnectA2dp(address);
+        } catch (BluetoothBackend.BackendException e) {
+            log(LogEvent.BACKEND_ERROR, e.getMessage());
         }
     }
 
+    /** 仅重连模式下可沿用的目标：上一轮的目标，或填写的完整地址，且仍在配对列表中 */
+    private String bondedTarget() {
+        String address = prevTarget != null ? prevTarget
+                : isValidAddress(filterAddress) ? filterAddress : null;
+        return isBonded(address) ? address : null;
+    }
+
+    private boolean isReconnectOnly() {
+        return loopShape == TestStatistics.LoopShape.RECONNECT;
+    }
+
+    private boolean isBondOnly() {
+        return loopShape == TestStatistics.LoopShape.BOND_ONLY;
+    }
+
+    private boolean isGatt() {
+        return loopShape == TestStatistics.LoopShape.GATT;
+    }
+
+    private boolean isSpp() {
+        return loopShape == TestStatistics.LoopShape.SPP;
+    }
+
+    /** 完整的大写MAC地址（与 BluetoothAdapter.checkBluetoothAddress 规则一致） */
+    private static boolean isValidAddress(String address) {
+        if (address == null || address.length() != 17) return false;
+        for (int i = 0; i < 17; i++) {
+            char c = address.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') return false;
+            } else if (!((c >= '0' && c <= '9') || (c >= 'A' && c <= 'F'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** BluetoothClass 主类+次类，如 "0x0404"，未携带时为 "未知" */
+    static String deviceClassText(int deviceClass) {
+        return deviceClass == BluetoothBackend.CLASS_UNKNOWN ? "未知" : String.format("0x%04X", deviceClass);
+    }
+
+    private boolean isTarget(String address) {
+        return address != null && targetAddress != null && address.equalsIgnoreCase(targetAddress);
+    }
+
+    /** 本轮还没找到目标时收到上一轮目标的广播（迟到的事件） */
+    private boolean isPrevTarget(String address) {
+        return address != null && targetAddress == null && prevTarget != null && address.equalsIgnoreCase(prevTarget);
+    }
+
     /*──────────────────────────────
      *  循环结束处理
      *──────────────────────────────*/
 
     private void finishLoop(boolean success) {
-        long costMs = System.currentTimeMillis() - loopStartTime;
+        long costMs = scheduler.now() - loopStartTime;
         if (success) {
             statistics.recordSuccess();
+            statistics.recordLoop(loopPath, costMs);
+            statistics.recordRecent(true, costMs, wallOffset + scheduler.now());
+            statistics.recordRssiOutcome(loopRssi, null);
+            journal(EventJournal.EV_LOOP_SUCCESS, null, loopPath.ordinal(), (int) costMs);
             callback.onLoopSuccess(currentLoop, costMs);
-            log("▶ 第" + currentLoop + "轮 【成功】 耗时" + costMs + "ms", LogAdapter.TYPE_SUCCESS);
+            log(LogEvent.LOOP_SUCCESS, currentLoop, (int) costMs, loopPath.desc, null);
         }
-        state = STATE_IDLE;
+        exportLoop(success ? null : TestStatistics.FailReason.OTHER);
+        statistics.recordPath(loopPath);
+        machine.enter(StateMachine.State.IDLE);
+        arbiter.releaseAll(this);
         // 稍微延迟再开始下一轮，让系统稳定
-        handler.postDelayed(this::nextLoop, 1500);
+        scheduleNextLoop(success ? null : TestStatistics.FailReason.OTHER, costMs);
     }
 
     private void failLoop(TestStatistics.FailReason reason, String detail) {
-        long costMs = System.currentTimeMillis() - loopStartTime;
+        long costMs = scheduler.now() - loopStartTime;
         statistics.recordFailure(reason);
+        statistics.recordPath(loopPath);
+        statistics.recordRecent(false, costMs, wallOffset + scheduler.now());
+        statistics.recordRssiOutcome(loopRssi, reason);
+        journal(EventJournal.EV_LOOP_FAILURE, null, reason.ordinal(), loopPath.ordinal());
         callback.onLoopFailure(currentLoop, reason, detail);
-        log("▶ 第" + currentLoop + "轮 【失败】 原因:" + reason.desc + " 耗时" + costMs + "ms",
-                LogAdapter.TYPE_FAILURE);
+        log(LogEvent.LOOP_FAILURE, currentLoop, (int) costMs, reason.desc, null);
+        exportLoop(reason);
 
         // 清理状态再开始下一轮
-        state = STATE_IDLE;
-        handler.removeCallbacksAndMessages(null);
+        machine.enter(StateMachine.State.IDLE);
         stopDiscovery();
-        // 尝试清理配对关系
-        if (targetDevice != null && isBonded(targetDevice)) {
-            removeBond(targetDevice);
+        arbiter.releaseAll(this);
+        stopTone();
+        probing = false;
+        if (isGatt()) {
+            // 不涉及配对，只释放 GATT 客户端
+            if (targetAddress != null) backend.closeGatt(targetAddress);
+        } else if (isSpp() && targetAddress != null) {
+            // 先关 RFCOMM 再取消配对
+            backend.closeSpp(targetAddress);
+            if (isBonded(targetAddress)) removeBond(targetAddress);
+        } else if (isReconnectOnly()) {
+            // 保留配对，只确保下一轮从断开状态开始连接
+            disconnectQuietly(targetAddress);
+        } else if (isBonded(targetAddress)) {
+            // 尝试清理配对关系
+            removeBond(targetAddress);
+        }
+        scheduleNextLoop(reason, costMs);
+    }
+
+    /** 把本轮结果交给导出线程（reason 为 null 表示成功） */
+    private void exportLoop(TestStatistics.FailReason reason) {
+        if (exporter == null) return;
+        RunExporter.LoopRow row = new RunExporter.LoopRow();
+        row.loop       = currentLoop;
+        row.device     = deviceLabel != null ? deviceLabel : targetAddress;
+        row.startTime  = wallOffset + loopStartTime;
+        row.endTime    = wallOffset + scheduler.now();
+        row.success    = reason == null;
+        row.reason     = reason;
+        row.bondReason = loopBondReason;
+        row.path       = loopPath;
+        row.rssi       = loopRssi;
+        row.deviceClass = loopClass;
+        row.gattMtu    = loopMtu;
+        row.writeBps   = loopWriteBps;
+        row.notifyBps  = loopNotifyBps;
+        row.streamUnderruns = loopUnderruns;
+        row.streamDropouts  = loopDropouts;
+        row.sppBps     = loopSppBps;
+        row.sppRttP50  = loopRttP50;
+        row.sppRttP99  = loopRttP99;
+        System.arraycopy(loopPhaseMs, 0, row.phaseMs, 0, loopPhaseMs.length);
+        for (TestStatistics.Phase p : TestStatistics.Phase.values()) row.timeoutMs[p.ordinal()] = timeoutPolicy.get(p);
+        exporter.submit(row);
+    }
+
+    /** 按冷却策略安排下一轮（reason 为 null 表示成功），并记录本轮结果与本轮之前间隔的对应关系 */
+    private void scheduleNextLoop(TestStatistics.FailReason reason, long costMs) {
+        if (lastCooldownMs >= 0) statistics.recordCooldownOutcome(lastCooldownMs, reason == null);
+        if (targetLoops > 0 && currentLoop >= targetLoops) {
+            // 最后一轮，无需冷却
+            scheduler.post(timers.guard(this::nextLoop));
+            return;
         }
-        handler.postDelayed(this::nextLoop, 2000);
+        long delay = cooldownPolicy.nextDelay(reason, loopPath == TestStatistics.LoopPath.FALLBACK, costMs);
+        statistics.recordCooldown(delay);
+        journal(EventJournal.EV_COOLDOWN, null, (int) delay, 0);
+        lastCooldownMs = delay;
+        log(LogEvent.COOLDOWN, (int) delay, 0, cooldownPolicy.describe(), null);
+        scheduler.postDelayed(timers.guard(this::nextLoop), delay);
     }
 
     /*──────────────────────────────
@@ -517,65 +1614,112 @@ public class TestController {
         callback.onStateChange(desc);
     }
 
-    private void log(String msg, int type) {
-        callback.onLog(msg, type);
-        Log.d(TAG, msg);
+    /** 标记当前阶段开始（单调时钟） */
+    private void beginPhase() {
+        phaseStartTime = scheduler.now();
     }
 
-    private Runnable currentTimeoutRunnable = null;
+    /** 当前阶段成功完成，记录耗时到对应直方图 */
+    private void endPhase(TestStatistics.Phase phase) {
+        long costMs = scheduler.now() - phaseStartTime;
+        statistics.recordPhase(phase, costMs);
+        loopPhaseMs[phase.ordinal()] = costMs;
+        journal(EventJournal.EV_PHASE_END, null, phase.ordinal(), (int) costMs);
+    }
 
-    private void scheduleTimeout(long delayMs, Runnable task) {
-        handler.removeCallbacksAndMessages(null);
-        currentTimeoutRunnable = task;
-        handler.postDelayed(task, delayMs);
+    /** 状态机状态所属的阶段下标（原因码分布的行），空闲/排队为 ReasonCodeMatrix.OUTSIDE */
+    static int phaseRow(StateMachine.State state) {
+        return state != null && state.phase != null ? state.phase.ordinal() : ReasonCodeMatrix.OUTSIDE;
     }
 
-    private void stopDiscovery() {
-        try {
-            if (btAdapter.isDiscovering()) btAdapter.cancelDiscovery();
-        } catch (SecurityException ignored) {}
+    /** 事件日志里的状态值 */
+    static int phaseRow(int state) {
+        return phaseRow(StateMachine.stateOf(state));
     }
 
-    private void registerReceiver() {
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(BluetoothDevice.ACTION_FOUND);
-        filter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
-        filter.addAction(BluetoothDevice.ACTION_BOND_STATE_CHANGED);
-        filter.addAction(BluetoothA2dp.ACTION_CONNECTION_STATE_CHANGED);
-        filter.addAction(BluetoothDevice.ACTION_ACL_DISCONNECTED);
-        context.registerReceiver(btReceiver, filter);
+    /** 忽略一个过期事件/任务：计数并写进事件日志 */
+    private void stale(TestStatistics.StaleKind kind) {
+        statistics.recordStale(kind);
+        journal(EventJournal.EV_STALE, null, kind.ordinal(), machine.getState().ordinal());
     }
 
-    private void unregisterReceiver() {
-        try { context.unregisterReceiver(btReceiver); }
-        catch (Exception ignored) {}
+    private void journal(int type, String address, int a, int b) {
+        if (journal != null) journal.record(type, scheduler.now(), address, a, b);
     }
 
-    private void getA2dpProxy() {
+    private void openJournal(boolean resuming) {
+        if (journal == null) return;
         try {
-            btAdapter.getProfileProxy(context, new BluetoothProfile.ServiceListener() {
-                @Override
-                public void onServiceConnected(int profile, BluetoothProfile proxy) {
-                    if (profile == BluetoothProfile.A2DP) {
-                        a2dpProxy = (BluetoothA2dp) proxy;
-                        log("A2DP Profile Proxy 已获取", LogAdapter.TYPE_INFO);
-                    }
-                }
-                @Override
-                public void onServiceDisconnected(int profile) {
-                    if (profile == BluetoothProfile.A2DP) a2dpProxy = null;
-                }
-            }, BluetoothProfile.A2DP);
-        } catch (Exception e) {
-            log("获取A2DP Proxy失败: " + e.getMessage(), LogAdapter.TYPE_WARNING);
+            journal.open(scheduler.now(), System.currentTimeMillis());
+            if (resuming) {
+                journal.record(EventJournal.EV_RUN_RESUME, scheduler.now(), null, currentLoop,
+                        (int) Math.min(Integer.MAX_VALUE, resumeGapMs / 1000));
+            } else {
+                journal.recordRunStart(scheduler.now(), targetLoops, filterName + "|" + filterAddress);
+            }
+            journal.record(EventJournal.EV_LOOP_SHAPE, scheduler.now(), null, loopShape.ordinal(), 0);
+            log(LogEvent.JOURNAL_OPEN, 0, 0, journal.getDir().getPath(), journal.getRunName());
+        } catch (IOException e) {
+            log(LogEvent.JOURNAL_OPEN_FAILED, e.getMessage());
+            journal = null;
         }
     }
 
-    private void closeA2dpProxy() {
-        if (a2dpProxy != null) {
-            try { btAdapter.closeProfileProxy(BluetoothProfile.A2DP, a2dpProxy); }
-            catch (Exception ignored) {}
-            a2dpProxy = null;
+    private void closeJournal() {
+        if (journal == null) return;
+        journal(EventJournal.EV_RUN_STOP, null, 0, 0);
+        if (journal.isFailed()) log(LogEvent.JOURNAL_FAILED, journal.getError());
+        journal.close();
+    }
+
+    /*──── 结构化日志：只填字段，显示时才渲染文字 ────*/
+
+    private void log(LogEvent event) {
+        log(event, event.type, 0, 0, null, null);
+    }
+
+    private void log(LogEvent event, String s) {
+        log(event, event.type, 0, 0, s, null);
+    }
+
+    private void log(LogEvent event, int a, int b, String s, String t) {
+        log(event, event.type, a, b, s, t);
+    }
+
+    private void log(LogEvent event, int type, int a, int b, String s, String t) {
+        callback.onLog(new LogRecord(wallOffset + scheduler.now(), currentLoop, deviceLabel,
+                event, type, a, b, s, t));
+    }
+
+    /**
+     * 申请共享射频资源，获得后执行 then；需要排队时记录等待耗时。
+     * 排队期间若本轮已结束或压测已停止（轮次代号已变），授予时直接归还资源。
+     */
+    private void requestResource(final RadioArbiter.Resource r, final Runnable then) {
+        final int  gen = timers.getGeneration();
+        final long t0  = scheduler.now();
+        boolean granted = arbiter.acquire(r, this, () -> {
+            if (!running || gen != timers.getGeneration()) {
+                arbiter.release(r, this);
+                if (running) stale(TestStatistics.StaleKind.GRANT);
+                return;
+            }
+            statistics.recordResourceWait(scheduler.now() - t0);
+            journal(EventJournal.EV_RESOURCE_WAIT, null, (int) (scheduler.now() - t0), 0);
+            then.run();
+        });
+        if (granted) {
+            then.run();
+        } else {
+            machine.enter(StateMachine.State.WAITING);
+            setState("等待" + r.desc + "资源...");
+            log(LogEvent.RESOURCE_WAIT, r.desc);
         }
     }
+
+    /** 只取消自己发起的扫描，不打断其他设备正在进行的 inquiry */
+    private void stopDiscovery() {
+        if (!arbiter.holds(RadioArbiter.Resource.DISCOVERY, this)) return;
+        if (backend.isDiscovering()) backend.cancelDiscovery();
+    }
 }
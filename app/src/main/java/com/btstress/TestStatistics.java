@@ -2,12 +2,14 @@ package com.btstress;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 压测统计数据模型
- * 记录成功次数、失败次数及失败原因
+ * 记录成功次数、失败次数、失败原因，以及各阶段耗时分布
  */
 public class TestStatistics {
 
@@ -15,16 +17,149 @@ public class TestStatistics {
     private final AtomicInteger failureCount = new AtomicInteger(0);
     private final AtomicInteger totalCount = new AtomicInteger(0);
 
-    // 各失败原因计数
-    private final AtomicInteger scanTimeout = new AtomicInteger(0);
-    private final AtomicInteger bondFailed = new AtomicInteger(0);
-    private final AtomicInteger connectTimeout = new AtomicInteger(0);
-    private final AtomicInteger pageTimeout = new AtomicInteger(0);
-    private final AtomicInteger disconnectFailed = new AtomicInteger(0);
-    private final AtomicInteger unpairFailed = new AtomicInteger(0);
-    private final AtomicInteger otherError = new AtomicInteger(0);
+    // 各失败原因计数（按 FailReason.ordinal() 索引），以及原始原因码/状态码的完整分布
+    private final AtomicInteger[]  failReasons = new AtomicInteger[FailReason.values().length];
+    private final ReasonCodeMatrix reasonCodes = new ReasonCodeMatrix();
+
+    // 各阶段耗时直方图（按 Phase.ordinal() 索引）及整轮耗时
+    private final LatencyHistogram[] phaseLatency = new LatencyHistogram[Phase.values().length];
+    private final LatencyHistogram loopLatency = new LatencyHistogram();
+    // 控制器线程消息分发延迟（广播/超时从入队到执行）
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+    // 多设备并发时排队等待共享射频资源的耗时
+    private final LatencyHistogram resourceWait = new LatencyHistogram();
+    // 轮间冷却间隔，以及按"本轮之前的冷却间隔"分档的轮数/成功数
+    private final LatencyHistogram cooldown = new LatencyHistogram();
+    private final AtomicInteger[]  cooldownLoops   = new AtomicInteger[COOLDOWN_BOUNDS.length + 1];
+    private final AtomicInteger[]  cooldownSuccess = new AtomicInteger[COOLDOWN_BOUNDS.length + 1];
+    // 每轮走的路径计数，以及各路径成功轮的整轮耗时（按 LoopPath.ordinal() 索引）
+    private final AtomicInteger[]    pathCount   = new AtomicInteger[LoopPath.values().length];
+    private final LatencyHistogram[] pathLatency = new LatencyHistogram[LoopPath.values().length];
+
+    // 速率直方图的上限 ≈ 2^32 B/s；默认上限 2^20 在 1MB/s 以上就饱和了
+    private static final int RATE_MAX_SHIFT = 27;
+
+    // BLE GATT 吞吐测试每轮的写入/通知速率（字节/秒）
+    private final LatencyHistogram gattWriteRate  = new LatencyHistogram(RATE_MAX_SHIFT);
+    private final LatencyHistogram gattNotifyRate = new LatencyHistogram(RATE_MAX_SHIFT);
+
+    // SPP 吞吐测试：每轮的发送速率（字节/秒），以及每轮往返时延的中位数和 p99（ms，对端回显时才有）
+    private final LatencyHistogram sppRate   = new LatencyHistogram(RATE_MAX_SHIFT);
+    private final LatencyHistogram sppRttP50 = new LatencyHistogram();
+    private final LatencyHistogram sppRttP99 = new LatencyHistogram();
+
+    // 音频起播探测：播放保持的次数、其中有卡顿的次数，以及欠载/播放中断的累计次数
+    private final AtomicInteger streamHolds     = new AtomicInteger(0);
+    private final AtomicInteger streamGlitchy   = new AtomicInteger(0);
+    private final AtomicLong    streamUnderruns = new AtomicLong(0);   // 本机无法统计欠载时不累加
+    private final AtomicLong    streamDropouts  = new AtomicLong(0);
+
+    // 被忽略的过期事件/任务（上一轮迟到的广播、作废的定时器等），按 StaleKind.ordinal() 索引
+    private final AtomicInteger[] staleEvents = new AtomicInteger[StaleKind.values().length];
+    // 状态机各切换的停留时长及每个状态下的意外事件
+    private final TransitionStats transitions = new TransitionStats();
+
+    // 进程被杀/服务重启后恢复的次数及中断总时长
+    private final AtomicInteger gapCount = new AtomicInteger(0);
+    private final AtomicLong    gapMs    = new AtomicLong(0);
+
+    // 按本轮扫描到目标时的 RSSI 分档的轮数/成功数/各失败原因次数（失败按 档 × FailReason 展开）
+    private final AtomicInteger[] rssiLoops    = new AtomicInteger[RSSI_LABELS.length];
+    private final AtomicInteger[] rssiSuccess  = new AtomicInteger[RSSI_LABELS.length];
+    private final AtomicInteger[] rssiFailures = new AtomicInteger[RSSI_LABELS.length * FailReason.values().length];
+    private volatile int lastRssi = BluetoothBackend.RSSI_UNKNOWN;   // 最近一次扫描到目标的 RSSI
+
+    // 最近 N 轮 / 最近 T 分钟的滑动窗口（与上面的累计值并列显示）
+    private final RollingWindow recent = new RollingWindow();
 
     private long startTimeMs = 0;
+    private volatile LoopShape loopShape = LoopShape.FULL;   // 本次运行每轮包含哪些阶段
+
+    /** 冷却间隔分档上界 (ms) 及标签 */
+    private static final long[]   COOLDOWN_BOUNDS = {1000, 2000, 5000, 15000};
+    private static final String[] COOLDOWN_LABELS = {"<1s", "1-2s", "2-5s", "5-15s", "≥15s"};
+
+    /** RSSI 分档下界 (dBm)，最后一档为未知（直连未扫描 / 广播未携带） */
+    private static final int[]    RSSI_BOUNDS = {-60, -70, -80, -90};
+    private static final String[] RSSI_LABELS = {"≥-60", "-60~-70", "-70~-80", "-80~-90", "<-90", "未知"};
+
+    /** 测试阶段，对应状态机中的各个步骤 */
+    public enum Phase {
+        SCAN("扫描"),
+        BOND("配对"),
+        CONNECT("连接"),
+        DISCONNECT("断开"),
+        UNPAIR("取消配对"),
+        GATT_CONNECT("GATT连接"),   // 以下为 BLE GATT 循环的阶段
+        MTU("MTU协商"),
+        SERVICES("服务发现"),
+        BURST("吞吐测试"),          // 时长固定（即该阶段的超时），不计入耗时分布
+        GATT_DISCONNECT("GATT断开"),
+        STREAM_START("音频起播"),   // A2DP 连接后开始播放 → 对端 PLAYING（可选）
+        STREAM_HOLD("播放保持"),    // 时长固定（设定的保持时长），不计入耗时分布
+        SPP_CONNECT("RFCOMM连接"),  // 以下为 SPP 循环的阶段
+        SPP_BURST("SPP吞吐测试"),   // 时长固定，不计入耗时分布
+        SPP_DRAIN("SPP收尾");       // 停止发送 → 在途回显收完
+
+        public final String desc;
+        Phase(String desc) { this.desc = desc; }
+    }
+
+    /** 一轮循环找到目标设备的路径 */
+    public enum LoopPath {
+        INQUIRY("扫描"),
+        DIRECT("直连"),
+        FALLBACK("直连失败→扫描"),
+        BONDED("沿用配对");         // 仅重连模式下目标已配对，直接从连接开始
+
+        public final String desc;
+        LoopPath(String desc) { this.desc = desc; }
+    }
+
+    /** 每轮的循环方式：完整循环，或只压其中一段以提高每小时轮数 */
+    public enum LoopShape {
+        FULL("完整循环"),           // 扫描 → 配对 → 连接 → 断开 → 取消配对
+        RECONNECT("仅重连"),        // 保留配对，每轮只连接 → 断开（未配对时先扫描配对一次）
+        BOND_ONLY("仅配对"),        // 扫描 → 配对 → 取消配对，不等待 A2DP 连接
+        GATT("BLE GATT"),           // 扫描 → GATT连接 → MTU协商 → 服务发现 → 吞吐测试 → GATT断开
+        SPP("SPP吞吐");             // 扫描 → 配对 → RFCOMM连接 → 吞吐/往返测试 → 取消配对
+
+        public final String desc;
+        LoopShape(String desc) { this.desc = desc; }
+
+        /** 该循环方式可能经过的阶段（GATT 循环只用扫描和 GATT 各阶段，音频起播只在有 A2DP 连接的方式里） */
+        public boolean uses(Phase phase) {
+            switch (phase) {
+                case SCAN:
+                    return true;
+                case GATT_CONNECT: case MTU: case SERVICES: case BURST: case GATT_DISCONNECT:
+                    return this == GATT;
+                case STREAM_START: case STREAM_HOLD:
+                    return this == FULL || this == RECONNECT;
+                case SPP_CONNECT: case SPP_BURST: case SPP_DRAIN:
+                    return this == SPP;
+                case CONNECT: case DISCONNECT:
+                    return this != GATT && this != SPP;
+                default:
+                    return this != GATT;
+            }
+        }
+    }
+
+    /** 被控制器忽略的过期事件/任务 */
+    public enum StaleKind {
+        TIMER("过期定时"),          // 轮次已变或已撤销后才执行的定时任务
+        GRANT("过期资源授予"),      // 本轮已结束才授予的共享资源
+        BOND("配对状态"),           // 本轮结束后/下一轮找到目标前收到的目标广播
+        A2DP("A2DP状态"),
+        ACL("ACL断开"),
+        DISCOVERY("扫描结束"),      // 上一次 cancelDiscovery() 迟到的 DISCOVERY_FINISHED
+        GATT("GATT回调"),           // 不在预期状态下到达的 GATT 回调
+        SPP("SPP回调");
+
+        public final String desc;
+        StaleKind(String desc) { this.desc = desc; }
+    }
 
     /** 失败原因枚举 */
     public enum FailReason {
@@ -34,27 +169,85 @@ public class TestStatistics {
         CONNECT_TIMEOUT("连接超时，未收到A2DP/RFCOMM连接"),
         DISCONNECT_FAILED("断开连接失败"),
         UNPAIR_FAILED("取消配对失败"),
-        OTHER("其他错误");
+        OTHER("其他错误"),
+        GATT_FAILED("GATT失败(连接/服务发现/写入)"),
+        STREAM_FAILED("音频起播失败(未收到PLAYING)"),
+        SPP_FAILED("SPP失败(RFCOMM连接/测试中断)");
 
         public final String desc;
         FailReason(String desc) { this.desc = desc; }
     }
 
+    public TestStatistics() {
+        for (int i = 0; i < phaseLatency.length; i++) phaseLatency[i] = new LatencyHistogram();
+        for (int i = 0; i < failReasons.length; i++) failReasons[i] = new AtomicInteger(0);
+        for (int i = 0; i < staleEvents.length; i++) staleEvents[i] = new AtomicInteger(0);
+        for (int i = 0; i < rssiLoops.length; i++) {
+            rssiLoops[i]   = new AtomicInteger(0);
+            rssiSuccess[i] = new AtomicInteger(0);
+        }
+        for (int i = 0; i < rssiFailures.length; i++) rssiFailures[i] = new AtomicInteger(0);
+        for (int i = 0; i < pathCount.length; i++) {
+            pathCount[i]   = new AtomicInteger(0);
+            pathLatency[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < cooldownLoops.length; i++) {
+            cooldownLoops[i]   = new AtomicInteger(0);
+            cooldownSuccess[i] = new AtomicInteger(0);
+        }
+    }
+
     public void start() {
         startTimeMs = System.currentTimeMillis();
     }
 
+    /** 从事件日志/断点还原时设置开始时间（墙钟） */
+    public void setStartTimeMs(long wallMs) {
+        startTimeMs = wallMs;
+    }
+
+    public long getStartTimeMs() { return startTimeMs; }
+
+    /** 本次运行的循环方式（start() 时由控制器设置，不随 reset/addFrom 改变） */
+    public void setLoopShape(LoopShape shape) {
+        loopShape = shape;
+    }
+
+    public LoopShape getLoopShape() { return loopShape; }
+
     public void reset() {
         successCount.set(0);
         failureCount.set(0);
         totalCount.set(0);
-        scanTimeout.set(0);
-        bondFailed.set(0);
-        connectTimeout.set(0);
-        pageTimeout.set(0);
-        disconnectFailed.set(0);
-        unpairFailed.set(0);
-        otherError.set(0);
+        for (AtomicInteger c : failReasons) c.set(0);
+        reasonCodes.reset();
+        for (LatencyHistogram h : phaseLatency) h.reset();
+        loopLatency.reset();
+        dispatchLatency.reset();
+        resourceWait.reset();
+        for (AtomicInteger c : pathCount) c.set(0);
+        for (LatencyHistogram h : pathLatency) h.reset();
+        gattWriteRate.reset();
+        gattNotifyRate.reset();
+        sppRate.reset();
+        sppRttP50.reset();
+        sppRttP99.reset();
+        streamHolds.set(0);
+        streamGlitchy.set(0);
+        streamUnderruns.set(0);
+        streamDropouts.set(0);
+        cooldown.reset();
+        for (AtomicInteger c : cooldownLoops) c.set(0);
+        for (AtomicInteger c : cooldownSuccess) c.set(0);
+        gapCount.set(0);
+        gapMs.set(0);
+        for (AtomicInteger c : staleEvents) c.set(0);
+        transitions.reset();
+        for (AtomicInteger c : rssiLoops) c.set(0);
+        for (AtomicInteger c : rssiSuccess) c.set(0);
+        for (AtomicInteger c : rssiFailures) c.set(0);
+        lastRssi = BluetoothBackend.RSSI_UNKNOWN;
+        recent.reset();
         startTimeMs = System.currentTimeMillis();
     }
 
@@ -66,14 +259,214 @@ public class TestStatistics {
     public void recordFailure(FailReason reason) {
         failureCount.incrementAndGet();
         totalCount.incrementAndGet();
-        switch (reason) {
-            case SCAN_TIMEOUT:    scanTimeout.incrementAndGet(); break;
-            case BOND_FAILED:     bondFailed.incrementAndGet(); break;
-            case PAGE_TIMEOUT:    pageTimeout.incrementAndGet(); break;
-            case CONNECT_TIMEOUT: connectTimeout.incrementAndGet(); break;
-            case DISCONNECT_FAILED: disconnectFailed.incrementAndGet(); break;
-            case UNPAIR_FAILED:   unpairFailed.incrementAndGet(); break;
-            default:              otherError.incrementAndGet(); break;
+        failReasons[reason.ordinal()].incrementAndGet();
+    }
+
+    /** 记录某阶段成功完成的耗时（单调时钟，ms） */
+    public void recordPhase(Phase phase, long costMs) {
+        phaseLatency[phase.ordinal()].record(costMs);
+    }
+
+    /** 记录一轮（成功或失败）的结果进滑动窗口，endTime 为本轮结束的墙钟 */
+    public void recordRecent(boolean success, long costMs, long endTime) {
+        recent.record(success, costMs, endTime);
+    }
+
+    /** 记录一整轮成功循环的耗时（单调时钟，ms） */
+    public void recordLoop(long costMs) {
+        loopLatency.record(costMs);
+    }
+
+    /** 记录一轮（成功或失败）走的路径 */
+    public void recordPath(LoopPath path) {
+        pathCount[path.ordinal()].incrementAndGet();
+    }
+
+    /** 记录一整轮成功循环的耗时，同时计入所走路径的耗时分布 */
+    public void recordLoop(LoopPath path, long costMs) {
+        loopLatency.record(costMs);
+        pathLatency[path.ordinal()].record(costMs);
+    }
+
+    /** 记录一次 GATT 吞吐测试的写入/通知速率（字节/秒），notifyBps < 0 表示未开启通知 */
+    public void recordGattBurst(long writeBps, long notifyBps) {
+        gattWriteRate.record(writeBps);
+        if (notifyBps >= 0) gattNotifyRate.record(notifyBps);
+    }
+
+    /** 记录一次 SPP 测试的发送速率（字节/秒） */
+    public void recordSppBurst(long bps) {
+        sppRate.record(bps);
+    }
+
+    /** 记录一次 SPP 测试往返时延的中位数和 p99（ms，对端回显时） */
+    public void recordSppRtt(long p50, long p99) {
+        sppRttP50.record(p50);
+        sppRttP99.record(p99);
+    }
+
+    /** 记录一次播放保持期间的欠载次数（-1=无法统计）和播放中断（PLAYING→NOT_PLAYING）次数 */
+    public void recordStreamHold(int underruns, int dropouts) {
+        streamHolds.incrementAndGet();
+        if (underruns > 0) streamUnderruns.addAndGet(underruns);
+        streamDropouts.addAndGet(dropouts);
+        if (underruns > 0 || dropouts > 0) streamGlitchy.incrementAndGet();
+    }
+
+    /** 记录本轮结束后选定的轮间冷却间隔 */
+    public void recordCooldown(long delayMs) {
+        cooldown.record(delayMs);
+    }
+
+    /** 记录一轮的结果，按开始这一轮之前的冷却间隔分档（用于观察间隔对成功率的影响） */
+    public void recordCooldownOutcome(long precedingDelayMs, boolean success) {
+        int i = 0;
+        while (i < COOLDOWN_BOUNDS.length && precedingDelayMs >= COOLDOWN_BOUNDS[i]) i++;
+        cooldownLoops[i].incrementAndGet();
+        if (success) cooldownSuccess[i].incrementAndGet();
+    }
+
+    /** 扫描到目标时的 RSSI（实时显示用） */
+    public void recordSignal(int rssi) {
+        if (rssi != BluetoothBackend.RSSI_UNKNOWN) lastRssi = rssi;
+    }
+
+    public int getLastRssi() { return lastRssi; }
+
+    /** 记录一轮的结果，按本轮扫描到目标时的 RSSI 分档（reason 为 null 表示成功） */
+    public void recordRssiOutcome(int rssi, FailReason reason) {
+        int i = rssiBucket(rssi);
+        rssiLoops[i].incrementAndGet();
+        if (reason == null) {
+            rssiSuccess[i].incrementAndGet();
+        } else {
+            rssiFailures[i * FailReason.values().length + reason.ordinal()].incrementAndGet();
+        }
+    }
+
+    private static int rssiBucket(int rssi) {
+        if (rssi == BluetoothBackend.RSSI_UNKNOWN) return RSSI_LABELS.length - 1;
+        int i = 0;
+        while (i < RSSI_BOUNDS.length && rssi < RSSI_BOUNDS[i]) i++;
+        return i;
+    }
+
+    public static int    getRssiBucketCount()       { return RSSI_LABELS.length; }
+    public static String getRssiBucketLabel(int i)  { return RSSI_LABELS[i]; }
+    public int getRssiLoops(int bucket)             { return rssiLoops[bucket].get(); }
+    public int getRssiSuccess(int bucket)           { return rssiSuccess[bucket].get(); }
+    public int getRssiFailures(int bucket, FailReason reason) {
+        return rssiFailures[bucket * FailReason.values().length + reason.ordinal()].get();
+    }
+
+    /** 记录一次中断（进程被杀后恢复），gap 为中断时长（墙钟） */
+    public void recordGap(long gap) {
+        gapCount.incrementAndGet();
+        gapMs.addAndGet(Math.max(0, gap));
+    }
+
+    public int  getGapCount() { return gapCount.get(); }
+    public long getGapMs()    { return gapMs.get(); }
+
+    /** 记录一次被忽略的过期事件/任务 */
+    public void recordStale(StaleKind kind) {
+        staleEvents[kind.ordinal()].incrementAndGet();
+    }
+
+    public int getStaleCount(StaleKind kind) { return staleEvents[kind.ordinal()].get(); }
+
+    public int getStaleTotal() {
+        int n = 0;
+        for (AtomicInteger c : staleEvents) n += c.get();
+        return n;
+    }
+
+    /** 如 "配对状态 12 A2DP状态 3"，没有时为空 */
+    public String getStaleSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (StaleKind k : StaleKind.values()) {
+            int n = staleEvents[k.ordinal()].get();
+            if (n == 0) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(k.desc).append(' ').append(n);
+        }
+        return sb.toString();
+    }
+
+    /** 记录一次排队等待共享射频资源的耗时 */
+    public void recordResourceWait(long waitMs) {
+        resourceWait.record(waitMs);
+    }
+
+    public LatencyHistogram getPhaseLatency(Phase phase) { return phaseLatency[phase.ordinal()]; }
+    public LatencyHistogram getLoopLatency()             { return loopLatency; }
+    public LatencyHistogram getDispatchLatency()         { return dispatchLatency; }
+    public LatencyHistogram getResourceWait()            { return resourceWait; }
+    public LatencyHistogram getCooldown()                { return cooldown; }
+    public LatencyHistogram getGattWriteRate()           { return gattWriteRate; }
+    public LatencyHistogram getGattNotifyRate()          { return gattNotifyRate; }
+    public LatencyHistogram getSppRate()                 { return sppRate; }
+    public LatencyHistogram getSppRttP50()               { return sppRttP50; }
+    public LatencyHistogram getSppRttP99()               { return sppRttP99; }
+    public int              getStreamHolds()             { return streamHolds.get(); }
+    public int              getStreamGlitchyHolds()      { return streamGlitchy.get(); }
+    public long             getStreamUnderruns()         { return streamUnderruns.get(); }
+    public long             getStreamDropouts()          { return streamDropouts.get(); }
+    public RollingWindow    getRecent()                  { return recent; }
+    public ReasonCodeMatrix getReasonCodes()             { return reasonCodes; }
+    public TransitionStats  getTransitions()             { return transitions; }
+    public LatencyHistogram getPathLatency(LoopPath path) { return pathLatency[path.ordinal()]; }
+    public int              getPathCount(LoopPath path)   { return pathCount[path.ordinal()].get(); }
+
+    /** 汇总多台设备的统计（计数与直方图累加，开始时间取最早） */
+    public static TestStatistics aggregate(List<TestStatistics> parts) {
+        TestStatistics sum = new TestStatistics();
+        for (TestStatistics p : parts) sum.addFrom(p);
+        return sum;
+    }
+
+    /** 累加另一份统计（多设备汇总、断点恢复），开始时间取两者中较早的 */
+    public void addFrom(TestStatistics p) {
+        successCount.addAndGet(p.successCount.get());
+        failureCount.addAndGet(p.failureCount.get());
+        totalCount.addAndGet(p.totalCount.get());
+        for (int i = 0; i < failReasons.length; i++) failReasons[i].addAndGet(p.failReasons[i].get());
+        reasonCodes.addFrom(p.reasonCodes);
+        for (int i = 0; i < phaseLatency.length; i++) phaseLatency[i].addFrom(p.phaseLatency[i]);
+        loopLatency.addFrom(p.loopLatency);
+        dispatchLatency.addFrom(p.dispatchLatency);
+        resourceWait.addFrom(p.resourceWait);
+        for (int i = 0; i < pathCount.length; i++) {
+            pathCount[i].addAndGet(p.pathCount[i].get());
+            pathLatency[i].addFrom(p.pathLatency[i]);
+        }
+        gattWriteRate.addFrom(p.gattWriteRate);
+        gattNotifyRate.addFrom(p.gattNotifyRate);
+        sppRate.addFrom(p.sppRate);
+        sppRttP50.addFrom(p.sppRttP50);
+        sppRttP99.addFrom(p.sppRttP99);
+        streamHolds.addAndGet(p.streamHolds.get());
+        streamGlitchy.addAndGet(p.streamGlitchy.get());
+        streamUnderruns.addAndGet(p.streamUnderruns.get());
+        streamDropouts.addAndGet(p.streamDropouts.get());
+        cooldown.addFrom(p.cooldown);
+        for (int i = 0; i < cooldownLoops.length; i++) {
+            cooldownLoops[i].addAndGet(p.cooldownLoops[i].get());
+            cooldownSuccess[i].addAndGet(p.cooldownSuccess[i].get());
+        }
+        gapCount.addAndGet(p.gapCount.get());
+        gapMs.addAndGet(p.gapMs.get());
+        for (int i = 0; i < staleEvents.length; i++) staleEvents[i].addAndGet(p.staleEvents[i].get());
+        transitions.addFrom(p.transitions);
+        for (int i = 0; i < rssiLoops.length; i++) {
+            rssiLoops[i].addAndGet(p.rssiLoops[i].get());
+            rssiSuccess[i].addAndGet(p.rssiSuccess[i].get());
+        }
+        for (int i = 0; i < rssiFailures.length; i++) rssiFailures[i].addAndGet(p.rssiFailures[i].get());
+        if (p.lastRssi != BluetoothBackend.RSSI_UNKNOWN) lastRssi = p.lastRssi;
+        recent.addFrom(p.recent);
+        if (p.startTimeMs != 0 && (startTimeMs == 0 || p.startTimeMs < startTimeMs)) {
+            startTimeMs = p.startTimeMs;
         }
     }
 
@@ -81,6 +474,11 @@ public class TestStatistics {
     public int getFailureCount()  { return failureCount.get(); }
     public int getTotalCount()    { return totalCount.get(); }
 
+    /** 某一失败原因的次数 */
+    public int getFailureCount(FailReason reason) {
+        return failReasons[reason.ordinal()].get();
+    }
+
     /** 获取运行时长字符串 */
     public String getElapsedTime() {
         if (startTimeMs == 0) return "00:00:00";
@@ -98,19 +496,157 @@ public class TestStatistics {
         return String.format(Locale.getDefault(), "%.1f%%", successCount.get() * 100.0 / total);
     }
 
+    /** 最近 N 轮 / 最近 T 分钟的成功率、轮/小时、平均耗时（两行），还没有完成的轮次时为空 */
+    public String getRecentSummary() {
+        return recent.toSummary(System.currentTimeMillis());
+    }
+
     /** 获取失败原因汇总字符串 */
     public String getFailureSummary() {
         StringBuilder sb = new StringBuilder();
-        appendIfNonZero(sb, "Page Timeout", pageTimeout.get());
-        appendIfNonZero(sb, "扫描超时", scanTimeout.get());
-        appendIfNonZero(sb, "配对失败", bondFailed.get());
-        appendIfNonZero(sb, "连接超时", connectTimeout.get());
-        appendIfNonZero(sb, "断开失败", disconnectFailed.get());
-        appendIfNonZero(sb, "取消配对失败", unpairFailed.get());
-        appendIfNonZero(sb, "其他", otherError.get());
+        for (FailReason r : SUMMARY_ORDER) appendIfNonZero(sb, shortLabel(r), getFailureCount(r));
         return sb.length() == 0 ? "无" : sb.toString().trim();
     }
 
+    /** 失败汇总里的顺序：Page Timeout 最常见，排在最前 */
+    private static final FailReason[] SUMMARY_ORDER = {
+            FailReason.PAGE_TIMEOUT, FailReason.SCAN_TIMEOUT, FailReason.BOND_FAILED, FailReason.CONNECT_TIMEOUT,
+            FailReason.DISCONNECT_FAILED, FailReason.UNPAIR_FAILED, FailReason.GATT_FAILED,
+            FailReason.STREAM_FAILED, FailReason.SPP_FAILED, FailReason.OTHER};
+
+    /** 汇总里用的简短名称 */
+    private static String shortLabel(FailReason r) {
+        switch (r) {
+            case PAGE_TIMEOUT:      return "Page Timeout";
+            case SCAN_TIMEOUT:      return "扫描超时";
+            case BOND_FAILED:       return "配对失败";
+            case CONNECT_TIMEOUT:   return "连接超时";
+            case DISCONNECT_FAILED: return "断开失败";
+            case UNPAIR_FAILED:     return "取消配对失败";
+            case GATT_FAILED:       return "GATT失败";
+            case STREAM_FAILED:     return "起播失败";
+            case SPP_FAILED:        return "SPP失败";
+            default:                return "其他";
+        }
+    }
+
+    /** 原始原因码/状态码分布，每个 (类别, 阶段) 一行，没有记录时为空 */
+    public String getReasonCodeSummary() {
+        return reasonCodes.toSummary();
+    }
+
+    /**
+     * 按 RSSI 分档的结果表，每档一行，如 "-80~-90dBm: 120轮 91.7% (Page Timeout 9 连接超时 1)"；
+     * 只有"未知"一档（全程直连）时为空
+     */
+    public String getRssiSummary() {
+        if (rssiLoops[RSSI_LABELS.length - 1].get() == totalRssiLoops()) return "";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < RSSI_LABELS.length; i++) {
+            int n = rssiLoops[i].get();
+            if (n == 0) continue;
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.format(Locale.getDefault(), "%s%s: %d轮 %.1f%%", RSSI_LABELS[i],
+                    i < RSSI_LABELS.length - 1 ? "dBm" : "", n, rssiSuccess[i].get() * 100.0 / n));
+            int fails = n - rssiSuccess[i].get();
+            if (fails == 0) continue;
+            sb.append(" (");
+            boolean first = true;
+            for (FailReason r : SUMMARY_ORDER) {
+                int c = getRssiFailures(i, r);
+                if (c == 0) continue;
+                if (!first) sb.append(' ');
+                first = false;
+                sb.append(shortLabel(r)).append(' ').append(c);
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    private int totalRssiLoops() {
+        int n = 0;
+        for (AtomicInteger c : rssiLoops) n += c.get();
+        return n;
+    }
+
+    /** 获取各阶段耗时分位数汇总字符串（每阶段一行），非完整循环时第一行注明循环方式 */
+    public String getPhaseSummary() {
+        StringBuilder sb = new StringBuilder();
+        if (loopShape != LoopShape.FULL) sb.append("循环方式: ").append(loopShape.desc).append('\n');
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram h = phaseLatency[phase.ordinal()];
+            if (h.getCount() == 0) continue;
+            sb.append(phase.desc).append(": ").append(h.toSummary()).append('\n');
+        }
+        if (gattWriteRate.getCount() > 0) {
+            sb.append("GATT写入: ").append(rateSummary(gattWriteRate)).append('\n');
+        }
+        if (gattNotifyRate.getCount() > 0) {
+            sb.append("GATT通知: ").append(rateSummary(gattNotifyRate)).append('\n');
+        }
+        if (sppRate.getCount() > 0) {
+            sb.append("SPP发送: ").append(rateSummary(sppRate)).append('\n');
+        }
+        if (sppRttP50.getCount() > 0) {
+            sb.append("SPP往返(每轮p50): ").append(sppRttP50.toSummary()).append('\n');
+            sb.append("SPP往返(每轮p99): ").append(sppRttP99.toSummary()).append('\n');
+        }
+        if (streamHolds.get() > 0) {
+            sb.append(String.format(Locale.getDefault(), "播放保持: %d次 有卡顿%d次 (欠载%d 中断%d)",
+                    streamHolds.get(), streamGlitchy.get(), streamUnderruns.get(), streamDropouts.get())).append('\n');
+        }
+        if (loopLatency.getCount() > 0) {
+            sb.append("整轮: ").append(loopLatency.toSummary()).append('\n');
+        }
+        if (dispatchLatency.getCount() > 0) {
+            sb.append("事件分发: ").append(dispatchLatency.toSummary()).append('\n');
+        }
+        // 只走过扫描路径时不展示，与原来的输出一致
+        if (pathCount[LoopPath.INQUIRY.ordinal()].get() != totalPathCount()) {
+            for (LoopPath path : LoopPath.values()) {
+                int n = pathCount[path.ordinal()].get();
+                if (n == 0) continue;
+                sb.append("整轮(").append(path.desc).append(" ").append(n).append("轮): ")
+                  .append(pathLatency[path.ordinal()].toSummary()).append('\n');
+            }
+        }
+        if (cooldown.getCount() > 0) {
+            sb.append("轮间冷却: ").append(cooldown.toSummary()).append('\n');
+            sb.append("冷却后成功率:");
+            for (int i = 0; i < cooldownLoops.length; i++) {
+                int n = cooldownLoops[i].get();
+                if (n == 0) continue;
+                sb.append(String.format(Locale.getDefault(), " %s %.1f%%(%d)",
+                        COOLDOWN_LABELS[i], cooldownSuccess[i].get() * 100.0 / n, n));
+            }
+            sb.append('\n');
+        }
+        if (resourceWait.getCount() > 0) {
+            sb.append("资源排队: ").append(resourceWait.toSummary()).append('\n');
+        }
+        if (gapCount.get() > 0) {
+            sb.append(String.format(Locale.getDefault(), "中断恢复: %d次 共%ds",
+                    gapCount.get(), gapMs.get() / 1000)).append('\n');
+        }
+        if (getStaleTotal() > 0) {
+            sb.append("忽略的事件: ").append(getStaleSummary());
+        }
+        return sb.length() == 0 ? "无" : sb.toString().trim();
+    }
+
+    /** 速率分布，如 "p5=38.2 p50=52.1 max=61.0KB/s (n=120)"：吞吐看低分位 */
+    private static String rateSummary(LatencyHistogram h) {
+        return String.format(Locale.getDefault(), "p5=%.1f p50=%.1f max=%.1fKB/s (n=%d)",
+                h.getPercentile(5) / 1024.0, h.getPercentile(50) / 1024.0, h.getMax() / 1024.0, h.getCount());
+    }
+
+    private int totalPathCount() {
+        int n = 0;
+        for (AtomicInteger c : pathCount) n += c.get();
+        return n;
+    }
+
     private void appendIfNonZero(StringBuilder sb, String label, int count) {
         if (count > 0) {
             sb.append(label).append(": ").append(count).append("  ");
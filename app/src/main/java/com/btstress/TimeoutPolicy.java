@@ -0,0 +1,150 @@
+package com.btstress;
+
+import java.util.Locale;
+
+/**
+ * 各阶段超时策略
+ *
+ * 固定模式沿用原来的常量（扫描20s、配对30s、连接20s、断开10s、取消配对5s；GATT/SPP 循环见 FIXED_MS）。
+ * 平时 1.2s 就连上的耳机，连接失败也要等满 20s 才判定，失败多的压测大部分时间耗在等超时上。
+ *
+ * 自适应模式：某阶段成功完成的次数达到预热轮数后，超时取该阶段耗时分布的高分位 × 安全系数，
+ * 并限制在 [下限, 固定值] 之间——只会比固定值短，下限保证协议本身需要的时间
+ * （扫描至少一次完整 inquiry，配对至少一次 page timeout）。未预热的阶段仍用固定值。
+ *
+ * 每轮开始时按当前统计计算一次，本轮内不变；控制器把本轮生效的超时写进日志和导出行，便于核对。
+ * 只在调度线程上调用，无需加锁。
+ */
+public class TimeoutPolicy {
+
+    /** 超时模式 */
+    public enum Mode {
+        FIXED("固定"),
+        ADAPTIVE("自适应");
+
+        public final String desc;
+        Mode(String desc) { this.desc = desc; }
+    }
+
+    private static final TestStatistics.Phase[] PHASES = TestStatistics.Phase.values();
+
+    /**
+     * 固定超时（按 Phase.ordinal() 索引），也是自适应模式的上限；
+     * 吞吐测试、播放保持和 SPP 吞吐测试的"超时"就是其时长（默认 10s，可用 {@link #setDuration} 设定），到点正常结束
+     */
+    private static final long[] FIXED_MS = new long[PHASES.length];
+    /** 自适应模式的下限：扫描一次完整 inquiry(10.24s+余量)，配对一次 page timeout(5.12s)+认证；吞吐测试时长不调整 */
+    private static final long[] MIN_MS   = new long[PHASES.length];
+    static {
+        //                                           固定     下限
+        limits(TestStatistics.Phase.SCAN,            20_000, 12_800);
+        limits(TestStatistics.Phase.BOND,            30_000,  8_000);
+        limits(TestStatistics.Phase.CONNECT,         20_000,  3_000);
+        limits(TestStatistics.Phase.DISCONNECT,      10_000,  2_000);
+        limits(TestStatistics.Phase.UNPAIR,           5_000,  2_000);
+        limits(TestStatistics.Phase.GATT_CONNECT,    15_000,  2_000);
+        limits(TestStatistics.Phase.MTU,              5_000,  1_000);
+        limits(TestStatistics.Phase.SERVICES,        10_000,  2_000);
+        limits(TestStatistics.Phase.BURST,           10_000, 10_000);
+        limits(TestStatistics.Phase.GATT_DISCONNECT,  5_000,  2_000);
+        limits(TestStatistics.Phase.STREAM_START,     8_000,  1_000);
+        limits(TestStatistics.Phase.STREAM_HOLD,     10_000, 10_000);
+        limits(TestStatistics.Phase.SPP_CONNECT,     15_000,  2_000);
+        limits(TestStatistics.Phase.SPP_BURST,       10_000, 10_000);
+        limits(TestStatistics.Phase.SPP_DRAIN,        3_000,  1_000);
+        // 新增阶段时漏配超时会让该阶段立即超时，类加载时就报出来
+        for (TestStatistics.Phase p : PHASES) {
+            if (FIXED_MS[p.ordinal()] <= 0) throw new IllegalStateException("阶段 " + p + " 未配置超时");
+        }
+    }
+
+    private static void limits(TestStatistics.Phase phase, long fixedMs, long minMs) {
+        FIXED_MS[phase.ordinal()] = fixedMs;
+        MIN_MS[phase.ordinal()]   = minMs;
+    }
+
+    private final Mode mode;
+    private int    warmup     = 20;     // 某阶段成功次数达到后才开始调整
+    private double percentile = 99;
+    private double factor     = 2.0;
+
+    private final long[]    fixedMs   = FIXED_MS.clone();   // 本实例的上限（含设定的固定时长）
+    private final long[]    currentMs = FIXED_MS.clone();
+    private final boolean[] tuned     = new boolean[PHASES.length];
+
+    public TimeoutPolicy(Mode mode) {
+        this.mode = mode;
+    }
+
+    /** 原行为：固定超时 */
+    public static TimeoutPolicy fixed() {
+        return new TimeoutPolicy(Mode.FIXED);
+    }
+
+    public static TimeoutPolicy adaptive() {
+        return new TimeoutPolicy(Mode.ADAPTIVE);
+    }
+
+    /** 预热次数、分位数和安全系数 */
+    public void setTuning(int warmup, double percentile, double factor) {
+        this.warmup     = Math.max(1, warmup);
+        this.percentile = Math.max(50, Math.min(100, percentile));
+        this.factor     = Math.max(1.0, factor);
+    }
+
+    public Mode getMode() { return mode; }
+
+    /** 固定时长的阶段（吞吐测试、播放保持、SPP 吞吐测试）的时长，这类阶段从不记录耗时，也就不会被自适应调整 */
+    public void setDuration(TestStatistics.Phase phase, long ms) {
+        fixedMs[phase.ordinal()]   = ms;
+        currentMs[phase.ordinal()] = ms;
+    }
+
+    /** 新一次压测开始时调用 */
+    public void reset() {
+        System.arraycopy(fixedMs, 0, currentMs, 0, fixedMs.length);
+        for (int i = 0; i < tuned.length; i++) tuned[i] = false;
+    }
+
+    /** 每轮开始时按已有的阶段耗时分布重新计算 */
+    public void update(TestStatistics stats) {
+        if (mode == Mode.FIXED) return;
+        for (TestStatistics.Phase p : PHASES) {
+            int i = p.ordinal();
+            LatencyHistogram h = stats.getPhaseLatency(p);
+            if (h.getCount() < warmup) continue;
+            long ms = (long) (h.getPercentile(percentile) * factor);
+            ms = Math.max(MIN_MS[i], Math.min(fixedMs[i], ms));
+            currentMs[i] = ms;
+            tuned[i]     = true;
+        }
+    }
+
+    /** 本轮该阶段生效的超时 */
+    public long get(TestStatistics.Phase phase) {
+        return currentMs[phase.ordinal()];
+    }
+
+    /**
+     * 该循环方式用到的各阶段当前超时，如 "扫描20.0s 配对8.4s* 连接3.1s* ..."，* 表示已按分布调整
+     * streamProbe=false 时不列出音频起播探测的两个阶段
+     */
+    public String describe(TestStatistics.LoopShape shape, boolean streamProbe) {
+        StringBuilder sb = new StringBuilder();
+        for (TestStatistics.Phase p : PHASES) {
+            if (!shape.uses(p)) continue;
+            if (!streamProbe && (p == TestStatistics.Phase.STREAM_START || p == TestStatistics.Phase.STREAM_HOLD)) continue;
+            int i = p.ordinal();
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(p.desc).append(String.format(Locale.ROOT, "%.1fs", currentMs[i] / 1000.0));
+            if (tuned[i]) sb.append('*');
+        }
+        return sb.toString();
+    }
+
+    /** 规则说明，如 "自适应 p99×2.0 预热20次" */
+    public String describeRule() {
+        if (mode == Mode.FIXED) return mode.desc;
+        return String.format(Locale.ROOT, "%s p%.0f×%.1f 预热%d次", mode.desc, percentile, factor, warmup);
+    }
+}
@@ -0,0 +1,94 @@
+package com.btstress;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+
+/**
+ * 测试音播放（音频起播探测用）
+ *
+ * 一路 MODE_STREAM 的 AudioTrack（媒体用途，系统路由到活动的 A2DP 设备），由独立的写线程
+ * 循环阻塞写入一段 1kHz 正弦波。写线程供数跟不上时 AudioTrack 计一次欠载，{@link #stop} 返回
+ * 本次播放的欠载次数（getUnderrunCount 需要 API 24，更低版本返回 -1）。
+ * start/stop 只在控制器线程调用。
+ */
+public class TonePlayer {
+
+    private static final int    SAMPLE_RATE = 44_100;
+    private static final int    TONE_HZ     = 1_000;
+    private static final double AMPLITUDE   = 0.1;    // 约 -20dBFS
+
+    private volatile boolean    running = false;
+    private          AudioTrack track   = null;
+    private          Thread     writer  = null;
+
+    /** 开始播放，false 表示 AudioTrack 创建失败 */
+    public boolean start() {
+        if (track != null) return true;
+        int minBuf = AudioTrack.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBuf <= 0) return false;
+
+        final AudioTrack t;
+        try {
+            t = new AudioTrack(
+                    new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_MEDIA)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                            .build(),
+                    new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(SAMPLE_RATE)
+                            .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                            .build(),
+                    minBuf * 2, AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (t.getState() != AudioTrack.STATE_INITIALIZED) {
+            t.release();
+            return false;
+        }
+
+        final short[] chunk = tone();
+        running = true;
+        t.play();
+        track  = t;
+        writer = new Thread(() -> {
+            while (running) {
+                if (t.write(chunk, 0, chunk.length) < 0) break;
+            }
+        }, "TonePlayer");
+        writer.start();
+        return true;
+    }
+
+    /** 停止并释放，返回本次播放的欠载次数（-1=无法统计或没有在播放） */
+    public int stop() {
+        AudioTrack t = track;
+        if (t == null) return -1;
+        running = false;
+        int underruns = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? t.getUnderrunCount() : -1;
+        t.pause();
+        t.flush();   // 让阻塞中的写返回
+        try { writer.join(500); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        t.release();
+        track  = null;
+        writer = null;
+        return underruns;
+    }
+
+    /** 10ms 立体声，1kHz 正好 10 个完整周期，循环写入没有断点 */
+    private static short[] tone() {
+        int frames = SAMPLE_RATE / 100;
+        short[] buf = new short[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short v = (short) (Math.sin(2 * Math.PI * TONE_HZ * i / SAMPLE_RATE) * AMPLITUDE * Short.MAX_VALUE);
+            buf[2 * i]     = v;
+            buf[2 * i + 1] = v;
+        }
+        return buf;
+    }
+}
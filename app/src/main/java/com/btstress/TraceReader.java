@@ -0,0 +1,196 @@
+package com.btstress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link TraceRecorder} 的读取端
+ *
+ * 构造时映射一次运行的全部段文件，{@link #cursor} 从头依次解码记录；游标可以复制，
+ * 重放时事件和调用各用一个游标独立前进，核对调用时再复制一个往后找。
+ * 地址表在读端还原，TR_ADDRESS 不交给调用方。
+ */
+public final class TraceReader {
+
+    /** 一条记录（游标复用同一个对象，需要保留时调用方自行复制） */
+    public static final class Record {
+        public int    type;
+        public long   time;        // 单调时钟 ms（与记录时的 Scheduler.now 同一基准）
+        public String address;     // 无地址字段时为 null
+        public int    count;       // 数值个数
+        public final long[] values = new long[TraceRecorder.MAX_VALUES];
+        public String str;         // 无字符串字段时为 null
+
+        public long value(int i) { return i < count ? values[i] : 0; }
+
+        void copyFrom(Record r) {
+            type    = r.type;
+            time    = r.time;
+            address = r.address;
+            count   = r.count;
+            System.arraycopy(r.values, 0, values, 0, r.count);
+            str     = r.str;
+        }
+
+        /** 如 "+12034ms createBond AA:BB:CC:DD:EE:FF [1]" （时间相对 origin） */
+        public String describe(long origin) {
+            StringBuilder sb = new StringBuilder();
+            sb.append('+').append(time - origin).append("ms ").append(TraceRecorder.NAMES[type]);
+            if (address != null) sb.append(' ').append(address);
+            if (count > 0) {
+                sb.append(" [");
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) sb.append(", ");
+                    sb.append(values[i]);
+                }
+                sb.append(']');
+            }
+            if (str != null && type != TraceRecorder.TR_CONFIG) sb.append(" \"").append(str).append('"');
+            return sb.toString();
+        }
+    }
+
+    private final String           runName;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private boolean corrupt;
+
+    /** 读取 dir 下 runName 的全部 .btt 段 */
+    public TraceReader(File dir, String runName) throws IOException {
+        this.runName = runName;
+        File[] files = JournalReader.listSegments(dir, runName, TraceRecorder.SUFFIX);
+        if (files.length == 0) throw new IOException("找不到轨迹 " + new File(dir, runName + ".*" + TraceRecorder.SUFFIX));
+        for (File f : files) {
+            RandomAccessFile raf = new RandomAccessFile(f, "r");
+            try {
+                if (raf.length() < EventJournal.HEADER_SIZE) continue;
+                ByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                if (buf.getInt(0) != TraceRecorder.MAGIC) throw new IOException("不是蓝牙事件轨迹文件: " + f.getName());
+                int version = buf.getShort(4);
+                if (version != TraceRecorder.VERSION) throw new IOException("不支持的轨迹版本 " + version);
+                segments.add(buf);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /** 目录下所有轨迹的运行名，按名称排序 */
+    public static String[] listRuns(File dir) {
+        return JournalReader.listRuns(dir, TraceRecorder.SUFFIX);
+    }
+
+    public String getRunName() { return runName; }
+
+    /** 遇到无法识别的记录（该段其后的内容被忽略） */
+    public boolean isCorrupt() { return corrupt; }
+
+    /** 第一条运行配置（RunConfig 文本），没有时为 null */
+    public String getConfig() {
+        Cursor c = cursor();
+        Record r = new Record();
+        while (c.next(r)) {
+            if (r.type == TraceRecorder.TR_CONFIG) return r.str;
+        }
+        return null;
+    }
+
+    /** 全部记录的文字形式，每行一条（时间相对第一次 open） */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        Cursor c = cursor();
+        Record r = new Record();
+        long origin = -1;
+        while (c.next(r)) {
+            if (origin < 0 && r.type == TraceRecorder.TR_OPEN) origin = r.time;
+            if (r.type == TraceRecorder.TR_CONFIG) continue;
+            sb.append(r.describe(origin < 0 ? r.time : origin)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** 按写入顺序依次解码记录的游标 */
+    public final class Cursor {
+        private int          segment = -1;
+        private ByteBuffer   buf;
+        private long         time;
+        private List<String> addresses = new ArrayList<>();
+
+        private Cursor() {}
+
+        /** 与本游标位置相同、之后各自前进的副本 */
+        public Cursor copy() {
+            Cursor c = new Cursor();
+            c.segment   = segment;
+            c.buf       = buf == null ? null : buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            c.time      = time;
+            c.addresses = new ArrayList<>(addresses);
+            return c;
+        }
+
+        /** 读下一条记录到 r，已到末尾返回 false */
+        public boolean next(Record r) {
+            while (true) {
+                if ((buf == null || !buf.hasRemaining()) && !nextSegment()) return false;
+                int type = buf.get() & 0xFF;
+                if (type == 0) {                // 本段末尾（或崩溃时未提交的记录）
+                    buf = null;
+                    continue;
+                }
+                try {
+                    if (type > TraceRecorder.TR_MAX || TraceRecorder.NAMES[type] == null) {
+                        throw new IllegalStateException("unknown type " + type);
+                    }
+                    time += JournalReader.getVarLong(buf);
+                    int f = TraceRecorder.FIELDS[type];
+                    String raw = (f & TraceRecorder.F_RAW) != 0 ? JournalReader.getAddress(buf) : null;
+                    r.address = (f & TraceRecorder.F_ADDR) != 0 ? addresses.get((int) JournalReader.getVarLong(buf)) : null;
+                    r.count = (int) JournalReader.getVarLong(buf);
+                    if (r.count > r.values.length) throw new IllegalStateException("too many values");
+                    for (int i = 0; i < r.count; i++) {
+                        long v = JournalReader.getVarLong(buf);
+                        r.values[i] = (v >>> 1) ^ -(v & 1);
+                    }
+                    r.str = (f & TraceRecorder.F_STR) != 0 ? JournalReader.getString(buf) : null;
+                    if (type == TraceRecorder.TR_ADDRESS) {
+                        addresses.add(raw);
+                        continue;
+                    }
+                } catch (RuntimeException e) {
+                    corrupt = true;
+                    buf = null;
+                    continue;
+                }
+                r.type = type;
+                r.time = time;
+                return true;
+            }
+        }
+
+        private boolean nextSegment() {
+            if (segment + 1 >= segments.size()) return false;
+            segment++;
+            buf = segments.get(segment).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            time = buf.getLong(20);               // 段起点单调时钟
+            buf.position(EventJournal.HEADER_SIZE);
+            addresses.clear();
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s (%d段%s)", runName, segments.size(), corrupt ? "，末尾损坏" : "");
+    }
+}
@@ -0,0 +1,601 @@
+package com.btstress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * 蓝牙事件轨迹记录（包在真实后端外面的 BluetoothBackend）
+ *
+ * 后端上报的每个事件（btReceiver 收到的广播及其 extras、GATT/SPP 回调）和控制器发起的每次调用
+ * （参数、返回值、抛出的异常）按发生顺序写进轨迹文件，时间取调度器的单调时钟。
+ * 事件先记录再转发，控制器因它发起的调用总在它之后。{@link TraceReplayBackend} 在 JVM 上
+ * 把轨迹原样喂回按同一配置重建的控制器，复现当时的事件顺序和失败路径。
+ *
+ * 段文件 {@code <runName>.<序号>.btt}，格式（小端）：
+ *   头部 32 字节：同 {@link EventJournal}，magic 为 "BTT1"
+ *   记录：类型(1) | 距上一条的单调时钟增量ms(varint) | [地址序号(varint)] | 数值个数(varint) + 各数值(zigzag varint) | [字符串]
+ * 地址在每段内首次出现时先写一条 TR_ADDRESS（6字节），之后只写序号，任意一段都能独立解码。
+ * 与事件日志一样先写正文、最后写类型字节，崩溃时最多丢失正在写的一条。
+ * 每次 open 先写一条运行配置（RunConfig 文本），重放时据此重建控制器。
+ *
+ * 总大小达到上限后停止记录（保留开头，重放总是从运行开始），写失败同样只停止记录，不影响压测。
+ * 只在调度线程上调用，无需加锁。
+ */
+public class TraceRecorder implements BluetoothBackend {
+
+    /*──── 元数据 ────*/
+    public static final int TR_CONFIG  = 1;    // str=RunConfig 文本
+    public static final int TR_ADDRESS = 2;    // 本段地址表新增一项（6字节原始地址）
+    public static final int TR_OPEN    = 3;    // 后端 open，重放的时间起点
+    public static final int TR_CLOSE   = 4;    // 后端 close
+    public static final int TR_THROWN  = 5;    // 上一条调用抛出 BackendException，str=消息
+
+    /*──── 事件（Listener 回调） ────*/
+    public static final int TR_DEVICE_FOUND     = 10;  // addr, RSSI, deviceClass, str=名称
+    public static final int TR_DISCOVERY_DONE   = 11;
+    public static final int TR_BOND_STATE       = 12;  // addr, bond状态, reason
+    public static final int TR_A2DP_STATE       = 13;  // addr, 状态
+    public static final int TR_ACL_DISCONNECTED = 14;  // addr, HCI原因
+    public static final int TR_A2DP_PROXY       = 15;  // 可用(1/0)
+    public static final int TR_A2DP_PLAYING     = 16;  // addr, 播放中(1/0)
+    public static final int TR_GATT_STATE       = 17;  // addr, status, 连接状态
+    public static final int TR_GATT_MTU         = 18;  // addr, MTU, status
+    public static final int TR_GATT_SERVICES    = 19;  // addr, status, 服务数, 可写(1/0)
+    public static final int TR_GATT_WRITE       = 20;  // addr, status
+    public static final int TR_GATT_NOTIFY      = 21;  // addr, 字节数
+    public static final int TR_SPP_CONNECTED    = 22;  // addr, 成功(1/0)
+    public static final int TR_SPP_DONE         = 23;  // addr, 发送/回显字节, 发送ms, 往返p50/p95/p99/max（无数值=中途失败）
+
+    /*──── 调用（第一个数值为返回值，void 为0，其后为参数） ────*/
+    public static final int TR_GET_CAPABILITIES   = 40;
+    public static final int TR_IS_DISCOVERING     = 41;
+    public static final int TR_START_DISCOVERY    = 42;
+    public static final int TR_CANCEL_DISCOVERY   = 43;
+    public static final int TR_CREATE_BOND        = 44;  // addr
+    public static final int TR_GET_BOND_STATE     = 45;  // addr
+    public static final int TR_REMOVE_BOND        = 46;  // addr
+    public static final int TR_CONNECT_A2DP       = 47;  // addr
+    public static final int TR_DISCONNECT_A2DP    = 48;  // addr
+    public static final int TR_START_TONE         = 49;  // addr
+    public static final int TR_STOP_TONE          = 50;  // addr
+    public static final int TR_CONNECT_GATT       = 51;  // addr
+    public static final int TR_REQUEST_MTU        = 52;  // addr, 参数 MTU
+    public static final int TR_HIGH_PRIORITY      = 53;  // addr
+    public static final int TR_DISCOVER_SERVICES  = 54;  // addr
+    public static final int TR_ENABLE_NOTIFY      = 55;  // addr
+    public static final int TR_WRITE_GATT         = 56;  // addr, 参数 字节数
+    public static final int TR_DISCONNECT_GATT    = 57;  // addr
+    public static final int TR_CLOSE_GATT         = 58;  // addr
+    public static final int TR_CONNECT_SPP        = 59;  // addr
+    public static final int TR_START_SPP_BURST    = 60;  // addr, 参数 帧长
+    public static final int TR_STOP_SPP_BURST     = 61;  // addr
+    public static final int TR_CLOSE_SPP          = 62;  // addr
+    static final int TR_MAX = 62;
+
+    static boolean isEvent(int type) { return type >= TR_DEVICE_FOUND && type <= TR_SPP_DONE; }
+    static boolean isCall(int type)  { return type >= TR_GET_CAPABILITIES && type <= TR_MAX; }
+
+    /*──── 各类型携带的字段（数值个数每条自带） ────*/
+    static final int F_ADDR = 1;
+    static final int F_STR  = 2;
+    static final int F_RAW  = 4;   // 6字节原始地址（TR_ADDRESS）
+    static final int[]    FIELDS = new int[TR_MAX + 1];
+    static final String[] NAMES  = new String[TR_MAX + 1];
+    static {
+        def(TR_CONFIG, "CONFIG", F_STR);
+        def(TR_ADDRESS, "ADDRESS", F_RAW);
+        def(TR_OPEN, "open", 0);
+        def(TR_CLOSE, "close", 0);
+        def(TR_THROWN, "THROWN", F_STR);
+        def(TR_DEVICE_FOUND, "DEVICE_FOUND", F_ADDR | F_STR);
+        def(TR_DISCOVERY_DONE, "DISCOVERY_FINISHED", 0);
+        def(TR_BOND_STATE, "BOND_STATE", F_ADDR);
+        def(TR_A2DP_STATE, "A2DP_STATE", F_ADDR);
+        def(TR_ACL_DISCONNECTED, "ACL_DISCONNECTED", F_ADDR);
+        def(TR_A2DP_PROXY, "A2DP_PROXY", 0);
+        def(TR_A2DP_PLAYING, "A2DP_PLAYING", F_ADDR);
+        def(TR_GATT_STATE, "GATT_STATE", F_ADDR);
+        def(TR_GATT_MTU, "GATT_MTU", F_ADDR);
+        def(TR_GATT_SERVICES, "GATT_SERVICES", F_ADDR);
+        def(TR_GATT_WRITE, "GATT_WRITE", F_ADDR);
+        def(TR_GATT_NOTIFY, "GATT_NOTIFY", F_ADDR);
+        def(TR_SPP_CONNECTED, "SPP_CONNECTED", F_ADDR);
+        def(TR_SPP_DONE, "SPP_DONE", F_ADDR);
+        def(TR_GET_CAPABILITIES, "getCapabilities", 0);
+        def(TR_IS_DISCOVERING, "isDiscovering", 0);
+        def(TR_START_DISCOVERY, "startDiscovery", 0);
+        def(TR_CANCEL_DISCOVERY, "cancelDiscovery", 0);
+        def(TR_CREATE_BOND, "createBond", F_ADDR);
+        def(TR_GET_BOND_STATE, "getBondState", F_ADDR);
+        def(TR_REMOVE_BOND, "removeBond", F_ADDR);
+        def(TR_CONNECT_A2DP, "connectA2dp", F_ADDR);
+        def(TR_DISCONNECT_A2DP, "disconnectA2dp", F_ADDR);
+        def(TR_START_TONE, "startTone", F_ADDR);
+        def(TR_STOP_TONE, "stopTone", F_ADDR);
+        def(TR_CONNECT_GATT, "connectGatt", F_ADDR);
+        def(TR_REQUEST_MTU, "requestMtu", F_ADDR);
+        def(TR_HIGH_PRIORITY, "requestHighPriority", F_ADDR);
+        def(TR_DISCOVER_SERVICES, "discoverServices", F_ADDR);
+        def(TR_ENABLE_NOTIFY, "enableNotify", F_ADDR);
+        def(TR_WRITE_GATT, "writeGatt", F_ADDR);
+        def(TR_DISCONNECT_GATT, "disconnectGatt", F_ADDR);
+        def(TR_CLOSE_GATT, "closeGatt", F_ADDR);
+        def(TR_CONNECT_SPP, "connectSpp", F_ADDR);
+        def(TR_START_SPP_BURST, "startSppBurst", F_ADDR);
+        def(TR_STOP_SPP_BURST, "stopSppBurst", F_ADDR);
+        def(TR_CLOSE_SPP, "closeSpp", F_ADDR);
+    }
+
+    private static void def(int type, String name, int fields) {
+        NAMES[type]  = name;
+        FIELDS[type] = fields;
+    }
+
+    static final int    MAGIC      = 0x31545442;  // "BTT1"
+    static final int    VERSION    = 1;
+    static final String SUFFIX     = ".btt";
+    static final int    MAX_VALUES = 7;
+
+    private static final int MAX_STR_BYTES   = 2048;
+    private static final int MAX_RECORD_SIZE = (1 + 10 + 6 + 1)    // 可能先写一条 TR_ADDRESS
+            + 1 + 10 + 5 + 1 + MAX_VALUES * 10 + 2 + MAX_STR_BYTES;
+    public  static final long DEFAULT_SEGMENT_BYTES = 8L << 20;
+    public  static final int  DEFAULT_MAX_SEGMENTS  = 8;          // 64MB：经典循环约50万轮（约120字节/轮），GATT 吞吐循环约1千轮（每个通知一条）
+
+    private final BluetoothBackend backend;
+    private final Scheduler        scheduler;
+    private final File             dir;
+    private final String           runName;
+    private final String           config;
+    private final long             segmentBytes;
+    private final int              maxSegments;
+
+    private Listener listener;
+    private RandomAccessFile file;
+    private MappedByteBuffer buf;
+    private int     segment  = -1;
+    private int     segments = 0;       // 本次写的段数
+    private long    wallBase;
+    private long    monoBase;
+    private long    lastTime;
+    private boolean stopped;            // 写失败或达到上限后不再记录
+    private String  error;
+    private final HashMap<String, Integer> addresses = new HashMap<>();   // 本段地址表
+    private final long[] values = new long[MAX_VALUES];
+
+    /** @param config 运行配置（{@link RunConfig#toText}），重放时用来重建控制器 */
+    public TraceRecorder(BluetoothBackend backend, Scheduler scheduler, File dir, String runName, String config) {
+        this(backend, scheduler, dir, runName, config, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public TraceRecorder(BluetoothBackend backend, Scheduler scheduler, File dir, String runName, String config,
+                         long segmentBytes, int maxSegments) {
+        this.backend      = backend;
+        this.scheduler    = scheduler;
+        this.dir          = dir;
+        this.runName      = runName;
+        this.config       = config;
+        this.segmentBytes = Math.max(EventJournal.HEADER_SIZE + MAX_RECORD_SIZE * 4, segmentBytes);
+        this.maxSegments  = Math.max(1, maxSegments);
+    }
+
+    public File   getDir()     { return dir; }
+    public String getRunName() { return runName; }
+
+    /** 停止记录的原因（写失败/达到上限），完整记录时为 null */
+    public String getError() { return error; }
+
+    /*──────────────────────────────
+     *  事件：先记录再转发
+     *──────────────────────────────*/
+
+    private final Listener recording = new Listener() {
+        @Override
+        public void onDeviceFound(String address, String name, int rssi, int deviceClass) {
+            values[0] = rssi;
+            values[1] = deviceClass;
+            append(TR_DEVICE_FOUND, address, 2, name);
+            listener.onDeviceFound(address, name, rssi, deviceClass);
+        }
+        @Override
+        public void onDiscoveryFinished() {
+            append(TR_DISCOVERY_DONE, null, 0, null);
+            listener.onDiscoveryFinished();
+        }
+        @Override
+        public void onBondStateChanged(String address, int bondState, int reason) {
+            record(TR_BOND_STATE, address, bondState, reason);
+            listener.onBondStateChanged(address, bondState, reason);
+        }
+        @Override
+        public void onA2dpStateChanged(String address, int state) {
+            record(TR_A2DP_STATE, address, state);
+            listener.onA2dpStateChanged(address, state);
+        }
+        @Override
+        public void onAclDisconnected(String address, int reason) {
+            record(TR_ACL_DISCONNECTED, address, reason);
+            listener.onAclDisconnected(address, reason);
+        }
+        @Override
+        public void onA2dpProxyChanged(boolean available) {
+            record(TR_A2DP_PROXY, null, available ? 1 : 0);
+            listener.onA2dpProxyChanged(available);
+        }
+        @Override
+        public void onA2dpPlayingChanged(String address, boolean playing) {
+            record(TR_A2DP_PLAYING, address, playing ? 1 : 0);
+            listener.onA2dpPlayingChanged(address, playing);
+        }
+        @Override
+        public void onGattConnectionChanged(String address, int status, int state) {
+            record(TR_GATT_STATE, address, status, state);
+            listener.onGattConnectionChanged(address, status, state);
+        }
+        @Override
+        public void onGattMtuChanged(String address, int mtu, int status) {
+            record(TR_GATT_MTU, address, mtu, status);
+            listener.onGattMtuChanged(address, mtu, status);
+        }
+        @Override
+        public void onGattServicesDiscovered(String address, int status, int services, boolean writable) {
+            values[0] = status;
+            values[1] = services;
+            values[2] = writable ? 1 : 0;
+            append(TR_GATT_SERVICES, address, 3, null);
+            listener.onGattServicesDiscovered(address, status, services, writable);
+        }
+        @Override
+        public void onGattWriteComplete(String address, int status) {
+            record(TR_GATT_WRITE, address, status);
+            listener.onGattWriteComplete(address, status);
+        }
+        @Override
+        public void onGattNotify(String address, int bytes) {
+            record(TR_GATT_NOTIFY, address, bytes);
+            listener.onGattNotify(address, bytes);
+        }
+        @Override
+        public void onSppConnected(String address, boolean ok) {
+            record(TR_SPP_CONNECTED, address, ok ? 1 : 0);
+            listener.onSppConnected(address, ok);
+        }
+        @Override
+        public void onSppBurstDone(String address, SppBenchmark.Result result) {
+            int n = 0;
+            if (result != null) {
+                values[0] = result.sentBytes;
+                values[1] = result.echoedBytes;
+                values[2] = result.sendMs;
+                values[3] = result.rttP50;
+                values[4] = result.rttP95;
+                values[5] = result.rttP99;
+                values[6] = result.rttMax;
+                n = 7;
+            }
+            append(TR_SPP_DONE, address, n, null);
+            listener.onSppBurstDone(address, result);
+        }
+    };
+
+    /*──────────────────────────────
+     *  调用：转发后记录返回值
+     *──────────────────────────────*/
+
+    @Override
+    public void open(Listener l) {
+        listener = l;
+        if (file == null && !stopped) openFile();
+        append(TR_CONFIG, null, 0, config);
+        append(TR_OPEN, null, 0, null);
+        backend.open(recording);
+    }
+
+    @Override
+    public void close() {
+        backend.close();
+        append(TR_CLOSE, null, 0, null);
+        if (buf != null) {
+            try { buf.force(); } catch (RuntimeException ignored) {}
+        }
+        closeFile();
+        buf = null;
+    }
+
+    @Override
+    public int getCapabilities() {
+        int r = backend.getCapabilities();
+        record(TR_GET_CAPABILITIES, null, r);
+        return r;
+    }
+
+    @Override
+    public boolean isDiscovering() {
+        boolean r = backend.isDiscovering();
+        record(TR_IS_DISCOVERING, null, r ? 1 : 0);
+        return r;
+    }
+
+    @Override
+    public boolean startDiscovery() {
+        boolean r = backend.startDiscovery();
+        record(TR_START_DISCOVERY, null, r ? 1 : 0);
+        return r;
+    }
+
+    @Override
+    public void cancelDiscovery() {
+        backend.cancelDiscovery();
+        record(TR_CANCEL_DISCOVERY, null, 0);
+    }
+
+    @Override
+    public boolean createBond(String address) throws BackendException {
+        try {
+            boolean r = backend.createBond(address);
+            record(TR_CREATE_BOND, address, r ? 1 : 0);
+            return r;
+        } catch (BackendException e) {
+            throw thrown(TR_CREATE_BOND, address, e);
+        }
+    }
+
+    @Override
+    public int getBondState(String address) {
+        int r = backend.getBondState(address);
+        record(TR_GET_BOND_STATE, address, r);
+        return r;
+    }
+
+    @Override
+    public boolean removeBond(String address) throws BackendException {
+        try {
+            boolean r = backend.removeBond(address);
+            record(TR_REMOVE_BOND, address, r ? 1 : 0);
+            return r;
+        } catch (BackendException e) {
+            throw thrown(TR_REMOVE_BOND, address, e);
+        }
+    }
+
+    @Override
+    public boolean connectA2dp(String address) throws BackendException {
+        try {
+            boolean r = backend.connectA2dp(address);
+            record(TR_CONNECT_A2DP, address, r ? 1 : 0);
+            return r;
+        } catch (BackendException e) {
+            throw thrown(TR_CONNECT_A2DP, address, e);
+        }
+    }
+
+    @Override
+    public boolean disconnectA2dp(String address) throws BackendException {
+        try {
+            boolean r = backend.disconnectA2dp(address);
+            record(TR_DISCONNECT_A2DP, address, r ? 1 : 0);
+            return r;
+        } catch (BackendException e) {
+            throw thrown(TR_DISCONNECT_A2DP, address, e);
+        }
+    }
+
+    @Override
+    public boolean startTone(String address) {
+        boolean r = backend.startTone(address);
+        record(TR_START_TONE, address, r ? 1 : 0);
+        return r;
+    }
+
+    @Override
+    public int stopTone(String address) {
+        int r = backend.stopTone(address);
+        record(TR_STOP_TONE, address, r);
+        return r;
+    }
+
+    @Override
+    public boolean connectGatt(String address) throws BackendException {
+        try {
+            boolean r = backend.connectGatt(address);
+            record(TR_CONNECT_GATT, address, r ? 1 : 0);
+            return r;
+        } catch (BackendException e) {
+            throw thrown(TR_CONNECT_GATT, address, e);
+        }
+    }
+
+    @Override
+    public boolean requestMtu(String address, int mtu) {
+        boolean r = backend.requestMtu(address, mtu);
+        record(TR_REQUEST_MTU, address, r ? 1 : 0, mtu);
+        return r;
+    }
+
+    @Override
+    public boolean requestHighPriority(String address) {
+        boolean r = backend.requestHighPriority(address);
+        record(TR_HIGH_PRIORITY, address, r ? 1 : 0);
+        return r;
+    }
+
+    @Override
+    public boolean discoverServices(String address) {
+        boolean r = backend.discoverServices(address);
+        record(TR_DISCOVER_SERVICES, address, r ? 1 : 0);
+        return r;
+    }
+
+    @Override
+    public boolean enableNotify(String address) {
+        boolean r = backend.enableNotify(address);
+        record(TR_ENABLE_NOTIFY, address, r ? 1 : 0);
+        return r;
+    }
+
+    @Override
+    public boolean writeGatt(String address, byte[] data) {
+        boolean r = backend.writeGatt(address, data);
+        record(TR_WRITE_GATT, address, r ? 1 : 0, data.length);
+        return r;
+    }
+
+    @Override
+    public boolean disconnectGatt(String address) {
+        boolean r = backend.disconnectGatt(address);
+        record(TR_DISCONNECT_GATT, address, r ? 1 : 0);
+        return r;
+    }
+
+    @Override
+    public void closeGatt(String address) {
+        backend.closeGatt(address);
+        record(TR_CLOSE_GATT, address, 0);
+    }
+
+    @Override
+    public boolean connectSpp(String address, String uuid) throws BackendException {
+        try {
+            boolean r = backend.connectSpp(address, uuid);
+            record(TR_CONNECT_SPP, address, r ? 1 : 0);
+            return r;
+        } catch (BackendException e) {
+            throw thrown(TR_CONNECT_SPP, address, e);
+        }
+    }
+
+    @Override
+    public boolean startSppBurst(String address, int frameBytes) {
+        boolean r = backend.startSppBurst(address, frameBytes);
+        record(TR_START_SPP_BURST, address, r ? 1 : 0, frameBytes);
+        return r;
+    }
+
+    @Override
+    public void stopSppBurst(String address) {
+        backend.stopSppBurst(address);
+        record(TR_STOP_SPP_BURST, address, 0);
+    }
+
+    @Override
+    public void closeSpp(String address) {
+        backend.closeSpp(address);
+        record(TR_CLOSE_SPP, address, 0);
+    }
+
+    /** 记下调用和它抛出的异常，原样返回异常 */
+    private BackendException thrown(int type, String address, BackendException e) {
+        record(type, address, 0);
+        append(TR_THROWN, null, 0, e.getMessage());
+        return e;
+    }
+
+    /*──────────────────────────────
+     *  写文件
+     *──────────────────────────────*/
+
+    private void record(int type, String address, long a) {
+        values[0] = a;
+        append(type, address, 1, null);
+    }
+
+    private void record(int type, String address, long a, long b) {
+        values[0] = a;
+        values[1] = b;
+        append(type, address, 2, null);
+    }
+
+    private void append(int type, String address, int n, String str) {
+        if (stopped || buf == null || !ensureRoom()) return;
+        long now = scheduler.now();
+        // 换段只发生在 ensureRoom 里，地址表项和引用它的记录总在同一段
+        if ((FIELDS[type] & F_ADDR) != 0 && !addresses.containsKey(address)) {
+            put(TR_ADDRESS, now, address, 0, null);
+            addresses.put(address, addresses.size());
+        }
+        put(type, now, address, n, str);
+    }
+
+    /** 本段剩余不足一条最大记录时换段；达到段数上限或换段失败时停止记录 */
+    private boolean ensureRoom() {
+        if (buf.remaining() >= MAX_RECORD_SIZE) return true;
+        if (segments >= maxSegments) {
+            stop(String.format(Locale.ROOT, "已达上限 %dKB，之后的事件不再记录", segmentBytes * maxSegments >> 10));
+            return false;
+        }
+        try {
+            nextSegment();
+            return true;
+        } catch (IOException e) {
+            stop(e.getMessage());
+            return false;
+        }
+    }
+
+    private void put(int type, long now, String address, int n, String str) {
+        int start = buf.position();
+        buf.position(start + 1);
+        EventJournal.putVarLong(buf, Math.max(0, now - lastTime));
+        lastTime = Math.max(lastTime, now);
+        int f = FIELDS[type];
+        if ((f & F_RAW) != 0) EventJournal.putAddress(buf, address);
+        if ((f & F_ADDR) != 0) EventJournal.putVarLong(buf, addresses.get(address));
+        EventJournal.putVarLong(buf, n);
+        for (int i = 0; i < n; i++) EventJournal.putVarLong(buf, (values[i] << 1) ^ (values[i] >> 63));
+        if ((f & F_STR) != 0) EventJournal.putString(buf, str, MAX_STR_BYTES);
+        // 正文写完再写类型字节：读端以类型0判断末尾
+        buf.put(start, (byte) type);
+    }
+
+    private void openFile() {
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("无法创建目录 " + dir);
+            wallBase = System.currentTimeMillis();
+            monoBase = scheduler.now();
+            lastTime = monoBase;
+            File[] existing = JournalReader.listSegments(dir, runName, SUFFIX);
+            segment = existing.length == 0 ? -1 : JournalReader.segmentIndex(existing[existing.length - 1]);
+            nextSegment();
+        } catch (IOException e) {
+            stop(e.getMessage());
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        closeFile();
+        segment++;
+        segments++;
+        addresses.clear();
+        File f = new File(dir, String.format(Locale.ROOT, "%s.%03d%s", runName, segment, SUFFIX));
+        file = new RandomAccessFile(f, "rw");
+        file.setLength(segmentBytes);
+        buf = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC);
+        buf.putShort((short) VERSION);
+        buf.putShort((short) 0);
+        buf.putInt(segment);
+        buf.putLong(wallBase + (lastTime - monoBase));
+        buf.putLong(lastTime);
+        buf.putInt(0);
+    }
+
+    private void stop(String message) {
+        stopped = true;
+        error   = message;
+        closeFile();
+        buf = null;
+    }
+
+    private void closeFile() {
+        if (file == null) return;
+        try { file.close(); } catch (IOException ignored) {}
+        file = null;
+    }
+}
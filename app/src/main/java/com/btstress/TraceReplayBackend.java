@@ -0,0 +1,303 @@
+package com.btstress;
+
+import java.util.Locale;
+
+/**
+ * 按录下的轨迹（{@link TraceRecorder}）重放蓝牙事件的 BluetoothBackend（纯JVM）
+ *
+ * open() 时刻对齐轨迹里第一次 open，之后每个事件按原来的相对时刻经 {@link VirtualScheduler#postExternal}
+ * 送给控制器（一次只排一个，长轨迹不占内存）；轨迹在 close、进程重启后的下一次 open 或文件末尾处结束，
+ * 结束时控制器仍在运行则调用 {@link #setOnEnd} 设置的收尾（如停止控制器，对应当时的手动停止）。
+ *
+ * 控制器的每次调用与轨迹里下一条调用核对（方法、地址、参数），一致时返回当时的返回值、
+ * 抛出当时的异常；不一致即为"分叉"：在后面 LOOKAHEAD 条调用内找到一致的就跳过中间几条，
+ * 找不到则按默认值返回、不前进。分叉数为0、时间偏差为0说明控制器走了与当时完全相同的路径。
+ * 同一毫秒内事件与控制器自身定时器的先后不记录，按虚拟时钟的提交顺序。
+ */
+public class TraceReplayBackend implements BluetoothBackend {
+
+    private static final int LOOKAHEAD     = 32;   // 分叉后往后找一致调用的条数
+    private static final int MAX_REPORTED  = 20;   // 分叉明细最多保留的条数
+
+    private final VirtualScheduler   clock;
+    private final TraceReader        trace;
+    private final TraceReader.Cursor events;
+    private TraceReader.Cursor       calls;
+    private final TraceReader.Record event = new TraceReader.Record();
+    private final TraceReader.Record call  = new TraceReader.Record();
+    private final TraceReader.Record ahead = new TraceReader.Record();
+
+    private Listener listener;
+    private Runnable onEnd;
+    private boolean  opened;
+    private long     origin;          // 轨迹里第一次 open 的时刻
+    private long     replayOrigin;    // 重放时 open 的虚拟时刻
+    private boolean  pending;         // call 已读出但还没核对上（分叉时留给下一次调用）
+    private boolean  callsDone;       // 轨迹里的调用已经用完
+    private boolean  truncated;       // 轨迹没有 close 就结束了（达到上限或进程被杀）
+
+    private long dispatched;
+    private long matched;
+    private long diverged;
+    private long skipped;             // 分叉后跳过的轨迹调用
+    private long maxDriftMs;
+    private int  reported;
+    private final StringBuilder divergences = new StringBuilder();
+
+    private final Runnable pump = this::dispatchNext;
+
+    public TraceReplayBackend(VirtualScheduler clock, TraceReader trace) {
+        this.clock  = clock;
+        this.trace  = trace;
+        this.events = trace.cursor();
+        this.calls  = trace.cursor();
+    }
+
+    /** 轨迹结束时控制器还在运行的收尾动作 */
+    public void setOnEnd(Runnable onEnd) {
+        this.onEnd = onEnd;
+    }
+
+    public long getDispatchedEvents() { return dispatched; }
+    public long getMatchedCalls()     { return matched; }
+    public long getDivergedCalls()    { return diverged; }
+    public long getSkippedCalls()     { return skipped; }
+    public long getMaxDriftMs()       { return maxDriftMs; }
+
+    /** 与轨迹完全一致：没有分叉、没有跳过，调用时刻与当时相同 */
+    public boolean isExact() {
+        return diverged == 0 && skipped == 0 && maxDriftMs == 0;
+    }
+
+    public String getSummary() {
+        String s = String.format(Locale.ROOT, "重放 %s: 事件%d 调用一致%d 分叉%d 跳过%d 最大时间偏差%dms%s",
+                trace, dispatched, matched, diverged, skipped, maxDriftMs, isExact() ? "（与轨迹完全一致）" : "");
+        return s + divergences;
+    }
+
+    /*──────────────────────────────
+     *  事件
+     *──────────────────────────────*/
+
+    @Override
+    public void open(Listener l) {
+        listener = l;
+        if (opened) return;
+        opened = true;
+        replayOrigin = clock.now();
+        // 两个游标都定位到第一次 open 之后
+        boolean found = false;
+        while (events.next(event)) {
+            if (event.type == TraceRecorder.TR_OPEN) {
+                found = true;
+                break;
+            }
+        }
+        while (calls.next(call) && call.type != TraceRecorder.TR_OPEN) {}
+        origin = event.time;
+        if (found) {
+            schedule();
+        } else {
+            callsDone = true;
+            clock.postExternal(this::end, 0);
+        }
+    }
+
+    @Override
+    public void close() {
+        listener = null;
+    }
+
+    /** 读下一个事件并按原相对时刻排队；到轨迹结尾时排收尾 */
+    private void schedule() {
+        while (events.next(event)) {
+            if (TraceRecorder.isEvent(event.type)) {
+                clock.postExternal(pump, delayOf(event.time));
+                return;
+            }
+            if (event.type == TraceRecorder.TR_CLOSE) {           // 当时在这里停止
+                clock.postExternal(this::end, delayOf(event.time));
+                return;
+            }
+            if (event.type == TraceRecorder.TR_OPEN) break;       // 进程重启后续写的部分不重放
+        }
+        // 文件末尾（达到上限或进程被杀）：最后一个事件之后即结束
+        truncated = true;
+        clock.postExternal(this::end, 0);
+    }
+
+    private long delayOf(long traceTime) {
+        return (traceTime - origin) - (clock.now() - replayOrigin);
+    }
+
+    private void dispatchNext() {
+        Listener l = listener;
+        if (l == null) return;      // 控制器已 close
+        dispatched++;
+        TraceReader.Record e = event;
+        String a = e.address;
+        switch (e.type) {
+            case TraceRecorder.TR_DEVICE_FOUND:
+                l.onDeviceFound(a, e.str, (int) e.value(0), (int) e.value(1));
+                break;
+            case TraceRecorder.TR_DISCOVERY_DONE:
+                l.onDiscoveryFinished();
+                break;
+            case TraceRecorder.TR_BOND_STATE:
+                l.onBondStateChanged(a, (int) e.value(0), (int) e.value(1));
+                break;
+            case TraceRecorder.TR_A2DP_STATE:
+                l.onA2dpStateChanged(a, (int) e.value(0));
+                break;
+            case TraceRecorder.TR_ACL_DISCONNECTED:
+                l.onAclDisconnected(a, (int) e.value(0));
+                break;
+            case TraceRecorder.TR_A2DP_PROXY:
+                l.onA2dpProxyChanged(e.value(0) != 0);
+                break;
+            case TraceRecorder.TR_A2DP_PLAYING:
+                l.onA2dpPlayingChanged(a, e.value(0) != 0);
+                break;
+            case TraceRecorder.TR_GATT_STATE:
+                l.onGattConnectionChanged(a, (int) e.value(0), (int) e.value(1));
+                break;
+            case TraceRecorder.TR_GATT_MTU:
+                l.onGattMtuChanged(a, (int) e.value(0), (int) e.value(1));
+                break;
+            case TraceRecorder.TR_GATT_SERVICES:
+                l.onGattServicesDiscovered(a, (int) e.value(0), (int) e.value(1), e.value(2) != 0);
+                break;
+            case TraceRecorder.TR_GATT_WRITE:
+                l.onGattWriteComplete(a, (int) e.value(0));
+                break;
+            case TraceRecorder.TR_GATT_NOTIFY:
+                l.onGattNotify(a, (int) e.value(0));
+                break;
+            case TraceRecorder.TR_SPP_CONNECTED:
+                l.onSppConnected(a, e.value(0) != 0);
+                break;
+            case TraceRecorder.TR_SPP_DONE:
+                l.onSppBurstDone(a, e.count == 0 ? null : new SppBenchmark.Result(e.value(0), e.value(1),
+                        e.value(2), e.value(3), e.value(4), e.value(5), e.value(6)));
+                break;
+            default:
+                break;
+        }
+        if (listener != null) schedule();
+    }
+
+    private void end() {
+        if (listener != null && onEnd != null) onEnd.run();
+    }
+
+    /*──────────────────────────────
+     *  调用核对
+     *──────────────────────────────*/
+
+    /**
+     * 核对一次调用，一致时返回轨迹里的那条，否则返回 null
+     * @param args 参数个数（0 或 1），arg 为参数值
+     */
+    private TraceReader.Record expect(int type, String address, int args, long arg) {
+        if (!opened) return null;
+        if (!pending && !callsDone) pending = nextCall(calls, call);
+        if (!pending && truncated) return null;     // 轨迹截断后控制器的调用（如收尾时的断开）无从核对
+        if (pending && matches(call, type, address, args, arg)) {
+            pending = false;
+            accept(call);
+            return call;
+        }
+        if (pending) {
+            // 分叉：往后找一致的调用，找到就跳过中间几条
+            TraceReader.Cursor c = calls.copy();
+            for (int i = 1; i < LOOKAHEAD && nextCall(c, ahead); i++) {
+                if (matches(ahead, type, address, args, arg)) {
+                    skipped += i;
+                    report("跳过 " + i + " 条调用，从 " + call.describe(origin) + " 起");
+                    calls   = c;
+                    pending = false;
+                    accept(ahead);
+                    return ahead;
+                }
+            }
+        }
+        diverged++;
+        report(String.format(Locale.ROOT, "+%dms %s %s 与轨迹不符（轨迹下一条: %s）",
+                clock.now() - replayOrigin, TraceRecorder.NAMES[type], address == null ? "" : address,
+                pending ? call.describe(origin) : "已结束"));
+        return null;
+    }
+
+    /** 读下一条调用（跳过事件和元数据），到 close / 下一次 open / 末尾时返回 false */
+    private boolean nextCall(TraceReader.Cursor c, TraceReader.Record r) {
+        while (c.next(r)) {
+            if (TraceRecorder.isCall(r.type)) return true;
+            if (r.type == TraceRecorder.TR_CLOSE || r.type == TraceRecorder.TR_OPEN) break;
+        }
+        if (c == calls) callsDone = true;
+        return false;
+    }
+
+    private static boolean matches(TraceReader.Record r, int type, String address, int args, long arg) {
+        if (r.type != type) return false;
+        if (address == null ? r.address != null : !address.equals(r.address)) return false;
+        return args == 0 || r.value(1) == arg;
+    }
+
+    private void accept(TraceReader.Record r) {
+        matched++;
+        long drift = Math.abs((clock.now() - replayOrigin) - (r.time - origin));
+        if (drift > maxDriftMs) maxDriftMs = drift;
+    }
+
+    private void report(String line) {
+        if (reported++ < MAX_REPORTED) divergences.append("\n  ").append(line);
+    }
+
+    /** 核对后的返回值：一致时为轨迹里的值，分叉时为 dflt */
+    private long result(int type, String address, long dflt) {
+        TraceReader.Record r = expect(type, address, 0, 0);
+        return r != null ? r.value(0) : dflt;
+    }
+
+    private long result(int type, String address, long arg, long dflt) {
+        TraceReader.Record r = expect(type, address, 1, arg);
+        return r != null ? r.value(0) : dflt;
+    }
+
+    /** 可能抛异常的调用：当时抛了（下一条是 TR_THROWN）就照样抛 */
+    private boolean checked(int type, String address) throws BackendException {
+        TraceReader.Record r = expect(type, address, 0, 0);
+        if (r == null) return true;
+        boolean ok = r.value(0) != 0;
+        // 异常紧跟在调用之后；只是看一眼，TR_THROWN 不算调用，nextCall 会跳过它
+        TraceReader.Cursor c = calls.copy();
+        TraceReader.Record next = new TraceReader.Record();
+        if (c.next(next) && next.type == TraceRecorder.TR_THROWN) throw new BackendException(next.str);
+        return ok;
+    }
+
+    @Override public int     getCapabilities() { return (int) result(TraceRecorder.TR_GET_CAPABILITIES, null, CAP_ALL); }
+    @Override public boolean isDiscovering() { return result(TraceRecorder.TR_IS_DISCOVERING, null, 0) != 0; }
+    @Override public boolean startDiscovery() { return result(TraceRecorder.TR_START_DISCOVERY, null, 1) != 0; }
+    @Override public void    cancelDiscovery() { result(TraceRecorder.TR_CANCEL_DISCOVERY, null, 0); }
+    @Override public boolean createBond(String address) throws BackendException { return checked(TraceRecorder.TR_CREATE_BOND, address); }
+    @Override public int     getBondState(String address) { return (int) result(TraceRecorder.TR_GET_BOND_STATE, address, BOND_NONE); }
+    @Override public boolean removeBond(String address) throws BackendException { return checked(TraceRecorder.TR_REMOVE_BOND, address); }
+    @Override public boolean connectA2dp(String address) throws BackendException { return checked(TraceRecorder.TR_CONNECT_A2DP, address); }
+    @Override public boolean disconnectA2dp(String address) throws BackendException { return checked(TraceRecorder.TR_DISCONNECT_A2DP, address); }
+    @Override public boolean startTone(String address) { return result(TraceRecorder.TR_START_TONE, address, 1) != 0; }
+    @Override public int     stopTone(String address) { return (int) result(TraceRecorder.TR_STOP_TONE, address, -1); }
+    @Override public boolean connectGatt(String address) throws BackendException { return checked(TraceRecorder.TR_CONNECT_GATT, address); }
+    @Override public boolean requestMtu(String address, int mtu) { return result(TraceRecorder.TR_REQUEST_MTU, address, mtu, 1) != 0; }
+    @Override public boolean requestHighPriority(String address) { return result(TraceRecorder.TR_HIGH_PRIORITY, address, 1) != 0; }
+    @Override public boolean discoverServices(String address) { return result(TraceRecorder.TR_DISCOVER_SERVICES, address, 1) != 0; }
+    @Override public boolean enableNotify(String address) { return result(TraceRecorder.TR_ENABLE_NOTIFY, address, 1) != 0; }
+    @Override public boolean writeGatt(String address, byte[] data) { return result(TraceRecorder.TR_WRITE_GATT, address, data.length, 1) != 0; }
+    @Override public boolean disconnectGatt(String address) { return result(TraceRecorder.TR_DISCONNECT_GATT, address, 1) != 0; }
+    @Override public void    closeGatt(String address) { result(TraceRecorder.TR_CLOSE_GATT, address, 0); }
+    @Override public boolean connectSpp(String address, String uuid) throws BackendException { return checked(TraceRecorder.TR_CONNECT_SPP, address); }
+    @Override public boolean startSppBurst(String address, int frameBytes) { return result(TraceRecorder.TR_START_SPP_BURST, address, frameBytes, 1) != 0; }
+    @Override public void    stopSppBurst(String address) { result(TraceRecorder.TR_STOP_SPP_BURST, address, 0); }
+    @Override public void    closeSpp(String address) { result(TraceRecorder.TR_CLOSE_SPP, address, 0); }
+}
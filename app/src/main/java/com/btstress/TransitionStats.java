@@ -0,0 +1,102 @@
+package com.btstress;
+
+import java.util.Arrays;
+
+/**
+ * 状态机插桩统计（纯Java）：每种状态切换 (from → to) 在 from 停留时长的分布，
+ * 以及每个状态下收到的意外事件（表里没有匹配规则）次数
+ *
+ * 状态切换的种类很少（十几种），直方图在第一次出现时才创建；意外事件是 状态 × 事件 的计数表。
+ * 控制器线程写入、主线程读取；LatencyHistogram 本身线程安全，创建和计数表加锁。
+ */
+public final class TransitionStats {
+
+    private static final StateMachine.State[] STATES = StateMachine.State.values();
+    private static final StateMachine.Event[] EVENTS = StateMachine.Event.values();
+
+    private final LatencyHistogram[] dwell      = new LatencyHistogram[STATES.length * STATES.length];
+    private final int[]              unexpected = new int[STATES.length * EVENTS.length];
+
+    /** 记录一次状态切换及在 from 停留的时长（from == to 不记录） */
+    public void recordTransition(StateMachine.State from, StateMachine.State to, long dwellMs) {
+        if (from == to) return;
+        histogram(from, to).record(dwellMs);
+    }
+
+    private synchronized LatencyHistogram histogram(StateMachine.State from, StateMachine.State to) {
+        int i = from.ordinal() * STATES.length + to.ordinal();
+        if (dwell[i] == null) dwell[i] = new LatencyHistogram();
+        return dwell[i];
+    }
+
+    public synchronized void recordUnexpected(StateMachine.State state, StateMachine.Event event) {
+        unexpected[state.ordinal() * EVENTS.length + event.ordinal()]++;
+    }
+
+    /** 该切换的停留时长分布，没有出现过时为 null */
+    public synchronized LatencyHistogram getDwell(StateMachine.State from, StateMachine.State to) {
+        return dwell[from.ordinal() * STATES.length + to.ordinal()];
+    }
+
+    public synchronized int getUnexpected(StateMachine.State state, StateMachine.Event event) {
+        return unexpected[state.ordinal() * EVENTS.length + event.ordinal()];
+    }
+
+    public synchronized int getUnexpectedTotal() {
+        int n = 0;
+        for (int c : unexpected) n += c;
+        return n;
+    }
+
+    public synchronized void reset() {
+        for (LatencyHistogram h : dwell) {
+            if (h != null) h.reset();
+        }
+        Arrays.fill(unexpected, 0);
+    }
+
+    /** 累加另一份统计（多设备汇总、断点恢复） */
+    public void addFrom(TransitionStats p) {
+        for (StateMachine.State from : STATES) {
+            for (StateMachine.State to : STATES) {
+                LatencyHistogram h = p.getDwell(from, to);
+                if (h != null && h.getCount() > 0) histogram(from, to).addFrom(h);
+            }
+        }
+        int[] other;
+        synchronized (p) { other = p.unexpected.clone(); }
+        synchronized (this) {
+            for (int i = 0; i < unexpected.length; i++) unexpected[i] += other[i];
+        }
+    }
+
+    /**
+     * 每种切换一行，如 "扫描→配对: p50=3071 ... (n=120)"，
+     * 之后每个有意外事件的状态一行，如 "空闲 意外事件: BOND_NONE×12 A2DP_DISCONNECTED×3"
+     */
+    public String toSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (StateMachine.State from : STATES) {
+            for (StateMachine.State to : STATES) {
+                LatencyHistogram h = getDwell(from, to);
+                if (h == null || h.getCount() == 0) continue;
+                if (sb.length() > 0) sb.append('\n');
+                sb.append(from.desc).append('→').append(to.desc).append(": ").append(h.toSummary());
+            }
+        }
+        for (StateMachine.State s : STATES) {
+            boolean first = true;
+            for (StateMachine.Event e : EVENTS) {
+                int n = getUnexpected(s, e);
+                if (n == 0) continue;
+                if (first) {
+                    if (sb.length() > 0) sb.append('\n');
+                    sb.append(s.desc).append(" 意外事件:");
+                    first = false;
+                }
+                sb.append(' ').append(e.name()).append('×').append(n);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,188 @@
+package com.btstress;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 控制器回调 → UI 的按帧合并投递
+ *
+ * 控制器线程上的回调只把事件放进无锁队列（ConcurrentLinkedQueue），每帧最多安排一次
+ * Choreographer 帧回调；主线程在帧回调里一次取空队列：日志合成一次批量插入+一次滚动，
+ * 状态文字只取最后一条，统计只刷新一次。扫描阶段一帧内几十条日志也只触发一次界面更新。
+ *
+ * 每帧合并的事件数记入直方图，见 {@link #getSummary()}。
+ */
+public class UiFrameBatcher implements TestController.Callback, Choreographer.FrameCallback {
+
+    private static final String TAG = "BtStressTest";
+
+    /** 每帧一次，在主线程调用 */
+    public interface Listener {
+        /**
+         * @param logs         本帧新增的日志（按产生顺序）
+         * @param state        最新的状态文字，本帧无变化时为 null
+         * @param loopStarted  本帧内有新一轮开始
+         * @param statsChanged 本帧内有轮次结束，需要刷新统计
+         * @param allDone      压测已结束
+         */
+        void onFrame(List<LogRecord> logs, String state,
+                     boolean loopStarted, boolean statsChanged, boolean allDone);
+    }
+
+    private static final int EV_LOG        = 0;
+    private static final int EV_STATE      = 1;
+    private static final int EV_LOOP_START = 2;
+    private static final int EV_LOOP_END   = 3;
+    private static final int EV_ALL_DONE   = 4;
+
+    private static final class Event {
+        final int       kind;
+        final String    text;
+        final LogRecord record;
+
+        Event(int kind, String text, LogRecord record) {
+            this.kind   = kind;
+            this.text   = text;
+            this.record = record;
+        }
+    }
+
+    private final Listener listener;
+    private final Handler  mainHandler = new Handler(Looper.getMainLooper());
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private final List<LogRecord> batch = new ArrayList<>();
+    private final boolean logcat = Log.isLoggable(TAG, Log.DEBUG);
+
+    // 每帧合并的事件数（借用直方图的桶，单位是"条"而不是 ms）
+    private final LatencyHistogram perFrame = new LatencyHistogram();
+    private final AtomicLong events = new AtomicLong(0);
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(UiFrameBatcher.this);
+        }
+    };
+
+    public UiFrameBatcher(Listener listener) {
+        this.listener = listener;
+    }
+
+    /*──────────────────────────────
+     *  生产端（任意线程）
+     *──────────────────────────────*/
+
+    @Override
+    public void onLoopStart(int loop, int total) {
+        String s = total > 0 ? "第" + loop + "/" + total + "轮" : "第" + loop + "轮";
+        enqueue(new Event(EV_LOOP_START, "运行中 - " + s, null));
+    }
+
+    @Override
+    public void onStateChange(String stateDesc) {
+        enqueue(new Event(EV_STATE, stateDesc, null));
+    }
+
+    @Override
+    public void onLoopSuccess(int loop, long costMs) {
+        enqueue(new Event(EV_LOOP_END, null, null));
+    }
+
+    @Override
+    public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {
+        enqueue(new Event(EV_LOOP_END, null, null));
+    }
+
+    @Override
+    public void onAllDone(TestStatistics stats) {
+        enqueue(new Event(EV_ALL_DONE, null, null));
+    }
+
+    @Override
+    public void onLog(LogRecord record) {
+        // 同步输出到 logcat 要当场渲染文字，默认关闭：adb shell setprop log.tag.BtStressTest DEBUG
+        if (logcat) Log.d(TAG, record.getText());
+        enqueue(new Event(EV_LOG, null, record));
+    }
+
+    private void enqueue(Event e) {
+        queue.offer(e);
+        // 本帧已安排过就只入队；Choreographer 只能在主线程上取，先切到主线程
+        if (frameScheduled.compareAndSet(false, true)) mainHandler.post(scheduleFrame);
+    }
+
+    /*──────────────────────────────
+     *  消费端（主线程，每帧一次）
+     *──────────────────────────────*/
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // 先清标志再取队列：取的过程中新到的事件会安排下一帧，不会漏
+        frameScheduled.set(false);
+        String  state        = null;
+        boolean loopStarted  = false;
+        boolean statsChanged = false;
+        boolean allDone      = false;
+        int     n            = 0;
+        batch.clear();
+        Event e;
+        while ((e = queue.poll()) != null) {
+            n++;
+            switch (e.kind) {
+                case EV_LOG:
+                    batch.add(e.record);
+                    break;
+                case EV_LOOP_START:
+                    loopStarted = true;
+                    state = e.text;
+                    break;
+                case EV_STATE:
+                    state = e.text;
+                    break;
+                case EV_LOOP_END:
+                    statsChanged = true;
+                    break;
+                case EV_ALL_DONE:
+                    allDone = true;
+                    break;
+            }
+        }
+        if (n == 0) return;
+        perFrame.record(n);
+        events.addAndGet(n);
+        listener.onFrame(batch, state, loopStarted, statsChanged, allDone);
+    }
+
+    /** 丢弃未投递的事件（主线程调用，界面销毁时） */
+    public void cancel() {
+        mainHandler.removeCallbacks(scheduleFrame);
+        Choreographer.getInstance().removeFrameCallback(this);
+        queue.clear();
+        frameScheduled.set(false);
+    }
+
+    /** 新一次压测开始时清零合帧统计 */
+    public void resetStats() {
+        perFrame.reset();
+        events.set(0);
+    }
+
+    /** "界面合帧: 平均 x 条/帧 p95=.. max=.. (n帧)"，尚无数据时为空串 */
+    public String getSummary() {
+        long frames = perFrame.getCount();
+        if (frames == 0) return "";
+        return String.format(Locale.getDefault(), "界面合帧: 平均%.1f条/帧 p95=%d max=%d (%d帧 共%d条)",
+                events.get() / (double) frames, perFrame.getPercentile(95), perFrame.getMax(),
+                frames, events.get());
+    }
+}
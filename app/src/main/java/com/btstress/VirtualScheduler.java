@@ -0,0 +1,124 @@
+package com.btstress;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * 虚拟时钟调度器（JVM模拟运行）
+ *
+ * 任务按 (计划时刻, 提交顺序) 排序，{@link #runUntilIdle(long)} 依次取出执行并把
+ * 虚拟时钟直接跳到任务时刻，因此 20 秒的超时不需要真的等 20 秒。
+ * 单线程使用，调用方线程即"调度线程"。
+ *
+ * 通过 {@link #postExternal} 提交的任务代表外部世界（模拟射频）的事件，
+ * 不受控制器的 cancel()/cancelAll() 影响，与真机上射频状态独立于消息队列一致。
+ */
+public class VirtualScheduler implements Scheduler {
+
+    private static final class Task {
+        final long     time;
+        final long     seq;
+        final Runnable runnable;
+        final boolean  external;
+
+        Task(long time, long seq, Runnable runnable, boolean external) {
+            this.time     = time;
+            this.seq      = seq;
+            this.runnable = runnable;
+            this.external = external;
+        }
+    }
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>(64, new Comparator<Task>() {
+        @Override
+        public int compare(Task a, Task b) {
+            if (a.time != b.time) return a.time < b.time ? -1 : 1;
+            return a.seq < b.seq ? -1 : (a.seq == b.seq ? 0 : 1);
+        }
+    });
+
+    private long    now = 0;
+    private long    seq = 0;
+    private boolean running = false;
+    private long    executed = 0;
+
+    @Override
+    public void start(LatencyHistogram dispatchLag) {
+        // 虚拟时钟上任务总是准时执行，分发延迟恒为0，不记录
+        running = true;
+    }
+
+    @Override
+    public void quit() {
+        running = false;
+        queue.clear();
+    }
+
+    @Override
+    public long now() { return now; }
+
+    @Override
+    public void post(Runnable task) {
+        postDelayed(task, 0);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        if (!running) return;
+        queue.add(new Task(now + Math.max(0, delayMs), seq++, task, false));
+    }
+
+    /** 提交外部事件（模拟射频），不会被 cancel()/cancelAll() 移除 */
+    public void postExternal(Runnable task, long delayMs) {
+        if (!running) return;
+        queue.add(new Task(now + Math.max(0, delayMs), seq++, task, true));
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        Iterator<Task> it = queue.iterator();
+        while (it.hasNext()) {
+            Task t = it.next();
+            if (!t.external && t.runnable == task) it.remove();
+        }
+    }
+
+    @Override
+    public void cancelAll() {
+        Iterator<Task> it = queue.iterator();
+        while (it.hasNext()) {
+            if (!it.next().external) it.remove();
+        }
+    }
+
+    @Override
+    public boolean isCurrentThread() { return true; }
+
+    /**
+     * 依次执行任务直到队列为空或虚拟时钟超过 deadline
+     * @return 本次执行的任务数
+     */
+    public long runUntilIdle(long deadline) {
+        long count = 0;
+        while (!queue.isEmpty()) {
+            Task t = queue.peek();
+            if (t.time > deadline) break;
+            queue.poll();
+            now = t.time;
+            t.runnable.run();
+            count++;
+        }
+        executed += count;
+        return count;
+    }
+
+    /** 下一个任务的计划时刻，队列为空时为 Long.MAX_VALUE */
+    public long nextTaskTime() {
+        Task t = queue.peek();
+        return t == null ? Long.MAX_VALUE : t.time;
+    }
+
+    /** 累计执行的任务数 */
+    public long getExecutedCount() { return executed; }
+}
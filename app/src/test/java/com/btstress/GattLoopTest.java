@@ -0,0 +1,110 @@
+package com.btstress;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * GATT 循环对模拟 GATT 外设：正常流程、MTU 协商失败/无响应时按默认 MTU 继续、服务发现超时、吞吐计入统计
+ */
+public class GattLoopTest {
+
+    private static final int LOOPS = 30;
+
+    @Test
+    public void happyPathRecordsEveryPhaseAndRate() {
+        VirtualScheduler clock = new VirtualScheduler();
+        TestStatistics s = run(clock, backend(clock));
+
+        assertEquals(LOOPS, s.getTotalCount());
+        assertEquals(LOOPS, s.getSuccessCount());
+        assertEquals(TestStatistics.LoopShape.GATT, s.getLoopShape());
+        assertEquals(LOOPS, s.getPhaseLatency(TestStatistics.Phase.GATT_CONNECT).getCount());
+        assertEquals(LOOPS, s.getPhaseLatency(TestStatistics.Phase.MTU).getCount());
+        assertEquals(LOOPS, s.getPhaseLatency(TestStatistics.Phase.SERVICES).getCount());
+        assertEquals(LOOPS, s.getPhaseLatency(TestStatistics.Phase.GATT_DISCONNECT).getCount());
+        // 经典流程的阶段不参与
+        assertEquals(0, s.getPhaseLatency(TestStatistics.Phase.BOND).getCount());
+        assertEquals(0, s.getPhaseLatency(TestStatistics.Phase.CONNECT).getCount());
+    }
+
+    @Test
+    public void writeAndNotifyRatesLandInStatistics() {
+        VirtualScheduler clock = new VirtualScheduler();
+        TestStatistics s = run(clock, backend(clock));
+
+        LatencyHistogram write  = s.getGattWriteRate();
+        LatencyHistogram notify = s.getGattNotifyRate();
+        assertEquals(LOOPS, write.getCount());
+        assertEquals(LOOPS, notify.getCount());
+        assertTrue(write.getMean() > 0);
+        // 对端把每次写入原样通知回来，通知速率不会超过写入速率
+        assertTrue(notify.getMean() > 0);
+        assertTrue(notify.getMean() <= write.getMean());
+    }
+
+    @Test
+    public void peerWithoutEchoRecordsWriteRateOnly() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = backend(clock);
+        backend.setGattEcho(false);
+        TestStatistics s = run(clock, backend);
+
+        assertEquals(LOOPS, s.getSuccessCount());
+        assertEquals(LOOPS, s.getGattWriteRate().getCount());
+        assertEquals(0, s.getGattNotifyRate().getMean());
+    }
+
+    @Test
+    public void mtuFailureFallsBackToDefaultMtu() {
+        VirtualScheduler clock = new VirtualScheduler();
+        TestStatistics big = run(clock, backend(clock));
+
+        clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = backend(clock);
+        backend.setFailureRate(TestStatistics.Phase.MTU, 1.0);
+        TestStatistics s = run(clock, backend);
+
+        // 协商失败不算本轮失败，只是不计入 MTU 阶段耗时，按 23 字节的默认 MTU 写入
+        assertEquals(LOOPS, s.getSuccessCount());
+        assertEquals(0, s.getPhaseLatency(TestStatistics.Phase.MTU).getCount());
+        assertEquals(LOOPS, s.getPhaseLatency(TestStatistics.Phase.SERVICES).getCount());
+        assertEquals(LOOPS, s.getGattWriteRate().getCount());
+        assertTrue(s.getGattWriteRate().getMean() < big.getGattWriteRate().getMean());
+    }
+
+    @Test
+    public void mtuHangTimesOutAndContinues() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = backend(clock);
+        backend.setHangRate(TestStatistics.Phase.MTU, 1.0);
+        TestStatistics s = run(clock, backend);
+
+        assertEquals(LOOPS, s.getSuccessCount());
+        assertEquals(0, s.getPhaseLatency(TestStatistics.Phase.MTU).getCount());
+        assertEquals(LOOPS, s.getGattWriteRate().getCount());
+    }
+
+    @Test
+    public void serviceDiscoveryTimeoutFailsLoop() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = backend(clock);
+        backend.setHangRate(TestStatistics.Phase.SERVICES, 1.0);
+        TestStatistics s = run(clock, backend);
+
+        assertEquals(LOOPS, s.getTotalCount());
+        assertEquals(LOOPS, s.getFailureCount(TestStatistics.FailReason.GATT_FAILED));
+        assertEquals(0, s.getPhaseLatency(TestStatistics.Phase.SERVICES).getCount());
+        assertEquals(0, s.getGattWriteRate().getCount());
+    }
+
+    private static SimulatedBluetoothBackend backend(VirtualScheduler clock) {
+        return new SimulatedBluetoothBackend(clock, 21, SimulationRunner.TARGET_ADDRESS, SimulationRunner.TARGET_NAME);
+    }
+
+    private static TestStatistics run(VirtualScheduler clock, SimulatedBluetoothBackend backend) {
+        return SimulationRunner.run(clock, backend, LOOPS, false, CooldownPolicy.adaptive(),
+                TestStatistics.LoopShape.GATT).statistics;
+    }
+}
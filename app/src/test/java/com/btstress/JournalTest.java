@@ -0,0 +1,299 @@
+package com.btstress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 事件日志的编解码与崩溃恢复：varint/zigzag 往返、未提交（只写了正文）的末尾记录被跳过、
+ * 8MB 段写满后换段，以及 {@link JournalReader#recover} 还原出与运行时相同的统计
+ */
+public class JournalTest {
+
+    private static final long T0 = 1_000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("btj").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void eventsRoundTrip() throws IOException {
+        int[] values = {0, 1, -1, 63, -64, 64, -65, 8191, -8192, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        long[] gaps  = {0, 1, 127, 128, 16_383, 16_384, 1L << 40};
+        EventJournal journal = open("rt");
+        List<Event> written = new ArrayList<>();
+        long now = T0;
+        for (int i = 0; i < values.length; i++) {
+            now += gaps[i % gaps.length];
+            String addr = String.format("%02X:00:5E:00:53:%02X", i, 0xFF - i);
+            written.add(new Event(EventJournal.EV_BOND_STATE, now, addr, values[i], values[values.length - 1 - i], null));
+            journal.record(EventJournal.EV_BOND_STATE, now, addr, values[i], values[values.length - 1 - i]);
+        }
+        now += 5;
+        written.add(new Event(EventJournal.EV_RUN_START, now, null, 20_000, 0, "SIM_TWS|AA:BB:CC:DD:EE:FF"));
+        journal.recordRunStart(now, 20_000, "SIM_TWS|AA:BB:CC:DD:EE:FF");
+        // 超过 96 字节截断，截断点落在汉字中间时退回字符边界
+        StringBuilder longName = new StringBuilder("x");
+        for (int i = 0; i < 40; i++) longName.append('蓝');
+        journal.recordRunStart(now, 1, longName.toString());
+        written.add(new Event(EventJournal.EV_RUN_START, now, null, 1, 0, longName.substring(0, 32)));
+        journal.record(EventJournal.EV_RUN_STOP, now, null, 7, 7);
+        written.add(new Event(EventJournal.EV_RUN_STOP, now, null, 0, 0, null));
+        assertNull(journal.getError());
+        journal.close();
+
+        List<Event> read = new ArrayList<>();
+        JournalReader.Summary s = read("rt", read);
+        assertFalse(s.corrupt);
+        assertEquals(1, s.segments);
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) assertEquals("#" + i, written.get(i), read.get(i));
+    }
+
+    @Test
+    public void uncommittedTailRecordIsSkipped() throws IOException {
+        EventJournal journal = open("torn");
+        for (int i = 0; i < 10; i++) journal.record(EventJournal.EV_PHASE_END, T0 + i, null, 1, 300 + i);
+        journal.close();
+        File segment = JournalReader.listSegments(dir, "torn")[0];
+        long end = EventJournal.HEADER_SIZE + read("torn", new ArrayList<Event>()).bytes;
+
+        // 进程在写正文时被杀：正文已落盘，类型字节仍是预扩展的 0
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            raf.seek(end + 1);
+            raf.write(new byte[] {(byte) 0x85, 0x01, 0x12, (byte) 0xF0});
+        } finally {
+            raf.close();
+        }
+        List<Event> read = new ArrayList<>();
+        JournalReader.Summary s = read("torn", read);
+        assertFalse(s.corrupt);
+        assertEquals(10, read.size());
+        assertEquals(309, read.get(9).b);
+    }
+
+    @Test
+    public void truncatedTailRecordIsDropped() throws IOException {
+        EventJournal journal = open("cut");
+        for (int i = 0; i < 10; i++) journal.record(EventJournal.EV_PHASE_END, T0 + i, null, 1, 300 + i);
+        journal.close();
+        File segment = JournalReader.listSegments(dir, "cut")[0];
+        long end = EventJournal.HEADER_SIZE + read("cut", new ArrayList<Event>()).bytes;
+
+        // 映射区的末尾没写到存储上：最后一条只剩类型字节和半个正文
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            raf.setLength(end - 1);
+        } finally {
+            raf.close();
+        }
+        List<Event> read = new ArrayList<>();
+        JournalReader.Summary s = read("cut", read);
+        assertTrue(s.corrupt);
+        assertEquals(9, read.size());
+        assertEquals(308, read.get(8).b);
+    }
+
+    @Test
+    public void fullSegmentRotatesToNextFile() throws IOException {
+        StringBuilder filter = new StringBuilder();
+        while (filter.length() < 96) filter.append("SIM_TWS|");
+        int records = (int) (EventJournal.DEFAULT_SEGMENT_BYTES / 100) + 10_000;   // 每条约 100 字节，跨过 8MB
+
+        EventJournal journal = open("rot");
+        for (int i = 0; i < records; i++) journal.recordRunStart(T0 + i, i, filter.toString());
+        assertNull(journal.getError());
+        journal.close();
+
+        File[] segments = JournalReader.listSegments(dir, "rot");
+        assertEquals(2, segments.length);
+        assertEquals(EventJournal.DEFAULT_SEGMENT_BYTES, segments[0].length());
+        assertTrue(segments[1].getName().endsWith(".001" + EventJournal.SUFFIX));
+
+        final int[]  next   = {0};
+        final long[] badAt  = {-1};
+        JournalReader.Summary s = JournalReader.read(segments, new JournalReader.Visitor() {
+            @Override
+            public void onEvent(int type, long time, long wallTime, String address, int a, int b, String str) {
+                // 新段从段头的时刻接着算增量，序号和时刻在换段处都不能断
+                if (badAt[0] < 0 && (a != next[0] || time != T0 + next[0])) badAt[0] = next[0];
+                next[0]++;
+            }
+        });
+        assertFalse(s.corrupt);
+        assertEquals(2, s.segments);
+        assertEquals(-1, badAt[0]);
+        assertEquals(records, next[0]);
+    }
+
+    @Test
+    public void recoverMatchesLiveRun() throws IOException {
+        VirtualScheduler clock = new VirtualScheduler();
+        EventJournal journal = new EventJournal(dir, "live");
+        TestController controller = controller(clock, faultyBackend(clock), journal, 300);
+        controller.start();
+        clock.runUntilIdle(Long.MAX_VALUE);
+
+        JournalReader.RunState state = JournalReader.recover(dir, "live");
+        assertTrue(state.finished);
+        assertEquals(300, state.completedLoops);
+        assertSameStatistics(controller.getStatistics(), state.statistics);
+    }
+
+    /** 运行中途被杀（日志未关闭、没有 RUN_STOP），末尾留下一条未提交的记录 */
+    @Test
+    public void recoverAfterKillMatchesLiveRunAtThatPoint() throws IOException {
+        VirtualScheduler clock = new VirtualScheduler();
+        EventJournal journal = new EventJournal(dir, "killed");
+        TestController controller = controller(clock, faultyBackend(clock), journal, 300);
+        controller.start();
+        clock.runUntilIdle(clock.now() + 20L * 60_000);
+        TestStatistics live = controller.getStatistics();
+        assertTrue(live.getTotalCount() > 0 && live.getTotalCount() < 300);
+        journal.close();
+
+        File[] segments = JournalReader.listSegments(dir, "killed");
+        long end = EventJournal.HEADER_SIZE + read("killed", new ArrayList<Event>()).bytes;
+        RandomAccessFile raf = new RandomAccessFile(segments[segments.length - 1], "rw");
+        try {
+            raf.seek(end + 1);
+            raf.write(new byte[] {0x7F, 0x02, 0x04});
+        } finally {
+            raf.close();
+        }
+
+        JournalReader.RunState state = JournalReader.recover(dir, "killed");
+        assertFalse(state.finished);
+        assertEquals(live.getTotalCount(), state.completedLoops);
+        assertSameStatistics(live, state.statistics);
+    }
+
+    /** 日志能还原的部分逐项比较（事件分发延迟不写日志，不比较） */
+    static void assertSameStatistics(TestStatistics expected, TestStatistics actual) {
+        assertEquals(expected.getTotalCount(), actual.getTotalCount());
+        assertEquals(expected.getSuccessCount(), actual.getSuccessCount());
+        for (TestStatistics.FailReason r : TestStatistics.FailReason.values()) {
+            assertEquals(r.name(), expected.getFailureCount(r), actual.getFailureCount(r));
+        }
+        for (TestStatistics.Phase p : TestStatistics.Phase.values()) {
+            assertSameHistogram(p.name(), expected.getPhaseLatency(p), actual.getPhaseLatency(p));
+        }
+        for (TestStatistics.LoopPath p : TestStatistics.LoopPath.values()) {
+            assertEquals(p.name(), expected.getPathCount(p), actual.getPathCount(p));
+            assertSameHistogram(p.name(), expected.getPathLatency(p), actual.getPathLatency(p));
+        }
+        assertSameHistogram("loop", expected.getLoopLatency(), actual.getLoopLatency());
+        assertSameHistogram("cooldown", expected.getCooldown(), actual.getCooldown());
+        assertEquals(expected.getFailureSummary(), actual.getFailureSummary());
+        assertEquals(expected.getReasonCodeSummary(), actual.getReasonCodeSummary());
+        assertEquals(expected.getGapCount(), actual.getGapCount());
+    }
+
+    private static void assertSameHistogram(String what, LatencyHistogram expected, LatencyHistogram actual) {
+        assertEquals(what, expected.getCount(), actual.getCount());
+        assertEquals(what, expected.getMean(), actual.getMean());
+        assertEquals(what, expected.getMax(), actual.getMax());
+        assertEquals(what, expected.getPercentile(99), actual.getPercentile(99));
+    }
+
+    static SimulatedBluetoothBackend faultyBackend(VirtualScheduler clock) {
+        SimulatedBluetoothBackend backend = new SimulatedBluetoothBackend(clock, 9,
+                SimulationRunner.TARGET_ADDRESS, SimulationRunner.TARGET_NAME);
+        backend.setNoiseDevices(2);
+        backend.setFailureRate(TestStatistics.Phase.BOND, 0.1);
+        backend.setHangRate(TestStatistics.Phase.CONNECT, 0.05);
+        backend.setFailureRate(TestStatistics.Phase.DISCONNECT, 0.05);
+        return backend;
+    }
+
+    static TestController controller(VirtualScheduler clock, BluetoothBackend backend, EventJournal journal, int loops) {
+        TestController controller = new TestController(backend, clock, new TestController.Callback() {
+            @Override public void onLoopStart(int loop, int total) {}
+            @Override public void onStateChange(String stateDesc) {}
+            @Override public void onLoopSuccess(int loop, long costMs) {}
+            @Override public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {}
+            @Override public void onAllDone(TestStatistics stats) {}
+            @Override public void onLog(LogRecord record) {}
+        });
+        controller.setFilter(SimulationRunner.TARGET_NAME, SimulationRunner.TARGET_ADDRESS);
+        controller.setTargetLoops(loops);
+        controller.setJournal(journal);
+        return controller;
+    }
+
+    private EventJournal open(String runName) throws IOException {
+        EventJournal journal = new EventJournal(dir, runName);
+        journal.open(T0, 1_700_000_000_000L);
+        return journal;
+    }
+
+    private JournalReader.Summary read(String runName, final List<Event> out) throws IOException {
+        return JournalReader.read(JournalReader.listSegments(dir, runName), new JournalReader.Visitor() {
+            @Override
+            public void onEvent(int type, long time, long wallTime, String address, int a, int b, String str) {
+                out.add(new Event(type, time, address, a, b, str));
+            }
+        });
+    }
+
+    /** 读回的一条事件（字段按类型定义，不存在的字段为 0/null） */
+    private static final class Event {
+        final int    type;
+        final long   time;
+        final String address;
+        final int    a;
+        final int    b;
+        final String str;
+
+        Event(int type, long time, String address, int a, int b, String str) {
+            this.type    = type;
+            this.time    = time;
+            this.address = address;
+            this.a       = a;
+            this.b       = b;
+            this.str     = str;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Event)) return false;
+            Event e = (Event) o;
+            return type == e.type && time == e.time && a == e.a && b == e.b
+                    && (address == null ? e.address == null : address.equals(e.address))
+                    && (str == null ? e.str == null : str.equals(e.str));
+        }
+
+        @Override
+        public int hashCode() {
+            return type * 31 + (int) time;
+        }
+
+        @Override
+        public String toString() {
+            return type + "@" + time + " " + address + " a=" + a + " b=" + b + " " + str;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.btstress;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 桶下标与桶上界的边界（线性区 0~15、每个 2 的幂的两侧、上限饱和），以及分位数不超过最大值；
+ * 速率直方图用更大的 maxShift，1MB/s 以上不饱和
+ */
+public class LatencyHistogramTest {
+
+    /** 上限：MAX_SHIFT=15 时最后一个桶的上界 2^20-1 */
+    private static final long LIMIT = (1L << 20) - 1;
+
+    @Test
+    public void bucketBoundaries() {
+        // {值, 桶下标, 桶上界}
+        long[][] table = {
+                {0,       0,   0},
+                {1,       1,   1},
+                {15,      15,  15},    // 线性区最后一个
+                {16,      16,  16},    // 第一个对数区间，宽 1
+                {31,      31,  31},
+                {32,      32,  33},    // 宽 2
+                {33,      32,  33},
+                {63,      47,  63},
+                {64,      48,  67},    // 宽 4
+                {1000,    111, 1023},
+                {1023,    111, 1023},
+                {1024,    112, 1087},
+                {LIMIT,   271, LIMIT},
+        };
+        for (long[] row : table) {
+            int index = LatencyHistogram.bucketIndex(row[0]);
+            assertEquals("index of " + row[0], row[1], index);
+            assertEquals("upper bound of " + row[0], row[2], LatencyHistogram.bucketUpperBound(index));
+        }
+    }
+
+    @Test
+    public void everyPowerOfTwoStartsANewGroup() {
+        for (int k = 4; k < 20; k++) {
+            long edge = 1L << k;
+            int below = LatencyHistogram.bucketIndex(edge - 1);
+            int at    = LatencyHistogram.bucketIndex(edge);
+            // 2^k 是第 k-3 组的第一个桶，2^k-1 是上一组的最后一个桶
+            assertEquals("2^" + k, (k - 3) * 16, at);
+            assertEquals("2^" + k + "-1", at - 1, below);
+            assertEquals("2^" + k + "-1", edge - 1, LatencyHistogram.bucketUpperBound(below));
+            assertEquals("2^" + k, edge + (1L << (k - 4)) - 1, LatencyHistogram.bucketUpperBound(at));
+        }
+    }
+
+    @Test
+    public void everyValueFallsInsideItsBucket() {
+        for (long v = 0; v <= LIMIT; v += v < 4096 ? 1 : 97) {
+            int i = LatencyHistogram.bucketIndex(v);
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            assertTrue(v + " <= " + upper, v <= upper);
+            if (i > 0) assertTrue(v + " > prev", v > LatencyHistogram.bucketUpperBound(i - 1));
+            // 对数区的桶宽不超过下界的 1/16
+            if (v >= 16) assertTrue(v + " width", upper - v < v / 16 + 1);
+        }
+    }
+
+    @Test
+    public void valuesBeyondMaxShiftSaturateInLastBucket() {
+        int last = LatencyHistogram.bucketIndex(LIMIT);
+        long[] beyond = {LIMIT + 1, 1L << 21, 1L << 40, Long.MAX_VALUE};
+        for (long v : beyond) assertEquals(String.valueOf(v), last, LatencyHistogram.bucketIndex(v));
+
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(5_000_000);
+        h.record(5_000_000);
+        assertEquals(5_000_000, h.getMax());
+        assertEquals(5_000_000, h.getMean());
+        assertEquals(LIMIT, h.getPercentile(50));
+    }
+
+    @Test
+    public void largerMaxShiftWidensRange() {
+        long limit = (1L << 32) - 1;
+        int last = LatencyHistogram.bucketCount(27) - 1;
+        assertEquals(last, LatencyHistogram.bucketIndex(limit, 27));
+        assertEquals(limit, LatencyHistogram.bucketUpperBound(last));
+        assertEquals(last, LatencyHistogram.bucketIndex(limit + 1, 27));
+        // 默认范围以内两者的桶一致
+        for (long v = 0; v <= LIMIT; v += 997) {
+            assertEquals(String.valueOf(v), LatencyHistogram.bucketIndex(v), LatencyHistogram.bucketIndex(v, 27));
+        }
+
+        LatencyHistogram h = new LatencyHistogram(27);
+        for (int i = 0; i < 10; i++) h.record(5_000_000);
+        h.record(3_000_000);
+        long p5 = h.getPercentile(5);
+        assertTrue(p5 + " >= 3000000", p5 >= 3_000_000 && p5 - 3_000_000 < 3_000_000 / 16);
+        assertEquals(5_000_000, h.getPercentile(50));
+
+        try {
+            h.addFrom(new LatencyHistogram());
+            fail("addFrom across maxShift");
+        } catch (IllegalArgumentException expected) {
+            // 桶划分不同，不能相加
+        }
+    }
+
+    @Test
+    public void ratesAboveOneMegabytePerSecondDoNotSaturate() {
+        TestStatistics stats = new TestStatistics();
+        stats.recordGattBurst(2_500_000, 1_800_000);
+        stats.recordSppBurst(5_000_000);
+        assertEquals(2_500_000, stats.getGattWriteRate().getPercentile(50));
+        assertEquals(1_800_000, stats.getGattNotifyRate().getPercentile(50));
+        assertEquals(5_000_000, stats.getSppRate().getPercentile(50));
+
+        TestStatistics total = new TestStatistics();
+        total.addFrom(stats);
+        assertEquals(5_000_000, total.getSppRate().getPercentile(5));
+    }
+
+    @Test
+    public void percentileIsBucketUpperBoundClampedToMax() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentile(50));
+        for (int v = 1; v <= 100; v++) h.record(v);
+        h.record(-5);                       // 负值按 0 记
+
+        // {分位, 结果}
+        double[][] table = {
+                {0,    0},
+                {1,    1},                  // rank 2 → 1（线性区精确）
+                {15,   15},
+                {50,   51},                 // rank 51 → 50 所在桶 [50,51]
+                {90,   91},                 // rank 91 → 90 所在桶 [88,91]
+                {99,   99},                 // rank 100 → 99 所在桶 [96,99]
+                {100,  100},                // rank 101 → 100 所在桶 [100,103]，截到最大值
+        };
+        for (double[] row : table) {
+            assertEquals("p" + row[0], (long) row[1], h.getPercentile(row[0]));
+        }
+        assertEquals(101, h.getCount());
+        assertEquals(100, h.getMax());
+
+        LatencyHistogram one = new LatencyHistogram();
+        one.record(1000);
+        assertEquals(1000, one.getPercentile(50));
+        assertEquals(1000, one.getPercentile(100));
+    }
+}
@@ -0,0 +1,222 @@
+package com.btstress;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LogBuffer} 对照一个朴素模型（全部日志的列表，取最后 capacity 条再筛选）：
+ * 每次操作后按 {@link LogBuffer.Changes} 的通知改一份镜像列表（即适配器看到的内容），
+ * 镜像、缓冲区的可见列表和模型三者必须一致。
+ */
+public class LogBufferTest {
+
+    private static final int CAPACITY = LogBuffer.MIN_CAPACITY;
+
+    private final List<LogRecord> all    = new ArrayList<>();   // 模型：加入过的全部日志
+    private final List<LogRecord> mirror = new ArrayList<>();   // 按通知维护的适配器视图
+    private final List<String>    calls  = new ArrayList<>();
+
+    private LogBuffer        buffer;
+    private LogBuffer.Filter filter;
+    private int              capacity = CAPACITY;
+
+    @Before
+    public void setUp() {
+        buffer = new LogBuffer(CAPACITY, new LogBuffer.Changes() {
+            @Override
+            public void onRemoved(int start, int count) {
+                calls.add("removed " + start + "+" + count);
+                for (int i = 0; i < count; i++) mirror.remove(start);
+            }
+
+            @Override
+            public void onInserted(int start, int count) {
+                calls.add("inserted " + start + "+" + count);
+                for (int i = 0; i < count; i++) mirror.add(start + i, buffer.get(start + i));
+            }
+
+            @Override
+            public void onReset() {
+                calls.add("reset");
+                mirror.clear();
+                for (int i = 0; i < buffer.getVisibleCount(); i++) mirror.add(buffer.get(i));
+            }
+        });
+    }
+
+    @Test
+    public void batchLargerThanCapacityKeepsNewest() {
+        add(CAPACITY * 2 + 20);
+        assertCalls("inserted 0+" + CAPACITY);
+        assertConsistent();
+        assertSame(all.get(all.size() - 1), buffer.get(CAPACITY - 1));
+
+        // 已满时再来一批超量的：整表换掉，仍是一次删除加一次插入
+        add(CAPACITY * 3);
+        assertCalls("removed 0+" + CAPACITY, "inserted 0+" + CAPACITY);
+        assertConsistent();
+    }
+
+    @Test
+    public void batchWrapsFullRing() {
+        add(CAPACITY);
+        add(30);
+        assertCalls("inserted 0+" + CAPACITY, "removed 0+30", "inserted 20+30");
+        assertConsistent();
+        // 再绕一圈多，head 回到中间
+        for (int i = 0; i < 7; i++) add(CAPACITY - 3);
+        assertConsistent();
+        for (int i = 0; i < CAPACITY; i++) assertSame(buffer.get(i), buffer.getRecord(i));
+    }
+
+    @Test
+    public void evictionUnderActiveFilterRemovesOnlyVisibleRows() {
+        setFilter(LogBuffer.Filter.parse("", true));
+        add(CAPACITY);
+        assertConsistent();
+        for (int n : new int[] {1, 7, CAPACITY - 1, CAPACITY, 3, CAPACITY + 5}) {
+            calls.clear();
+            int before = buffer.getVisibleCount();
+            add(n);
+            assertConsistent();
+            // 一批最多一次删除、一次插入
+            assertTrue(String.valueOf(calls), calls.size() <= 2);
+            assertEquals(buffer.getVisibleCount() - before, inserted() - removed());
+        }
+
+        setFilter(LogBuffer.Filter.parse("R", false));
+        add(CAPACITY + 11);
+        assertConsistent();
+        setFilter(LogBuffer.Filter.parse("12", false));
+        add(9);
+        assertConsistent();
+        setFilter(null);
+        assertConsistent();
+    }
+
+    @Test
+    public void shrinkingCapacityDropsOldest() {
+        buffer.setCapacity(LogBuffer.MIN_CAPACITY * 4);
+        capacity = LogBuffer.MIN_CAPACITY * 4;
+        add(capacity + 70);                  // 先绕过一圈，缩容时要按 head 顺序取
+        setFilter(LogBuffer.Filter.parse("", true));
+        calls.clear();
+
+        buffer.setCapacity(LogBuffer.MIN_CAPACITY + 10);
+        capacity = LogBuffer.MIN_CAPACITY + 10;
+        assertCalls("reset");
+        assertEquals(capacity, buffer.getCapacity());
+        assertEquals(capacity, buffer.getTotalCount());
+        assertConsistent();
+        assertFailureJumps();
+
+        add(25);
+        assertConsistent();
+        assertFailureJumps();
+
+        // 越界的容量按上下限截断
+        buffer.setCapacity(1);
+        capacity = LogBuffer.MIN_CAPACITY;
+        assertEquals(LogBuffer.MIN_CAPACITY, buffer.getCapacity());
+        assertConsistent();
+    }
+
+    @Test
+    public void findFailureAtBothEnds() {
+        assertEquals(-1, buffer.findFailure(0, true));
+        assertEquals(-1, buffer.findFailure(0, false));
+
+        add(CAPACITY + 13);
+        assertFailureJumps();
+        setFilter(LogBuffer.Filter.parse("", true));
+        assertFailureJumps();
+        setFilter(LogBuffer.Filter.parse("L", false));
+        assertFailureJumps();
+
+        // 可见列表为空（筛选条件不匹配任何日志）
+        setFilter(LogBuffer.Filter.parse("9999", false));
+        assertEquals(0, buffer.getVisibleCount());
+        assertEquals(-1, buffer.findFailure(0, true));
+        assertEquals(-1, buffer.findFailure(0, false));
+
+        setFilter(null);
+        buffer.clear();
+        all.clear();
+        assertConsistent();
+        assertEquals(-1, buffer.findFailure(0, true));
+    }
+
+    /** 从每个可见位置（含两端之外）往前/往后跳，结果与模型里最近的失败日志一致 */
+    private void assertFailureJumps() {
+        List<LogRecord> visible = expectedVisible();
+        int n = visible.size();
+        for (int p = -1; p <= n; p++) {
+            int from = Math.max(0, Math.min(p, n - 1));
+            int next = -1;
+            for (int i = from + 1; i < n && next < 0; i++) if (visible.get(i).type == LogType.FAILURE) next = i;
+            int prev = -1;
+            for (int i = from - 1; i >= 0 && prev < 0; i--) if (visible.get(i).type == LogType.FAILURE) prev = i;
+            assertEquals("forward from " + p, next, buffer.findFailure(p, true));
+            assertEquals("backward from " + p, prev, buffer.findFailure(p, false));
+        }
+    }
+
+    private void add(int n) {
+        List<LogRecord> batch = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // 每 7 条一条失败、每 3 条一条警告，每 10 条一轮，左右耳交替
+            int k = all.size();
+            int type = k % 7 == 6 ? LogType.FAILURE : k % 3 == 2 ? LogType.WARNING : LogType.INFO;
+            LogRecord r = new LogRecord(k * 50L, 1 + k / 10, k % 2 == 0 ? "L" : "R",
+                    LogEvent.BONDING, type, 0, 0, null, null);
+            all.add(r);
+            batch.add(r);
+        }
+        buffer.addAll(batch);
+    }
+
+    private void setFilter(LogBuffer.Filter f) {
+        filter = f != null && f.isAll() ? null : f;
+        buffer.setFilter(f);
+    }
+
+    private List<LogRecord> expectedVisible() {
+        List<LogRecord> out = new ArrayList<>();
+        for (LogRecord r : all.subList(Math.max(0, all.size() - capacity), all.size())) {
+            if (filter == null || filter.matches(r)) out.add(r);
+        }
+        return out;
+    }
+
+    private void assertConsistent() {
+        List<LogRecord> expected = expectedVisible();
+        assertEquals(expected.size(), buffer.getVisibleCount());
+        assertEquals(expected.size(), mirror.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame("buffer #" + i, expected.get(i), buffer.get(i));
+            assertSame("mirror #" + i, expected.get(i), mirror.get(i));
+        }
+    }
+
+    private void assertCalls(String... expected) {
+        assertEquals(Arrays.asList(expected), calls);
+        calls.clear();
+    }
+
+    private int inserted() { return count("inserted "); }
+    private int removed()  { return count("removed "); }
+
+    private int count(String prefix) {
+        int n = 0;
+        for (String c : calls) if (c.startsWith(prefix)) n += Integer.parseInt(c.substring(c.indexOf('+') + 1));
+        return n;
+    }
+}
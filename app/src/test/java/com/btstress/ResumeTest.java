@@ -0,0 +1,102 @@
+package com.btstress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 断点续跑：进程在第 N 轮中途被杀，从事件日志还原后 {@link TestController#setResume} 接着跑完。
+ * 总轮数等于目标轮数，中断前的计数不重复也不丢，中断时长只记一次 gap。
+ */
+public class ResumeTest {
+
+    private static final int  LOOPS  = 120;
+    private static final long GAP_MS = 42_000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("btr").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void resumedRunFinishesTargetLoopsWithoutDoubleCounting() throws IOException {
+        // 第一段：跑到一半被杀，日志没有 RUN_STOP
+        VirtualScheduler clock = new VirtualScheduler();
+        EventJournal journal = new EventJournal(dir, "run");
+        TestController first = JournalTest.controller(clock, JournalTest.faultyBackend(clock), journal, LOOPS);
+        first.start();
+        clock.runUntilIdle(clock.now() + 8L * 60_000);
+        journal.close();
+        TestStatistics before = first.getStatistics();
+        int done = before.getTotalCount();
+        assertTrue(done > 0 && done < LOOPS);
+
+        JournalReader.RunState state = JournalReader.recover(dir, "run");
+        assertFalse(state.finished);
+        assertEquals(done, state.completedLoops);
+
+        // 第二段：新进程、新时钟，从第 done+1 轮接着跑
+        clock = new VirtualScheduler();
+        final int[] firstLoop = {0};
+        final int[] ended     = {0};
+        final int[] failed    = new int[TestStatistics.FailReason.values().length];
+        SimulatedBluetoothBackend backend = new SimulatedBluetoothBackend(clock, 10,
+                SimulationRunner.TARGET_ADDRESS, SimulationRunner.TARGET_NAME);
+        backend.setFailureRate(TestStatistics.Phase.BOND, 0.1);
+        TestController second = new TestController(backend, clock, new TestController.Callback() {
+            @Override public void onLoopStart(int loop, int total) { if (firstLoop[0] == 0) firstLoop[0] = loop; }
+            @Override public void onStateChange(String stateDesc) {}
+            @Override public void onLoopSuccess(int loop, long costMs) { ended[0]++; }
+            @Override public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {
+                ended[0]++;
+                failed[reason.ordinal()]++;
+            }
+            @Override public void onAllDone(TestStatistics stats) {}
+            @Override public void onLog(LogRecord record) {}
+        });
+        second.setFilter(SimulationRunner.TARGET_NAME, SimulationRunner.TARGET_ADDRESS);
+        second.setTargetLoops(LOOPS);
+        second.setJournal(new EventJournal(dir, "run"));
+        second.setResume(state.completedLoops, state.statistics, GAP_MS);
+        second.start();
+        clock.runUntilIdle(Long.MAX_VALUE);
+        TestStatistics after = second.getStatistics();
+
+        assertFalse(second.isRunning());
+        assertEquals(done + 1, firstLoop[0]);
+        assertEquals(LOOPS - done, ended[0]);
+        assertEquals(LOOPS, after.getTotalCount());
+        assertEquals(LOOPS, after.getSuccessCount() + after.getFailureCount());
+        for (TestStatistics.FailReason r : TestStatistics.FailReason.values()) {
+            assertEquals(r.name(), before.getFailureCount(r) + failed[r.ordinal()], after.getFailureCount(r));
+        }
+        assertEquals(before.getLoopLatency().getCount() + (after.getSuccessCount() - before.getSuccessCount()),
+                after.getLoopLatency().getCount());
+        assertEquals(1, after.getGapCount());
+        assertEquals(GAP_MS, after.getGapMs());
+
+        // 两段日志合起来还原，结果与续跑后的统计一致，gap 也只有一次
+        JournalReader.RunState whole = JournalReader.recover(dir, "run");
+        assertTrue(whole.finished);
+        assertEquals(LOOPS, whole.completedLoops);
+        JournalTest.assertSameStatistics(after, whole.statistics);
+        assertEquals(GAP_MS, whole.statistics.getGapMs());
+    }
+}
@@ -0,0 +1,102 @@
+package com.btstress;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 模拟运行的回归测试：同一 seed 结果可复现，注入的失败落到正确的 FailReason，多设备各自跑满轮数
+ */
+public class SimulationRunnerTest {
+
+    private static final int LOOPS = 200;
+
+    @Test
+    public void sameSeedGivesSameRun() {
+        SimulationRunner.Result a = SimulationRunner.run(LOOPS, 42);
+        SimulationRunner.Result b = SimulationRunner.run(LOOPS, 42);
+
+        assertEquals(LOOPS, a.statistics.getTotalCount());
+        assertEquals(a.statistics.getSuccessCount(), b.statistics.getSuccessCount());
+        assertEquals(a.statistics.getFailureSummary(), b.statistics.getFailureSummary());
+        for (TestStatistics.Phase p : TestStatistics.Phase.values()) {
+            LatencyHistogram x = a.statistics.getPhaseLatency(p);
+            LatencyHistogram y = b.statistics.getPhaseLatency(p);
+            assertEquals(p.name(), x.getCount(), y.getCount());
+            assertEquals(p.name(), x.getMean(), y.getMean());
+            assertEquals(p.name(), x.getMax(), y.getMax());
+        }
+        assertEquals(a.virtualMs, b.virtualMs);
+        assertEquals(a.tasks, b.tasks);
+        assertEquals(a.logLines, b.logLines);
+    }
+
+    @Test
+    public void differentSeedGivesDifferentTiming() {
+        assertTrue(SimulationRunner.run(LOOPS, 1).virtualMs != SimulationRunner.run(LOOPS, 2).virtualMs);
+    }
+
+    @Test
+    public void bondFailureWithAuthReasonIsBondFailed() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = backend(clock);
+        backend.setFailureRate(TestStatistics.Phase.BOND, 1.0);
+        backend.setBondFailReason(1);   // UNBOND_REASON_AUTH_FAILED
+
+        TestStatistics s = SimulationRunner.run(clock, backend, 20).statistics;
+        assertEquals(20, s.getTotalCount());
+        assertEquals(0, s.getSuccessCount());
+        assertEquals("配对失败: 20", s.getFailureSummary());
+    }
+
+    @Test
+    public void bondFailureWithPageTimeoutReasonIsPageTimeout() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = backend(clock);
+        backend.setFailureRate(TestStatistics.Phase.BOND, 1.0);
+        backend.setBondFailReason(14);  // 部分 ROM 上的 Page Timeout
+
+        TestStatistics s = SimulationRunner.run(clock, backend, 20).statistics;
+        assertEquals(20, s.getFailureCount());
+        assertEquals("Page Timeout: 20", s.getFailureSummary());
+    }
+
+    @Test
+    public void connectFailureIsConnectTimeout() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = backend(clock);
+        backend.setFailureRate(TestStatistics.Phase.CONNECT, 1.0);
+
+        TestStatistics s = SimulationRunner.run(clock, backend, 20).statistics;
+        assertEquals(20, s.getTotalCount());
+        assertEquals("连接超时: 20", s.getFailureSummary());
+    }
+
+    @Test
+    public void connectHangIsConnectTimeout() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = backend(clock);
+        backend.setHangRate(TestStatistics.Phase.CONNECT, 1.0);
+
+        TestStatistics s = SimulationRunner.run(clock, backend, 20).statistics;
+        assertEquals("连接超时: 20", s.getFailureSummary());
+        assertEquals(20, s.getPhaseLatency(TestStatistics.Phase.BOND).getCount());
+    }
+
+    @Test
+    public void multiDeviceRunFinishesEveryDevice() {
+        int devices = 3;
+        int loops   = 50;
+        SimulationRunner.Result r = SimulationRunner.runMulti(devices, loops, 7);
+
+        // 每个控制器跑满 loops 轮即停，汇总数等于 devices × loops 说明没有设备被饿死
+        assertEquals(devices * loops, r.loops);
+        assertEquals(devices * loops, r.statistics.getTotalCount());
+        assertEquals(r.statistics.getTotalCount(), r.statistics.getSuccessCount() + r.statistics.getFailureCount());
+    }
+
+    private static SimulatedBluetoothBackend backend(VirtualScheduler clock) {
+        return new SimulatedBluetoothBackend(clock, 42, SimulationRunner.TARGET_ADDRESS, SimulationRunner.TARGET_NAME);
+    }
+}
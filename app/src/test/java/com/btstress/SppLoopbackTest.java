@@ -0,0 +1,77 @@
+package com.btstress;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在本机回环上跑真实的 {@link SppBenchmark}：回显端出往返时延，不回显的对端只有发送速率，
+ * 测试中途关闭通道以 IOException 结束。数值只反映本机，这里只检查收发和收尾逻辑。
+ */
+public class SppLoopbackTest {
+
+    private static final int FRAME_BYTES = 512;
+
+    @Test(timeout = 10_000)
+    public void echoPeerGivesRttPercentiles() throws IOException {
+        SppBenchmark.Result r = SimulationRunner.runSppLoopback(FRAME_BYTES, 300, true);
+
+        assertTrue(r.hasEcho());
+        assertTrue(r.sentBytes > 0);
+        assertEquals(0, r.sentBytes % FRAME_BYTES);
+        assertTrue(r.echoedBytes > 0 && r.echoedBytes <= r.sentBytes);
+        assertTrue(r.bytesPerSec > 0);
+        assertTrue(r.rttP50 >= 0);
+        assertTrue(r.rttP50 <= r.rttP95 && r.rttP95 <= r.rttP99 && r.rttP99 <= r.rttMax);
+    }
+
+    /** 对端 2 秒内一帧都不回显才按不回显处理，时长要超过这段等待 */
+    @Test(timeout = 10_000)
+    public void silentPeerGivesSendRateOnly() throws IOException {
+        SppBenchmark.Result r = SimulationRunner.runSppLoopback(FRAME_BYTES, 2_500, false);
+
+        assertFalse(r.hasEcho());
+        assertEquals(-1, r.rttP99);
+        assertEquals(0, r.echoedBytes);
+        assertTrue(r.bytesPerSec > 0);
+    }
+
+    /** run() 开始前的 stop() 不丢：工作线程还没跑起来时测试就已经停了 */
+    @Test(timeout = 10_000)
+    public void stopBeforeRunIsNotLost() throws IOException {
+        LoopbackSppTransport transport = new LoopbackSppTransport(true);
+        transport.connect();
+        try {
+            SppBenchmark bench = new SppBenchmark();
+            bench.prepare();
+            bench.stop();
+            SppBenchmark.Result r = bench.run(transport, FRAME_BYTES);
+            assertEquals(0, r.sentBytes);
+            assertFalse(r.hasEcho());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test(timeout = 10_000, expected = IOException.class)
+    public void closeMidBurstSurfacesIOException() throws IOException {
+        final LoopbackSppTransport transport = new LoopbackSppTransport(true);
+        transport.connect();
+        Thread closer = new Thread(() -> {
+            try { Thread.sleep(200); }
+            catch (InterruptedException ignored) {}
+            transport.close();
+        }, "SppLoopbackCloser");
+        closer.setDaemon(true);
+        closer.start();
+        try {
+            new SppBenchmark().run(transport, FRAME_BYTES);
+        } finally {
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.btstress;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 自适应超时：预热前用固定值，预热后取 p99×系数并限制在 [下限, 固定值] 之间；每个阶段都配了超时
+ */
+public class TimeoutPolicyTest {
+
+    private static final int WARMUP = 20;
+
+    @Test
+    public void everyPhaseHasATimeout() {
+        TimeoutPolicy policy = TimeoutPolicy.fixed();
+        for (TestStatistics.Phase p : TestStatistics.Phase.values()) {
+            assertTrue(p.name(), policy.get(p) > 0);
+        }
+        assertEquals(20_000, policy.get(TestStatistics.Phase.SCAN));
+        assertEquals(30_000, policy.get(TestStatistics.Phase.BOND));
+        assertEquals(3_000, policy.get(TestStatistics.Phase.SPP_DRAIN));
+    }
+
+    @Test
+    public void fixedModeIgnoresStatistics() {
+        TimeoutPolicy policy = TimeoutPolicy.fixed();
+        TestStatistics stats = new TestStatistics();
+        record(stats, TestStatistics.Phase.CONNECT, 100, 100);
+        policy.update(stats);
+        assertEquals(20_000, policy.get(TestStatistics.Phase.CONNECT));
+    }
+
+    @Test
+    public void adaptiveClampsToMinAndFixedAfterWarmup() {
+        TimeoutPolicy policy = TimeoutPolicy.adaptive();
+        policy.setTuning(WARMUP, 99, 2.0);
+        TestStatistics stats = new TestStatistics();
+
+        // {阶段, 每次耗时ms, 预热后的超时}：太快的抬到下限，太慢的压到固定值，其余为 p99×2
+        Object[][] table = {
+                {TestStatistics.Phase.SCAN,      1_000L, 12_800L},   // 2s < 下限 12.8s
+                {TestStatistics.Phase.BOND,     20_000L, 30_000L},   // 40s > 固定 30s
+                {TestStatistics.Phase.CONNECT,   4_000L,  8_000L},   // 4000 所在桶截到最大值 4000，×2
+                {TestStatistics.Phase.UNPAIR,       50L,  2_000L},
+                {TestStatistics.Phase.MTU,         300L,  1_000L},
+                {TestStatistics.Phase.SERVICES,  3_000L,  6_000L},
+        };
+        for (Object[] row : table) record(stats, (TestStatistics.Phase) row[0], (Long) row[1], WARMUP - 1);
+        policy.update(stats);
+        for (Object[] row : table) {
+            TestStatistics.Phase p = (TestStatistics.Phase) row[0];
+            assertEquals("warming " + p, TimeoutPolicy.fixed().get(p), policy.get(p));
+        }
+
+        for (Object[] row : table) record(stats, (TestStatistics.Phase) row[0], (Long) row[1], 1);
+        policy.update(stats);
+        for (Object[] row : table) {
+            assertEquals(row[0].toString(), ((Long) row[2]).longValue(), policy.get((TestStatistics.Phase) row[0]));
+        }
+        // 未记录的阶段保持固定值
+        assertEquals(10_000, policy.get(TestStatistics.Phase.DISCONNECT));
+        assertEquals("扫描12.8s* 配对30.0s* 连接8.0s* 断开10.0s 取消配对2.0s*",
+                policy.describe(TestStatistics.LoopShape.FULL, false));
+
+        policy.reset();
+        assertEquals(30_000, policy.get(TestStatistics.Phase.BOND));
+    }
+
+    @Test
+    public void durationPhasesKeepTheirSetting() {
+        TimeoutPolicy policy = TimeoutPolicy.adaptive();
+        policy.setDuration(TestStatistics.Phase.SPP_BURST, 3_000);
+        policy.reset();
+        TestStatistics stats = new TestStatistics();
+        record(stats, TestStatistics.Phase.SPP_CONNECT, 500, WARMUP);
+        policy.update(stats);
+        assertEquals(3_000, policy.get(TestStatistics.Phase.SPP_BURST));
+        assertEquals(2_000, policy.get(TestStatistics.Phase.SPP_CONNECT));
+    }
+
+    private static void record(TestStatistics stats, TestStatistics.Phase phase, long ms, int times) {
+        for (int i = 0; i < times; i++) stats.recordPhase(phase, ms);
+    }
+}
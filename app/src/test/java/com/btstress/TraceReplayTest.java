@@ -0,0 +1,129 @@
+package com.btstress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 录制一次固定 seed 的模拟运行（{@link TraceRecorder} 包在模拟后端外面），再用 {@link SimulationRunner#replay}
+ * 重放：每次调用都要与轨迹一致，重放出的统计与录制时相同
+ */
+public class TraceReplayTest {
+
+    private static final int LOOPS = 60;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("btt").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void replayOfEveryLoopShapeIsExact() throws IOException {
+        for (TestStatistics.LoopShape shape : TestStatistics.LoopShape.values()) {
+            assertReplayExact(shape, "run-" + shape.name().toLowerCase(), false);
+        }
+    }
+
+    /** 注入失败和无响应，重放也要走到同样的失败路径（超时由重放的虚拟时钟触发） */
+    @Test
+    public void replayReproducesFailurePaths() throws IOException {
+        assertReplayExact(TestStatistics.LoopShape.FULL, "run-faults", true);
+    }
+
+    /** 段内出现无法识别的类型：该段其后跳过，读端标记损坏（TraceReplayMain 据此告警） */
+    @Test
+    public void undecodableRecordMarksTraceCorrupt() throws IOException {
+        record(TestStatistics.LoopShape.FULL, "run-corrupt", false);
+        TraceReader clean = new TraceReader(dir, "run-corrupt");
+        String full = clean.dump();
+        assertFalse(clean.isCorrupt());
+
+        File segment = JournalReader.listSegments(dir, "run-corrupt", TraceRecorder.SUFFIX)[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            raf.seek(EventJournal.HEADER_SIZE);
+            raf.write(TraceRecorder.TR_MAX + 1);
+        } finally {
+            raf.close();
+        }
+        TraceReader broken = new TraceReader(dir, "run-corrupt");
+        String rest = broken.dump();
+        assertTrue(broken.isCorrupt());
+        assertTrue(broken.toString().contains("损坏"));
+        assertTrue(rest.length() < full.length());
+    }
+
+    private void assertReplayExact(TestStatistics.LoopShape shape, String runName, boolean faults) throws IOException {
+        TestStatistics recorded = record(shape, runName, faults);
+        if (faults) assertTrue(recorded.getFailureCount() > 0);
+
+        SimulationRunner.Replay replay = SimulationRunner.replay(new TraceReader(dir, runName), 0, null);
+        TestStatistics replayed = replay.result.statistics;
+
+        assertTrue(shape.name() + ": " + replay.backend.getSummary(), replay.backend.isExact());
+        assertEquals(shape.name(), recorded.getTotalCount(), replayed.getTotalCount());
+        assertEquals(shape.name(), recorded.getSuccessCount(), replayed.getSuccessCount());
+        for (TestStatistics.FailReason r : TestStatistics.FailReason.values()) {
+            assertEquals(shape.name() + " " + r.name(), recorded.getFailureCount(r), replayed.getFailureCount(r));
+        }
+        for (TestStatistics.Phase p : TestStatistics.Phase.values()) {
+            assertEquals(shape.name() + " " + p.name(),
+                    recorded.getPhaseLatency(p).getCount(), replayed.getPhaseLatency(p).getCount());
+        }
+    }
+
+    /** 以固定 seed 的模拟后端录制一次运行，返回录制时的统计 */
+    private TestStatistics record(TestStatistics.LoopShape shape, String runName, boolean faults) {
+        RunConfig config = new RunConfig();
+        config.name      = SimulationRunner.TARGET_NAME;
+        config.address   = SimulationRunner.TARGET_ADDRESS;
+        config.loops     = LOOPS;
+        config.loopShape = shape.name();
+        config.runName   = runName;
+
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend sim = new SimulatedBluetoothBackend(clock, 25,
+                SimulationRunner.TARGET_ADDRESS, SimulationRunner.TARGET_NAME);
+        sim.setNoiseDevices(3);
+        if (faults) {
+            sim.setFailureRate(TestStatistics.Phase.BOND, 0.1);
+            sim.setHangRate(TestStatistics.Phase.CONNECT, 0.05);
+            sim.setFailureRate(TestStatistics.Phase.DISCONNECT, 0.05);
+        }
+        TraceRecorder recorder = new TraceRecorder(sim, clock, dir, runName, config.toText());
+        TestController controller = new TestController(recorder, clock, new TestController.Callback() {
+            @Override public void onLoopStart(int loop, int total) {}
+            @Override public void onStateChange(String stateDesc) {}
+            @Override public void onLoopSuccess(int loop, long costMs) {}
+            @Override public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {}
+            @Override public void onAllDone(TestStatistics stats) {}
+            @Override public void onLog(LogRecord record) {}
+        });
+        config.configure(controller);
+        controller.start();
+        clock.runUntilIdle(Long.MAX_VALUE);
+        TestStatistics recorded = controller.getStatistics();
+        assertNull(shape.name(), recorder.getError());
+        assertEquals(shape.name(), LOOPS, recorded.getTotalCount());
+        return recorded;
+    }
+}
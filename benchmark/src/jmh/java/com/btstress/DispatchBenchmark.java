@@ -0,0 +1,98 @@
+package com.btstress;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 状态机分发一个事件的开销（广播接收器 → 控制器这段在 JVM 上的等价部分）
+ *
+ * 用 TestController 自己的表（构造时由 buildMachine 建好），插桩、统计和日志回调也都是真实的；
+ * 控制器不 start()，虚拟时钟不启动，超时只登记不排队。分别测命中、守卫不过落到下一条、
+ * 声明为忽略、表里没有（意外事件）四种路径，以及一次带超时撤销/启动的状态切换。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+    private static final String OTHER_ADDRESS = "11:22:33:44:55:66";
+
+    private static final TestController.Callback NO_UI = new TestController.Callback() {
+        @Override public void onLoopStart(int loop, int total) {}
+        @Override public void onStateChange(String stateDesc) {}
+        @Override public void onLoopSuccess(int loop, long costMs) {}
+        @Override public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {}
+        @Override public void onAllDone(TestStatistics stats) {}
+        @Override public void onLog(LogRecord record) {}
+    };
+
+    /** 停在某个状态的控制器 */
+    static abstract class Parked {
+        TestController            controller;
+        StateMachine              machine;
+        BluetoothBackend.Listener listener;
+
+        void park(StateMachine.State state) {
+            VirtualScheduler clock = new VirtualScheduler();
+            controller = new TestController(new SimulatedBluetoothBackend(clock, 7,
+                    SimulationRunner.TARGET_ADDRESS, SimulationRunner.TARGET_NAME), clock, NO_UI);
+            controller.setFilter(SimulationRunner.TARGET_NAME, "");
+            machine  = controller.getMachine();
+            listener = controller.getBackendListener();
+            machine.reset();
+            machine.enter(state);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Scanning extends Parked {
+        @Setup(Level.Trial)
+        public void setUp() { park(StateMachine.State.SCANNING); }
+    }
+
+    @State(Scope.Thread)
+    public static class Bonding extends Parked {
+        @Setup(Level.Trial)
+        public void setUp() { park(StateMachine.State.BONDING); }
+    }
+
+    /** 配对中收到 BONDING 广播：第一条规则即命中，动作只写一条日志 */
+    @Benchmark
+    public boolean matched(Bonding s) {
+        return s.machine.fire(StateMachine.Event.BOND_BONDING);
+    }
+
+    /** 扫描到不匹配过滤条件的设备：第一条守卫不过，落到只记录设备的第二条 */
+    @Benchmark
+    public StateMachine.State guarded(Scanning s) {
+        s.listener.onDeviceFound(OTHER_ADDRESS, "Other", -60, BluetoothBackend.CLASS_UNKNOWN);
+        return s.machine.getState();
+    }
+
+    /** 配对中收到扫描广播：ignoreElsewhere 声明的忽略 */
+    @Benchmark
+    public boolean ignored(Bonding s) {
+        return s.machine.fire(StateMachine.Event.DEVICE_FOUND);
+    }
+
+    /** 表里没有的 (状态, 事件)，经插桩计入意外事件统计 */
+    @Benchmark
+    public boolean unexpected(Bonding s) {
+        return s.machine.fire(StateMachine.Event.GATT_NOTIFY);
+    }
+
+    /** 配对 ↔ 连接来回切换：每次都撤销旧阶段的超时、启动新阶段的超时 */
+    @Benchmark
+    public StateMachine.State transition(Bonding s) {
+        s.machine.enter(s.machine.getState() == StateMachine.State.BONDING
+                ? StateMachine.State.CONNECTING : StateMachine.State.BONDING);
+        return s.machine.getState();
+    }
+}
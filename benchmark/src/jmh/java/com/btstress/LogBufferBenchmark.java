@@ -0,0 +1,80 @@
+package com.btstress;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志列表稳态下的追加/淘汰开销（{@link LogBuffer}，即 LogAdapter 的存储部分）
+ *
+ * 列表先填满到保留条数，之后每批新日志都伴随等量的淘汰，和长时间压测时一样。
+ * 一批的条数对应 UiFrameBatcher 一帧合并的日志数；筛选时走可见索引的维护路径。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class LogBufferBenchmark {
+
+    @Param({"500", "20000"})
+    public int capacity;
+
+    @Param({"1", "32"})
+    public int batch;
+
+    @Param({"false", "true"})
+    public boolean problemsOnly;
+
+    private LogBuffer         buffer;
+    private LogRecord[]       pool;     // 循环复用；比保留条数多，同一对象不会同时在列表里出现两次
+    private int               next;
+    private final List<LogRecord> frame = new ArrayList<>();
+    private long              notified;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buffer = new LogBuffer(capacity, new LogBuffer.Changes() {
+            @Override public void onRemoved(int start, int count)  { notified += count; }
+            @Override public void onInserted(int start, int count) { notified += count; }
+            @Override public void onReset()                        { notified++; }
+        });
+        // 每 20 条一条失败、每 5 条一条警告，其余为普通信息
+        pool = new LogRecord[capacity * 2 + batch];
+        for (int i = 0; i < pool.length; i++) {
+            int type = i % 20 == 19 ? LogType.FAILURE : i % 5 == 4 ? LogType.WARNING : LogType.INFO;
+            pool[i] = new LogRecord(i * 50L, 1 + i / 40, null, LogEvent.BONDING, type, 0, 0, null, null);
+        }
+        if (problemsOnly) buffer.setFilter(LogBuffer.Filter.parse("", true));
+        for (int i = 0; i < capacity; i++) fill(1);
+    }
+
+    private void fill(int n) {
+        frame.clear();
+        for (int i = 0; i < n; i++) {
+            frame.add(pool[next]);
+            next = next + 1 == pool.length ? 0 : next + 1;
+        }
+        buffer.addAll(frame);
+    }
+
+    @Benchmark
+    public long appendEvict() {
+        fill(batch);
+        return notified;
+    }
+
+    /** ↑失败/↓失败 跳转：从列表中部往后找下一条失败日志 */
+    @Benchmark
+    public int findFailure() {
+        return buffer.findFailure(buffer.getVisibleCount() / 2, true);
+    }
+}
@@ -0,0 +1,40 @@
+package com.btstress;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 控制器每轮的开销：事件分发、状态机、计时器、统计和日志（同 SimulationRunner 的 overhead）
+ *
+ * 每次调用从新的虚拟时钟和固定 seed 的模拟后端开始跑 LOOPS 轮，事件序列每次相同；
+ * 得分按轮折算（@OperationsPerInvocation）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+
+    private static final long SEED  = 7;
+    private static final int  LOOPS = 200;
+
+    @Param({"FULL", "RECONNECT", "GATT", "SPP"})
+    public TestStatistics.LoopShape shape;
+
+    @Benchmark
+    @OperationsPerInvocation(LOOPS)
+    public long loop() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = new SimulatedBluetoothBackend(clock, SEED,
+                SimulationRunner.TARGET_ADDRESS, SimulationRunner.TARGET_NAME);
+        SimulationRunner.Result r = SimulationRunner.run(clock, backend, LOOPS, false, CooldownPolicy.adaptive(), shape);
+        return r.tasks + r.logLines;
+    }
+}
@@ -0,0 +1,116 @@
+package com.btstress;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 统计记录与读取的开销
+ *
+ * 控制器线程每轮结束时调用 record*，UI 线程每秒读一次计数和摘要（见 MainActivity.refreshStats），
+ * 多耳机时还要先汇总成一份快照（TestStatistics.aggregate）。记录一轮分单线程和"有读线程同时在读"
+ * 两种情况，看读线程争用对控制器线程的影响。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Group)
+public class StatisticsBenchmark {
+
+    private static final TestStatistics.FailReason[] REASONS = TestStatistics.FailReason.values();
+    private static final TestStatistics.Phase[]      PHASES  = {TestStatistics.Phase.SCAN, TestStatistics.Phase.BOND,
+            TestStatistics.Phase.CONNECT, TestStatistics.Phase.DISCONNECT, TestStatistics.Phase.UNPAIR};
+
+    private TestStatistics stats;
+
+    /** 每个线程自己的轮次序号，决定本轮成功与否和各阶段耗时（固定序列，结果可复现） */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int loop = 0;
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        stats = new TestStatistics();
+        stats.start();
+        // 先记满滑动窗口，读线程拿到的摘要和长时间压测时一样长
+        Cursor c = new Cursor();
+        for (int i = 0; i < 1_000; i++) recordLoop(stats, c);
+    }
+
+    /** 一轮结束时控制器的记录调用（每 10 轮失败一次） */
+    private static void recordLoop(TestStatistics s, Cursor c) {
+        int n = c.loop++;
+        long base = 300 + (n * 37) % 2_000;
+        for (int i = 0; i < PHASES.length; i++) s.recordPhase(PHASES[i], base * (i + 1));
+        if (n % 10 == 9) {
+            s.recordFailure(REASONS[n / 10 % REASONS.length]);
+            s.recordRecent(false, base * 6, n * 10_000L);
+        } else {
+            s.recordSuccess();
+            s.recordLoop(TestStatistics.LoopPath.INQUIRY, base * 6);
+            s.recordRecent(true, base * 6, n * 10_000L);
+        }
+        s.recordPath(TestStatistics.LoopPath.INQUIRY);
+    }
+
+    @Benchmark
+    public void recordFailure(Cursor c) {
+        stats.recordFailure(REASONS[c.loop++ % REASONS.length]);
+    }
+
+    @Benchmark
+    public void recordLoop(Cursor c) {
+        recordLoop(stats, c);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void recordLoopWithReaders(Cursor c) {
+        recordLoop(stats, c);
+    }
+
+    /** UI 刷新一次读的内容 */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public void refreshStats(Blackhole bh) {
+        read(stats, bh);
+    }
+
+    /** 多耳机时 UI 刷新前先汇总出一份快照，再从快照上读 */
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public void recordLoopWithSnapshots(Cursor c) {
+        recordLoop(stats, c);
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(2)
+    public void snapshotAndRead(Blackhole bh) {
+        read(TestStatistics.aggregate(Collections.singletonList(stats)), bh);
+    }
+
+    private static void read(TestStatistics s, Blackhole bh) {
+        bh.consume(s.getSuccessCount());
+        bh.consume(s.getFailureCount());
+        bh.consume(s.getTotalCount());
+        bh.consume(s.getSuccessRate());
+        bh.consume(s.getRecentSummary());
+        bh.consume(s.getFailureSummary());
+        bh.consume(s.getPhaseSummary());
+    }
+}
@@ -0,0 +1,83 @@
+package com.btstress;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 摘要文字与日志文字的拼接开销
+ *
+ * 统计来自一次固定 seed 的模拟运行（带少量注入故障，失败原因、底层原因码和意外事件都有内容），
+ * 各摘要即 UI 刷新、导出报告时调用的那几个。日志文字每次用新对象，不命中 LogRecord 的缓存。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class SummaryBenchmark {
+
+    private static final long SEED  = 11;
+    private static final int  LOOPS = 2_000;
+
+    @Param({"FULL", "GATT", "SPP"})
+    public TestStatistics.LoopShape shape;
+
+    private TestStatistics stats;
+    private LogEvent[]     events;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedBluetoothBackend backend = new SimulatedBluetoothBackend(clock, SEED,
+                SimulationRunner.TARGET_ADDRESS, SimulationRunner.TARGET_NAME);
+        backend.setFailureRate(TestStatistics.Phase.BOND, 0.05);
+        backend.setFailureRate(TestStatistics.Phase.CONNECT, 0.05);
+        backend.setHangRate(TestStatistics.Phase.CONNECT, 0.02);
+        backend.setFailureRate(TestStatistics.Phase.GATT_CONNECT, 0.05);
+        backend.setHangRate(TestStatistics.Phase.MTU, 0.05);
+        stats  = SimulationRunner.run(clock, backend, LOOPS, false, CooldownPolicy.adaptive(), shape).statistics;
+        events = LogEvent.values();
+    }
+
+    @Benchmark
+    public String phaseSummary() {
+        return stats.getPhaseSummary();
+    }
+
+    @Benchmark
+    public String failureSummary() {
+        return stats.getFailureSummary();
+    }
+
+    @Benchmark
+    public String reasonCodeSummary() {
+        return stats.getReasonCodeSummary();
+    }
+
+    @Benchmark
+    public String rssiSummary() {
+        return stats.getRssiSummary();
+    }
+
+    @Benchmark
+    public String transitionSummary() {
+        return stats.getTransitions().toSummary();
+    }
+
+    /** 每种日志各渲染一条（参数取典型值） */
+    @Benchmark
+    public void logText(Blackhole bh) {
+        for (LogEvent e : events) {
+            bh.consume(new LogRecord(0, 1234, SimulationRunner.TARGET_ADDRESS, e, e.type,
+                    -67, 1500, SimulationRunner.TARGET_NAME, "CONNECT").getText());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.btstress;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * 在电脑上重放手机录下的蓝牙事件轨迹（见 {@link SimulationRunner#replay}）
+ *
+ *   TraceReplayMain <目录>                  列出目录下的轨迹
+ *   TraceReplayMain <目录>/<运行名> [倍速]   重放并打印日志、统计和与轨迹的核对结果（倍速默认0=尽快跑完）
+ *   TraceReplayMain <目录>/<运行名> dump     逐条打印轨迹内容
+ *
+ * 也可以直接给某一段文件（run-xxx.000.btt）。
+ */
+public final class TraceReplayMain {
+
+    private TraceReplayMain() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args[0].isEmpty()) {
+            System.err.println("用法: TraceReplayMain <目录>[/<运行名>] [倍速|dump]");
+            System.exit(2);
+        }
+        File path = new File(args[0]);
+        if (path.isDirectory()) {
+            for (String run : TraceReader.listRuns(path)) System.out.println(run);
+            return;
+        }
+        String name = path.getName();
+        if (name.endsWith(TraceRecorder.SUFFIX)) {
+            // 去掉 .btt 和段号（段号位数不固定）
+            name = name.substring(0, name.lastIndexOf('.'));
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) name = name.substring(0, dot);
+        }
+        TraceReader trace = new TraceReader(path.getAbsoluteFile().getParentFile(), name);
+
+        String mode = args.length > 1 ? args[1] : "0";
+        if (mode.equals("dump")) {
+            System.out.print(trace.dump());
+            warnIfCorrupt(trace);
+            return;
+        }
+        double speed = Double.parseDouble(mode);
+        SimulationRunner.Replay replay = SimulationRunner.replay(trace, speed, new TestController.Callback() {
+            @Override public void onLoopStart(int loop, int total) {}
+            @Override public void onStateChange(String stateDesc) {}
+            @Override public void onLoopSuccess(int loop, long costMs) {}
+            @Override public void onLoopFailure(int loop, TestStatistics.FailReason reason, String detail) {}
+            @Override public void onAllDone(TestStatistics stats) {}
+            @Override public void onLog(LogRecord record) {
+                System.out.println(String.format(Locale.ROOT, "%6d %s", record.loop, record.getText()));
+            }
+        });
+        System.out.println();
+        System.out.println(replay);
+        warnIfCorrupt(trace);
+        if (!replay.backend.isExact()) System.exit(1);
+    }
+
+    /** 段内有无法解码的记录时，该段其后的事件没有参与重放/打印 */
+    private static void warnIfCorrupt(TraceReader trace) {
+        if (trace.isCorrupt()) System.err.println("警告: " + trace + "，损坏处之后到段末的记录已跳过");
+    }
+}